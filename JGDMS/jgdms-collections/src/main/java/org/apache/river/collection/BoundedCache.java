@@ -0,0 +1,778 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.collection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * A concurrent cache bounded by the number or total weight of its entries,
+ * which evicts entries according to an approximation of the W-TinyLFU
+ * policy.
+ * <p>
+ * New entries enter a small admission window, one percent of the
+ * capacity, ordered by recency.  Entries leaving the window compete
+ * with the least recently used entry of the main space and are only
+ * admitted if they have been accessed more often, according to a
+ * {@link FrequencySketch frequency sketch} of recent accesses.  The main
+ * space is a segmented LRU, entries accessed again while on probation are
+ * promoted to the protected segment, which holds up to eighty percent of
+ * the main space.  This keeps frequently used entries cached when bursts
+ * of entries used only once pass through the cache, which would flush a
+ * plain LRU cache.  The window size is fixed, it is not adapted to the
+ * workload.
+ * <p>
+ * Reads don't lock, accesses are recorded in striped buffers and replayed
+ * against the policy by whichever thread next acquires the policy lock;
+ * accesses are dropped when a buffer is full, which only affects the
+ * accuracy of the policy.  Writes update the map and then the policy
+ * while holding the lock.  The cache may briefly exceed its bound while
+ * writes are in progress.
+ * <p>
+ * {@link #get(Object, Function)} and {@link #computeIfAbsent
+ * computeIfAbsent} load absent values with the given function, which is
+ * called without holding any locks, so it may use the cache, but two
+ * threads may load the same key concurrently, in which case the value
+ * cached first is returned to both.
+ * <p>
+ * Null keys and values are not permitted.  Keys must not be mutated
+ * while cached, since the policy relies on their hash code.
+ *
+ * @param <K> key type.
+ * @param <V> value type.
+ * @since 3.1.1
+ */
+public final class BoundedCache<K,V> extends AbstractMap<K,V>
+	implements ConcurrentMap<K,V> {
+
+    private static final int READ_BUFFER_SIZE = 16; // power of two.
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int STRIPES;
+
+    static {
+	int stripes = 1;
+	int ncpu = Runtime.getRuntime().availableProcessors();
+	while (stripes < ncpu * 2 && stripes < 64) stripes <<= 1;
+	STRIPES = stripes;
+    }
+
+    private final ConcurrentMap<K,Node<K,V>> data;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final ReadBuffer<K,V> [] readBuffers;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Policy state, guarded by lock.
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final Deque<K,V> window = new Deque<K,V>();
+    private final Deque<K,V> probation = new Deque<K,V>();
+    private final Deque<K,V> protect = new Deque<K,V>();
+    private long weight;
+    private long windowWeight;
+    private long protectedWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadTime = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private Set<Entry<K,V>> entrySet;
+
+    /**
+     * Creates a cache that holds at most the given number of entries.
+     *
+     * @param maximumSize the maximum number of entries.
+     * @throws IllegalArgumentException if maximumSize is negative.
+     */
+    public BoundedCache(long maximumSize) {
+	this(maximumSize, null);
+    }
+
+    /**
+     * Creates a cache whose entries' total weight is at most
+     * maximumWeight, an entry weighing more than maximumWeight is evicted
+     * immediately.
+     *
+     * @param maximumWeight the maximum total weight of entries.
+     * @param weigher returns the weight of an entry, which must not be
+     * negative, or null if each entry weighs one.
+     * @throws IllegalArgumentException if maximumWeight is negative.
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(long maximumWeight,
+	    ToIntBiFunction<? super K, ? super V> weigher)
+    {
+	if (maximumWeight < 0) throw new IllegalArgumentException(
+	    "Negative maximum: " + maximumWeight);
+	this.maximum = maximumWeight;
+	this.weigher = weigher;
+	windowMaximum = Math.max(maximumWeight > 0 ? 1 : 0, maximumWeight / 100);
+	protectedMaximum = (maximumWeight - windowMaximum) * 4 / 5;
+	data = new ConcurrentHashMap<K,Node<K,V>>(
+	    (int) Math.min(weigher == null ? maximumWeight : 16, 1 << 16));
+	readBuffers = new ReadBuffer[STRIPES];
+	for (int i = 0; i < STRIPES; i++) {
+	    readBuffers[i] = new ReadBuffer<K,V>();
+	}
+	if (weigher == null) sketch.ensureCapacity(maximumWeight);
+    }
+
+    /**
+     * Returns the value for key, or null, recording the access.
+     */
+    @Override
+    public V get(Object key) {
+	Node<K,V> n = data.get(key);
+	if (n == null) {
+	    misses.increment();
+	    return null;
+	}
+	V v = n.value;
+	if (v == null) {
+	    misses.increment();
+	    return null;
+	}
+	hits.increment();
+	recordAccess(n);
+	return v;
+    }
+
+    /**
+     * Returns the value for key, loading it with the given function if
+     * absent.  If the function returns null or throws, nothing is cached.
+     *
+     * @param key the key.
+     * @param loader computes an absent value.
+     * @return the cached or loaded value, or null if the loader returned
+     * null.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+	V v = get(key);
+	if (v != null) return v;
+	long start = System.nanoTime();
+	try {
+	    v = loader.apply(key);
+	} catch (RuntimeException e) {
+	    loadFailures.increment();
+	    throw e;
+	} catch (Error e) {
+	    loadFailures.increment();
+	    throw e;
+	} finally {
+	    loadTime.add(System.nanoTime() - start);
+	}
+	if (v == null) {
+	    loadFailures.increment();
+	    return null;
+	}
+	loads.increment();
+	V existed = putIfAbsent(key, v);
+	return existed != null ? existed : v;
+    }
+
+    @Override
+    public V computeIfAbsent(K key,
+	    Function<? super K, ? extends V> mappingFunction)
+    {
+	return get(key, mappingFunction);
+    }
+
+    /**
+     * Returns true if key is cached, without recording an access.
+     */
+    @Override
+    public boolean containsKey(Object key) {
+	Node<K,V> n = data.get(key);
+	return n != null && n.value != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+	return put(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+	return put(key, value, true);
+    }
+
+    private V put(K key, V value, boolean onlyIfAbsent) {
+	if (key == null || value == null) throw new NullPointerException();
+	int w = weigh(key, value);
+	Node<K,V> node = new Node<K,V>(key, value, w);
+	for (;;) {
+	    Node<K,V> prior = data.putIfAbsent(key, node);
+	    if (prior == null) {
+		lock.lock();
+		try {
+		    drainReadBuffers();
+		    onAdd(node);
+		    evict();
+		} finally {
+		    lock.unlock();
+		}
+		return null;
+	    }
+	    V old;
+	    synchronized (prior) {
+		old = prior.value;
+		if (old == null) {
+		    // Removed concurrently, retry.
+		    data.remove(key, prior);
+		    continue;
+		}
+		if (onlyIfAbsent) {
+		    recordAccess(prior);
+		    return old;
+		}
+		prior.value = value;
+	    }
+	    lock.lock();
+	    try {
+		drainReadBuffers();
+		onUpdate(prior, w);
+		evict();
+	    } finally {
+		lock.unlock();
+	    }
+	    return old;
+	}
+    }
+
+    @Override
+    public V remove(Object key) {
+	Node<K,V> n = data.remove(key);
+	if (n == null) return null;
+	V old = retire(n);
+	removePolicy(n);
+	return old;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+	if (value == null) return false;
+	Node<K,V> n = data.get(key);
+	if (n == null) return false;
+	synchronized (n) {
+	    V v = n.value;
+	    if (v == null || !value.equals(v)) return false;
+	    n.value = null;
+	}
+	data.remove(key, n);
+	removePolicy(n);
+	return true;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+	if (oldValue == null || newValue == null)
+	    throw new NullPointerException();
+	Node<K,V> n = data.get(key);
+	if (n == null) return false;
+	int w = weigh(key, newValue);
+	synchronized (n) {
+	    V v = n.value;
+	    if (v == null || !oldValue.equals(v)) return false;
+	    n.value = newValue;
+	}
+	update(n, w);
+	return true;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+	if (value == null) throw new NullPointerException();
+	Node<K,V> n = data.get(key);
+	if (n == null) return null;
+	int w = weigh(key, value);
+	V v;
+	synchronized (n) {
+	    v = n.value;
+	    if (v == null) return null;
+	    n.value = value;
+	}
+	update(n, w);
+	return v;
+    }
+
+    @Override
+    public int size() {
+	return data.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+	return data.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+	lock.lock();
+	try {
+	    drainReadBuffers();
+	    for (Iterator<Node<K,V>> it = data.values().iterator(); it.hasNext();) {
+		Node<K,V> n = it.next();
+		it.remove();
+		retire(n);
+		unlink(n);
+	    }
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    @Override
+    public Set<Entry<K,V>> entrySet() {
+	Set<Entry<K,V>> es = entrySet;
+	if (es == null) entrySet = es = new EntrySet();
+	return es;
+    }
+
+    /**
+     * Returns a snapshot of this cache's statistics.
+     *
+     * @return statistics accumulated since the cache was created.
+     */
+    public Statistics statistics() {
+	return new Statistics(hits.sum(), misses.sum(), loads.sum(),
+	    loadFailures.sum(), loadTime.sum(), evictions.sum());
+    }
+
+    /**
+     * Returns the maximum size or weight of this cache.
+     *
+     * @return the maximum.
+     */
+    public long maximum() {
+	return maximum;
+    }
+
+    private int weigh(K key, V value) {
+	if (weigher == null) return 1;
+	int w = weigher.applyAsInt(key, value);
+	if (w < 0) throw new IllegalArgumentException("Negative weight: " + w);
+	return w;
+    }
+
+    /** Marks a node as removed, returning its last value. */
+    private V retire(Node<K,V> n) {
+	synchronized (n) {
+	    V v = n.value;
+	    n.value = null;
+	    return v;
+	}
+    }
+
+    private void removePolicy(Node<K,V> n) {
+	lock.lock();
+	try {
+	    drainReadBuffers();
+	    unlink(n);
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    private void update(Node<K,V> n, int w) {
+	lock.lock();
+	try {
+	    drainReadBuffers();
+	    onUpdate(n, w);
+	    evict();
+	} finally {
+	    lock.unlock();
+	}
+    }
+
+    private void recordAccess(Node<K,V> n) {
+	int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+	if (readBuffers[stripe].offer(n) && lock.tryLock()) {
+	    try {
+		drainReadBuffers();
+	    } finally {
+		lock.unlock();
+	    }
+	}
+    }
+
+    // Policy methods, called with lock held.
+
+    private void drainReadBuffers() {
+	for (int i = 0; i < readBuffers.length; i++) {
+	    ReadBuffer<K,V> b = readBuffers[i];
+	    Node<K,V> n;
+	    while ((n = b.poll()) != null) onAccess(n);
+	}
+    }
+
+    private void onAccess(Node<K,V> n) {
+	if (n.queue == null) return; // removed or not yet added.
+	sketch.increment(n.key);
+	if (n.queue == window) {
+	    window.moveToTail(n);
+	} else if (n.queue == probation) {
+	    probation.remove(n);
+	    protect.add(n);
+	    protectedWeight += n.weight;
+	    demoteProtected();
+	} else {
+	    protect.moveToTail(n);
+	}
+    }
+
+    private void onAdd(Node<K,V> n) {
+	if (n.value == null) return; // removed before added.
+	if (weigher != null) sketch.ensureCapacity(data.size());
+	sketch.increment(n.key);
+	window.add(n);
+	weight += n.weight;
+	windowWeight += n.weight;
+    }
+
+    private void onUpdate(Node<K,V> n, int w) {
+	if (n.queue == null) return;
+	int delta = w - n.weight;
+	n.weight = w;
+	weight += delta;
+	if (n.queue == window) {
+	    windowWeight += delta;
+	} else if (n.queue == protect) {
+	    protectedWeight += delta;
+	}
+	onAccess(n);
+    }
+
+    private void unlink(Node<K,V> n) {
+	Deque<K,V> q = n.queue;
+	if (q == null) return;
+	q.remove(n);
+	weight -= n.weight;
+	if (q == window) {
+	    windowWeight -= n.weight;
+	} else if (q == protect) {
+	    protectedWeight -= n.weight;
+	}
+    }
+
+    private void demoteProtected() {
+	while (protectedWeight > protectedMaximum) {
+	    Node<K,V> n = protect.first;
+	    if (n == null) return;
+	    protect.remove(n);
+	    protectedWeight -= n.weight;
+	    probation.add(n);
+	}
+    }
+
+    /**
+     * Moves entries overflowing the window to probation, then evicts from
+     * the main space until within the maximum, each entry that left the
+     * window competing with the probation victim by frequency.
+     */
+    private void evict() {
+	Node<K,V> candidate = null;
+	while (windowWeight > windowMaximum) {
+	    Node<K,V> n = window.first;
+	    if (n == null) break;
+	    window.remove(n);
+	    windowWeight -= n.weight;
+	    probation.add(n);
+	    if (candidate == null) candidate = n;
+	}
+	while (weight > maximum) {
+	    Node<K,V> victim = probation.first;
+	    if (victim == null) victim = protect.first;
+	    if (victim == null) victim = window.first;
+	    if (victim == null) return;
+	    if (candidate != null && candidate != victim
+		    && candidate.queue == probation) {
+		Node<K,V> next = candidate.next;
+		if (candidate.weight > maximum
+			|| sketch.frequency(candidate.key)
+			    <= sketch.frequency(victim.key)) {
+		    evict(candidate);
+		    candidate = next;
+		    continue;
+		}
+		evict(victim);
+		continue;
+	    }
+	    if (victim == candidate) candidate = candidate.next;
+	    evict(victim);
+	}
+    }
+
+    private void evict(Node<K,V> n) {
+	unlink(n);
+	if (data.remove(n.key, n)) {
+	    retire(n);
+	    evictions.increment();
+	}
+    }
+
+    /**
+     * A cache entry, the value is null once removed.  Queue links and
+     * weight are guarded by the policy lock, value writes by the node.
+     */
+    private static final class Node<K,V> {
+	final K key;
+	volatile V value;
+	int weight;
+	Deque<K,V> queue;
+	Node<K,V> prev;
+	Node<K,V> next;
+
+	Node(K key, V value, int weight) {
+	    this.key = key;
+	    this.value = value;
+	    this.weight = weight;
+	}
+    }
+
+    /**
+     * Doubly linked access order queue, least recently used first.
+     */
+    private static final class Deque<K,V> {
+	Node<K,V> first;
+	Node<K,V> last;
+
+	void add(Node<K,V> n) {
+	    n.queue = this;
+	    n.prev = last;
+	    n.next = null;
+	    if (last == null) {
+		first = n;
+	    } else {
+		last.next = n;
+	    }
+	    last = n;
+	}
+
+	void remove(Node<K,V> n) {
+	    if (n.prev == null) {
+		first = n.next;
+	    } else {
+		n.prev.next = n.next;
+	    }
+	    if (n.next == null) {
+		last = n.prev;
+	    } else {
+		n.next.prev = n.prev;
+	    }
+	    n.prev = null;
+	    n.next = null;
+	    n.queue = null;
+	}
+
+	void moveToTail(Node<K,V> n) {
+	    if (n != last) {
+		remove(n);
+		add(n);
+	    }
+	}
+    }
+
+    /**
+     * Lossy bounded buffer of accessed nodes, offered without locking and
+     * drained while holding the policy lock.
+     */
+    private static final class ReadBuffer<K,V> {
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicReferenceArray<Node<K,V>> buffer =
+	    new AtomicReferenceArray<Node<K,V>>(READ_BUFFER_SIZE);
+	private volatile long head; // written only by the drainer.
+
+	/**
+	 * Records an access, returning true if the buffer should be
+	 * drained.
+	 */
+	boolean offer(Node<K,V> n) {
+	    long t = tail.get();
+	    long size = t - head;
+	    if (size >= READ_BUFFER_SIZE) return true; // full, drop.
+	    if (tail.compareAndSet(t, t + 1)) {
+		buffer.lazySet((int) t & READ_BUFFER_MASK, n);
+		return size + 1 >= READ_BUFFER_SIZE / 2;
+	    }
+	    return false; // contended, drop.
+	}
+
+	Node<K,V> poll() {
+	    long h = head;
+	    if (h == tail.get()) return null;
+	    int i = (int) h & READ_BUFFER_MASK;
+	    Node<K,V> n = buffer.get(i);
+	    if (n == null) return null; // not yet published.
+	    buffer.lazySet(i, null);
+	    head = h + 1;
+	    return n;
+	}
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K,V>> {
+
+	@Override
+	public Iterator<Entry<K,V>> iterator() {
+	    final Iterator<Node<K,V>> it = data.values().iterator();
+	    return new Iterator<Entry<K,V>>() {
+		private Entry<K,V> next = advance();
+		private Entry<K,V> last;
+
+		private Entry<K,V> advance() {
+		    while (it.hasNext()) {
+			Node<K,V> n = it.next();
+			V v = n.value;
+			if (v != null) return new SimpleImmutableEntry<K,V>(n.key, v);
+		    }
+		    return null;
+		}
+
+		@Override
+		public boolean hasNext() {
+		    return next != null;
+		}
+
+		@Override
+		public Entry<K,V> next() {
+		    if (next == null) throw new java.util.NoSuchElementException();
+		    last = next;
+		    next = advance();
+		    return last;
+		}
+
+		@Override
+		public void remove() {
+		    if (last == null) throw new IllegalStateException();
+		    BoundedCache.this.remove(last.getKey(), last.getValue());
+		    last = null;
+		}
+	    };
+	}
+
+	@Override
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry)) return false;
+	    Entry<?,?> e = (Entry<?,?>) o;
+	    Node<K,V> n = data.get(e.getKey());
+	    V v = n != null ? n.value : null;
+	    return v != null && v.equals(e.getValue());
+	}
+
+	@Override
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry)) return false;
+	    Entry<?,?> e = (Entry<?,?>) o;
+	    return BoundedCache.this.remove(e.getKey(), e.getValue());
+	}
+
+	@Override
+	public int size() {
+	    return data.size();
+	}
+
+	@Override
+	public void clear() {
+	    BoundedCache.this.clear();
+	}
+    }
+
+    /**
+     * Immutable snapshot of cache statistics.
+     *
+     * @since 3.1.1
+     */
+    public static final class Statistics {
+	private final long hits;
+	private final long misses;
+	private final long loads;
+	private final long loadFailures;
+	private final long loadTime;
+	private final long evictions;
+
+	Statistics(long hits, long misses, long loads, long loadFailures,
+		long loadTime, long evictions)
+	{
+	    this.hits = hits;
+	    this.misses = misses;
+	    this.loads = loads;
+	    this.loadFailures = loadFailures;
+	    this.loadTime = loadTime;
+	    this.evictions = evictions;
+	}
+
+	/** @return the number of lookups that found a value. */
+	public long hitCount() {
+	    return hits;
+	}
+
+	/** @return the number of lookups that found no value. */
+	public long missCount() {
+	    return misses;
+	}
+
+	/** @return the ratio of hits to lookups, or 1 if there were none. */
+	public double hitRate() {
+	    long requests = hits + misses;
+	    return requests == 0 ? 1.0 : (double) hits / requests;
+	}
+
+	/** @return the number of values loaded successfully. */
+	public long loadSuccessCount() {
+	    return loads;
+	}
+
+	/** @return the number of loads that threw or returned null. */
+	public long loadFailureCount() {
+	    return loadFailures;
+	}
+
+	/** @return the total time spent loading values, in nanoseconds. */
+	public long totalLoadTime() {
+	    return loadTime;
+	}
+
+	/** @return the number of entries evicted by the size policy. */
+	public long evictionCount() {
+	    return evictions;
+	}
+
+	@Override
+	public String toString() {
+	    return "hits=" + hits + ", misses=" + misses + ", hitRate="
+		+ hitRate() + ", loads=" + loads + ", loadFailures="
+		+ loadFailures + ", loadTime=" + loadTime + "ns, evictions="
+		+ evictions;
+	}
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.collection;
+
+/**
+ * Approximate access frequency of keys, used by {@link BoundedCache} to
+ * decide whether a new entry should be admitted in place of the entry that
+ * would be evicted for it.
+ * <p>
+ * A count-min sketch of four bit counters, sixteen to a long, each key
+ * incrementing one counter in each of four rows.  Once the number of
+ * increments reaches ten times the number of counters per row, all
+ * counters are halved, so the estimate favours recent popularity.
+ * <p>
+ * Not thread safe, the caller must synchronize.
+ *
+ * @since 3.1.1
+ */
+final class FrequencySketch {
+
+    private static final long [] SEEDS = {
+	0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+	0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAXIMUM_LENGTH = 1 << 24;
+
+    private long [] table;
+    private int sampleSize;
+    private int additions;
+
+    FrequencySketch() {
+	ensureCapacity(16);
+    }
+
+    /**
+     * Grows the sketch to accurately track the given number of keys, the
+     * existing counts are discarded if it grows.
+     */
+    void ensureCapacity(long maximumSize) {
+	int length = (int) Math.min(Math.max(maximumSize, 16L), MAXIMUM_LENGTH);
+	length = Integer.highestOneBit(length - 1) << 1;
+	if (table != null && table.length >= length) return;
+	table = new long[length];
+	sampleSize = 10 * length;
+	additions = 0;
+    }
+
+    /** Returns the estimated number of accesses, between 0 and 15. */
+    int frequency(Object key) {
+	int hash = spread(key.hashCode());
+	int frequency = Integer.MAX_VALUE;
+	for (int i = 0; i < 4; i++) {
+	    int index = indexOf(hash, i);
+	    int shift = offset(hash, i) << 2;
+	    frequency = Math.min(frequency, (int) ((table[index] >>> shift) & 0xfL));
+	}
+	return frequency;
+    }
+
+    /** Records an access, ageing all counts periodically. */
+    void increment(Object key) {
+	int hash = spread(key.hashCode());
+	boolean added = false;
+	for (int i = 0; i < 4; i++) {
+	    int index = indexOf(hash, i);
+	    int shift = offset(hash, i) << 2;
+	    long mask = 0xfL << shift;
+	    if ((table[index] & mask) != mask) {
+		table[index] += 1L << shift;
+		added = true;
+	    }
+	}
+	if (added && ++additions >= sampleSize) reset();
+    }
+
+    private void reset() {
+	for (int i = 0; i < table.length; i++) {
+	    table[i] = (table[i] >>> 1) & RESET_MASK;
+	}
+	additions >>>= 1;
+    }
+
+    /** Counter within the long selected for a row. */
+    private static int offset(int hash, int row) {
+	return (hash >>> (row << 3)) & 0xf;
+    }
+
+    private int indexOf(int hash, int row) {
+	long h = (hash + SEEDS[row]) * SEEDS[row];
+	h += h >>> 32;
+	return ((int) h) & (table.length - 1);
+    }
+
+    private static int spread(int h) {
+	h = ((h >>> 16) ^ h) * 0x45d9f3b;
+	h = ((h >>> 16) ^ h) * 0x45d9f3b;
+	return (h >>> 16) ^ h;
+    }
+}
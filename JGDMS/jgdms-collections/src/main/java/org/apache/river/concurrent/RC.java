@@ -349,7 +349,34 @@ public class RC {
             ConcurrentMap<Referrer<K>, Referrer<V>> internal, Ref key, Ref value, long gcKeyCycle, long gcValCycle){
         return new ReferenceConcurrentMap<K, V>(internal, key, value, true, gcKeyCycle, gcValCycle);
     }
-    
+
+    /**
+     * Create a ConcurrentMap with weakly or softly referenced keys and
+     * strongly referenced values.
+     * <p>
+     * Unlike {@link #concurrentMap(ConcurrentMap, Ref, Ref, long, long)}
+     * the returned map is not a decorator, lookups such as
+     * {@link Map#get(Object)} and {@link Map#containsKey(Object)} don't
+     * allocate and mappings of collected keys are removed incrementally by
+     * threads accessing the map, instead of by a background cleaning task.
+     * This makes it better suited for frequently read caches keyed by
+     * objects such as ClassLoader's, Class'es or ProtectionDomain's.
+     *
+     * @param <K> key type.
+     * @param <V> value type.
+     * @param key key reference type, one of {@link Ref#WEAK},
+     * {@link Ref#WEAK_IDENTITY}, {@link Ref#SOFT} or {@link Ref#SOFT_IDENTITY}.
+     * @param initialCapacity expected number of mappings.
+     * @return ConcurrentMap with referenced keys.
+     * @throws IllegalArgumentException if key is not a supported type, or
+     * initialCapacity is negative.
+     * @since 3.1.1
+     */
+    public static <K, V> ConcurrentMap<K, V> referenceKeyConcurrentMap(
+            Ref key, int initialCapacity){
+        return new ReferenceKeyConcurrentMap<K, V>(key, initialCapacity);
+    }
+
     /**
      * Decorate a ConcurrentNavigableMap for holding references so it appears as a 
      * ConcurrentNavigableMap containing referents.
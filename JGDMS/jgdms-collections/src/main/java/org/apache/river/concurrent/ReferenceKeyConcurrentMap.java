@@ -0,0 +1,562 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.concurrent;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A ConcurrentMap with weakly or softly referenced keys and strongly
+ * referenced values, implemented directly as a segmented hash table rather
+ * than by decorating another map.
+ * <p>
+ * Unlike {@link ReferenceConcurrentMap}, lookups don't wrap the key in a
+ * temporary {@link Referrer}; the hash table compares the key with the
+ * referent of each candidate entry, so get and containsKey don't allocate.
+ * Reads never lock and proceed concurrently with writes, which lock only
+ * the segment they modify.
+ * <p>
+ * Entries whose keys have been garbage collected are removed incrementally
+ * by the thread accessing their segment, each segment has its own
+ * reference queue that is polled on every read and write, no background
+ * cleaning thread is used.  Polling an empty queue doesn't lock.
+ * <p>
+ * Null keys and values are not permitted.  Iterators are weakly
+ * consistent and never return entries whose keys have been collected.
+ *
+ * @param <K> key type.
+ * @param <V> value type.
+ * @see RC#referenceKeyConcurrentMap(Ref, int)
+ * @since 3.1.1
+ */
+class ReferenceKeyConcurrentMap<K,V> extends AbstractMap<K,V>
+	implements ConcurrentMap<K,V> {
+
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private final Segment<K,V>[] segments;
+    private final int segmentShift;
+    private final boolean identity;
+    private final boolean soft;
+    private Set<Entry<K,V>> entrySet;
+
+    /**
+     * @param key one of WEAK, WEAK_IDENTITY, SOFT or SOFT_IDENTITY.
+     * @param initialCapacity expected number of entries.
+     * @throws IllegalArgumentException if key isn't a supported type.
+     */
+    @SuppressWarnings("unchecked")
+    ReferenceKeyConcurrentMap(Ref key, int initialCapacity) {
+	switch (key) {
+	    case WEAK: identity = false; soft = false; break;
+	    case WEAK_IDENTITY: identity = true; soft = false; break;
+	    case SOFT: identity = false; soft = true; break;
+	    case SOFT_IDENTITY: identity = true; soft = true; break;
+	    default:
+		throw new IllegalArgumentException(
+		    "Unsupported key reference type: " + key);
+	}
+	if (initialCapacity < 0) throw new IllegalArgumentException(
+	    "Negative initial capacity: " + initialCapacity);
+	int ssize = 1;
+	int sshift = 0;
+	int concurrency = Runtime.getRuntime().availableProcessors() * 2;
+	while (ssize < concurrency && ssize < 64) {
+	    ssize <<= 1;
+	    sshift++;
+	}
+	segmentShift = 32 - sshift;
+	int cap = 2;
+	int perSegment = Math.min(initialCapacity / ssize, MAXIMUM_CAPACITY);
+	while (cap < perSegment) cap <<= 1;
+	segments = new Segment[ssize];
+	for (int i = 0; i < ssize; i++) {
+	    segments[i] = new Segment<K,V>(cap);
+	}
+    }
+
+    private int hash(Object key) {
+	int h = identity ? System.identityHashCode(key) : key.hashCode();
+	// Spread bits, upper bits select the segment, lower the bucket.
+	h += (h << 15) ^ 0xffffcd7d;
+	h ^= (h >>> 10);
+	h += (h << 3);
+	h ^= (h >>> 6);
+	h += (h << 2) + (h << 14);
+	return h ^ (h >>> 16);
+    }
+
+    private Segment<K,V> segmentFor(int hash) {
+	return segments.length == 1 ? segments[0] :
+	    segments[hash >>> segmentShift];
+    }
+
+    private boolean matches(Object key, Object referent) {
+	return key == referent
+	    || (!identity && referent != null && key.equals(referent));
+    }
+
+    @Override
+    public V get(Object key) {
+	if (key == null) throw new NullPointerException();
+	int h = hash(key);
+	Segment<K,V> s = segmentFor(h);
+	s.expunge();
+	Node<K,V> n = s.find(this, key, h);
+	return n != null ? n.value : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+	return get(key) != null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+	if (key == null || value == null) throw new NullPointerException();
+	int h = hash(key);
+	return segmentFor(h).put(this, key, h, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+	if (key == null || value == null) throw new NullPointerException();
+	int h = hash(key);
+	return segmentFor(h).put(this, key, h, value, true);
+    }
+
+    @Override
+    public V remove(Object key) {
+	if (key == null) throw new NullPointerException();
+	int h = hash(key);
+	return segmentFor(h).remove(this, key, h, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+	if (key == null) throw new NullPointerException();
+	if (value == null) return false;
+	int h = hash(key);
+	return segmentFor(h).remove(this, key, h, value) != null;
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+	if (key == null || oldValue == null || newValue == null)
+	    throw new NullPointerException();
+	int h = hash(key);
+	return segmentFor(h).replace(this, key, h, oldValue, newValue) != null;
+    }
+
+    @Override
+    public V replace(K key, V value) {
+	if (key == null || value == null) throw new NullPointerException();
+	int h = hash(key);
+	return segmentFor(h).replace(this, key, h, null, value);
+    }
+
+    @Override
+    public int size() {
+	long sum = 0;
+	for (int i = 0; i < segments.length; i++) {
+	    segments[i].expunge();
+	    sum += segments[i].count;
+	}
+	return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    @Override
+    public boolean isEmpty() {
+	return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+	for (int i = 0; i < segments.length; i++) {
+	    segments[i].clear();
+	}
+    }
+
+    @Override
+    public Set<Entry<K,V>> entrySet() {
+	Set<Entry<K,V>> es = entrySet;
+	if (es == null) entrySet = es = new EntrySet();
+	return es;
+    }
+
+    /**
+     * Weak or soft reference to a key, shared by the nodes that replace
+     * each other when a bucket is copied, so an enqueued reference
+     * identifies the node to remove.
+     */
+    private interface Key<K> {
+	K get();
+	int hash();
+    }
+
+    private static final class WeakKey<K> extends WeakReference<K>
+	    implements Key<K> {
+	private final int hash;
+
+	WeakKey(K referent, int hash, ReferenceQueue<? super K> queue) {
+	    super(referent, queue);
+	    this.hash = hash;
+	}
+
+	@Override
+	public int hash() {
+	    return hash;
+	}
+    }
+
+    private static final class SoftKey<K> extends SoftReference<K>
+	    implements Key<K> {
+	private final int hash;
+
+	SoftKey(K referent, int hash, ReferenceQueue<? super K> queue) {
+	    super(referent, queue);
+	    this.hash = hash;
+	}
+
+	@Override
+	public int hash() {
+	    return hash;
+	}
+    }
+
+    /**
+     * Hash chain node, next is immutable so readers can traverse a chain
+     * without locking; removal copies the nodes preceding the one removed.
+     */
+    private static final class Node<K,V> {
+	final Key<K> key;
+	final int hash;
+	final Node<K,V> next;
+	volatile V value;
+
+	Node(Key<K> key, int hash, V value, Node<K,V> next) {
+	    this.key = key;
+	    this.hash = hash;
+	    this.value = value;
+	    this.next = next;
+	}
+    }
+
+    /**
+     * A lock protected hash table for a portion of the key space.
+     */
+    private static final class Segment<K,V> extends ReentrantLock {
+	private static final long serialVersionUID = 1L;
+
+	final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+	volatile Node<K,V>[] table;
+	volatile int count;
+
+	@SuppressWarnings("unchecked")
+	Segment(int capacity) {
+	    table = new Node[capacity];
+	}
+
+	/**
+	 * Removes entries whose keys have been collected, locks only if the
+	 * reference queue isn't empty.
+	 */
+	void expunge() {
+	    Reference<? extends K> ref = queue.poll();
+	    if (ref == null) return;
+	    lock();
+	    try {
+		do {
+		    removeKey((Key<?>) ref);
+		} while ((ref = queue.poll()) != null);
+	    } finally {
+		unlock();
+	    }
+	}
+
+	private void removeKey(Key<?> key) {
+	    Node<K,V>[] tab = table;
+	    int i = key.hash() & (tab.length - 1);
+	    Node<K,V> first = tab[i];
+	    for (Node<K,V> n = first; n != null; n = n.next) {
+		if (n.key == key) {
+		    unlink(tab, i, first, n);
+		    return;
+		}
+	    }
+	}
+
+	/** Called with lock held. */
+	private void unlink(Node<K,V>[] tab, int i, Node<K,V> first,
+		Node<K,V> n)
+	{
+	    n.value = null;
+	    Node<K,V> head = n.next;
+	    for (Node<K,V> p = first; p != n; p = p.next) {
+		head = new Node<K,V>(p.key, p.hash, p.value, head);
+	    }
+	    tab[i] = head;
+	    count--;
+	    table = tab; // volatile write publishes the change.
+	}
+
+	Node<K,V> find(ReferenceKeyConcurrentMap<K,V> map, Object key, int h) {
+	    Node<K,V>[] tab = table;
+	    for (Node<K,V> n = tab[h & (tab.length - 1)]; n != null; n = n.next) {
+		if (n.hash == h && map.matches(key, n.key.get())
+			&& n.value != null) return n;
+	    }
+	    return null;
+	}
+
+	V put(ReferenceKeyConcurrentMap<K,V> map, K key, int h, V value,
+		boolean onlyIfAbsent)
+	{
+	    lock();
+	    try {
+		expunge();
+		Node<K,V> n = find(map, key, h);
+		if (n != null) {
+		    V old = n.value;
+		    if (!onlyIfAbsent) n.value = value;
+		    return old;
+		}
+		Node<K,V>[] tab = table;
+		if (count >= tab.length - (tab.length >>> 2)
+			&& tab.length < MAXIMUM_CAPACITY) {
+		    tab = rehash(tab);
+		}
+		int i = h & (tab.length - 1);
+		Key<K> k = map.soft ? new SoftKey<K>(key, h, queue)
+		    : new WeakKey<K>(key, h, queue);
+		tab[i] = new Node<K,V>(k, h, value, tab[i]);
+		count++;
+		table = tab;
+		return null;
+	    } finally {
+		unlock();
+	    }
+	}
+
+	/** Removes if value is null or equal to the current value. */
+	V remove(ReferenceKeyConcurrentMap<K,V> map, Object key, int h,
+		Object value)
+	{
+	    lock();
+	    try {
+		expunge();
+		Node<K,V>[] tab = table;
+		int i = h & (tab.length - 1);
+		Node<K,V> first = tab[i];
+		for (Node<K,V> n = first; n != null; n = n.next) {
+		    V v = n.value;
+		    if (n.hash == h && v != null
+			    && map.matches(key, n.key.get())) {
+			if (value != null && !value.equals(v)) return null;
+			unlink(tab, i, first, n);
+			return v;
+		    }
+		}
+		return null;
+	    } finally {
+		unlock();
+	    }
+	}
+
+	/** Replaces if oldValue is null or equal to the current value. */
+	V replace(ReferenceKeyConcurrentMap<K,V> map, Object key, int h,
+		Object oldValue, V newValue)
+	{
+	    lock();
+	    try {
+		expunge();
+		Node<K,V> n = find(map, key, h);
+		if (n == null) return null;
+		V v = n.value;
+		if (oldValue != null && !oldValue.equals(v)) return null;
+		n.value = newValue;
+		return v;
+	    } finally {
+		unlock();
+	    }
+	}
+
+	@SuppressWarnings("unchecked")
+	void clear() {
+	    lock();
+	    try {
+		Node<K,V>[] tab = table;
+		for (int i = 0; i < tab.length; i++) {
+		    for (Node<K,V> n = tab[i]; n != null; n = n.next) {
+			n.value = null;
+		    }
+		}
+		while (queue.poll() != null) {} // discard stale references.
+		count = 0;
+		table = new Node[tab.length];
+	    } finally {
+		unlock();
+	    }
+	}
+
+	/**
+	 * Copies the table at twice the size, discarding nodes whose keys
+	 * have been collected.  Called with lock held.
+	 */
+	@SuppressWarnings("unchecked")
+	private Node<K,V>[] rehash(Node<K,V>[] old) {
+	    Node<K,V>[] tab = new Node[old.length << 1];
+	    int mask = tab.length - 1;
+	    int c = 0;
+	    for (int i = 0; i < old.length; i++) {
+		for (Node<K,V> n = old[i]; n != null; n = n.next) {
+		    V v = n.value;
+		    if (v == null || n.key.get() == null) continue;
+		    int j = n.hash & mask;
+		    tab[j] = new Node<K,V>(n.key, n.hash, v, tab[j]);
+		    c++;
+		}
+	    }
+	    count = c;
+	    return tab;
+	}
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<K,V>> {
+
+	@Override
+	public Iterator<Entry<K,V>> iterator() {
+	    return new EntryIterator();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+	    if (!(o instanceof Map.Entry)) return false;
+	    Entry<?,?> e = (Entry<?,?>) o;
+	    Object k = e.getKey();
+	    if (k == null) return false;
+	    V v = get(k);
+	    return v != null && v.equals(e.getValue());
+	}
+
+	@Override
+	public boolean remove(Object o) {
+	    if (!(o instanceof Map.Entry)) return false;
+	    Entry<?,?> e = (Entry<?,?>) o;
+	    Object k = e.getKey();
+	    return k != null
+		&& ReferenceKeyConcurrentMap.this.remove(k, e.getValue());
+	}
+
+	@Override
+	public int size() {
+	    return ReferenceKeyConcurrentMap.this.size();
+	}
+
+	@Override
+	public void clear() {
+	    ReferenceKeyConcurrentMap.this.clear();
+	}
+    }
+
+    private final class EntryIterator implements Iterator<Entry<K,V>> {
+	private int segment;
+	private Node<K,V>[] tab;
+	private int bucket;
+	private Node<K,V> node;
+	private Entry<K,V> next;
+	private Entry<K,V> last;
+
+	EntryIterator() {
+	    advance();
+	}
+
+	/** Finds the next entry whose key is still reachable. */
+	private void advance() {
+	    next = null;
+	    while (next == null) {
+		if (node != null) node = node.next;
+		while (node == null) {
+		    if (tab != null && bucket < tab.length) {
+			node = tab[bucket++];
+		    } else if (segment < segments.length) {
+			tab = segments[segment++].table;
+			bucket = 0;
+		    } else {
+			return;
+		    }
+		}
+		K k = node.key.get();
+		V v = node.value;
+		if (k != null && v != null) {
+		    next = new WriteThroughEntry(k, v);
+		}
+	    }
+	}
+
+	@Override
+	public boolean hasNext() {
+	    return next != null;
+	}
+
+	@Override
+	public Entry<K,V> next() {
+	    if (next == null) throw new NoSuchElementException();
+	    last = next;
+	    advance();
+	    return last;
+	}
+
+	@Override
+	public void remove() {
+	    if (last == null) throw new IllegalStateException();
+	    ReferenceKeyConcurrentMap.this.remove(last.getKey(), last.getValue());
+	    last = null;
+	}
+    }
+
+    /**
+     * Holds a strong reference to the key while in use.
+     */
+    private final class WriteThroughEntry extends SimpleEntry<K,V> {
+	private static final long serialVersionUID = 1L;
+
+	WriteThroughEntry(K key, V value) {
+	    super(key, value);
+	}
+
+	@Override
+	public V setValue(V value) {
+	    if (value == null) throw new NullPointerException();
+	    V v = super.setValue(value);
+	    put(getKey(), value);
+	    return v;
+	}
+    }
+}
@@ -50,11 +50,11 @@ public final class GetThreadPoolAction implements PrivilegedAction<Executor> {
 
     /** pool of threads for executing tasks in system thread group */
     private static final ThreadPool systemThreadPool =
-	new ThreadPool(NewThreadAction.systemThreadGroup);
+	new ThreadPool(NewThreadAction.systemThreadGroup, "system");
 
     /** pool of threads for executing tasks with user code */
     private static final ThreadPool userThreadPool =
-	new ThreadPool(NewThreadAction.userThreadGroup);
+	new ThreadPool(NewThreadAction.userThreadGroup, "user");
 
     private static final Permission getSystemThreadPoolPermission =
 	new ThreadPoolPermission("getSystemThreadPool");
@@ -6,9 +6,9 @@
  * to you under the Apache License, Version 2.0 (the
  * "License"); you may not use this file except in compliance
  * with the License. You may obtain a copy of the License at
- * 
+ *
  *      http://www.apache.org/licenses/LICENSE-2.0
- * 
+ *
  * Unless required by applicable law or agreed to in writing, software
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
@@ -18,30 +18,65 @@
 
 package org.apache.river.thread;
 
+import java.lang.management.ManagementFactory;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.ObjectName;
 
 /**
  * ThreadPool is a simple thread pool implementation of the Executor
  * interface.
  *
  * A new task is always given to an idle thread, if one is available;
- * otherwise, a new thread is always created.  There is no minimum
- * warm thread count, nor is there a maximum thread count (tasks are
- * never queued unless there are sufficient idle threads to execute
- * them).
+ * otherwise, a new thread is created, until the maximum thread count
+ * is reached, after which tasks are queued.  Once the queue is full,
+ * tasks are rejected with a {@link RejectedExecutionException}, applying
+ * back-pressure to the caller.  By default there is no minimum warm
+ * thread count, nor is there a maximum thread count, so tasks are
+ * never queued unless there are sufficient idle threads to execute them.
  *
  * New threads are created as daemon threads in the thread group that
  * was passed to the ThreadPool instance's constructor.  Each thread's
  * name is the prefix NewThreadAction.NAME_PREFIX followed by the name
- * of the task it is currently executing, or "Idle" if it is currently
- * idle.
+ * of the last task it executed, a thread is only renamed when the
+ * name of its next task differs.
+ *
+ * <p>Each pool is configured with the following system properties,
+ * where <code><i>pool</i></code> is <code>system</code> or
+ * <code>user</code>; the same property without the pool name applies to
+ * both pools:
+ *
+ * <ul>
+ * <li><code>org.apache.river.thread.ThreadPool.<i>pool</i>.core</code> -
+ * threads kept alive while idle, default 0.
+ * <li><code>org.apache.river.thread.ThreadPool.<i>pool</i>.max</code> -
+ * maximum number of threads, default unbounded.
+ * <li><code>org.apache.river.thread.ThreadPool.<i>pool</i>.queue</code> -
+ * tasks queued when all threads are busy, default 4096.
+ * <li><code>org.apache.river.thread.ThreadPool.<i>pool</i>.keepAlive</code> -
+ * milliseconds an idle thread above the core size waits for a task,
+ * default 60000.
+ * <li><code>org.apache.river.thread.ThreadPool.<i>pool</i>.virtual</code> -
+ * if true and the runtime supports virtual threads and no security
+ * manager is installed, each task is executed in a new virtual thread
+ * and the other properties are ignored, default false.
+ * </ul>
+ *
+ * A bounded maximum must allow for the JERI mux reader and writer tasks,
+ * which run for the lifetime of each connection.
+ *
+ * <p>Statistics are available from the {@link ThreadPoolMXBean} registered
+ * for each pool.
  *
  * <p>This implementation uses the {@link Logger} named
  * <code>org.apache.river.thread.ThreadPool</code> to
@@ -55,47 +90,88 @@ import java.util.logging.Logger;
  * <tr> <td> {@link Level#WARNING WARNING} <td> uncaught exception in
  * worker thread
  *
+ * <tr> <td> {@link Level#CONFIG CONFIG} <td> pool configuration
+ *
+ * <tr> <td> {@link Level#FINE FINE} <td> failure to register the
+ * management bean, or virtual threads requested but unavailable
+ *
  * </table>
  *
  * @author	Sun Microsystems, Inc.
  **/
-final class ThreadPool implements Executor, java.util.concurrent.Executor {
+final class ThreadPool
+    implements Executor, java.util.concurrent.Executor, ThreadPoolMXBean {
 
     private static final Logger logger =
 	Logger.getLogger("org.apache.river.thread.ThreadPool");
-    
-    /** 
-     * This Executor is used by JERI (and other Jini implementation classes) 
-     * to delegate tasks to, the intent is to hand off to a new thread 
+
+    private static final String PROPERTY_PREFIX =
+        "org.apache.river.thread.ThreadPool.";
+
+    /**
+     * This Executor is used by JERI (and other Jini implementation classes)
+     * to delegate tasks to, the intent is to hand off to a new thread
      * immediately, however:
      *
-     * 1. When ThreadPool creates threads too aggressively, stress tests in the 
-     * qa suite create too many threads and hang because tasks that need to 
-     * respond within a required time cannot.  
-     * 
-     * 2. Conversely when thread creation takes too long, Javaspace tests that 
-     * rely on event propagation to cancel a LeasedResource find that lease still 
+     * 1. When ThreadPool creates threads too aggressively, stress tests in the
+     * qa suite create too many threads and hang because tasks that need to
+     * respond within a required time cannot.
+     *
+     * 2. Conversely when thread creation takes too long, Javaspace tests that
+     * rely on event propagation to cancel a LeasedResource find that lease still
      * available after lease expiry.
-     * 
+     *
      * 3. If no threads are available when JERI needs to start a Mux connection,
      * then a mux writer cannot initiate a client connection, for this reason, a
      * new thread must be created if no waiting threads are available to the caller.
-     * 
+     *
      * ThreadPool must degrade gracefully when a system is under significant
      * load, but it must also execute tasks as soon as possible.
-     * 
-     * ThreadGroup is a construct originally intended for applet isolation, 
-     * however it was never really successful, AccessControlContext 
+     *
+     * ThreadGroup is a construct originally intended for applet isolation,
+     * however it was never really successful, AccessControlContext
      * is a much more effective way of controlling privilege.
-     * 
+     *
      * We should consider changing this to ensure that each task is executed in the
      * AccessControlContext of the calling thread, to avoid privilege escalation.
      */
     private volatile boolean shutdown = false;
-    private final ExecutorService es;
-    
-    ThreadPool(ThreadGroup threadGroup){
-        this(Executors.newCachedThreadPool(new TPThreadFactory(threadGroup))); // Final field freeze
+    /** null when backed by virtual threads */
+    private final ThreadPoolExecutor es;
+    /** null unless backed by virtual threads */
+    private final ThreadFactory virtualThreads;
+    private final int queueCapacity;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger largest = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder executionNanos = new LongAdder();
+
+    ThreadPool(ThreadGroup threadGroup, final String name){
+        boolean virtual =
+            Boolean.parseBoolean(property(name, "virtual", "false"));
+        virtualThreads = virtual ? virtualThreadFactory() : null;
+        if (virtualThreads != null){
+            es = null;
+            queueCapacity = 0;
+        } else {
+            int core = intProperty(name, "core", 0);
+            int max = Math.max(intProperty(name, "max", Integer.MAX_VALUE), 1);
+            queueCapacity = Math.max(intProperty(name, "queue", 4096), 1);
+            long keepAlive = longProperty(name, "keepAlive", 60000L);
+            TaskQueue queue = new TaskQueue(queueCapacity);
+            es = new ThreadPoolExecutor(Math.min(core, max), max, keepAlive,
+                    TimeUnit.MILLISECONDS, queue,
+                    new TPThreadFactory(threadGroup), queue);
+        }
+        if (logger.isLoggable(Level.CONFIG)) {
+            logger.log(Level.CONFIG,
+                "{0} thread pool core={1} max={2} queue={3} virtual={4}",
+                new Object[]{name, getCorePoolSize(), getMaximumPoolSize(),
+                    queueCapacity, isVirtual()});
+        }
 //      Thread not started until after constructor completes
 //      this escaping occurs safely anyway because of final field freeze.
         AccessController.doPrivileged(new PrivilegedAction(){
@@ -103,15 +179,21 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
             @Override
             public Object run() {
                 Runtime.getRuntime().addShutdownHook(shutdownHook());
+                try {
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(
+                        ThreadPool.this,
+                        new ObjectName(
+                            "org.apache.river.thread:type=ThreadPool,name="
+                                + name));
+                } catch (Exception e) {
+                    logger.log(Level.FINE,
+                        "Unable to register thread pool MBean", e);
+                }
                 return null;
             }
         });
     }
- 
-    private ThreadPool(ExecutorService es){
-        this.es = es;
-    }
-    
+
     private Thread shutdownHook(){
         Thread t = new Thread ( new Runnable(){
             @Override
@@ -124,15 +206,15 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
                     Thread.currentThread().interrupt();
                 }
                 shutdown = true;
-                es.shutdown();
+                if (es != null) es.shutdown();
             }
         },"ThreadPool destroy");
         /**
          * See jtreg sun bug ID:4404702
-         * This ensures that this thread doesn't unnecessarily hold 
+         * This ensures that this thread doesn't unnecessarily hold
          * a strong reference to a ClassLoader, thus preventing
          * it from being garbage collected.
-         */ 
+         */
         t.setContextClassLoader(ClassLoader.getSystemClassLoader());
         return t;
     }
@@ -141,9 +223,21 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
     @Override
     public void execute(Runnable runnable, String name) throws RejectedExecutionException {
         if (runnable == null) return;
-        if (shutdown) throw new RejectedExecutionException("ThreadPool shutdown");
-        Runnable task = new Task(runnable, name);
-        es.submit(task);
+        if (shutdown) {
+            rejected.increment();
+            throw new RejectedExecutionException("ThreadPool shutdown");
+        }
+        Task task = new Task(runnable, name);
+        if (es != null) {
+            es.execute(task);
+        } else {
+            Thread t = virtualThreads.newThread(task);
+            if (t == null) {
+                rejected.increment();
+                throw new RejectedExecutionException("Unable to create thread");
+            }
+            t.start();
+        }
     }
 
     @Override
@@ -151,35 +245,153 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
         execute(command, "org.apache.river.thread.ThreadPool");
     }
 
+    @Override
+    public int getCorePoolSize() {
+        return es != null ? es.getCorePoolSize() : 0;
+    }
+
+    @Override
+    public int getMaximumPoolSize() {
+        return es != null ? es.getMaximumPoolSize() : Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return virtualThreads != null;
+    }
+
+    @Override
+    public int getPoolSize() {
+        return es != null ? es.getPoolSize() : active.get();
+    }
+
+    @Override
+    public int getLargestPoolSize() {
+        return es != null ? es.getLargestPoolSize() : largest.get();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return es != null ? es.getQueue().size() : 0;
+    }
+
+    @Override
+    public long getCompletedTaskCount() {
+        return completed.sum();
+    }
+
+    @Override
+    public long getRejectedTaskCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public double getAverageQueueLatency() {
+        long count = completed.sum();
+        return count == 0 ? 0.0 : queueNanos.sum() / (count * 1000000.0);
+    }
+
+    @Override
+    public double getAverageExecutionTime() {
+        long count = completed.sum();
+        return count == 0 ? 0.0 : executionNanos.sum() / (count * 1000000.0);
+    }
+
+    private static String property(final String pool, final String key,
+            final String def)
+    {
+        return AccessController.doPrivileged(new PrivilegedAction<String>(){
+            @Override
+            public String run() {
+                return System.getProperty(PROPERTY_PREFIX + pool + "." + key,
+                    System.getProperty(PROPERTY_PREFIX + key, def));
+            }
+        });
+    }
+
+    private static int intProperty(String pool, String key, int def) {
+        try {
+            return Integer.parseInt(property(pool, key, Integer.toString(def)));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    private static long longProperty(String pool, String key, long def) {
+        try {
+            return Long.parseLong(property(pool, key, Long.toString(def)));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /**
+     * Obtains a virtual thread factory reflectively, so this class remains
+     * compatible with Java 8, returns null if virtual threads are not
+     * supported, or a security manager is installed, since virtual threads
+     * have no permissions.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        if (System.getSecurityManager() != null) {
+            logger.log(Level.FINE,
+                "Virtual threads unavailable with a security manager");
+            return null;
+        }
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+                .getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Virtual threads unavailable", e);
+            return null;
+        }
+    }
+
     /**
      * Task simply encapsulates a task's Runnable object with its name.
      */
-    private static class Task implements Runnable{
+    private class Task implements Runnable{
 
 	private final Runnable runnable;
 	private final String name;
+        private final long submitted;
 
 	Task(Runnable runnable, String name) {
 	    this.runnable = runnable;
-	    this.name = name;
+	    this.name = NewThreadAction.NAME_PREFIX + name;
+            this.submitted = System.nanoTime();
 	}
-        
+
         @Override
         public void run(){
+            long start = System.nanoTime();
+            queueNanos.add(start - submitted);
+            int running = active.incrementAndGet();
+            if (es == null) {
+                int max;
+                while (running > (max = largest.get())
+                        && !largest.compareAndSet(max, running)) {}
+            }
             Thread thread = Thread.currentThread();
             try {
-                thread.setName(NewThreadAction.NAME_PREFIX + name);
+                if (!name.equals(thread.getName())) thread.setName(name);
                 runnable.run();
             } catch (RuntimeException t) { // Don't catch Error
                 logger.log(Level.WARNING, "uncaught exception", t);
-                    if (t instanceof SecurityException){
-                        // ignore it will be logged.
-                    } else {
-                        // Ignorance of RuntimeException is generally bad, bail out.
-                        throw (RuntimeException) t;
-                    }
             } finally {
-                thread.setName(NewThreadAction.NAME_PREFIX + "idle");
+                active.decrementAndGet();
+                executionNanos.add(System.nanoTime() - start);
+                completed.increment();
             }
         }
 
@@ -188,7 +400,59 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
             return name;
         }
     }
-    
+
+    /**
+     * Queue that hands a task directly to a thread waiting for one, and
+     * otherwise refuses it, so the pool creates a new thread before
+     * queueing, up to its maximum size; once at the maximum, rejected
+     * tasks are forced onto the queue, or rejected if the queue is full.
+     *
+     * The hand off and the wait for a task are a single atomic step of
+     * the transfer queue, so concurrent submitters can't all count on the
+     * same idle thread, and a thread whose keep alive time has expired is
+     * no longer waiting, so a task is never left queued for it.
+     */
+    private class TaskQueue extends LinkedTransferQueue<Runnable>
+        implements RejectedExecutionHandler
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        TaskQueue(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public boolean offer(Runnable r) {
+            return tryTransfer(r);
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit)
+                throws InterruptedException
+        {
+            Runnable r = super.poll(timeout, unit);
+            // A task forced onto the queue while the wait expired.
+            return r != null ? r : super.poll();
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (!executor.isShutdown()) {
+                synchronized (this) {
+                    if (size() < capacity) {
+                        super.offer(r);
+                        return;
+                    }
+                }
+            }
+            rejected.increment();
+            throw new RejectedExecutionException(
+                executor.isShutdown() ? "ThreadPool shutdown" : "ThreadPool saturated");
+        }
+    }
+
     /**
      * Thread stack size hint given to jvm to minimise memory consumption
      * as this executor can create many threads, tasks executed are relatively
@@ -197,7 +461,7 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
     private static class TPThreadFactory implements ThreadFactory {
         /** thread group that this pool's threads execute in */
         final ThreadGroup threadGroup;
-        
+
         TPThreadFactory (ThreadGroup group){
             threadGroup = group;
         }
@@ -206,6 +470,6 @@ final class ThreadPool implements Executor, java.util.concurrent.Executor {
             return AccessController.doPrivileged(
                         new NewThreadAction(threadGroup, r, NewThreadAction.NAME_PREFIX, false, 228));
         }
-        
+
     }
 }
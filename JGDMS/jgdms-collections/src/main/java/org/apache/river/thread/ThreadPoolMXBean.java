@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.thread;
+
+/**
+ * Management interface for the internal thread pools obtained with
+ * {@link GetThreadPoolAction}, registered with the platform MBean server
+ * as <code>org.apache.river.thread:type=ThreadPool,name=system</code> and
+ * <code>org.apache.river.thread:type=ThreadPool,name=user</code>.
+ *
+ * @since 3.1.1
+ */
+public interface ThreadPoolMXBean {
+
+    /**
+     * Returns the number of threads kept alive while idle, zero when
+     * backed by virtual threads.
+     *
+     * @return the core pool size.
+     */
+    int getCorePoolSize();
+
+    /**
+     * Returns the maximum number of threads, tasks submitted when all
+     * are busy are queued.
+     *
+     * @return the maximum pool size.
+     */
+    int getMaximumPoolSize();
+
+    /**
+     * Returns the number of tasks that may be queued when all threads
+     * are busy, further tasks are rejected.
+     *
+     * @return the queue capacity.
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return true if each task is executed in a new virtual thread.
+     */
+    boolean isVirtual();
+
+    /**
+     * @return the current number of threads in the pool.
+     */
+    int getPoolSize();
+
+    /**
+     * @return the largest number of threads simultaneously in the pool.
+     */
+    int getLargestPoolSize();
+
+    /**
+     * @return the number of threads executing tasks.
+     */
+    int getActiveCount();
+
+    /**
+     * @return the number of tasks waiting for a thread.
+     */
+    int getQueueSize();
+
+    /**
+     * @return the number of tasks that have completed execution.
+     */
+    long getCompletedTaskCount();
+
+    /**
+     * @return the number of tasks rejected because the pool and its queue
+     * were full, or the pool was shut down.
+     */
+    long getRejectedTaskCount();
+
+    /**
+     * Returns the mean time completed tasks waited between submission and
+     * the start of their execution.
+     *
+     * @return average queue latency in milliseconds.
+     */
+    double getAverageQueueLatency();
+
+    /**
+     * Returns the mean execution time of completed tasks.
+     *
+     * @return average execution time in milliseconds.
+     */
+    double getAverageExecutionTime();
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.collection;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class BoundedCacheTest {
+
+    @Test
+    public void testMapOperations() {
+        BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>(10);
+        assertNull(cache.put(1, "One"));
+        assertEquals("One", cache.put(1, "Uno"));
+        assertEquals("Uno", cache.putIfAbsent(1, "One"));
+        assertNull(cache.putIfAbsent(2, "Two"));
+        assertTrue(cache.replace(2, "Two", "Dos"));
+        assertFalse(cache.remove(2, "Two"));
+        assertTrue(cache.remove(2, "Dos"));
+        assertEquals("Uno", cache.remove(1));
+        assertTrue(cache.isEmpty());
+        cache.put(3, "Three");
+        Map<Integer, String> m = new HashMap<Integer, String>();
+        m.put(3, "Three");
+        assertEquals(m, cache);
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testSizeBounded() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(100);
+        for (int i = 0; i < 10000; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(9900, cache.statistics().evictionCount());
+    }
+
+    @Test
+    public void testWeightBounded() {
+        ToIntBiFunction<Integer, String> weigher = new ToIntBiFunction<Integer, String>() {
+            @Override
+            public int applyAsInt(Integer key, String value) {
+                return value.length();
+            }
+        };
+        BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>(100, weigher);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "0123456789");
+        }
+        assertEquals(10, cache.size());
+        cache.put(1000, new String(new char[101]));
+        assertFalse(cache.containsKey(1000));
+    }
+
+    /**
+     * Frequently used entries survive a scan of entries used once, which
+     * would flush an LRU cache of the same size.
+     */
+    @Test
+    public void testScanResistance() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(100);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get(i) == null) cache.put(i, i);
+            }
+        }
+        for (int i = 1000; i < 11000; i++) {
+            cache.put(i, i);
+        }
+        int retained = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.containsKey(i)) retained++;
+        }
+        assertTrue("retained " + retained, retained >= 45);
+    }
+
+    @Test
+    public void testLoadingAndStatistics() {
+        BoundedCache<Integer, String> cache = new BoundedCache<Integer, String>(10);
+        Function<Integer, String> loader = new Function<Integer, String>() {
+            @Override
+            public String apply(Integer key) {
+                return key < 0 ? null : key.toString();
+            }
+        };
+        assertEquals("1", cache.get(1, loader));
+        assertEquals("1", cache.get(1, loader));
+        assertEquals("2", cache.computeIfAbsent(2, loader));
+        assertNull(cache.get(-1, loader));
+        BoundedCache.Statistics stats = cache.statistics();
+        assertEquals(1, stats.hitCount());
+        assertEquals(3, stats.missCount());
+        assertEquals(2, stats.loadSuccessCount());
+        assertEquals(1, stats.loadFailureCount());
+        assertEquals(0.25, stats.hitRate(), 0.0);
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        final BoundedCache<Integer, Integer> cache = new BoundedCache<Integer, Integer>(500);
+        Thread [] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int x = seed;
+                    for (int i = 0; i < 100000; i++) {
+                        x = x * 1103515245 + 12345;
+                        Integer k = (x >>> 16) % 2000;
+                        if (cache.get(k) == null) cache.putIfAbsent(k, k);
+                        if ((i & 127) == 0) cache.remove(k);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) threads[t].join();
+        assertTrue(cache.size() <= 500);
+        for (Map.Entry<Integer, Integer> e : cache.entrySet()) {
+            assertEquals(e.getKey(), e.getValue());
+        }
+    }
+}
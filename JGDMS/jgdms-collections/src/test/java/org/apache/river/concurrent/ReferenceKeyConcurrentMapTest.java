@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.concurrent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class ReferenceKeyConcurrentMapTest {
+    private ConcurrentMap<Integer, String> instance;
+    // strong references
+    private Integer i1, i2, i3;
+    private String s1, s2, s3;
+
+    @Before
+    public void setUp() {
+        instance = RC.referenceKeyConcurrentMap(Ref.WEAK, 4);
+        i1 = 1;
+        i2 = 2;
+        i3 = 3;
+        s1 = "One";
+        s2 = "Two";
+        s3 = "Three";
+        instance.put(i1, s1);
+        instance.put(i2, s2);
+        instance.put(i3, s3);
+    }
+
+    @Test
+    public void testGetPutRemove() {
+        assertEquals(3, instance.size());
+        assertEquals(s2, instance.get(new Integer(2)));
+        assertTrue(instance.containsKey(i3));
+        assertEquals(s2, instance.put(i2, "Deux"));
+        assertEquals("Deux", instance.remove(i2));
+        assertNull(instance.get(i2));
+        assertEquals(2, instance.size());
+    }
+
+    @Test
+    public void testConcurrentMapMethods() {
+        assertEquals(s1, instance.putIfAbsent(i1, "Uno"));
+        assertNull(instance.putIfAbsent(4, "Four"));
+        assertFalse(instance.remove(i1, "Uno"));
+        assertTrue(instance.remove(i1, s1));
+        assertNull(instance.replace(i1, "Uno"));
+        assertFalse(instance.replace(i2, "Deux", "Dos"));
+        assertTrue(instance.replace(i2, s2, "Dos"));
+        assertEquals("Dos", instance.replace(i2, s2));
+        assertEquals(s2, instance.get(i2));
+    }
+
+    @Test
+    public void testIdentity() {
+        ConcurrentMap<Integer, String> map =
+            RC.referenceKeyConcurrentMap(Ref.WEAK_IDENTITY, 0);
+        Integer key = new Integer(1000);
+        map.put(key, s1);
+        assertEquals(s1, map.get(key));
+        assertNull(map.get(new Integer(1000)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedKeyType() {
+        RC.referenceKeyConcurrentMap(Ref.TIME, 0);
+    }
+
+    @Test
+    public void testEntrySetAndEquals() {
+        Map<Integer, String> m = new HashMap<Integer, String>();
+        m.put(i1, s1);
+        m.put(i2, s2);
+        m.put(i3, s3);
+        assertEquals(m, instance);
+        assertEquals(instance, m);
+        assertEquals(m.hashCode(), instance.hashCode());
+        Iterator<Entry<Integer, String>> it = instance.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry<Integer, String> e = it.next();
+            if (e.getKey().equals(i1)) it.remove();
+            if (e.getKey().equals(i2)) e.setValue("Deux");
+        }
+        assertFalse(instance.containsKey(i1));
+        assertEquals("Deux", instance.get(i2));
+        instance.clear();
+        assertTrue(instance.isEmpty());
+    }
+
+    @Test
+    public void testResize() {
+        List<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < 10000; i++) {
+            Integer k = new Integer(i + 100000);
+            keys.add(k);
+            instance.put(k, s1);
+        }
+        assertEquals(10003, instance.size());
+        for (Integer k : keys) {
+            assertEquals(s1, instance.get(k));
+        }
+    }
+
+    @Test
+    public void testCollectedKeysRemoved() throws InterruptedException {
+        ConcurrentMap<Object, String> map =
+            RC.referenceKeyConcurrentMap(Ref.WEAK_IDENTITY, 0);
+        Object key = new Object();
+        map.put(key, s1);
+        for (int i = 0; i < 100; i++) {
+            map.put(new Object(), s2);
+        }
+        for (int i = 0; i < 50 && map.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, map.size());
+        assertEquals(s1, map.get(key));
+    }
+
+    @Test
+    public void testConcurrentPutIfAbsent() throws InterruptedException {
+        final ConcurrentMap<Integer, AtomicInteger> map =
+            RC.referenceKeyConcurrentMap(Ref.WEAK, 0);
+        final Integer [] keys = new Integer[1000];
+        for (int i = 0; i < keys.length; i++) keys[i] = new Integer(i);
+        Thread [] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < keys.length; i++) {
+                        AtomicInteger c = new AtomicInteger();
+                        AtomicInteger existed = map.putIfAbsent(keys[i], c);
+                        if (existed != null) c = existed;
+                        c.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) threads[t].join();
+        assertEquals(keys.length, map.size());
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(threads.length, map.get(keys[i]).get());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.thread;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class ThreadPoolTest {
+
+    private static final String PREFIX = "org.apache.river.thread.ThreadPool.";
+
+    /**
+     * By default a new thread is created for each task when none are idle,
+     * tasks are never queued.
+     */
+    @Test
+    public void testUnboundedHandOff() throws Exception {
+        ThreadPool pool = new ThreadPool(NewThreadAction.userThreadGroup, "unbounded");
+        final CountDownLatch started = new CountDownLatch(50);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 50; i++) {
+            pool.execute(new Blocker(started, release), "blocker");
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(50, pool.getActiveCount());
+        assertEquals(0, pool.getQueueSize());
+        release.countDown();
+        waitForCompletion(pool, 50);
+        assertEquals(0, pool.getRejectedTaskCount());
+    }
+
+    /**
+     * Tasks submitted concurrently while threads are idle must each get
+     * a thread of their own, none may be queued behind a blocked task.
+     * The maximum is just above the number of submitters, so a lost
+     * hand-off is queued rather than given a new thread.
+     */
+    @Test
+    public void testConcurrentSubmissionToIdleThreads() throws Exception {
+        final int submitters = 8;
+        System.setProperty(PREFIX + "idle.max", String.valueOf(submitters + 1));
+        ThreadPool pool = new ThreadPool(NewThreadAction.userThreadGroup, "idle");
+        assertEquals(submitters + 1, pool.getMaximumPoolSize());
+        long tasks = 0;
+        for (int round = 0; round < 20; round++) {
+            // Leave an idle thread in the pool.
+            pool.execute(new Blocker(new CountDownLatch(1), new CountDownLatch(0)), "warm");
+            waitForCompletion(pool, ++tasks);
+            final CountDownLatch gate = new CountDownLatch(1);
+            final CountDownLatch started = new CountDownLatch(submitters);
+            final CountDownLatch release = new CountDownLatch(1);
+            final ThreadPool p = pool;
+            for (int i = 0; i < submitters; i++) {
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            gate.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        p.execute(new Blocker(started, release), "blocker");
+                    }
+                }).start();
+            }
+            gate.countDown();
+            assertTrue("round " + round, started.await(10, TimeUnit.SECONDS));
+            assertEquals(0, pool.getQueueSize());
+            assertTrue(pool.getPoolSize() <= submitters + 1);
+            release.countDown();
+            tasks += submitters;
+            waitForCompletion(pool, tasks);
+        }
+    }
+
+    @Test
+    public void testBoundedBackPressure() throws Exception {
+        System.setProperty(PREFIX + "bounded.max", "2");
+        System.setProperty(PREFIX + "bounded.queue", "2");
+        ThreadPool pool = new ThreadPool(NewThreadAction.userThreadGroup, "bounded");
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            pool.execute(new Blocker(started, release), "blocker");
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(2, pool.getPoolSize());
+        assertEquals(2, pool.getQueueSize());
+        try {
+            pool.execute(new Blocker(started, release), "blocker");
+            fail("expected RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(1, pool.getRejectedTaskCount());
+        release.countDown();
+        waitForCompletion(pool, 4);
+        assertEquals(2, pool.getLargestPoolSize());
+        assertTrue(pool.getAverageQueueLatency() > 0.0);
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        ThreadPool pool = new ThreadPool(NewThreadAction.userThreadGroup, "managed");
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, "task");
+        waitForCompletion(pool, 1);
+        MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name =
+            new ObjectName("org.apache.river.thread:type=ThreadPool,name=managed");
+        assertEquals(1L, mbs.getAttribute(name, "CompletedTaskCount"));
+        assertEquals(Integer.MAX_VALUE, mbs.getAttribute(name, "MaximumPoolSize"));
+    }
+
+    private static void waitForCompletion(ThreadPool pool, long tasks)
+            throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (pool.getCompletedTaskCount() < tasks
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+        assertEquals(tasks, pool.getCompletedTaskCount());
+    }
+
+    private static class Blocker implements Runnable {
+        private final CountDownLatch started;
+        private final CountDownLatch release;
+
+        Blocker(CountDownLatch started, CountDownLatch release) {
+            this.started = started;
+            this.release = release;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -19,6 +19,8 @@
 package net.jini.jeri;
 
 import org.apache.river.action.GetBooleanAction;
+import org.apache.river.jeri.internal.runtime.CallMetrics;
+import org.apache.river.jeri.internal.runtime.MarshalDictionary;
 import org.apache.river.jeri.internal.runtime.Util;
 import org.apache.river.jeri.internal.runtime.WeakKey;
 import org.apache.river.logging.Levels;
@@ -131,6 +133,12 @@ import net.jini.security.proxytrust.ServerProxyTrust;
  * <dd>If <code>true</code>, removes server-side stack traces before
  * marshalling an exception thrown as a result of a remote call.  The
  * default value is <code>false</code>.
+ * <dt><code>org.apache.river.jeri.callMetrics</code>
+ * <dd>If <code>true</code>, records the number of calls, request and
+ * response sizes and the latency of unmarshalling, access checking,
+ * invoking and marshalling for each remote method, available from the
+ * MXBean named <code>net.jini.jeri:type=CallMetrics,side=server</code>.
+ * The default value is <code>false</code>.
  * </dl>
  * 
  * <p>This implementation uses the {@link Logger} named
@@ -163,6 +171,12 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
     static final byte VERSION = 0x01;
     
     static final byte PREVIOUS_VERSION = 0x0;
+
+    /**
+     * Marshal stream protocol version used on connections that negotiated
+     * a codebase annotation and class descriptor dictionary.
+     */
+    static final byte DICTIONARY_VERSION = 0x02;
     
     /** Marshal stream protocol version mismatch. */
     static final byte MISMATCH = 0x0;
@@ -497,6 +511,16 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
      * then added to the server context, reflecting whether or not input validation
      * is being enforced.
      *
+     * <li>If the version byte is <code>0x02</code>, which is only sent on
+     * connections that negotiated a codebase annotation and class
+     * descriptor dictionary, the integrity and input validation bytes are
+     * read as for version <code>0x01</code>, followed by the dictionary's
+     * acknowledgments of values received from this end of the connection.
+     * The dictionary is added to the server context, and the dictionary's
+     * own acknowledgments are written to the response output stream after
+     * its first byte.  If the inbound request did not populate the server
+     * context with a dictionary, the version is treated as a mismatch.
+     *
      * <li>The {@link #createMarshalInputStream createMarshalInputStream}
      * method of this invocation dispatcher is called, passing the remote
      * object, the inbound request, a boolean indicating if object
@@ -591,7 +615,28 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	if (impl == null || context == null) {
 	    throw new NullPointerException();
 	}
+	if (!CallMetrics.ENABLED) {
+	    dispatch(impl, request, context, null);
+	    return;
+	}
+	CallMetrics.Inbound counted = new CallMetrics.Inbound(request);
+	CallMetrics.Call call = CallMetrics.server().start();
+	try {
+	    dispatch(impl, counted, context, call);
+	} finally {
+	    call.finish(counted.requestBytes(), counted.responseBytes());
+	}
+    }
 
+    /**
+     * Dispatches the request, timing its phases with the given call if
+     * call metrics are enabled.
+     */
+    private void dispatch(Remote impl,
+			  InboundRequest request,
+			  Collection context,
+			  CallMetrics.Call call)
+    {
 	/*
 	 * Read (and check) version number and integrity flag.
 	 */
@@ -599,6 +644,7 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	boolean integrity;
 	boolean supportsAtomicValidation;
 	boolean atomicValidation = false;
+	MarshalDictionary dictionary = null;
 	try {
 	    rin = request.getRequestInputStream();
 	    switch (rin.read()) {
@@ -610,6 +656,13 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 		    break;
 		case -1:
 		    throw new EOFException();
+		case DICTIONARY_VERSION:
+		    dictionary = MarshalDictionary.find(context);
+		    if (dictionary != null) {
+			supportsAtomicValidation = true;
+			break;
+		    }
+		    // not negotiated by this connection, fall through
 		default:
 		    rin.close();
 		    OutputStream ros = request.getResponseOutputStream();
@@ -640,11 +693,15 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 		    atomicValidation = true;
 		}
 	    }
+	    if (dictionary != null) {
+		dictionary.readAcknowledgments(rin);
+	    }
 	} catch (Throwable t) {
 	    if (logger.isLoggable(Levels.FAILED)) {
 		logLocalThrow(impl, null, t);
 	    }
 	    request.abort();
+	    if (call != null) call.failed();
 	    return;
 	}
 
@@ -652,8 +709,10 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	Object returnValue = null;
 	Throwable t = null;
 	boolean fromImpl = false;
+	int phase = CallMetrics.UNMARSHAL;	// phase in progress, for metrics
 	Util.populateContext(context, integrity, atomicValidation);
 	context.add(serverConstraints);
+	if (dictionary != null) context.add(dictionary.element());
 	ObjectInput in = null;
 	
 	try {
@@ -662,6 +721,7 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	     */
 	    in = createMarshalInputStream(impl, request, integrity, context);
 	    method = unmarshalMethod(impl, in, context);
+	    if (call != null) call.method(method);
 	    InvocationConstraints sc =
 		(serverConstraints == null ?
 		 InvocationConstraints.EMPTY :
@@ -693,12 +753,17 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 		// REMIND: support ConstraintAlternatives containing Integrity?
 	    }
 	    
+	    if (call != null) call.lap(CallMetrics.UNMARSHAL);
+	    phase = CallMetrics.CHECK_ACCESS;
 	    checkAccess(impl, method, sc, context);
+	    if (call != null) call.lap(CallMetrics.CHECK_ACCESS);
+	    phase = CallMetrics.UNMARSHAL;
 	    
 	    /*
 	     * Unmarshal arguments.
 	     */
 	    Object[] args = unmarshalArguments(impl, method, in, context);
+	    if (call != null) call.lap(CallMetrics.UNMARSHAL);
 	    if (logger.isLoggable(Level.FINE)) {
 		logCall(impl, method, args);
 	    }
@@ -715,6 +780,7 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 		t = tt;
 		fromImpl = true;
 	    }
+	    if (call != null) call.lap(CallMetrics.INVOKE);
 	} catch (RuntimeException e) {
 	    t = e;
 	} catch (Exception e) {
@@ -730,12 +796,20 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	    }
 	}
 
+	if (call != null && t != null) {
+	    call.failed();
+	    if (!fromImpl) call.lap(phase);
+	}
+
 	/*
 	 * Marshal return value or exception.
 	 */
 	try {
-	    request.getResponseOutputStream().write(t == null ?
-						    RETURN : THROW);
+	    OutputStream ros = request.getResponseOutputStream();
+	    ros.write(t == null ? RETURN : THROW);
+	    if (dictionary != null) {
+		dictionary.writeAcknowledgments(ros);
+	    }
 	    ObjectOutput out =
 		createMarshalOutputStream(impl, method, request, context);
 	    if (t != null) {
@@ -756,6 +830,7 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 		marshalReturn(impl, method, returnValue, out, context);
 	    }
 	    out.close();
+	    if (call != null) call.lap(CallMetrics.MARSHAL);
 	    
 	} catch (Throwable tt) {
 	    /*
@@ -770,6 +845,7 @@ public class BasicInvocationDispatcher implements InvocationDispatcher {
 	    } catch (IOException ignore) {
 	    }
 	    request.abort();
+	    if (call != null) call.failed();
 	    if (logger.isLoggable(Levels.FAILED)) {
 		logLocalThrow(impl, method, tt);
 	    }
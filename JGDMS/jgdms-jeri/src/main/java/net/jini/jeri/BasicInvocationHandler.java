@@ -68,6 +68,8 @@ import org.apache.river.api.io.AtomicSerial;
 import org.apache.river.api.io.AtomicSerial.GetArg;
 import org.apache.river.api.io.AtomicSerial.PutArg;
 import org.apache.river.api.io.AtomicSerial.SerialForm;
+import org.apache.river.jeri.internal.runtime.CallMetrics;
+import org.apache.river.jeri.internal.runtime.MarshalDictionary;
 import org.apache.river.jeri.internal.runtime.Util;
 import org.apache.river.logging.Levels;
 
@@ -118,6 +120,16 @@ import org.apache.river.logging.Levels;
  *
  * </blockquote>
  *
+ * <p>This implementation uses the following system property:
+ * <dl>
+ * <dt><code>org.apache.river.jeri.callMetrics</code>
+ * <dd>If <code>true</code>, records the number of calls, request and
+ * response sizes and the latency of marshalling, waiting for the response
+ * and unmarshalling for each remote method, available from the MXBean
+ * named <code>net.jini.jeri:type=CallMetrics,side=client</code>.  The
+ * default value is <code>false</code>.
+ * </dl>
+ *
  * <p>This implementation uses the {@link Logger} named
  * <code>net.jini.jeri.BasicInvocationHandler</code> to log
  * information at the following levels:
@@ -397,6 +409,15 @@ public class BasicInvocationHandler
      * <code>0x01</code> if object integrity is being enforced for
      * this remote call attempt, and <code>0x00</code> otherwise.
      *
+     * <li>If the context populated by the <code>OutboundRequest</code>
+     * contains a codebase annotation and class descriptor dictionary
+     * negotiated by the connection, a version byte of <code>0x02</code>
+     * is written instead, followed by the integrity byte, an input
+     * validation byte and the dictionary's acknowledgments of values
+     * received from the server; the dictionary is then added to the
+     * client context, and the same acknowledgments are read from the
+     * response input stream after its first byte.
+     *
      * <li>A client context collection is created containing an {@link
      * IntegrityEnforcement} element that reflects whether or not
      * object integrity is being enforced for this remote call
@@ -779,7 +800,37 @@ public class BasicInvocationHandler
 	    }
 	    return new Failure(e, true);
 	}
+	if (!CallMetrics.ENABLED) {
+	    return invokeRemoteMethodOnce(proxy, method, args, request,
+					  constraints, null);
+	}
+	CallMetrics.Outbound counted = new CallMetrics.Outbound(request);
+	CallMetrics.Call call = CallMetrics.client().start();
+	call.method(method);
+	boolean failed = true;
+	try {
+	    Object result = invokeRemoteMethodOnce(proxy, method, args, counted,
+						   constraints, call);
+	    failed = result instanceof Failure;
+	    return result;
+	} finally {
+	    if (failed) call.failed();
+	    call.finish(counted.requestBytes(), counted.responseBytes());
+	}
+    }
 
+    /**
+     * Make one attempt to invoke a remote method with the given request,
+     * timing its phases with the given call if call metrics are enabled.
+     **/
+    private Object invokeRemoteMethodOnce(Object proxy,
+					  Method method,
+					  Object[] args,
+					  OutboundRequest request,
+					  InvocationConstraints constraints,
+					  CallMetrics.Call call)
+	throws Throwable
+    {
 	/*
 	 * Marshal method and arguments.
 	 */
@@ -787,6 +838,7 @@ public class BasicInvocationHandler
 	boolean integrity = false;
 	boolean atomicValidation = false;
 	boolean wroteMethod = false;
+	MarshalDictionary dictionary = null;
 	Collection context;
 	try {
 	    /*
@@ -833,8 +885,17 @@ public class BasicInvocationHandler
 	    }
 
 	    OutputStream ros = request.getRequestOutputStream();
+	    Collection requestContext = new ArrayList(2);
+	    request.populateContext(requestContext);
+	    dictionary = MarshalDictionary.find(requestContext);
+	    // Use the dictionary if the connection negotiated its use.
+	    if (dictionary != null){
+		ros.write(0x02);			// marshalling protocol version
+		ros.write(integrity ? 0x01 : 0x00);	// integrity
+		ros.write(atomicValidation ? 0x01 : 0x00);	// atomicValidation
+		dictionary.writeAcknowledgments(ros);
 	    // Use new protocol version if atomicValidation is required or preferred.
-	    if (atomicValidation){
+	    } else if (atomicValidation){
 		ros.write(0x01);			// marshalling protocol version
 		ros.write(integrity ? 0x01 : 0x00);	// integrity
 		ros.write(atomicValidation ? 0x01 : 0x00);	// atomicValidation
@@ -843,10 +904,11 @@ public class BasicInvocationHandler
 	    ros.write(integrity ? 0x01 : 0x00);	// integrity
 	    }
 	    
-	    context = new ArrayList(3);
+	    context = new ArrayList(4);
 	    if (clientConstraints != null) context.add(clientConstraints);
 	    
 	    Util.populateContext(context, integrity, atomicValidation);
+	    if (dictionary != null) context.add(dictionary.element());
 
 
 	    ObjectOutput out =
@@ -875,6 +937,7 @@ public class BasicInvocationHandler
 	    if (!ok) {
 		request.abort();
 	    }
+	    if (call != null) call.lap(CallMetrics.MARSHAL);
 	}
 
 	/*
@@ -897,6 +960,10 @@ public class BasicInvocationHandler
 		    throw new ProtocolException(
 			"marshalling protocol version mismatch");
 		}
+		if (call != null) call.lap(CallMetrics.INVOKE);
+		if (dictionary != null) {
+		    dictionary.readAcknowledgments(ris);
+		}
 		
 		ObjectInput in =
 		    createMarshalInputStream(proxy, method, request,
@@ -941,6 +1008,10 @@ public class BasicInvocationHandler
 	    if (!ok) {
 		request.abort();
 	    }
+	    if (call != null) {
+		call.lap(call.reached(CallMetrics.INVOKE) ?
+			 CallMetrics.UNMARSHAL : CallMetrics.INVOKE);
+	    }
 	}
 
 	/*
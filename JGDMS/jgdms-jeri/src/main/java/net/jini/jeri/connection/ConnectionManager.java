@@ -515,9 +515,10 @@ public final class ConnectionManager {
             return in;
         }
 
-        /* delegate to the connection */
+        /* delegate to both the underlying request and the connection */
         @Override
         public void populateContext(Collection context) {
+            req.populateContext(context);
             c.populateContext(handle, context);
         }
 
@@ -770,11 +771,14 @@ public final class ConnectionManager {
      * Connection#readResponseData readResponseData} method of the connection
      * with the specified handle and the response input stream before any other
      * data is read from the response input stream. The {@link OutboundRequest#populateContext
-     * populateContext} and {@link
+     * populateContext} method of the <code>OutboundRequest</code> is
+     * implemented by first populating the context with elements for the
+     * multiplexed connection, and then delegating to the corresponding method
+     * of the connection passing <code>handle</code> and the context. The {@link
      * OutboundRequest#getUnfulfilledConstraints
-     * getUnfulfilledConstraints} methods of the <code>OutboundRequest</code>
-     * are implemented by delegating to the corresponding method of the
-     * connection passing <code>handle</code> and the other arguments (if any).
+     * getUnfulfilledConstraints} method of the <code>OutboundRequest</code>
+     * is implemented by delegating to the corresponding method of the
+     * connection passing <code>handle</code>.
      *
      * </blockquote>
      *
@@ -86,6 +86,11 @@ import org.apache.river.logging.LogUtil;
  * inbound response data is received as the <code>entity-body</code> of the
  * corresponding HTTP response message. For information on HTTP, refer to <a
  * href="http://www.ietf.org/rfc/rfc2616.txt">RFC 2616</a>.
+ *
+ * <p>If the <code>org.apache.river.jeri.http.multiplex</code> system property
+ * is <code>true</code>, direct connections are upgraded, when the server
+ * supports it, to the Jini ERI multiplexing protocol, which carries many
+ * concurrent requests over one connection.
  * 
  * <p><code>HttpEndpoint</code> can be configured via system properties to send
  * HTTP messages through an intermediary HTTP proxy server.  It also supports
@@ -133,10 +138,13 @@ public final class HttpEndpoint
     private static final HttpClientManager clientManager;
     /** idle connection timer */
     private static final ConnectionTimer connTimer;
+    /** true if direct connections ask to be multiplexed */
+    private static final boolean multiplex;
     static {
 	HttpSettings hs = getHttpSettings();
 	clientManager = new HttpClientManager(hs.getResponseAckTimeout());
 	connTimer = new ConnectionTimer(hs.getConnectionTimeout());
+	multiplex = hs.getMultiplex();
     }
 
     /** client transport logger */
@@ -165,7 +173,7 @@ public final class HttpEndpoint
      **/
     private final SocketFactory sf;
     
-    /** idle connection cache */
+    /** idle connection cache, and multiplexed connections in use */
     private transient Set connections;
     /** current proxy host, or empty string if not proxied */
     private transient String proxyHost;
@@ -552,6 +560,33 @@ public final class HttpEndpoint
 			continue;
 		    }
 		}
+		if (conn.isMultiplexed()) {
+		    if (conn.isBusy()) {
+			continue;
+		    }
+		    try {
+			Object obj = action.run(conn);
+			connTimer.scheduleTimeout(conn, false);
+			if (logger.isLoggable(Level.FINE)) {
+			    logger.log(Level.FINE,
+				"nextRequest on multiplexed connection {0}",
+				conn.getSocket());
+			}
+			return obj;
+		    } catch (IOException ex) {
+			if (logger.isLoggable(Levels.HANDLED)) {
+			    LogUtil.logThrow(logger, Levels.HANDLED,
+					     HttpEndpoint.class,
+					     "nextRequest",
+					     "nextRequest on multiplexed " +
+					     "connection {0} throws",
+					     new Object[] { this }, ex);
+			}
+		    }
+		    i.remove();
+		    conn.shutdown(true);
+		    continue;
+		}
 		i.remove();
 		if (connTimer.cancelTimeout(conn)) {
 		    try {
@@ -594,6 +629,13 @@ public final class HttpEndpoint
 	    throw (IOException) e.getCause();
 	}
 
+	if (conn.isMultiplexed()) {
+	    // shared by concurrent requests while it's in use
+	    synchronized (connections) {
+		connections.add(conn);
+		connTimer.scheduleTimeout(conn, false);
+	    }
+	}
 	try {
 	    Object obj = action.run(conn);
 	    if (logger.isLoggable(Level.FINEST)) {
@@ -685,7 +727,9 @@ public final class HttpEndpoint
 	    Object[] conns = connections.toArray();
 	    connections.clear();
 	    for (int i = 0; i < conns.length; i++) {
-		((Connection) conns[i]).shutdown(true);
+		Connection conn = (Connection) conns[i];
+		// multiplexed connections may have requests in progress
+		conn.shutdown(!conn.isMultiplexed());
 	    }
 	}
     }
@@ -1055,7 +1099,8 @@ public final class HttpEndpoint
 	    throws IOException
 	{
 	    super(host, port,
-		  new SocketFactoryAdapter(sf, distilled), clientManager);
+		  new SocketFactoryAdapter(sf, distilled), clientManager,
+		  multiplex);
 	    proxyHost = "";
 	    proxyPort = -1;
 	}
@@ -1095,7 +1140,8 @@ public final class HttpEndpoint
 	}
 	
 	/**
-	 * Attempts to close connection.
+	 * Attempts to close connection.  A multiplexed connection with
+	 * requests in progress is given another idle timeout.
 	 **/
 	public boolean shutdown(boolean force) {
 	    Socket sock = getSocket();
@@ -1105,6 +1151,8 @@ public final class HttpEndpoint
 		if (socketClosed) {
 		    connections.remove(this);
 		    connTimer.cancelTimeout(this);
+		} else if (isMultiplexed()) {
+		    connTimer.scheduleTimeout(this, false);
 		}
 	    }
 	    if (socketClosed) {
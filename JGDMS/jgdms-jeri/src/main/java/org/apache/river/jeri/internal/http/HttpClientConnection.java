@@ -18,6 +18,8 @@
 
 package org.apache.river.jeri.internal.http;
 
+import org.apache.river.action.GetLongAction;
+import org.apache.river.jeri.internal.mux.MuxClient;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
@@ -35,6 +37,13 @@ import net.jini.io.context.AcknowledgmentSource;
 
 /**
  * Class representing a client-side HTTP connection used to send HTTP requests.
+ * <p>
+ * If multiplexing is requested and the connection isn't through an HTTP
+ * proxy, the connection asks the server to upgrade it to the Jini ERI
+ * multiplexing protocol, so that many requests can be in progress
+ * concurrently.  A server that doesn't support the upgrade answers the
+ * request as an ordinary ping, and the connection continues to send one
+ * HTTP request at a time.
  *
  * @author Sun Microsystems, Inc.
  * 
@@ -43,6 +52,15 @@ public class HttpClientConnection implements TimedConnection {
     
     private static final int HTTP_MAJOR = 1;
     private static final int HTTP_MINOR = 1;
+
+    /** Upgrade protocol token for the Jini ERI multiplexing protocol */
+    static final String MUX_PROTOCOL = "JERI-MUX/1";
+    static final int HTTP_SWITCHING_PROTOCOLS = 101;
+
+    /** How long to wait for the server's multiplexing protocol header */
+    private static final long handshakeTimeout =
+	AccessController.doPrivileged(new GetLongAction(
+	    "org.apache.river.jeri.handshakeTimeout", 15000)).longValue();
     
     private static final String clientString = (String)
 	AccessController.doPrivileged(new PrivilegedAction() {
@@ -70,7 +88,9 @@ public class HttpClientConnection implements TimedConnection {
     private ServerInfo targetInfo;
     private ServerInfo proxyInfo;
     private final boolean persist;
+    private final boolean multiplex;
     private String[] acks;
+    private volatile MuxClient mux;
 
     private Socket sock;
     private OutputStream out;
@@ -88,11 +108,28 @@ public class HttpClientConnection implements TimedConnection {
 				HttpClientSocketFactory factory,
 				HttpClientManager manager)
 	throws IOException
+    {
+	this(host, port, factory, manager, false);
+    }
+
+    /**
+     * Creates HttpClientConnection which sends requests directly to given
+     * host/port through a socket obtained from the given socket factory.
+     * If multiplex is true, the connection asks the server to upgrade
+     * it to a multiplexed connection.
+     */
+    public HttpClientConnection(String host,
+				int port,
+				HttpClientSocketFactory factory,
+				HttpClientManager manager,
+				boolean multiplex)
+	throws IOException
     {
 	this.manager = manager;
 	mode = DIRECT;
 	targetInfo = manager.getServerInfo(host, port);
 	persist = true;
+	this.multiplex = multiplex;
 	setupConnection(factory);
     }
     
@@ -123,6 +160,7 @@ public class HttpClientConnection implements TimedConnection {
 	targetInfo = manager.getServerInfo(targetHost, targetPort);
 	proxyInfo = manager.getServerInfo(proxyHost, proxyPort);
 	this.persist = persist || tunnel;
+	multiplex = false;
 	setupConnection(factory);
     }
     
@@ -132,6 +170,11 @@ public class HttpClientConnection implements TimedConnection {
      * received).
      */
     public boolean ping() throws IOException {
+	MuxClient m = mux;
+	if (m != null) {
+	    m.requestsInProgress(); // throws IOException if down
+	    return true;
+	}
 	markBusy();
 	fetchServerInfo();
 	try {
@@ -143,9 +186,14 @@ public class HttpClientConnection implements TimedConnection {
     
     /**
      * Initiates new request to connection target.  Throws an IOException if
-     * the connection is currently busy.
+     * the connection is currently busy, multiplexed connections are only
+     * busy when the maximum number of requests are in progress.
      */
     public OutboundRequest newRequest() throws IOException {
+	MuxClient m = mux;
+	if (m != null) {
+	    return m.newRequest();
+	}
 	OutboundRequest req = null;
 	markBusy();
 	fetchServerInfo();
@@ -159,6 +207,35 @@ public class HttpClientConnection implements TimedConnection {
 	}
     }
     
+    /**
+     * Returns true if this connection was upgraded to the multiplexing
+     * protocol.
+     */
+    public boolean isMultiplexed() {
+	return mux != null;
+    }
+
+    /**
+     * Returns true if this connection can't accept a new request without
+     * waiting, because it isn't multiplexed and a request is in progress, or
+     * it's multiplexed and the maximum number of requests are in progress.
+     * Returns false if the connection has gone down, so that newRequest
+     * reports the failure.
+     */
+    public boolean isBusy() {
+	MuxClient m = mux;
+	if (m != null) {
+	    try {
+		return m.requestsInProgress() >= MuxClient.MAX_REQUESTS;
+	    } catch (IOException ex) {
+		return false;
+	    }
+	}
+	synchronized (stateLock) {
+	    return state == BUSY;
+	}
+    }
+
     /**
      * Upcall indicating that connection has become idle.  Subclasses may
      * override this method to perform an appropriate action, such as
@@ -180,6 +257,7 @@ public class HttpClientConnection implements TimedConnection {
      * false, connection is only shut down if idle.
      */
     public boolean shutdown(boolean force) {
+	MuxClient m = mux;
 	synchronized (stateLock) {
 	    if (state == CLOSED) {
 		return true;
@@ -187,8 +265,20 @@ public class HttpClientConnection implements TimedConnection {
 	    if (!force && state == BUSY) {
 		return false;
 	    }
+	    if (!force && m != null) {
+		try {
+		    if (m.requestsInProgress() > 0) {
+			return false;
+		    }
+		} catch (IOException ex) {
+		    // mux down, close
+		}
+	    }
 	    state = CLOSED;
 	}
+	if (m != null) {
+	    m.shutdown("connection shut down");
+	}
 	disconnect();
 	return true;
     }
@@ -257,6 +347,10 @@ public class HttpClientConnection implements TimedConnection {
 	boolean ok = false;
 	try {
 	    /*
+	     * Multiplexing is never requested through a proxy, an upgrade
+	     * also requires at most 3 cycles: upgrade refused with 401,
+	     * upgrade accepted or declined, return.
+	     *
 	     * 4 cycles required in worst-case (proxied) scenario:
 	     * i = 0: send OPTIONS request to proxy
 	     * i = 1: send ping, fails with 407 (proxy auth required)
@@ -264,6 +358,10 @@ public class HttpClientConnection implements TimedConnection {
 	     * i = 3: return
 	     */
 	    for (int i = 0; i < 4; i++) {
+		if (mux != null) {
+		    ok = true;
+		    return;
+		}
 		if (sock == null) {
 		    connect(factory);
 		}
@@ -271,6 +369,8 @@ public class HttpClientConnection implements TimedConnection {
 		    proxyInfo.timestamp == ServerInfo.NO_TIMESTAMP)
 		{
 		    requestProxyOptions();
+		} else if (multiplex && !targetInfo.noUpgrade) {
+		    upgrade();
 		} else if (targetInfo.timestamp == ServerInfo.NO_TIMESTAMP) {
 		    ping(true);
 		} else {
@@ -358,6 +458,66 @@ public class HttpClientConnection implements TimedConnection {
 	return (inLine.status / 100) == 2;
     }
     
+    /**
+     * Asks target to switch this connection to the multiplexing protocol,
+     * with a ping request carrying an Upgrade header.  A server that doesn't
+     * support the upgrade answers the ping normally; the refusal is cached so
+     * later connections to the server don't ask again.
+     */
+    private void upgrade() throws IOException {
+	StartLine outLine = createPostLine();
+	Header outHeader = createPostHeader(outLine);
+	outHeader.setField("RMI-Request-Type", "ping");
+	outHeader.setField("Connection", "Upgrade, TE");
+	outHeader.setField("Upgrade", MUX_PROTOCOL);
+	MessageWriter writer = new MessageWriter(out, false);
+
+	writer.writeStartLine(outLine);
+	writer.writeHeader(outHeader);
+	writer.writeTrailer(null);
+
+	MessageReader reader;
+	StartLine inLine;
+	Header inHeader;
+	do {
+	    reader = new MessageReader(in, false);
+	    inLine = reader.readStartLine();
+	    inHeader = reader.readHeader();
+	    inHeader.merge(reader.readTrailer());
+	} while (inLine.status / 100 == 1 &&
+		 inLine.status != HTTP_SWITCHING_PROTOCOLS);
+
+	if (inLine.status == HTTP_SWITCHING_PROTOCOLS &&
+	    inHeader.containsValue("Upgrade", MUX_PROTOCOL, true))
+	{
+	    manager.clearUnsentAcks(targetInfo.host, targetInfo.port, acks);
+	    targetInfo.major = inLine.major;
+	    targetInfo.minor = inLine.minor;
+	    targetInfo.timestamp = System.currentTimeMillis();
+	    flushServerInfo();
+	    MuxClient m = new Multiplexer();
+	    try {
+		m.start();
+	    } catch (IOException ex) {
+		targetInfo.noUpgrade = true;
+		targetInfo.timestamp = System.currentTimeMillis();
+		flushServerInfo();
+		throw ex;
+	    }
+	    mux = m;
+	    return;
+	}
+	if (inLine.status != HttpURLConnection.HTTP_UNAUTHORIZED &&
+	    inLine.status != HttpURLConnection.HTTP_PROXY_AUTH)
+	{
+	    targetInfo.noUpgrade = true;
+	}
+	analyzePostResponse(inLine, inHeader);
+	if (!supportsPersist(inLine, inHeader)) {
+	    disconnect();
+	}
+    }
+
     /**
      * Sends OPTIONS request to proxy.  Returns true if OPTIONS succeeded,
      * false otherwise.
@@ -719,4 +879,27 @@ public class HttpClientConnection implements TimedConnection {
 	    }
 	}
     }
+
+    /**
+     * Client side of the multiplexing protocol over this connection's
+     * socket.
+     */
+    private final class Multiplexer extends MuxClient {
+
+	private final Socket socket = sock;
+
+	Multiplexer() throws IOException {
+	    super(out, in, handshakeTimeout);
+	}
+
+	/**
+	 * Closes the socket, the connection itself is shut down when it's
+	 * next used or times out, this may be called while the mux is
+	 * locked.
+	 */
+	@Override
+	protected void handleDown() {
+	    try { socket.close(); } catch (IOException ex) {}
+	}
+    }
 }
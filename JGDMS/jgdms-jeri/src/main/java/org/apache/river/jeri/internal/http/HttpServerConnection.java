@@ -18,6 +18,7 @@
 
 package org.apache.river.jeri.internal.http;
 
+import org.apache.river.jeri.internal.mux.MuxServer;
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
 import java.io.BufferedInputStream;
@@ -40,6 +41,11 @@ import net.jini.jeri.RequestDispatcher;
 /**
  * Class representing a server-side HTTP connection used to receive and
  * dispatch incoming HTTP requests.
+ * <p>
+ * A ping request asking to upgrade to the Jini ERI multiplexing protocol
+ * is answered with 101 Switching Protocols, after which requests on the
+ * connection are received and dispatched concurrently by a
+ * {@link MuxServer}.
  *
  * @author Sun Microsystems, Inc.
  * 
@@ -53,6 +59,7 @@ public abstract class HttpServerConnection implements TimedConnection {
     private static final int IDLE      = 1;
     private static final int BUSY      = 2;
     private static final int CLOSED    = 3;
+    private static final int UPGRADED  = 4;
 
     private static final String serverString = (String)
 	AccessController.doPrivileged(new PrivilegedAction() {
@@ -73,6 +80,7 @@ public abstract class HttpServerConnection implements TimedConnection {
     private final HttpServerManager manager;
     private final Object stateLock = new Object();
     private int state = UNSTARTED;
+    private MuxServer mux;
 
     /**
      * Creates new HttpServerConnection on top of given socket.
@@ -159,6 +167,7 @@ public abstract class HttpServerConnection implements TimedConnection {
      * false, connection is only shut down if idle.
      */
     public boolean shutdown(boolean force) {
+	MuxServer m;
 	synchronized (stateLock) {
 	    if (state == CLOSED) {
 		return true;
@@ -166,8 +175,15 @@ public abstract class HttpServerConnection implements TimedConnection {
 	    if (!force && state == BUSY) {
 		return false;
 	    }
+	    m = mux;
+	    if (!force && m != null && !m.shutdownGracefully()) {
+		return false;
+	    }
 	    state = CLOSED;
 	}
+	if (m != null) {
+	    m.shutdown("connection shut down");
+	}
 	try { sock.close(); } catch (IOException ex) {}
 	return true;
     }
@@ -181,6 +197,7 @@ public abstract class HttpServerConnection implements TimedConnection {
 	 * Dispatch loop.
 	 */
 	public void run() {
+	    boolean upgraded = false;
 	    try {
 		for (;;) {
 		    idle();
@@ -203,7 +220,10 @@ public abstract class HttpServerConnection implements TimedConnection {
 		    } else if ("standard".equalsIgnoreCase(reqType)) {
 			handleRequest(sline, header, reader);
 		    } else if ("ping".equalsIgnoreCase(reqType)) {
-			handlePing(sline, header, reader);
+			if (handlePing(sline, header, reader)) {
+			    upgraded = true;
+			    return;
+			}
 		    } else {
 			handleBadRequest(sline, header, reader);
 		    }
@@ -217,7 +237,9 @@ public abstract class HttpServerConnection implements TimedConnection {
 		}
 	    } catch (IOException ex) {
 	    } finally {
-		shutdown(true);
+		if (!upgraded) {
+		    shutdown(true);
+		}
 	    }
 	}
 
@@ -246,15 +268,23 @@ public abstract class HttpServerConnection implements TimedConnection {
 	}
 
 	/**
-	 * Handles ping request.
+	 * Handles ping request, returns true if the connection was upgraded
+	 * to the multiplexing protocol.
 	 */
-	private void handlePing(StartLine inLine, Header inHeader,
-				MessageReader reader)
+	private boolean handlePing(StartLine inLine, Header inHeader,
+				   MessageReader reader)
 	    throws IOException
 	{
 	    inHeader.merge(reader.readTrailer());
 	    registerAcks(inHeader.getField("RMI-Response-Ack"));
 	    boolean persist = supportsPersist(inLine, inHeader);
+	    if (persist &&
+		inHeader.containsValue("Connection", "Upgrade", true) &&
+		inHeader.containsValue("Upgrade",
+				       HttpClientConnection.MUX_PROTOCOL, true))
+	    {
+		return upgrade();
+	    }
 
 	    MessageWriter writer = new MessageWriter(out, false);
 	    writer.writeStartLine(new StartLine(HTTP_MAJOR, HTTP_MINOR,
@@ -265,6 +295,33 @@ public abstract class HttpServerConnection implements TimedConnection {
 	    if (!persist) {
 		shutdown(true);
 	    }
+	    return false;
+	}
+
+	/**
+	 * Switches the connection to the multiplexing protocol, returns
+	 * false if the connection was closed first.
+	 */
+	private boolean upgrade() throws IOException {
+	    MuxServer m = new Multiplexer();
+	    synchronized (stateLock) {
+		if (state == CLOSED) {
+		    return false;
+		}
+		state = UPGRADED;
+		mux = m;
+	    }
+	    Header header = createResponseHeader(true);
+	    header.setField("Connection", "Upgrade");
+	    header.setField("Upgrade", HttpClientConnection.MUX_PROTOCOL);
+	    MessageWriter writer = new MessageWriter(out, false);
+	    writer.writeStartLine(new StartLine(HTTP_MAJOR, HTTP_MINOR,
+		HttpClientConnection.HTTP_SWITCHING_PROTOCOLS,
+		"Switching Protocols"));
+	    writer.writeHeader(header);
+	    writer.writeTrailer(null);
+	    m.start();
+	    return true;
 	}
 	
 	/**
@@ -293,6 +350,49 @@ public abstract class HttpServerConnection implements TimedConnection {
 	}
     }
 
+    /**
+     * Server side of the multiplexing protocol over this connection, requests
+     * are checked and populated by the connection.
+     */
+    private class Multiplexer extends MuxServer {
+
+	Multiplexer() throws IOException {
+	    super(out, in, dispatcher);
+	}
+
+	@Override
+	protected void checkPermissions() {
+	    HttpServerConnection.this.checkPermissions();
+	}
+
+	@Override
+	protected InvocationConstraints
+	    checkConstraints(InvocationConstraints constraints)
+	    throws UnsupportedConstraintException
+	{
+	    return HttpServerConnection.this.checkConstraints(constraints);
+	}
+
+	@Override
+	protected void populateContext(Collection context) {
+	    HttpServerConnection.this.populateContext(context);
+	}
+
+	/**
+	 * Closes the socket and shuts down the connection asynchronously,
+	 * since this may be called while the mux is locked.
+	 */
+	@Override
+	protected void handleDown() {
+	    try { sock.close(); } catch (IOException ex) {}
+	    userThreadPool.execute(new Runnable() {
+		public void run() {
+		    HttpServerConnection.this.shutdown(true);
+		}
+	    }, "HTTP mux shutdown");
+	}
+    }
+
     /**
      * HTTP-based implementation of InboundRequest abstraction.
      */
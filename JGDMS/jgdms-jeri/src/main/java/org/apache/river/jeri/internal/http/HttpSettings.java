@@ -190,6 +190,17 @@ public class HttpSettings {
 	return Long.MAX_VALUE;
     }
 
+    /**
+     * Returns org.apache.river.jeri.http.multiplex system property as
+     * boolean value if set and not ssl; otherwise returns false.
+     */
+    public boolean getMultiplex() {
+	return ssl ?
+	    false :
+	    Boolean.valueOf(props.getProperty(
+		"org.apache.river.jeri.http.multiplex")).booleanValue();
+    }
+
     /**
      * If http.nonProxyHosts system property value is set, returns true if
      * given host matches any regular expressions contained in value; if
@@ -74,6 +74,8 @@ class ServerInfo implements Cloneable {
     String authUser;
     /** authentication password */
     String authPassword;
+    /** true if server declined to upgrade to a multiplexed connection */
+    boolean noUpgrade;
     /** time of last update */
     long timestamp = NO_TIMESTAMP;
 
@@ -19,6 +19,7 @@
 package org.apache.river.jeri.internal.mux;
 
 import org.apache.river.jeri.internal.runtime.HexDumpEncoder;
+import org.apache.river.jeri.internal.runtime.MarshalDictionary;
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
 import java.io.IOException;
@@ -75,6 +76,9 @@ abstract class Mux {
     static final int DATA_ACK_REQUIRED		= 0x02;
 
     static final int CLIENT_CONNECTION_HEADER_NEGOTIATE	= 0x01;
+    // Added in 3.1.1, ignored by earlier implementations.
+    static final int CLIENT_CONNECTION_HEADER_DICTIONARY	= 0x02;
+    static final int SERVER_CONNECTION_HEADER_DICTIONARY	= 0x02;
 
     private static final byte[] MAGIC = {
 	(byte) 'J', (byte) 'm', (byte) 'u', (byte) 'x'	// 0x4A6D7578
@@ -143,6 +147,13 @@ abstract class Mux {
     final Session [] sessions = new Session[MAX_SESSION_ID + 1];
 
     private int expectedPingCookie = -1;
+
+    /**
+     * codebase annotation and class descriptor dictionary, if its use
+     * was negotiated by the connection headers, otherwise null;
+     * volatile reads, sync writes on muxLock
+     */
+    volatile MarshalDictionary dictionary;
     
     /** ONLY USED BY CLIENT */
     private final long startTimeout; // milliseconds
@@ -232,6 +243,16 @@ abstract class Mux {
 	}
     }
 
+    /**
+     * Returns true if this end of the connection offers or accepts the
+     * use of a codebase annotation and class descriptor dictionary.
+     *
+     * This method is intended to be overridden by subclasses.
+     */
+    boolean dictionaryEnabled() {
+	return false;
+    }
+
     /**
      * Handles indication that this multiplexed connection has
      * gone down, either through normal operation or failure.
@@ -364,7 +385,8 @@ abstract class Mux {
 	((Buffer)header.put(MAGIC)
 	      .put((byte) VERSION)
 	      .putShort((short) (initialInboundRation >> 8))
-	      .put((byte) 0)
+	      .put((byte) (dictionaryEnabled() ?
+			   CLIENT_CONNECTION_HEADER_DICTIONARY : 0))
               ).flip();
 	connectionIO.asyncSend(header);
     }
@@ -379,7 +401,8 @@ abstract class Mux {
 	((Buffer)header.put(MAGIC)
 	      .put((byte) VERSION)
 	      .putShort((short) (initialInboundRation >> 8))
-	      .put((byte) 0)
+	      .put((byte) (dictionary != null ?
+			   SERVER_CONNECTION_HEADER_DICTIONARY : 0))
               ).flip();
 	connectionIO.asyncSend(header);
     }
@@ -731,6 +754,11 @@ abstract class Mux {
 
 	synchronized (muxLock) {
 	    initialOutboundRation = ration;
+	    if ((flags & CLIENT_CONNECTION_HEADER_DICTIONARY) != 0 &&
+		dictionaryEnabled())
+	    {
+		dictionary = new MarshalDictionary();
+	    }
 	    asyncSendServerConnectionHeader();
 
 	    if (version == 0) {
@@ -767,7 +795,7 @@ abstract class Mux {
 	buffer.position(headerPosition + 4);	// skip header already checked
 	int version = (((ByteBuffer)buffer).get() & 0xFF);
 	int ration = (((ByteBuffer)buffer).getShort() & 0xFFFF) << 8;
-	int flags = (((ByteBuffer)buffer).get() & 0xFF);  //TODO: Determine flags intended use.
+	int flags = (((ByteBuffer)buffer).get() & 0xFF);
 
 	synchronized (muxLock) {
 	    initialOutboundRation = ration;
@@ -780,6 +808,11 @@ abstract class Mux {
 		throw new ProtocolException(
 		    "unexpected protocol version: " + version);
 	    }
+	    if ((flags & SERVER_CONNECTION_HEADER_DICTIONARY) != 0 &&
+		dictionaryEnabled())
+	    {
+		dictionary = new MarshalDictionary();
+	    }
 
 	    clientConnectionReady = true;
 	    muxLock.notifyAll();
@@ -18,6 +18,7 @@
 
 package org.apache.river.jeri.internal.mux;
 
+import org.apache.river.action.GetBooleanAction;
 import org.apache.river.action.GetIntegerAction;
 import java.io.IOException;
 import java.io.InputStream;
@@ -40,6 +41,15 @@ public class MuxClient extends Mux {
 	    "org.apache.river.jeri.connection.mux.client.initialInboundRation",
 	    32768))).intValue();
 
+    /**
+     * true if the client offers to use a codebase annotation and class
+     * descriptor dictionary for calls on the connection, default is false
+     */
+    private static final boolean clientDictionary =
+	((Boolean) AccessController.doPrivileged(new GetBooleanAction(
+	    "org.apache.river.jeri.connection.mux.client.dictionary")))
+	    .booleanValue();
+
     /**
      * Initiates the client side of the multiplexed connection over
      * the given input/output stream pair.
@@ -113,6 +123,11 @@ public class MuxClient extends Mux {
 	}
     }
 
+    @Override
+    boolean dictionaryEnabled() {
+	return clientDictionary;
+    }
+
     /**
      * Populates the context collection with information representing
      * this connection.
@@ -18,6 +18,7 @@
 
 package org.apache.river.jeri.internal.mux;
 
+import org.apache.river.action.GetBooleanAction;
 import org.apache.river.action.GetIntegerAction;
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
@@ -50,6 +51,15 @@ public class MuxServer extends Mux {
 	    "org.apache.river.jeri.connection.mux.server.initialInboundRation",
 	    32768)).intValue();
 
+    /**
+     * true if the server accepts a client's offer to use a codebase
+     * annotation and class descriptor dictionary, default is true
+     */
+    private static final boolean serverDictionary =
+	!AccessController.doPrivileged(new GetBooleanAction(
+	    "org.apache.river.jeri.connection.mux.server.noDictionary"))
+	    .booleanValue();
+
     /**
      * pool of threads for executing tasks with user code: used for
      * dispatching incoming requests to request dispatchers
@@ -184,6 +194,11 @@ public class MuxServer extends Mux {
 	    "cannot satisfy constraints: " + constraints);
     }
 
+    @Override
+    boolean dictionaryEnabled() {
+	return serverDictionary;
+    }
+
     /**
      * Populates the context collection with information representing
      * this connection (such as the client host).
@@ -18,6 +18,7 @@
 
 package org.apache.river.jeri.internal.mux;
 
+import org.apache.river.jeri.internal.runtime.MarshalDictionary;
 import org.apache.river.thread.Executor;
 import org.apache.river.thread.GetThreadPoolAction;
 import java.io.IOException;
@@ -155,6 +156,8 @@ final class Session {
 	return new OutboundRequest() {
             @Override
 	    public void populateContext(Collection context) {
+		MarshalDictionary dictionary = mux.dictionary;
+		if (dictionary != null) context.add(dictionary);
 		((MuxClient) mux).populateContext(context);
 	    }
             @Override
@@ -218,6 +221,8 @@ final class Session {
 			}
 		    }
 		});
+		MarshalDictionary dictionary = mux.dictionary;
+		if (dictionary != null) context.add(dictionary);
 		((MuxServer) mux).populateContext(context);
 	    }
             @Override
@@ -18,8 +18,11 @@
 
 package org.apache.river.jeri.internal.runtime;
 
+import org.apache.river.action.GetIntegerAction;
 import org.apache.river.action.GetLongAction;
+import org.apache.river.logging.Levels;
 import org.apache.river.thread.NewThreadAction;
+import java.lang.management.ManagementFactory;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
 import java.rmi.ConnectException;
@@ -31,15 +34,27 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
 import javax.security.auth.Subject;
 import net.jini.constraint.BasicMethodConstraints;
 import net.jini.constraint.StringMethodConstraints;
@@ -95,6 +110,20 @@ import net.jini.jeri.ObjectEndpoint;
  * type-safe equivalent of "registerRefs" that delegates to this
  * class's "registerRefs" method.
  *
+ * Lease renewals and clean calls for all endpoints are timed by a small
+ * shared scheduler of "RenewClean" threads, sized by the
+ * "org.apache.river.jeri.dgc.renewCleanThreads" system property
+ * (default 1), and a single thread waits for the phantom references
+ * of all endpoints.  The scheduler only hands each due renew/clean task
+ * to a pool of "RenewClean-Call" threads that grows on demand and
+ * shrinks when idle, where the remote calls are made; the task of an
+ * endpoint runs on at most one thread at a time, so an unresponsive
+ * endpoint holds a single thread and can't delay the renewals of other
+ * endpoints.  The number of call threads is the number of endpoints
+ * with calls in progress, not the number of endpoints.  The number of
+ * endpoints, remote object references and pending clean calls are
+ * published as a {@link DgcClientMXBean}.
+ *
  * @author Sun Microsystems, Inc.
  **/
 abstract class AbstractDgcClient {
@@ -117,6 +146,15 @@ abstract class AbstractDgcClient {
 	    "org.apache.river.jeri.dgc.minimumDuration", 5000)))
 	    .longValue();
 
+    /** number of threads timing dirty and clean calls for all endpoints */
+    private static final int renewCleanThreads =	// default 1
+	( AccessController.doPrivileged(new GetIntegerAction(
+	    "org.apache.river.jeri.dgc.renewCleanThreads", 1)))
+	    .intValue();
+
+    /** time an idle thread waits for another dirty or clean call */
+    private static final long renewCleanKeepAlive = 60000L;
+
     /** minimum retry count for dirty calls that fail */
     private static final int dirtyFailureRetries = 5;
 
@@ -128,18 +166,6 @@ abstract class AbstractDgcClient {
 
     /** next sequence number for DGC calls (access synchronized on class) */
     private static long nextSequenceNum = Long.MIN_VALUE;
-    
-    /**
-     * TODO
-     * JDK-5053529 reduce number of "RenewClean" threads created by
-     * client-side DGC implementation.  
-     * Also requires a single reference queue.
-     * For handling lease renewals and clean calls.
-     */
-//    private static final ExecutorService RENEW_CLEAN_EXECUTOR 
-//	= Executors.newCachedThreadPool(
-//	    new NamedThreadFactory("JERI DGC Client RenewClean Thread", false)
-//	);
 
     private final Map<Endpoint,EndpointEntry> endpointTable;
 
@@ -208,8 +234,14 @@ abstract class AbstractDgcClient {
 	/*
 	 * REMIND: This algorithm should be more sophisticated, waiting
 	 * a longer fraction of the lease duration for longer leases.
+	 *
+	 * A random fraction, up to an eighth of the duration, is added so
+	 * that leases granted together, such as those for proxies
+	 * unmarshalled at the same time, aren't all renewed together.
 	 */
-	return grantTime + (duration / 2);
+	long spread = duration >> 3;
+	return grantTime + (duration >> 1) +
+	    (spread > 0 ? ThreadLocalRandom.current().nextLong(spread) : 0L);
     }
 
     /**
@@ -221,8 +253,8 @@ abstract class AbstractDgcClient {
 	    EndpointEntry entry = endpointTable.get(endpoint);
 	    if (entry == null) {
 		entry = new EndpointEntry(endpoint);
-                entry.start();
 		endpointTable.put(endpoint, entry);
+		RenewCleanScheduler.INSTANCE.endpoints.incrementAndGet();
 		/*
 		 * If the endpoint table was previously empty, we are now
 		 * interested in special assistance from the local garbage
@@ -239,11 +271,151 @@ abstract class AbstractDgcClient {
 	}
     }
 
+    /**
+     * RenewCleanScheduler runs the asynchronous client-side DGC activity
+     * of all endpoints: a single thread waits for phantom references to
+     * be enqueued and processes them in batches per endpoint, while the
+     * lease renewals and clean calls of each endpoint are scheduled as
+     * tasks on a shared scheduler, which passes each due task to a pool
+     * of threads that grows as needed to make the remote calls.  It also
+     * keeps the counts published by the DgcClientMXBean.
+     */
+    private static final class RenewCleanScheduler
+	implements DgcClientMXBean, Runnable
+    {
+	private static final Logger logger =
+	    Logger.getLogger("net.jini.jeri.BasicObjectEndpoint");
+
+	static final RenewCleanScheduler INSTANCE = new RenewCleanScheduler();
+
+	/** reference queue for the phantom references of all endpoints */
+	final ReferenceQueue refQueue = new ReferenceQueue();
+	/** times the renew/clean tasks of all endpoints */
+	final ScheduledThreadPoolExecutor executor;
+	/** makes the dirty and clean calls of due renew/clean tasks */
+	final ThreadPoolExecutor callExecutor;
+
+	final AtomicInteger endpoints = new AtomicInteger();
+	final AtomicInteger references = new AtomicInteger();
+	final AtomicInteger pendingCleans = new AtomicInteger();
+
+	private RenewCleanScheduler() {
+	    final AtomicInteger threads = new AtomicInteger();
+	    executor = new ScheduledThreadPoolExecutor(renewCleanThreads,
+		new ThreadFactory() {
+		    @Override
+		    public Thread newThread(Runnable r) {
+			return new NewThreadAction(r,
+			    "RenewClean-" + threads.getAndIncrement(), true).run();
+		    }
+		});
+	    executor.setRemoveOnCancelPolicy(true);
+	    /*
+	     * A remote call may block for as long as its endpoint doesn't
+	     * respond, so calls don't share a fixed number of threads.
+	     */
+	    final AtomicInteger callThreads = new AtomicInteger();
+	    callExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+		renewCleanKeepAlive, TimeUnit.MILLISECONDS,
+		new SynchronousQueue<Runnable>(),
+		new ThreadFactory() {
+		    @Override
+		    public Thread newThread(Runnable r) {
+			return new NewThreadAction(r,
+			    "RenewClean-Call-" + callThreads.getAndIncrement(),
+			    true).run();
+		    }
+		});
+	    /*
+	     * Scheduler threads are created now, with this class's
+	     * privileges, rather than inheriting the context of whichever
+	     * caller happened to schedule a task; call threads are only
+	     * created by scheduler threads, so they inherit the same.
+	     */
+	    AccessController.doPrivileged(new PrivilegedAction<Object>() {
+		@Override
+		public Object run() {
+		    executor.prestartAllCoreThreads();
+		    new NewThreadAction(RenewCleanScheduler.this,
+			"RenewClean-ReferenceQueue", true).run().start();
+		    try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(
+			    RenewCleanScheduler.this,
+			    new ObjectName("net.jini.jeri:type=DgcClient"));
+		    } catch (Exception e) {
+			logger.log(Levels.HANDLED,
+			    "Unable to register DGC client MBean", e);
+		    }
+		    return null;
+		}
+	    });
+	}
+
+	/**
+	 * Waits for phantom references to be enqueued, passing each endpoint
+	 * all of its references enqueued at the time.
+	 */
+	@Override
+	public void run() {
+	    Map<EndpointEntry,List<EndpointEntry.RefEntry.PhantomLiveRef>> batch =
+		new HashMap<EndpointEntry,List<EndpointEntry.RefEntry.PhantomLiveRef>>();
+	    for (;;) {
+		EndpointEntry.RefEntry.PhantomLiveRef phantom;
+		try {
+		    phantom = (EndpointEntry.RefEntry.PhantomLiveRef)
+			refQueue.remove();
+		} catch (InterruptedException e) {
+		    continue;
+		}
+		do {
+		    EndpointEntry entry = phantom.getEndpointEntry();
+		    List<EndpointEntry.RefEntry.PhantomLiveRef> phantoms =
+			batch.get(entry);
+		    if (phantoms == null) {
+			phantoms =
+			    new ArrayList<EndpointEntry.RefEntry.PhantomLiveRef>();
+			batch.put(entry, phantoms);
+		    }
+		    phantoms.add(phantom);
+		} while ((phantom = (EndpointEntry.RefEntry.PhantomLiveRef)
+			  refQueue.poll()) != null);
+		Iterator<Map.Entry<EndpointEntry,List<EndpointEntry.RefEntry.PhantomLiveRef>>> it
+		    = batch.entrySet().iterator();
+		while (it.hasNext()) {
+		    Map.Entry<EndpointEntry,List<EndpointEntry.RefEntry.PhantomLiveRef>> e
+			= it.next();
+		    it.remove();
+		    try {
+			e.getKey().processPhantomRefs(e.getValue());
+		    } catch (RuntimeException ex) {
+			logger.log(Levels.HANDLED,
+			    "exception processing phantom references", ex);
+		    }
+		}
+	    }
+	}
+
+	@Override
+	public int getEndpointCount() {
+	    return endpoints.get();
+	}
+
+	@Override
+	public int getReferenceCount() {
+	    return references.get();
+	}
+
+	@Override
+	public int getPendingCleanCount() {
+	    return pendingCleans.get();
+	}
+    }
+
     /**
      * EndpointEntry encapsulates the client-side DGC information specific
      * to a particular endpoint.  Of most significance is the table that
      * maps live reference objects to RefEntry objects and the renew/clean
-     * thread that handles asynchronous client-side DGC operations.
+     * task that handles asynchronous client-side DGC operations.
      */
     final class EndpointEntry {
 
@@ -251,10 +423,6 @@ abstract class AbstractDgcClient {
 	private final Endpoint endpoint;
 	/** synthesized reference to the remote server-side DGC */
 	private final DgcProxy dgcProxy;
-	/** renew/clean thread for handling lease renewals and clean calls, may be null */
-	private final Thread renewCleanThread;
-	/** reference queue for phantom references */
-	private final ReferenceQueue refQueue = new ReferenceQueue();
 
 	/* mutable instance state (below) is guarded by this object's lock */
 
@@ -270,6 +438,8 @@ abstract class AbstractDgcClient {
 	private long renewTime = Long.MAX_VALUE;
 	/** absolute time current lease to this endpoint will expire */
 	private long expirationTime = Long.MIN_VALUE;
+	/** sequence number of the latest dirty call for this endpoint */
+	private long lastDirtySequenceNum = Long.MIN_VALUE;
 	/** count of recent dirty calls that have failed */
 	private int dirtyFailures = 0;
 	/** absolute time of first recent failed dirty call */
@@ -277,8 +447,14 @@ abstract class AbstractDgcClient {
 	/** (average) elapsed time for recent failed dirty calls */
 	private long dirtyFailureDuration;
 
-	/** true if renew/clean thread may be interrupted */
-	private boolean interruptible = false;
+	/** scheduled renew/clean task, or null if none is scheduled */
+	private ScheduledFuture<?> renewCleanTask;
+	/** absolute time the scheduled renew/clean task will run */
+	private long renewCleanTime = Long.MAX_VALUE;
+	/** true while the renew/clean task is running */
+	private boolean running = false;
+	/** earliest time requested for the next run, while running */
+	private long requestedTime = Long.MAX_VALUE;
 
 	/** set of clean calls that need to be made, changed Set to an
          * underlying ConcurrentHashMap because no lock is held while 
@@ -291,15 +467,8 @@ abstract class AbstractDgcClient {
 	private EndpointEntry(final Endpoint endpoint) {
 	    this.endpoint = endpoint;
 	    dgcProxy = getDgcProxy(endpoint);
-	    renewCleanThread = (Thread)	AccessController.doPrivileged(
-		new NewThreadAction(new RenewClean(),
-				    "RenewClean-" + endpoint, true));
 	}
         
-        private void start(){
-            renewCleanThread.start();
-        }
-        
         boolean pendingCleanCalls(){
             return !pendingCleans.isEmpty();
         }
@@ -369,6 +538,7 @@ abstract class AbstractDgcClient {
 		    if (refEntry == null) {
 			refEntry = new RefEntry(objectID);
 			refTable.put(objectID, refEntry);
+			RenewCleanScheduler.INSTANCE.references.incrementAndGet();
 			if (refsToDirty == null) {
 			    refsToDirty = new HashSet(5);
 			}
@@ -386,6 +556,7 @@ abstract class AbstractDgcClient {
 		invalidRefs.clear();
 
 		sequenceNum = getNextSequenceNum();       
+		lastDirtySequenceNum = sequenceNum;
 	    }
 
 	    makeDirtyCall(refsToDirty, sequenceNum);
@@ -433,10 +604,12 @@ abstract class AbstractDgcClient {
 
 	    refTable.remove(refEntry.getObjectID());
 	    invalidRefs.remove(refEntry);
+	    RenewCleanScheduler.INSTANCE.references.decrementAndGet();
 	    if (refTable.isEmpty()) {
 		synchronized (endpointTable) {
 		    endpointTable.remove(endpoint);
 		    freeEndpoint(endpoint);
+		    RenewCleanScheduler.INSTANCE.endpoints.decrementAndGet();
 		    /*
 		     * If the endpoint table is now empty, we are no longer
 		     * interested in special assistance from the local garbage
@@ -607,147 +780,160 @@ abstract class AbstractDgcClient {
 
 	    if (newRenewTime < renewTime) {
 		renewTime = newRenewTime;
-		if (interruptible) {
-		    AccessController.doPrivileged(new PrivilegedAction() {
-			public Object run() {
-			    renewCleanThread.interrupt();
-			    return null;
-			}
-		    });
-		}
+		schedule(newRenewTime);
 	    } else {
 		renewTime = newRenewTime;
 	    }
 	}
 
+	/**
+	 * Ensures the renew/clean task will run no later than the given
+	 * absolute time.  If the task is running, it reschedules itself
+	 * when done.
+	 *
+	 * This method must ONLY be invoked while synchronized on this
+	 * EndpointEntry.
+	 */
+	private void schedule(long time) {
+	    assert Thread.holdsLock(this);
+
+	    if (running) {
+		requestedTime = Math.min(requestedTime, time);
+		return;
+	    }
+	    if (renewCleanTask != null) {
+		if (renewCleanTime <= time) return;
+		renewCleanTask.cancel(false);
+	    }
+	    renewCleanTime = time;
+	    renewCleanTask = RenewCleanScheduler.INSTANCE.executor.schedule(
+		new RenewClean(),
+		Math.max(time - System.currentTimeMillis(), 0L),
+		TimeUnit.MILLISECONDS);
+	}
+
 	/**
 	 * RenewClean handles the asynchronous client-side DGC activity
 	 * for this entry: renewing the leases and making clean calls.
+	 * It is run by the scheduler when due, and passes itself to the
+	 * call executor, so the scheduler never waits for a remote call.
+	 * Each call does whatever is due, then schedules the next run.
 	 */
 	private class RenewClean implements Runnable {
 
 	    public void run() {
-		do {
-		    long timeToWait;
-		    RefEntry.PhantomLiveRef phantom = null;
-		    boolean needRenewal = false;
-		    Set refsToDirty = null;
-		    long sequenceNum = Long.MIN_VALUE;
-
-		    synchronized (EndpointEntry.this) {
+		synchronized (EndpointEntry.this) {
+		    if (running) {
 			/*
-			 * Calculate time to block (waiting for phantom
-			 * reference notifications).  It is the time until the
-			 * lease renewal should be done, bounded on the low
-			 * end by 1 ms so that the reference queue will always
-			 * get processed, and if there are pending clean
-			 * requests (remaining because some clean calls
-			 * failed), bounded on the high end by the maximum
-			 * clean call retry interval.
+			 * A task replaced while it was starting; the task
+			 * in progress runs again on completion.
 			 */
-			long timeUntilRenew =
-			    renewTime - System.currentTimeMillis();
-			timeToWait = Math.max(timeUntilRenew, 1);
-			if (pendingCleanCalls()) {
-			    timeToWait = Math.min(timeToWait, cleanInterval);
-			}
-
-			/*
-			 * Set flag indicating that it is OK to interrupt this
-			 * thread now, such as if a earlier lease renewal time
-			 * is set, because we are only going to be blocking
-			 * and can deal with interrupts.
-			 */
-			interruptible = true;
+			requestedTime = Math.min(requestedTime,
+			    System.currentTimeMillis());
+			return;
 		    }
+		    running = true;
+		    renewCleanTask = null;
+		    renewCleanTime = Long.MAX_VALUE;
+		    requestedTime = Long.MAX_VALUE;
+		}
+		try {
+		    RenewCleanScheduler.INSTANCE.callExecutor.execute(
+			new Runnable() {
+			    @Override
+			    public void run() {
+				renewClean();
+			    }
+			});
+		} catch (RejectedExecutionException e) {
+		    renewClean();
+		}
+	    }
 
-		    try {
-			/*
-			 * Wait for the duration calculated above for any of
-			 * our phantom references to be enqueued.
-			 */
-			phantom = (RefEntry.PhantomLiveRef)
-			    refQueue.remove(timeToWait);
-		    } catch (InterruptedException e) {
-		    }
-                    AccessControlContext cont = null;
-		    synchronized (EndpointEntry.this) {
-			/*
-			 * Set flag indicating that it is NOT OK to interrupt
-			 * this thread now, because we may be undertaking I/O
-			 * operations that should not be interrupted (and we
-			 * will not be blocking arbitrarily).
-			 */
-			interruptible = false;
-			Thread.interrupted();	// clear interrupted state
+	    private void renewClean() {
+		boolean needRenewal = false;
+		Set refsToDirty = null;
+		long sequenceNum = Long.MIN_VALUE;
+		AccessControlContext cont = null;
 
-			/*
-			 * If there was a phantom reference enqueued, process
-			 * it and all the rest on the queue, generating
-			 * clean requests as necessary.
-			 */
-			if (phantom != null) {
-			    processPhantomRefs(phantom);
+		synchronized (EndpointEntry.this) {
+		    /*
+		     * Check if it is time to renew this entry's lease.
+		     */
+		    long currentTime = System.currentTimeMillis();
+		    if (!removed && currentTime >= renewTime) {
+			needRenewal = true;
+			if (currentTime >= expirationTime) {
+			    invalidRefs.addAll(refTable.values());
 			}
-
-			/*
-			 * Check if it is time to renew this entry's lease.
-			 */
-			long currentTime = System.currentTimeMillis();
-			if (currentTime > renewTime) {
-			    needRenewal = true;
-			    if (currentTime >= expirationTime) {
-				invalidRefs.addAll(refTable.values());
-			    }
-			    if (!invalidRefs.isEmpty()) {
-				refsToDirty = new HashSet(invalidRefs);
-				invalidRefs.clear();
-			    }
-			    sequenceNum = getNextSequenceNum();
-                            cont = EndpointEntry.this.context;
+			if (!invalidRefs.isEmpty()) {
+			    refsToDirty = new HashSet(invalidRefs);
+			    invalidRefs.clear();
 			}
+			sequenceNum = getNextSequenceNum();
+			lastDirtySequenceNum = sequenceNum;
+			cont = EndpointEntry.this.context;
 		    }
+		}
 
+		try {
 		    if (needRenewal) {
-                        final Set dirtyRefs = refsToDirty;
-                        final long seqNum = sequenceNum;
-                        AccessController.doPrivileged(
-                            new PrivilegedAction(){
-                                @Override
-                                public Object run() {
-                                    makeDirtyCall(dirtyRefs, seqNum);
-                                    return Boolean.TRUE;
-                                }
-                                
-                            }, cont);
-			
+			final Set dirtyRefs = refsToDirty;
+			final long seqNum = sequenceNum;
+			AccessController.doPrivileged(
+			    new PrivilegedAction(){
+				@Override
+				public Object run() {
+				    makeDirtyCall(dirtyRefs, seqNum);
+				    return Boolean.TRUE;
+				}
+
+			    }, cont);
 		    }
 
 		    if (pendingCleanCalls()) {
 			makeCleanCalls();
 		    }
-		} while (!removed() || pendingCleanCalls());
+		} finally {
+		    synchronized (EndpointEntry.this) {
+			running = false;
+			/*
+			 * Run again when the lease is to be renewed, when
+			 * requested while running, or, if some clean calls
+			 * failed, after the maximum clean call retry interval.
+			 */
+			long next = removed ? requestedTime
+				: Math.min(renewTime, requestedTime);
+			if (pendingCleanCalls()) {
+			    next = Math.min(next,
+				System.currentTimeMillis() + cleanInterval);
+			} else if (removed) {
+			    next = Long.MAX_VALUE;
+			}
+			if (next != Long.MAX_VALUE) {
+			    schedule(next);
+			}
+		    }
+		}
 	    }
 	}
 
 	/**
-	 * Processes the notification of the given phantom reference and any
-	 * others that are on this entry's reference queue.  Each phantom
+	 * Processes the notification of the given phantom references, taken
+	 * from the reference queue.  Each phantom
 	 * reference is removed from its RefEntry's ref set.  All ref
 	 * entries that have no more registered instances are collected
 	 * into up to two batched clean call requests: one for refs
-	 * requiring a "strong" clean call, and one for the rest.
-	 *
-	 * This method must ONLY be invoked while synchronized on this
-	 * EndpointEntry.
+	 * requiring a "strong" clean call, and one for the rest, which
+	 * the renew/clean task is scheduled to make immediately.
 	 */
-	private void processPhantomRefs(RefEntry.PhantomLiveRef phantom) {
-	    assert Thread.holdsLock(this);
-
+	private synchronized void processPhantomRefs(
+				    List<RefEntry.PhantomLiveRef> phantoms)
+	{
 	    Set strongCleans = null;
 	    Set normalCleans = null;
 
-	    do {
+	    for (RefEntry.PhantomLiveRef phantom : phantoms) {
 		RefEntry refEntry = phantom.getRefEntry();
 		refEntry.removeInstanceFromRefSet(phantom);
 		if (refEntry.isRefSetEmpty()) {
@@ -764,21 +950,93 @@ abstract class AbstractDgcClient {
 		    }
 		    removeRefEntry(refEntry);
 		}
-	    } while ((phantom =
-		(RefEntry.PhantomLiveRef) refQueue.poll()) != null);
+	    }
 
 	    if (strongCleans != null) {
-		pendingCleans.add(
+		addCleanRequest(
 		    new CleanRequest(getNextSequenceNum(),
 				     createObjectIDArray(strongCleans),
 				     true));
 	    }
 	    if (normalCleans != null) {
-		pendingCleans.add(
+		addCleanRequest(
 		    new CleanRequest(getNextSequenceNum(),
 				     createObjectIDArray(normalCleans),
 				     false));
 	    }
+	    if (strongCleans != null || normalCleans != null) {
+		schedule(System.currentTimeMillis());
+	    }
+	}
+
+	/**
+	 * Returns the number of clean calls that need to be made.
+	 */
+	int pendingCleanCount() {
+	    return pendingCleans.size();
+	}
+
+	private void addCleanRequest(CleanRequest request) {
+	    if (pendingCleans.add(request)) {
+		RenewCleanScheduler.INSTANCE.pendingCleans.incrementAndGet();
+	    }
+	}
+
+	private void removeCleanRequest(CleanRequest request) {
+	    if (pendingCleans.remove(request)) {
+		RenewCleanScheduler.INSTANCE.pendingCleans.decrementAndGet();
+	    }
+	}
+
+	/**
+	 * Merges the clean requests that haven't yet been attempted into
+	 * one request for strong clean calls and one for the rest, so that
+	 * references collected while earlier clean calls were being made are
+	 * cleaned together.  Each merged request takes the latest sequence
+	 * number of those it replaces.  Only requests allocated after the
+	 * latest dirty call for this endpoint are merged, since an object ID
+	 * of an earlier request may have been registered and dirtied again
+	 * since; the server must see such a request's own, older sequence
+	 * number to ignore it.
+	 *
+	 * This method must ONLY be invoked while synchronized on this
+	 * EndpointEntry.
+	 */
+	private void mergeCleanRequests() {
+	    assert Thread.holdsLock(this);
+
+	    List<CleanRequest> strong = new ArrayList<CleanRequest>();
+	    List<CleanRequest> normal = new ArrayList<CleanRequest>();
+	    for (CleanRequest request : pendingCleans) {
+		if (!request.attempted &&
+		    request.sequenceNum > lastDirtySequenceNum)
+		{
+		    (request.strong ? strong : normal).add(request);
+		}
+	    }
+	    mergeCleanRequests(strong, true);
+	    mergeCleanRequests(normal, false);
+	}
+
+	private void mergeCleanRequests(List<CleanRequest> requests,
+					boolean strong)
+	{
+	    if (requests.size() < 2) return;
+	    int length = 0;
+	    long sequenceNum = Long.MIN_VALUE;
+	    for (CleanRequest request : requests) {
+		length += request.objectIDs.length;
+		sequenceNum = Math.max(sequenceNum, request.sequenceNum);
+	    }
+	    Object[] ids = new Object[length];
+	    int i = 0;
+	    for (CleanRequest request : requests) {
+		System.arraycopy(request.objectIDs, 0, ids, i,
+				 request.objectIDs.length);
+		i += request.objectIDs.length;
+		removeCleanRequest(request);
+	    }
+	    addCleanRequest(new CleanRequest(sequenceNum, ids, strong));
 	}
 
 	/**
@@ -797,6 +1055,7 @@ abstract class AbstractDgcClient {
 	    synchronized (this){
 		constraints = clientConstraints;
 		callContext = context;
+		mergeCleanRequests();
 	    }
 	    if (constraints != null){
 		proxy = (DgcProxy) 
@@ -808,6 +1067,7 @@ abstract class AbstractDgcClient {
 	    Iterator iter = pendingCleans.iterator();
 	    while (iter.hasNext()) {
 		final CleanRequest request = (CleanRequest) iter.next();
+		request.attempted = true;
 		try {
 		    AccessController.doPrivileged(
 			new PrivilegedExceptionAction()
@@ -821,10 +1081,12 @@ abstract class AbstractDgcClient {
 			    }
 
 			}, callContext);
-		    iter.remove();
+		    removeCleanRequest(request);
 		} catch (PrivilegedActionException ex){
 		    Exception e = ex.getException();
-		    if (e instanceof NoSuchObjectException) iter.remove();
+		    if (e instanceof NoSuchObjectException) {
+			removeCleanRequest(request);
+		    }
 		    else if (e instanceof ConnectException ||
 			     e instanceof ConnectIOException)
 		    {
@@ -840,7 +1102,7 @@ abstract class AbstractDgcClient {
 			 * ConnectIOException.
 			 */
 			if (request.connectFailures.incrementAndGet() >= cleanConnectRetries) {
-			    iter.remove();
+			    removeCleanRequest(request);
 			}
 		    }// else possible transient failure, retain clean request
 		}
@@ -975,12 +1237,16 @@ abstract class AbstractDgcClient {
 	    class PhantomLiveRef extends PhantomReference {
 	
 		PhantomLiveRef(Object ref) {
-		    super(ref, EndpointEntry.this.refQueue);
+		    super(ref, RenewCleanScheduler.INSTANCE.refQueue);
 		}
 
 		RefEntry getRefEntry() {
 		    return RefEntry.this;
 		}
+
+		EndpointEntry getEndpointEntry() {
+		    return EndpointEntry.this;
+		}
 	    }
 	}
     }
@@ -997,6 +1263,8 @@ abstract class AbstractDgcClient {
 
 	/** how many times this request has failed with ConnectException */
 	final AtomicInteger connectFailures = new AtomicInteger();
+	/** true once a clean call has been made for this request */
+	volatile boolean attempted = false;
 
 	CleanRequest(long sequenceNum, Object[] objectIDs, boolean strong) {
 	    this.sequenceNum = sequenceNum;
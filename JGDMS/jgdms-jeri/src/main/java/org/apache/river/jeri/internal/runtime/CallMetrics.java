@@ -0,0 +1,495 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.io.UnsupportedConstraintException;
+import net.jini.jeri.InboundRequest;
+import net.jini.jeri.OutboundRequest;
+import org.apache.river.action.GetBooleanAction;
+import org.apache.river.logging.Levels;
+
+/**
+ * Per-method remote call statistics for <code>BasicInvocationDispatcher</code>
+ * and <code>BasicInvocationHandler</code>, enabled by setting the system
+ * property <code>org.apache.river.jeri.callMetrics</code> to
+ * <code>true</code>.  When disabled, callers test {@link #ENABLED} and
+ * neither time calls nor wrap requests.
+ * <p>
+ * Each call is timed by a {@link Call}, which accumulates the time spent
+ * in each phase and records it with the method's histograms when the call
+ * completes.  Request and response sizes are counted by wrapping the
+ * request in {@link Inbound} or {@link Outbound}.
+ *
+ * @see CallMetricsMXBean
+ * @since 3.1.1
+ */
+public final class CallMetrics implements CallMetricsMXBean {
+
+    /** True if call metrics are recorded. */
+    public static final boolean ENABLED =
+	AccessController.doPrivileged(
+	    new GetBooleanAction("org.apache.river.jeri.callMetrics"));
+
+    /** Unmarshalling the method, arguments, return value or exception. */
+    public static final int UNMARSHAL = 0;
+    /** Server access control check. */
+    public static final int CHECK_ACCESS = 1;
+    /**
+     * Invoking the remote object on the server, on the client, waiting for
+     * the response.
+     */
+    public static final int INVOKE = 2;
+    /** Marshalling the method, arguments, return value or exception. */
+    public static final int MARSHAL = 3;
+
+    private static final String [] PHASES =
+	{"unmarshal", "checkAccess", "invoke", "marshal"};
+
+    private static final Comparator<MethodStatistics> BY_METHOD =
+	new Comparator<MethodStatistics>() {
+	    @Override
+	    public int compare(MethodStatistics o1, MethodStatistics o2) {
+		return o1.getMethod().compareTo(o2.getMethod());
+	    }
+	};
+
+    private static class Server {
+	static final CallMetrics metrics = new CallMetrics(
+	    "server", Logger.getLogger("net.jini.jeri.BasicInvocationDispatcher"));
+    }
+
+    private static class Client {
+	static final CallMetrics metrics = new CallMetrics(
+	    "client", Logger.getLogger("net.jini.jeri.BasicInvocationHandler"));
+    }
+
+    /**
+     * Returns the metrics of calls dispatched to remote objects in this
+     * virtual machine.
+     *
+     * @return server call metrics.
+     */
+    public static CallMetrics server() {
+	return Server.metrics;
+    }
+
+    /**
+     * Returns the metrics of calls made by proxies in this virtual machine.
+     *
+     * @return client call metrics.
+     */
+    public static CallMetrics client() {
+	return Client.metrics;
+    }
+
+    private final ConcurrentMap<Method,MethodMetrics> methods =
+	new ConcurrentHashMap<Method,MethodMetrics>();
+    private volatile MethodMetrics unknown = new MethodMetrics("unknown");
+
+    private CallMetrics(final String side, final Logger logger) {
+	AccessController.doPrivileged(new PrivilegedAction<Object>() {
+	    @Override
+	    public Object run() {
+		try {
+		    ManagementFactory.getPlatformMBeanServer().registerMBean(
+			CallMetrics.this,
+			new ObjectName("net.jini.jeri:type=CallMetrics,side=" + side));
+		} catch (Exception e) {
+		    logger.log(Levels.HANDLED,
+			"Unable to register call metrics MBean", e);
+		}
+		return null;
+	    }
+	});
+    }
+
+    /**
+     * Starts timing a call, the first phase starts now.
+     *
+     * @return the call.
+     */
+    public Call start() {
+	return new Call(this);
+    }
+
+    @Override
+    public List<MethodStatistics> getMethodStatistics() {
+	List<MethodStatistics> result =
+	    new ArrayList<MethodStatistics>(methods.size() + 1);
+	for (MethodMetrics m : methods.values()) {
+	    result.add(m.snapshot());
+	}
+	MethodMetrics u = unknown;
+	if (u.calls.sum() != 0) result.add(u.snapshot());
+	Collections.sort(result, BY_METHOD);
+	return result;
+    }
+
+    @Override
+    public void reset() {
+	methods.clear();
+	unknown = new MethodMetrics("unknown");
+    }
+
+    private MethodMetrics metrics(Method method) {
+	if (method == null) return unknown;
+	MethodMetrics m = methods.get(method);
+	if (m == null) {
+	    MethodMetrics existed =
+		methods.putIfAbsent(method, m = new MethodMetrics(method));
+	    if (existed != null) m = existed;
+	}
+	return m;
+    }
+
+    /**
+     * Statistics of one method.
+     */
+    private static final class MethodMetrics {
+	final String name;
+	final LongAdder calls = new LongAdder();
+	final LongAdder failures = new LongAdder();
+	final LongAdder requestBytes = new LongAdder();
+	final LongAdder responseBytes = new LongAdder();
+	final LatencyHistogram [] phases =
+	    new LatencyHistogram[PHASES.length];
+
+	MethodMetrics(String name) {
+	    this.name = name;
+	    for (int i = 0; i < phases.length; i++) {
+		phases[i] = new LatencyHistogram();
+	    }
+	}
+
+	MethodMetrics(Method method) {
+	    this(describe(method));
+	}
+
+	void record(long [] nanos, int reached, boolean failed,
+		    long requestBytes, long responseBytes)
+	{
+	    calls.increment();
+	    if (failed) failures.increment();
+	    this.requestBytes.add(requestBytes);
+	    this.responseBytes.add(responseBytes);
+	    for (int i = 0; i < phases.length; i++) {
+		if ((reached & (1 << i)) != 0) phases[i].record(nanos[i]);
+	    }
+	}
+
+	MethodStatistics snapshot() {
+	    List<PhaseStatistics> phaseStats =
+		new ArrayList<PhaseStatistics>(phases.length);
+	    for (int i = 0; i < phases.length; i++) {
+		if (phases[i].count() != 0) {
+		    phaseStats.add(phases[i].snapshot(PHASES[i]));
+		}
+	    }
+	    return new MethodStatistics(name, calls.sum(), failures.sum(),
+		requestBytes.sum(), responseBytes.sum(), phaseStats);
+	}
+
+	private static String describe(Method method) {
+	    StringBuilder sb = new StringBuilder(64);
+	    sb.append(method.getDeclaringClass().getName()).append('.')
+		.append(method.getName()).append('(');
+	    Class<?> [] params = method.getParameterTypes();
+	    for (int i = 0; i < params.length; i++) {
+		if (i > 0) sb.append(',');
+		sb.append(params[i].getSimpleName());
+	    }
+	    return sb.append(')').toString();
+	}
+    }
+
+    /**
+     * Times the phases of one call, not thread safe.
+     */
+    public static final class Call {
+	private final CallMetrics metrics;
+	private final long [] nanos = new long[PHASES.length];
+	private int reached;
+	private long mark;
+	private Method method;
+	private boolean failed;
+
+	private Call(CallMetrics metrics) {
+	    this.metrics = metrics;
+	    mark = System.nanoTime();
+	}
+
+	/**
+	 * Ends the current phase, adding the time since the previous phase
+	 * ended to the given phase.
+	 *
+	 * @param phase the phase that has ended.
+	 */
+	public void lap(int phase) {
+	    long now = System.nanoTime();
+	    nanos[phase] += now - mark;
+	    reached |= 1 << phase;
+	    mark = now;
+	}
+
+	/**
+	 * Returns true if the given phase has ended at least once.
+	 *
+	 * @param phase the phase.
+	 * @return true if the phase has ended.
+	 */
+	public boolean reached(int phase) {
+	    return (reached & (1 << phase)) != 0;
+	}
+
+	/**
+	 * Sets the remote method called.
+	 *
+	 * @param method the remote method.
+	 */
+	public void method(Method method) {
+	    this.method = method;
+	}
+
+	/**
+	 * Records that the call threw an exception or failed to complete.
+	 */
+	public void failed() {
+	    failed = true;
+	}
+
+	/**
+	 * Records the call with the statistics of its method.
+	 *
+	 * @param requestBytes size of the request.
+	 * @param responseBytes size of the response.
+	 */
+	public void finish(long requestBytes, long responseBytes) {
+	    metrics.metrics(method)
+		.record(nanos, reached, failed, requestBytes, responseBytes);
+	}
+    }
+
+    /**
+     * An inbound request that counts the bytes read from the request and
+     * written to the response.
+     */
+    public static final class Inbound implements InboundRequest {
+	private final InboundRequest request;
+	private CountingInputStream in;
+	private CountingOutputStream out;
+
+	public Inbound(InboundRequest request) {
+	    this.request = request;
+	}
+
+	public long requestBytes() {
+	    return in == null ? 0 : in.count;
+	}
+
+	public long responseBytes() {
+	    return out == null ? 0 : out.count;
+	}
+
+	@Override
+	public void checkPermissions() {
+	    request.checkPermissions();
+	}
+
+	@Override
+	public InvocationConstraints checkConstraints(
+		InvocationConstraints constraints)
+	    throws UnsupportedConstraintException
+	{
+	    return request.checkConstraints(constraints);
+	}
+
+	@Override
+	public void populateContext(Collection context) {
+	    request.populateContext(context);
+	}
+
+	@Override
+	public InputStream getRequestInputStream() {
+	    if (in == null) {
+		in = new CountingInputStream(request.getRequestInputStream());
+	    }
+	    return in;
+	}
+
+	@Override
+	public OutputStream getResponseOutputStream() {
+	    if (out == null) {
+		out = new CountingOutputStream(request.getResponseOutputStream());
+	    }
+	    return out;
+	}
+
+	@Override
+	public void abort() {
+	    request.abort();
+	}
+
+	@Override
+	public String toString() {
+	    return request.toString();
+	}
+    }
+
+    /**
+     * An outbound request that counts the bytes written to the request and
+     * read from the response.
+     */
+    public static final class Outbound implements OutboundRequest {
+	private final OutboundRequest request;
+	private CountingOutputStream out;
+	private CountingInputStream in;
+
+	public Outbound(OutboundRequest request) {
+	    this.request = request;
+	}
+
+	public long requestBytes() {
+	    return out == null ? 0 : out.count;
+	}
+
+	public long responseBytes() {
+	    return in == null ? 0 : in.count;
+	}
+
+	@Override
+	public void populateContext(Collection context) {
+	    request.populateContext(context);
+	}
+
+	@Override
+	public InvocationConstraints getUnfulfilledConstraints() {
+	    return request.getUnfulfilledConstraints();
+	}
+
+	@Override
+	public OutputStream getRequestOutputStream() {
+	    if (out == null) {
+		out = new CountingOutputStream(request.getRequestOutputStream());
+	    }
+	    return out;
+	}
+
+	@Override
+	public InputStream getResponseInputStream() {
+	    if (in == null) {
+		in = new CountingInputStream(request.getResponseInputStream());
+	    }
+	    return in;
+	}
+
+	@Override
+	public boolean getDeliveryStatus() {
+	    return request.getDeliveryStatus();
+	}
+
+	@Override
+	public void abort() {
+	    request.abort();
+	}
+
+	@Override
+	public String toString() {
+	    return request.toString();
+	}
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+	long count;
+
+	CountingInputStream(InputStream in) {
+	    super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+	    int b = in.read();
+	    if (b >= 0) count++;
+	    return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+	    int n = in.read(b, off, len);
+	    if (n > 0) count += n;
+	    return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+	    long skipped = in.skip(n);
+	    if (skipped > 0) count += skipped;
+	    return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+	    return false;
+	}
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+	long count;
+
+	CountingOutputStream(OutputStream out) {
+	    super(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+	    out.write(b);
+	    count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+	    out.write(b, off, len);
+	    count += len;
+	}
+
+	@Override
+	public void close() throws IOException {
+	    out.close();
+	}
+    }
+}
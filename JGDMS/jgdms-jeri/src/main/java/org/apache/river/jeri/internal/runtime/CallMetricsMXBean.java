@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+import java.util.List;
+
+/**
+ * Management interface exposing per-method remote call statistics,
+ * registered with the platform <code>MBeanServer</code> under the names
+ * <code>net.jini.jeri:type=CallMetrics,side=server</code> for calls
+ * dispatched by <code>BasicInvocationDispatcher</code> and
+ * <code>net.jini.jeri:type=CallMetrics,side=client</code> for calls made
+ * by <code>BasicInvocationHandler</code>, when the system property
+ * <code>org.apache.river.jeri.callMetrics</code> is <code>true</code>.
+ *
+ * @since 3.1.1
+ */
+public interface CallMetricsMXBean {
+
+    /**
+     * Returns a snapshot of the statistics of each remote method called,
+     * ordered by method.
+     *
+     * @return the method statistics.
+     */
+    List<MethodStatistics> getMethodStatistics();
+
+    /**
+     * Discards all statistics recorded so far.
+     */
+    void reset();
+}
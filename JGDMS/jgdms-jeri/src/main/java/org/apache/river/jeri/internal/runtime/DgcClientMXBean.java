@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+/**
+ * Management interface exposing the state of client-side distributed
+ * garbage collection.  An instance is registered with the platform
+ * <code>MBeanServer</code> under the name
+ * <code>net.jini.jeri:type=DgcClient</code> when the first endpoint
+ * holding DGC-enabled references is encountered.
+ *
+ * @since 3.1.1
+ */
+public interface DgcClientMXBean {
+
+    /**
+     * Returns the number of endpoints with remote object references
+     * currently held.
+     *
+     * @return the number of endpoints.
+     */
+    int getEndpointCount();
+
+    /**
+     * Returns the number of remote objects currently referenced, over
+     * all endpoints.
+     *
+     * @return the number of remote object references.
+     */
+    int getReferenceCount();
+
+    /**
+     * Returns the number of clean calls waiting to be made, including
+     * those being retried after failing.
+     *
+     * @return the number of pending clean calls.
+     */
+    int getPendingCleanCount();
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies in power of two microsecond buckets, lock free.
+ *
+ * @see PhaseStatistics
+ * @since 3.1.1
+ */
+final class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+	if (nanos < 0) nanos = 0;
+	long micros = nanos / 1000L;
+	int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+	buckets.incrementAndGet(bucket);
+	count.increment();
+	totalNanos.add(nanos);
+	long max;
+	while (nanos > (max = maxNanos.get())
+		&& !maxNanos.compareAndSet(max, nanos)) {}
+    }
+
+    long count() {
+	return count.sum();
+    }
+
+    PhaseStatistics snapshot(String phase) {
+	long [] counts = new long[BUCKETS];
+	int length = 0;
+	long total = 0;
+	for (int i = 0; i < BUCKETS; i++) {
+	    counts[i] = buckets.get(i);
+	    if (counts[i] != 0) {
+		length = i + 1;
+		total += counts[i];
+	    }
+	}
+	long [] histogram = new long[length];
+	System.arraycopy(counts, 0, histogram, 0, length);
+	long n = count.sum();
+	return new PhaseStatistics(phase, n,
+	    n == 0 ? 0.0 : totalNanos.sum() / (n * 1000.0),
+	    maxNanos.get() / 1000L,
+	    percentile(histogram, total, 0.5),
+	    percentile(histogram, total, 0.99),
+	    histogram);
+    }
+
+    /** Returns the upper bound in microseconds of the percentile's bucket. */
+    private static long percentile(long [] histogram, long total, double p) {
+	long rank = (long) Math.ceil(total * p);
+	long cumulative = 0;
+	for (int i = 0; i < histogram.length; i++) {
+	    cumulative += histogram[i];
+	    if (cumulative >= rank && cumulative > 0) return 1L << i;
+	}
+	return 0;
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.jini.io.context.ConnectionDictionary;
+
+/**
+ * Per connection state of the codebase annotation and class descriptor
+ * dictionary negotiated by a multiplexed connection.
+ *
+ * Each end of the connection holds one instance, which records the
+ * identifiers it has assigned to values it sends and the values it has
+ * received from the other end.  An identifier is only used in place of
+ * its value once the other end has acknowledged receiving the value;
+ * until then the value is sent in full along with its identifier.
+ * Acknowledgments are carried in the header of each call request and
+ * response sent on the connection, so concurrent and aborted calls never
+ * leave the two ends disagreeing.  A value received again because its
+ * acknowledgment was lost is acknowledged again.
+ *
+ * The invocation layer finds an instance in the context populated by the
+ * inbound or outbound request and adds the {@link #element element} to
+ * the context of the marshal streams of calls that use the dictionary.
+ *
+ * @since 3.1.1
+ **/
+public final class MarshalDictionary {
+
+    /** maximum number of identifiers assigned in each direction */
+    static final int MAX_ENTRIES = 4096;
+
+    /** maximum number of acknowledgments sent in one header */
+    private static final int MAX_ACKNOWLEDGMENTS = 256;
+
+    /** sent annotations and their identifiers */
+    private final ConcurrentMap<String,Sent> annotations =
+	new ConcurrentHashMap<String,Sent>();
+
+    /** sent class descriptors, by class, guarded by itself */
+    private final Map<Class,Sent> descriptors = new WeakHashMap<Class,Sent>();
+
+    /** sent values by identifier, for acknowledgments */
+    private final ConcurrentMap<Integer,Sent> sent =
+	new ConcurrentHashMap<Integer,Sent>();
+
+    /** next identifier to assign */
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /** values received, by identifier */
+    private final ConcurrentMap<Integer,Object> received =
+	new ConcurrentHashMap<Integer,Object>();
+
+    /** identifiers received but not yet acknowledged */
+    private final Queue<Integer> unacknowledged =
+	new ConcurrentLinkedQueue<Integer>();
+
+    /** members of unacknowledged */
+    private final ConcurrentMap<Integer,Boolean> pending =
+	new ConcurrentHashMap<Integer,Boolean>();
+
+    private final ConnectionDictionary element = new Element();
+
+    /**
+     * Returns the dictionary in the given context, or null if there is
+     * none.
+     */
+    public static MarshalDictionary find(Collection context) {
+	for (Iterator i = context.iterator(); i.hasNext(); ) {
+	    Object o = i.next();
+	    if (o instanceof MarshalDictionary) {
+		return (MarshalDictionary) o;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the context element used by marshal streams of calls that
+     * use this dictionary.
+     */
+    public ConnectionDictionary element() {
+	return element;
+    }
+
+    /**
+     * Writes the acknowledgments of values received since the last
+     * acknowledgments were written.
+     */
+    public void writeAcknowledgments(OutputStream out) throws IOException {
+	int count = 0;
+	byte[] buf = null;
+	Integer id;
+	while (count < MAX_ACKNOWLEDGMENTS &&
+	       (id = unacknowledged.poll()) != null)
+	{
+	    pending.remove(id);
+	    if (buf == null) {
+		buf = new byte[2 + 2 * MAX_ACKNOWLEDGMENTS];
+	    }
+	    int i = id.intValue();
+	    buf[2 + 2 * count] = (byte) (i >>> 8);
+	    buf[3 + 2 * count] = (byte) i;
+	    count++;
+	}
+	if (buf == null) {
+	    out.write(0);
+	    out.write(0);
+	} else {
+	    buf[0] = (byte) (count >>> 8);
+	    buf[1] = (byte) count;
+	    out.write(buf, 0, 2 + 2 * count);
+	}
+    }
+
+    /**
+     * Reads acknowledgments written by the other end of the connection,
+     * after which the acknowledged values are sent as identifiers only.
+     */
+    public void readAcknowledgments(InputStream in) throws IOException {
+	DataInputStream din = new DataInputStream(in);
+	int count = din.readUnsignedShort();
+	if (count > MAX_ACKNOWLEDGMENTS) {
+	    throw new IOException("too many dictionary acknowledgments: " +
+				  count);
+	}
+	for (int i = 0; i < count; i++) {
+	    int id = din.readUnsignedShort();
+	    Sent s = sent.get(Integer.valueOf(id));
+	    if (s == null) {
+		throw new IOException(
+		    "acknowledgment of unknown dictionary identifier: " + id);
+	    }
+	    s.acknowledged = true;
+	}
+    }
+
+    /**
+     * Returns a new identifier, or -1 if none are left.
+     */
+    private int assign() {
+	for (;;) {
+	    int id = nextId.get();
+	    if (id >= MAX_ENTRIES) {
+		return -1;
+	    }
+	    if (nextId.compareAndSet(id, id + 1)) {
+		return id;
+	    }
+	}
+    }
+
+    private Sent lookupSent(Object key) {
+	if (key instanceof String) {
+	    return annotations.get(key);
+	}
+	synchronized (descriptors) {
+	    return descriptors.get(key);
+	}
+    }
+
+    private Sent defineSent(Object key) {
+	if (key instanceof String) {
+	    Sent s = annotations.get(key);
+	    if (s == null) {
+		int id = assign();
+		if (id < 0) {
+		    return null;
+		}
+		Sent n = new Sent(id);
+		sent.put(Integer.valueOf(id), n);
+		s = annotations.putIfAbsent((String) key, n);
+		if (s == null) {
+		    s = n;
+		} else {
+		    sent.remove(Integer.valueOf(id));
+		}
+	    }
+	    return s;
+	}
+	synchronized (descriptors) {
+	    Sent s = descriptors.get(key);
+	    if (s == null) {
+		int id = assign();
+		if (id < 0) {
+		    return null;
+		}
+		s = new Sent(id);
+		descriptors.put((Class) key, s);
+		sent.put(Integer.valueOf(id), s);
+	    }
+	    return s;
+	}
+    }
+
+    /**
+     * An identifier assigned to a sent value.
+     */
+    private static final class Sent {
+	final int id;
+	/** true once the other end has acknowledged the value */
+	volatile boolean acknowledged;
+
+	Sent(int id) {
+	    this.id = id;
+	}
+    }
+
+    /**
+     * The context element, implemented by the enclosing dictionary.
+     */
+    private final class Element implements ConnectionDictionary {
+
+	@Override
+	public int reference(Object key) {
+	    Sent s = lookupSent(key);
+	    return s != null && s.acknowledged ? s.id : -1;
+	}
+
+	@Override
+	public int define(Object key) {
+	    Sent s = defineSent(key);
+	    return s != null ? s.id : -1;
+	}
+
+	@Override
+	public void defined(int id, Object value) throws IOException {
+	    if (id < 0 || id >= MAX_ENTRIES) {
+		throw new IOException("dictionary identifier out of range: " +
+				      id);
+	    }
+	    if (!(value instanceof String) &&
+		!(value instanceof ObjectStreamClass))
+	    {
+		throw new IOException("invalid dictionary value");
+	    }
+	    Integer key = Integer.valueOf(id);
+	    Object prev = received.putIfAbsent(key, value);
+	    if (prev != null &&
+		(prev instanceof String) != (value instanceof String))
+	    {
+		throw new IOException("dictionary identifier reused: " + id);
+	    }
+	    if (pending.putIfAbsent(key, Boolean.TRUE) == null) {
+		unacknowledged.add(key);
+	    }
+	}
+
+	@Override
+	public Object lookup(int id) throws IOException {
+	    Object value = received.get(Integer.valueOf(id));
+	    if (value == null) {
+		throw new IOException("unknown dictionary identifier: " + id);
+	    }
+	    return value;
+	}
+    }
+}
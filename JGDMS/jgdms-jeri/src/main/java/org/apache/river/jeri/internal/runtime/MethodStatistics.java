@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+import java.util.List;
+
+/**
+ * Snapshot of the statistics recorded for one remote method.
+ *
+ * @see CallMetricsMXBean
+ * @since 3.1.1
+ */
+public final class MethodStatistics {
+
+    private final String method;
+    private final long calls;
+    private final long failures;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final List<PhaseStatistics> phases;
+
+    MethodStatistics(String method, long calls, long failures,
+		     long requestBytes, long responseBytes,
+		     List<PhaseStatistics> phases)
+    {
+	this.method = method;
+	this.calls = calls;
+	this.failures = failures;
+	this.requestBytes = requestBytes;
+	this.responseBytes = responseBytes;
+	this.phases = phases;
+    }
+
+    /**
+     * @return the remote interface method, or <code>unknown</code> for
+     * calls that failed before the method was unmarshalled.
+     */
+    public String getMethod() {
+	return method;
+    }
+
+    /**
+     * @return the number of calls.
+     */
+    public long getCalls() {
+	return calls;
+    }
+
+    /**
+     * @return the number of calls that threw an exception or failed to
+     * complete.
+     */
+    public long getFailures() {
+	return failures;
+    }
+
+    /**
+     * @return the total number of request bytes, over all calls.
+     */
+    public long getRequestBytes() {
+	return requestBytes;
+    }
+
+    /**
+     * @return the total number of response bytes, over all calls.
+     */
+    public long getResponseBytes() {
+	return responseBytes;
+    }
+
+    /**
+     * @return the latency of each phase of the call that was reached.
+     */
+    public List<PhaseStatistics> getPhases() {
+	return phases;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+/**
+ * Snapshot of the latency distribution of one phase of a remote method
+ * call.  Latencies are recorded in a histogram of power of two buckets,
+ * bucket <code>0</code> counts latencies below one microsecond and
+ * bucket <code>i</code> counts latencies of at least
+ * <code>2<sup>i-1</sup></code> and below <code>2<sup>i</sup></code>
+ * microseconds, so percentiles are accurate to within a factor of two.
+ *
+ * @see CallMetricsMXBean
+ * @since 3.1.1
+ */
+public final class PhaseStatistics {
+
+    private final String phase;
+    private final long count;
+    private final double meanMicros;
+    private final long maxMicros;
+    private final long medianMicros;
+    private final long percentile99Micros;
+    private final long[] histogram;
+
+    PhaseStatistics(String phase, long count, double meanMicros,
+		    long maxMicros, long medianMicros, long percentile99Micros,
+		    long[] histogram)
+    {
+	this.phase = phase;
+	this.count = count;
+	this.meanMicros = meanMicros;
+	this.maxMicros = maxMicros;
+	this.medianMicros = medianMicros;
+	this.percentile99Micros = percentile99Micros;
+	this.histogram = histogram;
+    }
+
+    /**
+     * @return the phase name: <code>marshal</code>,
+     * <code>checkAccess</code>, <code>invoke</code> or
+     * <code>unmarshal</code>.
+     */
+    public String getPhase() {
+	return phase;
+    }
+
+    /**
+     * @return the number of latencies recorded.
+     */
+    public long getCount() {
+	return count;
+    }
+
+    /**
+     * @return the mean latency in microseconds.
+     */
+    public double getMeanMicros() {
+	return meanMicros;
+    }
+
+    /**
+     * @return the maximum latency in microseconds.
+     */
+    public long getMaxMicros() {
+	return maxMicros;
+    }
+
+    /**
+     * @return the upper bound of the histogram bucket containing the
+     * median latency, in microseconds.
+     */
+    public long getMedianMicros() {
+	return medianMicros;
+    }
+
+    /**
+     * @return the upper bound of the histogram bucket containing the
+     * 99th percentile latency, in microseconds.
+     */
+    public long getPercentile99Micros() {
+	return percentile99Micros;
+    }
+
+    /**
+     * @return the histogram bucket counts, trailing empty buckets are
+     * omitted.
+     */
+    public long[] getHistogram() {
+	return histogram.clone();
+    }
+}
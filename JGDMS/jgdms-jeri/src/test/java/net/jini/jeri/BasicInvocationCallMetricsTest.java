@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.jeri;
+
+import java.lang.reflect.Method;
+import java.rmi.Remote;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import net.jini.core.constraint.InvocationConstraints;
+import org.apache.river.jeri.internal.runtime.CallMetrics;
+import org.apache.river.jeri.internal.runtime.MethodStatistics;
+import org.apache.river.jeri.internal.runtime.PhaseStatistics;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the call metrics recorded by <code>BasicInvocationHandler</code>
+ * and <code>BasicInvocationDispatcher</code>. Call metrics are enabled
+ * when <code>CallMetrics</code> is initialized, so this test must run in
+ * its own virtual machine.
+ */
+public class BasicInvocationCallMetricsTest {
+
+    static {
+	System.setProperty("org.apache.river.jeri.callMetrics", "true");
+    }
+
+    private static final String ECHO =
+	Echo.class.getName() + ".echo(String)";
+    private static final String FAIL = Echo.class.getName() + ".fail()";
+
+    @Before
+    public void setUp() {
+	assertTrue(CallMetrics.ENABLED);
+	CallMetrics.server().reset();
+	CallMetrics.client().reset();
+    }
+
+    @Test
+    public void testCalls() throws Exception {
+	LoopbackEndpoint endpoint = endpoint(dispatcher());
+	Echo echo = endpoint.proxy(Echo.class);
+	assertEquals("hello", echo.echo("hello"));
+	assertEquals("world", echo.echo("world"));
+
+	MethodStatistics server = statistics(CallMetrics.server(), ECHO);
+	assertEquals(2, server.getCalls());
+	assertEquals(0, server.getFailures());
+	assertTrue(server.getRequestBytes() > 0);
+	assertEquals(endpoint.responseBytes, server.getResponseBytes());
+	assertPhases(server, 2, "unmarshal", "checkAccess", "invoke", "marshal");
+
+	MethodStatistics client = statistics(CallMetrics.client(), ECHO);
+	assertEquals(2, client.getCalls());
+	assertEquals(0, client.getFailures());
+	assertEquals(endpoint.requestBytes, client.getRequestBytes());
+	assertTrue(client.getResponseBytes() > 0);
+	assertPhases(client, 2, "unmarshal", "invoke", "marshal");
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+	Echo echo = endpoint(dispatcher()).proxy(Echo.class);
+	try {
+	    echo.fail();
+	    fail("expected IllegalStateException");
+	} catch (IllegalStateException e) {
+	}
+	MethodStatistics server = statistics(CallMetrics.server(), FAIL);
+	assertEquals(1, server.getCalls());
+	assertEquals(1, server.getFailures());
+	assertPhases(server, 1, "unmarshal", "checkAccess", "invoke", "marshal");
+	MethodStatistics client = statistics(CallMetrics.client(), FAIL);
+	assertEquals(1, client.getCalls());
+	assertEquals(1, client.getFailures());
+    }
+
+    @Test
+    public void testCheckAccessFailure() throws Exception {
+	BasicInvocationDispatcher dispatcher =
+	    new BasicInvocationDispatcher(methods(), new Capabilities(), null,
+					  null, getClass().getClassLoader())
+	    {
+		@Override
+		protected void checkAccess(Remote impl, Method method,
+					   InvocationConstraints constraints,
+					   Collection context)
+		{
+		    throw new SecurityException("denied");
+		}
+	    };
+	Echo echo = endpoint(dispatcher).proxy(Echo.class);
+	try {
+	    echo.echo("hello");
+	    fail("expected SecurityException");
+	} catch (SecurityException e) {
+	}
+	MethodStatistics server = statistics(CallMetrics.server(), ECHO);
+	assertEquals(1, server.getCalls());
+	assertEquals(1, server.getFailures());
+	// The time until the access check failed is booked to checkAccess
+	assertPhases(server, 1, "unmarshal", "checkAccess", "marshal");
+    }
+
+    private static void assertPhases(MethodStatistics stats, long count,
+				     String... phases)
+    {
+	List<PhaseStatistics> actual = stats.getPhases();
+	assertEquals(Arrays.asList(phases).toString(),
+		     phases.length, actual.size());
+	for (int i = 0; i < phases.length; i++) {
+	    PhaseStatistics phase = actual.get(i);
+	    assertEquals(phases[i], phase.getPhase());
+	    assertEquals(count, phase.getCount());
+	    long total = 0;
+	    for (long n : phase.getHistogram()) total += n;
+	    assertEquals(count, total);
+	    assertTrue(phase.getMedianMicros() <= phase.getPercentile99Micros());
+	}
+    }
+
+    private static MethodStatistics statistics(CallMetrics metrics,
+					       String method)
+    {
+	for (MethodStatistics stats : metrics.getMethodStatistics()) {
+	    if (stats.getMethod().equals(method)) return stats;
+	}
+	throw new AssertionError("no statistics for " + method);
+    }
+
+    private static LoopbackEndpoint endpoint(InvocationDispatcher dispatcher) {
+	return new LoopbackEndpoint(new Echo.Impl(), dispatcher);
+    }
+
+    private BasicInvocationDispatcher dispatcher() throws Exception {
+	return new BasicInvocationDispatcher(methods(), new Capabilities(),
+	    null, null, getClass().getClassLoader());
+    }
+
+    private static Collection methods() {
+	return Arrays.asList(Echo.class.getMethods());
+    }
+
+    private static class Capabilities implements ServerCapabilities {
+	@Override
+	public InvocationConstraints checkConstraints(
+		InvocationConstraints constraints)
+	{
+	    return InvocationConstraints.EMPTY;
+	}
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.jeri;
+
+import java.util.Arrays;
+import net.jini.core.constraint.InvocationConstraints;
+import org.apache.river.jeri.internal.runtime.CallMetrics;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that <code>BasicInvocationHandler</code> and
+ * <code>BasicInvocationDispatcher</code> record no call metrics unless
+ * they are enabled.
+ */
+public class BasicInvocationNoCallMetricsTest {
+
+    @Test
+    public void testDisabled() throws Exception {
+	assertFalse(CallMetrics.ENABLED);
+	BasicInvocationDispatcher dispatcher = new BasicInvocationDispatcher(
+	    Arrays.asList(Echo.class.getMethods()),
+	    new ServerCapabilities() {
+		@Override
+		public InvocationConstraints checkConstraints(
+			InvocationConstraints constraints)
+		{
+		    return InvocationConstraints.EMPTY;
+		}
+	    },
+	    null, null, getClass().getClassLoader());
+	Echo echo =
+	    new LoopbackEndpoint(new Echo.Impl(), dispatcher).proxy(Echo.class);
+	assertEquals("hello", echo.echo("hello"));
+	assertTrue(CallMetrics.server().getMethodStatistics().isEmpty());
+	assertTrue(CallMetrics.client().getMethodStatistics().isEmpty());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.jeri;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Collection;
+import net.jini.core.constraint.InvocationConstraints;
+
+/**
+ * An object endpoint that dispatches calls directly to a remote object in
+ * the same virtual machine, passing the request and response through byte
+ * arrays.
+ */
+class LoopbackEndpoint implements ObjectEndpoint {
+
+    private final Remote impl;
+    private final InvocationDispatcher dispatcher;
+    /** Total size of the requests and responses passed. */
+    long requestBytes, responseBytes;
+
+    LoopbackEndpoint(Remote impl, InvocationDispatcher dispatcher) {
+	this.impl = impl;
+	this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Returns a proxy for the remote object that uses a
+     * <code>BasicInvocationHandler</code> to call it through this endpoint.
+     */
+    <T> T proxy(Class<T> type) {
+	return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+	    new Class[] {type}, new BasicInvocationHandler(this, null)));
+    }
+
+    @Override
+    public OutboundRequestIterator newCall(InvocationConstraints constraints) {
+	return new OutboundRequestIterator() {
+	    private boolean next = true;
+
+	    @Override
+	    public boolean hasNext() {
+		return next;
+	    }
+
+	    @Override
+	    public OutboundRequest next() {
+		next = false;
+		return new Request();
+	    }
+	};
+    }
+
+    @Override
+    public RemoteException executeCall(OutboundRequest call) {
+	return null;
+    }
+
+    /**
+     * Both sides of a call, the client writes the request and reads the
+     * response, the dispatcher reads the request and writes the response.
+     * The call is dispatched when the client first reads the response.
+     */
+    private class Request implements OutboundRequest, InboundRequest {
+	private final ByteArrayOutputStream request =
+	    new ByteArrayOutputStream();
+	private final ByteArrayOutputStream response =
+	    new ByteArrayOutputStream();
+	private InputStream requestIn;
+	private InputStream responseIn;
+
+	@Override
+	public void populateContext(Collection context) {
+	}
+
+	@Override
+	public InvocationConstraints getUnfulfilledConstraints() {
+	    return InvocationConstraints.EMPTY;
+	}
+
+	@Override
+	public OutputStream getRequestOutputStream() {
+	    return request;
+	}
+
+	@Override
+	public InputStream getResponseInputStream() {
+	    if (responseIn == null) {
+		dispatcher.dispatch(impl, this, new ArrayList());
+		requestBytes += request.size();
+		responseBytes += response.size();
+		responseIn = new ByteArrayInputStream(response.toByteArray());
+	    }
+	    return responseIn;
+	}
+
+	@Override
+	public boolean getDeliveryStatus() {
+	    return true;
+	}
+
+	@Override
+	public void checkPermissions() {
+	}
+
+	@Override
+	public InvocationConstraints checkConstraints(
+		InvocationConstraints constraints)
+	{
+	    return InvocationConstraints.EMPTY;
+	}
+
+	@Override
+	public InputStream getRequestInputStream() {
+	    if (requestIn == null) {
+		requestIn = new ByteArrayInputStream(request.toByteArray());
+	    }
+	    return requestIn;
+	}
+
+	@Override
+	public OutputStream getResponseOutputStream() {
+	    return response;
+	}
+
+	@Override
+	public void abort() {
+	}
+    }
+}
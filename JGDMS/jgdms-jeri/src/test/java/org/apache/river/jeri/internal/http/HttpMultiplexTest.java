@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.jini.jeri.InboundRequest;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.RequestDispatcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests upgrading HTTP connections to the multiplexing protocol.
+ */
+public class HttpMultiplexTest {
+
+    private static final int CALLS = 32;
+
+    private final AtomicInteger accepted = new AtomicInteger();
+    /**
+     * When set, each call waits until as many calls as its count are in
+     * progress, so the calls only complete if they all run concurrently.
+     */
+    private volatile CountDownLatch overlap;
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    private final HttpClientSocketFactory factory = new HttpClientSocketFactory() {
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            Socket s = new Socket(host, port);
+            s.setTcpNoDelay(true);
+            return s;
+        }
+
+        @Override
+        public Socket createTunnelSocket(Socket s) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    /** Echoes the request data, once the overlapping calls have arrived. */
+    private final RequestDispatcher echo = new RequestDispatcher() {
+        @Override
+        public void dispatch(InboundRequest request) {
+            try {
+                byte[] b = read(request.getRequestInputStream());
+                CountDownLatch latch = overlap;
+                if (latch != null) {
+                    latch.countDown();
+                    if (!latch.await(30, TimeUnit.SECONDS)) {
+                        request.abort();
+                        return;
+                    }
+                }
+                OutputStream out = request.getResponseOutputStream();
+                out.write(b);
+                out.close();
+            } catch (IOException e) {
+                request.abort();
+            } catch (InterruptedException e) {
+                request.abort();
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final HttpServerManager manager = new HttpServerManager(15000);
+        acceptor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (;;) {
+                        Socket s = serverSocket.accept();
+                        s.setTcpNoDelay(true);
+                        accepted.incrementAndGet();
+                        new HttpServerConnection(s, echo, manager) {
+                            @Override
+                            protected void populateContext(Collection context) {
+                            }
+                        }.start();
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }, "HttpMultiplexTest acceptor");
+        acceptor.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverSocket.close();
+        acceptor.join(10000);
+    }
+
+    /**
+     * Concurrent calls share one upgraded connection and run concurrently:
+     * every call is in progress at the server before any of them returns.
+     */
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        HttpClientConnection conn = new HttpClientConnection(
+            "localhost", serverSocket.getLocalPort(), factory,
+            new HttpClientManager(15000), true);
+        try {
+            assertTrue(conn.isMultiplexed());
+            assertFalse(conn.isBusy());
+            call(conn, 0);
+            overlap = new CountDownLatch(CALLS);
+            concurrentCalls(conn);
+            assertEquals(0, overlap.getCount());
+            assertEquals(1, accepted.get());
+            assertTrue(conn.shutdown(false));
+        } finally {
+            overlap = null;
+            conn.shutdown(true);
+        }
+
+        conn = new HttpClientConnection(
+            "localhost", serverSocket.getLocalPort(), factory,
+            new HttpClientManager(15000), false);
+        try {
+            assertFalse(conn.isMultiplexed());
+            for (int i = 0; i < CALLS; i++) {
+                call(conn, i);
+            }
+            assertEquals(2, accepted.get());
+        } finally {
+            conn.shutdown(true);
+        }
+    }
+
+    /**
+     * A server that answers the upgrade request as an ordinary ping is
+     * only asked once, and the connection falls back to HTTP/1.1.
+     */
+    @Test
+    public void testFallback() throws Exception {
+        final ServerSocket old = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final AtomicInteger upgrades = new AtomicInteger();
+        Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (;;) {
+                        Socket s = old.accept();
+                        try {
+                            InputStream in = s.getInputStream();
+                            String line;
+                            while ((line = MessageReader.readLine(in)) != null
+                                   && line.length() > 0)
+                            {
+                                if (line.toLowerCase().startsWith("upgrade:")) {
+                                    upgrades.incrementAndGet();
+                                }
+                            }
+                            s.getOutputStream().write(
+                                ("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n"
+                                 + "Connection: close\r\n\r\n")
+                                .getBytes(StandardCharsets.ISO_8859_1));
+                        } finally {
+                            s.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    // closed
+                }
+            }
+        }, "HttpMultiplexTest old server");
+        server.start();
+        try {
+            HttpClientManager manager = new HttpClientManager(15000);
+            for (int i = 0; i < 2; i++) {
+                HttpClientConnection conn = new HttpClientConnection(
+                    "localhost", old.getLocalPort(), factory, manager, true);
+                assertFalse(conn.isMultiplexed());
+                conn.shutdown(true);
+            }
+            assertEquals(1, upgrades.get());
+        } finally {
+            old.close();
+            server.join(10000);
+        }
+    }
+
+    private void concurrentCalls(final HttpClientConnection conn)
+        throws InterruptedException
+    {
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[CALLS];
+        for (int t = 0; t < CALLS; t++) {
+            final int n = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        call(conn, n);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < CALLS; t++) threads[t].join();
+        assertEquals(0, failures.get());
+    }
+
+    private static void call(HttpClientConnection conn, int n) throws IOException {
+        byte[] data = new byte[1000 + n * 100];
+        Arrays.fill(data, (byte) n);
+        OutboundRequest req = conn.newRequest();
+        OutputStream out = req.getRequestOutputStream();
+        out.write(data);
+        out.close();
+        assertArrayEquals(data, read(req.getResponseInputStream()));
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) >= 0) out.write(buf, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.mux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import net.jini.io.MarshalInputStream;
+import net.jini.io.MarshalOutputStream;
+import net.jini.io.context.ConnectionDictionary;
+import net.jini.jeri.InboundRequest;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.RequestDispatcher;
+import org.apache.river.jeri.internal.runtime.MarshalDictionary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the codebase annotation and class descriptor dictionary negotiated
+ * by a multiplexed connection, with calls that carry the dictionary
+ * acknowledgments in their headers as the invocation layer does.
+ */
+public class MuxDictionaryTest {
+
+    /** call carrying an array of objects, echoed by the server */
+    private static final int ECHO = 0;
+    /** call carrying codebase annotations, echoed by the server */
+    private static final int ANNOTATIONS = 1;
+
+    private ServerSocket serverSocket;
+    private Socket clientSocket;
+    private Socket acceptedSocket;
+    private MuxClient client;
+    private MuxServer server;
+    /** counted down as the server finishes each response */
+    private volatile CountDownLatch responded = new CountDownLatch(0);
+
+    @Before
+    public void setUp() throws Exception {
+	serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+	clientSocket = new Socket(InetAddress.getLoopbackAddress(),
+				  serverSocket.getLocalPort());
+	acceptedSocket = serverSocket.accept();
+	server = new MuxServer(acceptedSocket.getOutputStream(),
+			       acceptedSocket.getInputStream(),
+			       new EchoDispatcher());
+	server.start();
+	client = new MuxClient(clientSocket.getOutputStream(),
+			       clientSocket.getInputStream(), 15000L)
+	{
+	    @Override
+	    boolean dictionaryEnabled() {
+		return true;
+	    }
+	};
+	client.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	if (client != null) client.shutdown("end of test");
+	if (server != null) server.shutdown("end of test");
+	clientSocket.close();
+	acceptedSocket.close();
+	serverSocket.close();
+    }
+
+    @Test
+    public void testNegotiated() throws Exception {
+	assertNotNull(client.dictionary);
+	assertNotNull(server.dictionary);
+	Object[] values = {new Payload(1, "one"), new Other(2L)};
+	assertArrayEquals(values, echo(values));
+	// acknowledged by the response, sent as identifiers from now on
+	ConnectionDictionary sent = client.dictionary.element();
+	assertTrue(sent.reference(Payload.class) >= 0);
+	assertTrue(sent.reference(Other.class) >= 0);
+	assertArrayEquals(values, echo(values));
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+	final int threads = 4;
+	final int calls = 50;
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    List<Future<Void>> results = new ArrayList<Future<Void>>();
+	    for (int t = 0; t < threads; t++) {
+		final int thread = t;
+		results.add(executor.submit(new Callable<Void>() {
+		    @Override
+		    public Void call() throws Exception {
+			for (int i = 0; i < calls; i++) {
+			    Object[] values = {
+				new Payload(i, "thread " + thread),
+				new Other(i),
+				i % 2 == 0 ? new Payload(-i, null)
+					   : new Third(thread)
+			    };
+			    assertArrayEquals(values, echo(values));
+			}
+			return null;
+		    }
+		}));
+	    }
+	    for (Future<Void> result : results) {
+		result.get(60, TimeUnit.SECONDS);
+	    }
+	} finally {
+	    executor.shutdownNow();
+	}
+	ConnectionDictionary sent = client.dictionary.element();
+	assertTrue(sent.reference(Third.class) >= 0);
+    }
+
+    @Test
+    public void testAbortedBeforeAcknowledgment() throws Exception {
+	OutboundRequest request = client.newRequest();
+	MarshalDictionary dictionary = dictionary(request);
+	OutputStream out = request.getRequestOutputStream();
+	out.write(ECHO);
+	dictionary.writeAcknowledgments(out);
+	MarshalOutputStream mout = new MarshalOutputStream(out,
+	    Collections.singleton(dictionary.element()));
+	mout.writeObject(new Object[]{new Payload(1, "aborted")});
+	// the definition may or may not reach the server
+	request.abort();
+	ConnectionDictionary sent = dictionary.element();
+	assertEquals(-1, sent.reference(Payload.class));
+
+	Object[] values = {new Payload(2, "after abort")};
+	assertArrayEquals(values, echo(values));
+	assertTrue(sent.reference(Payload.class) >= 0);
+	assertArrayEquals(values, echo(values));
+    }
+
+    @Test
+    public void testRedefinedAfterLostAcknowledgment() throws Exception {
+	responded = new CountDownLatch(1);
+	OutboundRequest request = client.newRequest();
+	MarshalDictionary dictionary = dictionary(request);
+	OutputStream out = request.getRequestOutputStream();
+	out.write(ECHO);
+	dictionary.writeAcknowledgments(out);
+	MarshalOutputStream mout = new MarshalOutputStream(out,
+	    Collections.singleton(dictionary.element()));
+	mout.writeObject(new Object[]{new Payload(1, "lost")});
+	mout.close();
+	// the server receives the definition, its response is never read
+	assertTrue(responded.await(30, TimeUnit.SECONDS));
+	request.abort();
+	ConnectionDictionary sent = dictionary.element();
+	assertEquals(-1, sent.reference(Payload.class));
+	int id = sent.define(Payload.class);
+
+	// defined again, under the same identifier, and acknowledged again
+	Object[] values = {new Payload(2, "redefined")};
+	assertArrayEquals(values, echo(values));
+	assertEquals(id, sent.reference(Payload.class));
+	assertArrayEquals(values, echo(values));
+    }
+
+    @Test
+    public void testEntriesCapped() throws Exception {
+	String[] annotations = new String[5000];
+	for (int i = 0; i < annotations.length; i++) {
+	    annotations[i] = "http://host" + i + "/codebase.jar";
+	}
+	/*
+	 * Each header acknowledges at most 256 values, the values are
+	 * defined again until acknowledged.
+	 */
+	for (int call = 0; call <= 4096 / 256; call++) {
+	    assertArrayEquals(annotations, echoAnnotations(annotations));
+	}
+	ConnectionDictionary sent = client.dictionary.element();
+	ConnectionDictionary returned = server.dictionary.element();
+	for (int i = 0; i < annotations.length; i++) {
+	    boolean defined = i < 4096;
+	    assertEquals(annotations[i], defined,
+			 sent.reference(annotations[i]) >= 0);
+	    assertEquals(annotations[i], defined,
+			 returned.reference(annotations[i]) >= 0);
+	}
+	assertEquals(-1, sent.define("http://another/codebase.jar"));
+	assertEquals(-1, sent.define(Payload.class));
+
+	// identifiers and values beyond the cap are both understood
+	assertArrayEquals(annotations, echoAnnotations(annotations));
+	Object[] values = {new Payload(1, "after cap")};
+	assertArrayEquals(values, echo(values));
+    }
+
+    private MarshalDictionary dictionary(OutboundRequest request) {
+	Collection context = new ArrayList();
+	request.populateContext(context);
+	MarshalDictionary dictionary = MarshalDictionary.find(context);
+	assertNotNull("dictionary not negotiated", dictionary);
+	return dictionary;
+    }
+
+    private Object[] echo(Object[] values) throws Exception {
+	OutboundRequest request = client.newRequest();
+	MarshalDictionary dictionary = dictionary(request);
+	OutputStream out = request.getRequestOutputStream();
+	out.write(ECHO);
+	dictionary.writeAcknowledgments(out);
+	MarshalOutputStream mout = new MarshalOutputStream(out,
+	    Collections.singleton(dictionary.element()));
+	mout.writeObject(values);
+	mout.close();
+	InputStream in = request.getResponseInputStream();
+	dictionary.readAcknowledgments(in);
+	MarshalInputStream min = new MarshalInputStream(in,
+	    getClass().getClassLoader(), false, null,
+	    Collections.singleton(dictionary.element()));
+	Object[] result = (Object[]) min.readObject();
+	min.close();
+	return result;
+    }
+
+    private String[] echoAnnotations(String[] annotations) throws Exception {
+	OutboundRequest request = client.newRequest();
+	MarshalDictionary dictionary = dictionary(request);
+	OutputStream out = request.getRequestOutputStream();
+	out.write(ANNOTATIONS);
+	dictionary.writeAcknowledgments(out);
+	AnnotationOutput aout = new AnnotationOutput(out,
+	    Collections.singleton(dictionary.element()));
+	aout.writeAnnotations(annotations);
+	aout.close();
+	InputStream in = request.getResponseInputStream();
+	dictionary.readAcknowledgments(in);
+	AnnotationInput ain = new AnnotationInput(in,
+	    Collections.singleton(dictionary.element()));
+	String[] result = ain.readAnnotations();
+	ain.close();
+	return result;
+    }
+
+    /**
+     * Echoes the objects or annotations of each call, reading and writing
+     * the dictionary acknowledgments as the invocation dispatcher does.
+     */
+    private class EchoDispatcher implements RequestDispatcher {
+	@Override
+	public void dispatch(InboundRequest request) {
+	    try {
+		Collection context = new ArrayList();
+		request.populateContext(context);
+		MarshalDictionary dictionary = MarshalDictionary.find(context);
+		Collection streamContext =
+		    Collections.singleton(dictionary.element());
+		InputStream in = request.getRequestInputStream();
+		int kind = in.read();
+		dictionary.readAcknowledgments(in);
+		OutputStream out = request.getResponseOutputStream();
+		if (kind == ANNOTATIONS) {
+		    String[] annotations =
+			new AnnotationInput(in, streamContext).readAnnotations();
+		    dictionary.writeAcknowledgments(out);
+		    AnnotationOutput aout =
+			new AnnotationOutput(out, streamContext);
+		    aout.writeAnnotations(annotations);
+		    aout.close();
+		} else {
+		    Object values = new MarshalInputStream(in,
+			getClass().getClassLoader(), false, null,
+			streamContext).readObject();
+		    dictionary.writeAcknowledgments(out);
+		    MarshalOutputStream mout =
+			new MarshalOutputStream(out, streamContext);
+		    mout.writeObject(values);
+		    mout.close();
+		}
+	    } catch (Exception e) {
+		request.abort();
+	    } finally {
+		responded.countDown();
+	    }
+	}
+    }
+
+    /** Writes codebase annotations as a marshal stream does. */
+    private static class AnnotationOutput extends MarshalOutputStream {
+	AnnotationOutput(OutputStream out, Collection context)
+	    throws IOException
+	{
+	    super(out, context);
+	}
+
+	void writeAnnotations(String[] annotations) throws IOException {
+	    writeInt(annotations.length);
+	    for (int i = 0; i < annotations.length; i++) {
+		writeAnnotation(annotations[i]);
+	    }
+	}
+    }
+
+    /** Reads codebase annotations as a marshal stream does. */
+    private static class AnnotationInput extends MarshalInputStream {
+	AnnotationInput(InputStream in, Collection context)
+	    throws IOException
+	{
+	    super(in, null, false, null, context);
+	}
+
+	String[] readAnnotations() throws IOException, ClassNotFoundException {
+	    String[] annotations = new String[readInt()];
+	    for (int i = 0; i < annotations.length; i++) {
+		annotations[i] = readAnnotation();
+	    }
+	    return annotations;
+	}
+    }
+
+    private static class Payload implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private final int number;
+	private final String text;
+
+	Payload(int number, String text) {
+	    this.number = number;
+	    this.text = text;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    if (!(o instanceof Payload)) return false;
+	    Payload p = (Payload) o;
+	    return number == p.number &&
+		(text == null ? p.text == null : text.equals(p.text));
+	}
+
+	@Override
+	public int hashCode() {
+	    return number;
+	}
+
+	@Override
+	public String toString() {
+	    return "Payload[" + number + ", " + text + "]";
+	}
+    }
+
+    private static class Other implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private final long value;
+
+	Other(long value) {
+	    this.value = value;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    return o instanceof Other && ((Other) o).value == value;
+	}
+
+	@Override
+	public int hashCode() {
+	    return (int) value;
+	}
+    }
+
+    private static class Third implements Serializable {
+	private static final long serialVersionUID = 1L;
+	private final Integer[] values;
+
+	Third(int value) {
+	    values = new Integer[]{value, value + 1};
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    return o instanceof Third &&
+		Arrays.equals(((Third) o).values, values);
+	}
+
+	@Override
+	public int hashCode() {
+	    return Arrays.hashCode(values);
+	}
+    }
+}
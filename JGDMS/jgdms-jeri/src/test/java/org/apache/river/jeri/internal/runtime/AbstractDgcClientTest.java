@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+import java.lang.ref.WeakReference;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.id.Uuid;
+import net.jini.id.UuidFactory;
+import net.jini.jeri.Endpoint;
+import net.jini.jeri.ObjectEndpoint;
+import net.jini.jeri.OutboundRequest;
+import net.jini.jeri.OutboundRequestIterator;
+import org.junit.Test;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that an endpoint whose DGC server stops responding doesn't delay
+ * the lease renewals of other endpoints, and that merged clean calls don't
+ * clean a reference that was registered again.
+ */
+public class AbstractDgcClientTest {
+
+    /** lease duration granted by the stub DGC servers */
+    private static final long DURATION = 5000L;
+
+    @Test
+    public void testStalledEndpointDoesNotDelayRenewals() throws Exception {
+	/*
+	 * More endpoints stall than there are scheduler threads, so their
+	 * renewals would occupy every scheduler thread if the calls were
+	 * made on them.
+	 */
+	int stalled = Math.max(8, Integer.getInteger(
+	    "org.apache.river.jeri.dgc.renewCleanThreads", 1) + 1);
+	final CountDownLatch stalling = new CountDownLatch(stalled);
+	final CountDownLatch release = new CountDownLatch(1);
+	final Semaphore renewals = new Semaphore(0);
+	StubDgcClient client = new StubDgcClient();
+	List<ObjectEndpoint> refs = new ArrayList<ObjectEndpoint>();
+	try {
+	    for (int i = 0; i < stalled; i++) {
+		StubEndpoint ep = new StubEndpoint(new StallingProxy(
+		    stalling, release));
+		client.register(ep, refs);
+	    }
+	    StubEndpoint healthy = new StubEndpoint(new CountingProxy(
+		renewals));
+	    client.register(healthy, refs);
+	    assertTrue("stalled endpoints not renewed",
+		stalling.await(4 * DURATION, TimeUnit.MILLISECONDS));
+	    renewals.drainPermits();
+	    assertTrue("healthy endpoint not renewed",
+		renewals.tryAcquire(4 * DURATION, TimeUnit.MILLISECONDS));
+	} finally {
+	    release.countDown();
+	}
+	// keeps the registered references reachable until here
+	assertTrue(refs.size() == stalled + 1);
+    }
+
+    @Test
+    public void testMergedCleanSparesReregisteredRef() throws Exception {
+	final CountDownLatch stalling = new CountDownLatch(1);
+	final CountDownLatch release = new CountDownLatch(1);
+	final RecordingProxy proxy = new RecordingProxy(stalling, release);
+	final StubDgcClient client = new StubDgcClient();
+	final StubEndpoint ep = new StubEndpoint(proxy);
+	final List<ObjectEndpoint> refs = new ArrayList<ObjectEndpoint>();
+	client.register(ep, refs);
+	final AbstractDgcClient.EndpointEntry entry =
+	    client.getEndpointEntry(ep);
+	final Uuid x = UuidFactory.generate();
+	final Uuid y = UuidFactory.generate();
+	final ObjectEndpoint[] held = {
+	    new StubObjectEndpoint(ep, x), new StubObjectEndpoint(ep, y)
+	};
+	try {
+	    client.register(ep, held[0]);
+	    client.register(ep, held[1]);
+
+	    // Hold the renew/clean task in a lease renewal, so the clean
+	    // requests queue up and are merged when it is released
+	    assertTrue("lease not renewed",
+		stalling.await(4 * DURATION, TimeUnit.MILLISECONDS));
+	    held[0] = null;
+	    collect(entry, 1);
+	    ObjectEndpoint ref = new StubObjectEndpoint(ep, x);
+	    refs.add(ref);
+	    long redirty = client.register(ep, ref);
+	    ref = null;
+	    held[1] = null;
+	    collect(entry, 2);
+	    release.countDown();
+
+	    long deadline = System.currentTimeMillis() + 4 * DURATION;
+	    while (!proxy.cleaned(x, y) &&
+		   System.currentTimeMillis() < deadline)
+	    {
+		Thread.sleep(10L);
+	    }
+	    assertTrue("references not cleaned", proxy.cleaned(x, y));
+	    assertFalse("reregistered reference cleaned after its dirty call",
+		proxy.cleanedAfter(x, redirty));
+	} finally {
+	    release.countDown();
+	}
+	// keeps the registered references reachable until here
+	assertTrue(refs.size() == 2);
+    }
+
+    /**
+     * Collects the unreachable references registered with the client
+     * until the given number of clean calls are pending.
+     */
+    private static void collect(AbstractDgcClient.EndpointEntry entry,
+				int pending) throws InterruptedException
+    {
+	long deadline = System.currentTimeMillis() + 4 * DURATION;
+	while (entry.pendingCleanCount() < pending &&
+	       System.currentTimeMillis() < deadline)
+	{
+	    System.gc();
+	    Thread.sleep(10L);
+	}
+	assertTrue("reference not collected",
+	    entry.pendingCleanCount() == pending);
+    }
+
+    private static class StubDgcClient extends AbstractDgcClient {
+	private final ConcurrentHashMap<Endpoint,DgcProxy> proxies =
+	    new ConcurrentHashMap<Endpoint,DgcProxy>();
+
+	void register(StubEndpoint ep, List<ObjectEndpoint> refs) {
+	    proxies.put(ep, ep.proxy);
+	    ObjectEndpoint ref = new StubObjectEndpoint(ep);
+	    refs.add(ref);
+	    registerRefs(ep, Collections.singletonList(ref));
+	}
+
+	/**
+	 * Registers a reference that the caller may let be collected,
+	 * returning the sequence number of the dirty call for it.
+	 */
+	long register(StubEndpoint ep, ObjectEndpoint ref) {
+	    registerRefs(ep, Collections.singletonList(ref));
+	    return ((RecordingProxy) ep.proxy).lastDirty;
+	}
+
+	@Override
+	protected DgcProxy getDgcProxy(Endpoint endpoint) {
+	    return proxies.get(endpoint);
+	}
+
+	@Override
+	protected void freeEndpoint(Endpoint endpoint) {
+	    proxies.remove(endpoint);
+	}
+
+	@Override
+	protected Endpoint getRefEndpoint(ObjectEndpoint ref) {
+	    return ((StubObjectEndpoint) ref).endpoint;
+	}
+
+	@Override
+	protected Uuid getRefObjectID(ObjectEndpoint ref) {
+	    return ((StubObjectEndpoint) ref).id;
+	}
+    }
+
+    /** Grants the first lease, then blocks renewals until released. */
+    private static class StallingProxy implements AbstractDgcClient.DgcProxy {
+	private final CountDownLatch stalling;
+	private final CountDownLatch release;
+	private final AtomicBoolean granted = new AtomicBoolean();
+
+	StallingProxy(CountDownLatch stalling, CountDownLatch release) {
+	    this.stalling = stalling;
+	    this.release = release;
+	}
+
+	@Override
+	public long dirty(long sequenceNum, Object[] ids, long duration)
+	    throws RemoteException
+	{
+	    if (granted.compareAndSet(false, true)) {
+		return DURATION;
+	    }
+	    stalling.countDown();
+	    try {
+		release.await();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	    return DURATION;
+	}
+
+	@Override
+	public void clean(long sequenceNum, Object[] ids, boolean strong) {
+	}
+    }
+
+    /** Grants every lease, counting renewals. */
+    private static class CountingProxy implements AbstractDgcClient.DgcProxy {
+	private final Semaphore renewals;
+
+	CountingProxy(Semaphore renewals) {
+	    this.renewals = renewals;
+	}
+
+	@Override
+	public long dirty(long sequenceNum, Object[] ids, long duration) {
+	    renewals.release();
+	    return DURATION;
+	}
+
+	@Override
+	public void clean(long sequenceNum, Object[] ids, boolean strong) {
+	}
+    }
+
+    /**
+     * Grants every lease, blocking the first renewal until released, and
+     * records the dirty calls made by the registering thread and the clean
+     * calls made.
+     */
+    private static class RecordingProxy implements AbstractDgcClient.DgcProxy {
+	private final CountDownLatch stalling;
+	private final CountDownLatch release;
+	private final Thread registrar = Thread.currentThread();
+	private final List<Object[]> cleans = new ArrayList<Object[]>();
+	volatile long lastDirty;
+
+	RecordingProxy(CountDownLatch stalling, CountDownLatch release) {
+	    this.stalling = stalling;
+	    this.release = release;
+	}
+
+	@Override
+	public long dirty(long sequenceNum, Object[] ids, long duration) {
+	    if (Thread.currentThread() == registrar) {
+		lastDirty = sequenceNum;
+	    } else if (stalling.getCount() > 0) {
+		stalling.countDown();
+		try {
+		    release.await();
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	    return DURATION;
+	}
+
+	@Override
+	public synchronized void clean(long sequenceNum, Object[] ids,
+				       boolean strong)
+	{
+	    cleans.add(new Object[] { sequenceNum, Arrays.asList(ids) });
+	}
+
+	synchronized boolean cleaned(Uuid x, Uuid y) {
+	    boolean cleanedX = false;
+	    boolean cleanedY = false;
+	    for (Object[] clean : cleans) {
+		List ids = (List) clean[1];
+		cleanedX |= ids.contains(x);
+		cleanedY |= ids.contains(y);
+	    }
+	    return cleanedX && cleanedY;
+	}
+
+	synchronized boolean cleanedAfter(Uuid id, long sequenceNum) {
+	    for (Object[] clean : cleans) {
+		if (((List) clean[1]).contains(id) &&
+		    ((Long) clean[0]).longValue() > sequenceNum)
+		{
+		    return true;
+		}
+	    }
+	    return false;
+	}
+    }
+
+    private static class StubEndpoint implements Endpoint {
+	final AbstractDgcClient.DgcProxy proxy;
+
+	StubEndpoint(AbstractDgcClient.DgcProxy proxy) {
+	    this.proxy = proxy;
+	}
+
+	@Override
+	public OutboundRequestIterator newRequest(
+	    InvocationConstraints constraints)
+	{
+	    throw new UnsupportedOperationException();
+	}
+    }
+
+    private static class StubObjectEndpoint implements ObjectEndpoint {
+	final Endpoint endpoint;
+	final Uuid id;
+
+	StubObjectEndpoint(Endpoint endpoint) {
+	    this(endpoint, UuidFactory.generate());
+	}
+
+	StubObjectEndpoint(Endpoint endpoint, Uuid id) {
+	    this.endpoint = endpoint;
+	    this.id = id;
+	}
+
+	@Override
+	public OutboundRequestIterator newCall(
+	    InvocationConstraints constraints)
+	{
+	    throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public RemoteException executeCall(OutboundRequest call) {
+	    throw new UnsupportedOperationException();
+	}
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.jeri.internal.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
+import net.jini.core.constraint.InvocationConstraints;
+import net.jini.jeri.InboundRequest;
+import net.jini.jeri.OutboundRequest;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link CallMetrics} independently of the invocation layer.
+ */
+public class CallMetricsTest {
+
+    private CallMetrics metrics;
+
+    @Before
+    public void setUp() {
+	metrics = CallMetrics.server();
+	metrics.reset();
+    }
+
+    @Test
+    public void testPerMethodCounts() throws Exception {
+	record("toString", false, 10, 20);
+	record("toString", true, 1, 2);
+	record("hashCode", false, 5, 6);
+
+	List<MethodStatistics> stats = metrics.getMethodStatistics();
+	assertEquals(2, stats.size());
+	// Sorted by method
+	MethodStatistics hashCode = stats.get(0);
+	assertEquals("java.lang.Object.hashCode()", hashCode.getMethod());
+	assertEquals(1, hashCode.getCalls());
+	assertEquals(0, hashCode.getFailures());
+	assertEquals(5, hashCode.getRequestBytes());
+	assertEquals(6, hashCode.getResponseBytes());
+	MethodStatistics toString = stats.get(1);
+	assertEquals("java.lang.Object.toString()", toString.getMethod());
+	assertEquals(2, toString.getCalls());
+	assertEquals(1, toString.getFailures());
+	assertEquals(11, toString.getRequestBytes());
+	assertEquals(22, toString.getResponseBytes());
+
+	metrics.reset();
+	assertTrue(metrics.getMethodStatistics().isEmpty());
+    }
+
+    @Test
+    public void testUnknownMethod() {
+	CallMetrics.Call call = metrics.start();
+	call.lap(CallMetrics.UNMARSHAL);
+	call.failed();
+	call.finish(3, 0);
+	List<MethodStatistics> stats = metrics.getMethodStatistics();
+	assertEquals(1, stats.size());
+	assertEquals("unknown", stats.get(0).getMethod());
+	assertEquals(1, stats.get(0).getFailures());
+    }
+
+    @Test
+    public void testPhases() throws Exception {
+	CallMetrics.Call call = metrics.start();
+	call.method(Object.class.getMethod("toString"));
+	call.lap(CallMetrics.UNMARSHAL);
+	assertTrue(call.reached(CallMetrics.UNMARSHAL));
+	assertFalse(call.reached(CallMetrics.INVOKE));
+	Thread.sleep(2);
+	call.lap(CallMetrics.INVOKE);
+	call.lap(CallMetrics.UNMARSHAL);
+	call.finish(0, 0);
+
+	List<PhaseStatistics> phases =
+	    metrics.getMethodStatistics().get(0).getPhases();
+	// Phases that weren't reached aren't reported
+	assertEquals(2, phases.size());
+	assertEquals("unmarshal", phases.get(0).getPhase());
+	// Both unmarshal laps are recorded as one sample
+	assertEquals(1, phases.get(0).getCount());
+	PhaseStatistics invoke = phases.get(1);
+	assertEquals("invoke", invoke.getPhase());
+	assertEquals(1, invoke.getCount());
+	assertTrue(invoke.getMaxMicros() >= 2000);
+	assertTrue(invoke.getMeanMicros() >= 2000.0);
+    }
+
+    @Test
+    public void testHistogram() {
+	LatencyHistogram histogram = new LatencyHistogram();
+	// 98 samples under 1us, one of 100us and one of 5ms
+	for (int i = 0; i < 98; i++) histogram.record(500);
+	histogram.record(100000);
+	histogram.record(5000000);
+	PhaseStatistics stats = histogram.snapshot("invoke");
+	assertEquals(100, stats.getCount());
+	assertEquals(5000, stats.getMaxMicros());
+	assertEquals((98 * 500 + 100000 + 5000000) / 100000.0,
+		     stats.getMeanMicros(), 0.001);
+	long [] buckets = stats.getHistogram();
+	assertEquals(98, buckets[0]);
+	// 100us is in [64, 128), 5000us in [4096, 8192)
+	assertEquals(1, buckets[7]);
+	assertEquals(1, buckets[13]);
+	assertEquals(14, buckets.length);
+	assertEquals(1, stats.getMedianMicros());
+	assertEquals(128, stats.getPercentile99Micros());
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+	PhaseStatistics stats = new LatencyHistogram().snapshot("marshal");
+	assertEquals(0, stats.getCount());
+	assertEquals(0.0, stats.getMeanMicros(), 0.0);
+	assertEquals(0, stats.getMedianMicros());
+	assertEquals(0, stats.getHistogram().length);
+    }
+
+    @Test
+    public void testInboundByteCounts() throws Exception {
+	Request request = new Request(new byte[10]);
+	CallMetrics.Inbound inbound = new CallMetrics.Inbound(request);
+	assertEquals(0, inbound.requestBytes());
+	InputStream in = inbound.getRequestInputStream();
+	assertSame(in, inbound.getRequestInputStream());
+	assertEquals(0, in.read());
+	assertEquals(4, in.read(new byte[4], 0, 4));
+	assertEquals(2, in.skip(2));
+	assertEquals(3, in.read(new byte[8], 0, 8));
+	assertEquals(-1, in.read());
+	assertEquals(10, inbound.requestBytes());
+
+	OutputStream out = inbound.getResponseOutputStream();
+	out.write(1);
+	out.write(new byte[6], 1, 5);
+	out.close();
+	assertEquals(6, inbound.responseBytes());
+	assertEquals(6, request.out.size());
+    }
+
+    @Test
+    public void testOutboundByteCounts() throws Exception {
+	Request request = new Request(new byte[7]);
+	CallMetrics.Outbound outbound = new CallMetrics.Outbound(request);
+	OutputStream out = outbound.getRequestOutputStream();
+	out.write(new byte[12]);
+	out.close();
+	assertEquals(12, outbound.requestBytes());
+	assertEquals(12, request.out.size());
+
+	InputStream in = outbound.getResponseInputStream();
+	while (in.read(new byte[3]) > 0) {}
+	assertEquals(7, outbound.responseBytes());
+	assertTrue(outbound.getDeliveryStatus());
+    }
+
+    private void record(String method, boolean failed,
+			long requestBytes, long responseBytes)
+	throws Exception
+    {
+	CallMetrics.Call call = metrics.start();
+	call.method(Object.class.getMethod(method));
+	call.lap(CallMetrics.INVOKE);
+	if (failed) call.failed();
+	call.finish(requestBytes, responseBytes);
+    }
+
+    /** A request whose input is the given bytes. */
+    private static class Request implements InboundRequest, OutboundRequest {
+	final InputStream in;
+	final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	Request(byte [] input) {
+	    in = new ByteArrayInputStream(input);
+	}
+
+	@Override
+	public void checkPermissions() {
+	}
+
+	@Override
+	public InvocationConstraints checkConstraints(
+		InvocationConstraints constraints)
+	{
+	    return InvocationConstraints.EMPTY;
+	}
+
+	@Override
+	public void populateContext(Collection context) {
+	}
+
+	@Override
+	public InvocationConstraints getUnfulfilledConstraints() {
+	    return InvocationConstraints.EMPTY;
+	}
+
+	@Override
+	public InputStream getRequestInputStream() {
+	    return in;
+	}
+
+	@Override
+	public OutputStream getResponseOutputStream() {
+	    return out;
+	}
+
+	@Override
+	public OutputStream getRequestOutputStream() {
+	    return out;
+	}
+
+	@Override
+	public InputStream getResponseInputStream() {
+	    return in;
+	}
+
+	@Override
+	public boolean getDeliveryStatus() {
+	    return true;
+	}
+
+	@Override
+	public void abort() {
+	}
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.event;
+
+import java.rmi.RemoteException;
+
+import net.jini.core.event.RemoteEvent;
+import net.jini.core.event.RemoteEventListener;
+import net.jini.core.event.UnknownEventException;
+
+/**
+ * A <code>BatchRemoteEventListener</code> is a {@link RemoteEventListener}
+ * that is also able to accept several event notifications in a single
+ * remote call.
+ * <p>
+ * An event mailbox that has accumulated a backlog of events on behalf of
+ * a registration whose target implements this interface may deliver the
+ * backlog in batches, instead of making one
+ * {@link RemoteEventListener#notify notify} call per event.  Events in a
+ * batch are in the order in which they were received by the mailbox.
+ *
+ * @since 3.1.1
+ */
+public interface BatchRemoteEventListener extends RemoteEventListener {
+
+    /**
+     * Notify the listener about a number of events, in order.
+     * <p>
+     * A normal return indicates that all the events in the array were
+     * accepted.  If any exception is thrown, the sender must assume none
+     * of the events were accepted.
+     * <p>
+     * <code>UnknownEventException</code> is thrown when the recipient does
+     * not recognize the combination of event identifier and event source of
+     * at least one of the events.  Since the sender cannot tell which event
+     * was unknown, it is expected to fall back to delivering the events of
+     * the batch individually using {@link RemoteEventListener#notify notify}.
+     *
+     * @param events the remote events that occurred, never
+     *        <code>null</code> or empty
+     *
+     * @throws UnknownEventException the recipient does not recognize the
+     *         combination of event identifier and event source of one or
+     *         more of the events
+     * @throws RemoteException if a connection problem occurs.
+     */
+    void notify(RemoteEvent[] events)
+	throws UnknownEventException, RemoteException;
+}
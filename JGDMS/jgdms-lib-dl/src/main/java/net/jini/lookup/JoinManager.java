@@ -70,6 +70,7 @@ import org.apache.river.thread.FutureObserver;
 import org.apache.river.thread.NamedThreadFactory;
 import org.apache.river.thread.wakeup.RetryTask;
 import org.apache.river.thread.wakeup.WakeupManager;
+import org.apache.river.thread.wakeup.WakeupManager.Ticket;
 
 /**
  * A goal of any well-behaved service is to advertise the facilities and
@@ -121,6 +122,33 @@ import org.apache.river.thread.wakeup.WakeupManager;
  * entry is retrieved from the configuration only once per instance of
  * this utility, where each such retrieval is performed in the constructor.
  * 
+ * <a name="attributeUpdateInterval"></a>
+ * <table summary="Describes the attributeUpdateInterval
+ *                configuration entry" border="0" cellpadding="2">
+ *   <tr valign="top">
+ *     <th scope="col" > <font size="+1">&#X2022;</font>
+ *     <th scope="col" align="left" colspan="2"> <font size="+1">
+ *     <code>attributeUpdateInterval</code></font>
+ * 
+ *   <tr valign="top"> <td> &nbsp; <th scope="row" align="right">
+ *     Type: <td> <code>long</code>
+ * 
+ *   <tr valign="top"> <td> &nbsp; <th scope="row" align="right">
+ *     Default: <td> <code>0</code>
+ * 
+ *   <tr valign="top"> <td> &nbsp; <th scope="row" align="right">
+ *     Description:
+ *       <td> The minimum interval (in milliseconds) between attribute
+ *            updates sent to each lookup service.  Attribute changes
+ *            made within the interval following an update are sent
+ *            together, at the end of the interval, as a single
+ *            replacement of the service's attributes.  Regardless of
+ *            this entry, attribute changes waiting behind earlier
+ *            attribute changes to be sent to a lookup service are
+ *            merged into a single replacement of the service's
+ *            attributes.  Must be zero or positive.
+ * </table>
+ * 
  * <a name="discoveryManager"></a>
  * <table summary="Describes the discoveryManager configuration entry" 
  *                border="0" cellpadding="2">
@@ -569,6 +597,19 @@ public class JoinManager {
      *  from its default value by setting the <code>wakeupRetries</code>
      *  configuration entry for this component.
      *
+     *  Attribute changes are the exception to one sub-task per request.
+     *  Because <code>lookupAttr</code> always holds the service's complete
+     *  set of attributes, every pending attribute change for a lookup
+     *  service is satisfied by a single <code>setAttributes</code> of its
+     *  value at the time the sub-task runs. So when an attribute change is
+     *  requested while the last sub-task queued for a lookup service is an
+     *  attribute change that hasn't started, that sub-task is replaced by
+     *  an <code>UpdateAttributesTask</code>, and if the
+     *  <code>attributeUpdateInterval</code> configuration entry is set,
+     *  changes requested within that interval of the last attribute
+     *  sub-task being queued are deferred, by the wakeup manager, to a
+     *  single <code>UpdateAttributesTask</code> at the end of the interval.
+     *
      *  @see org.apache.river.thread.TaskManager
      *  @see org.apache.river.thread.wakeup.WakeupManager
      *  @see org.apache.river.thread.TaskManager.Task
@@ -1114,6 +1155,34 @@ public class JoinManager {
 
     }//end class ModifyAttributesTask
 
+    /** Task that asynchronously replaces the attributes associated with this
+     *  join manager's service in the lookup service referenced by the
+     *  current instance of this class, with the service's current set of
+     *  attributes. This task takes the place of any number of attribute
+     *  changes that have not yet been sent to the lookup service.
+     */
+    private class UpdateAttributesTask extends JoinTask {
+        /** Constructor that associates this task with the lookup service
+         *  referenced in the given <code>ProxyReg</code> parameter.
+         *
+         *  @param proxyReg  data structure that references the lookup service
+         *                   in which the service's attributes should be
+         *                   replaced
+         */
+        UpdateAttributesTask(ProxyReg proxyReg) {
+            super(proxyReg, context);
+        }//end constructor
+
+        /** Replaces the attributes with those current when this task runs. */
+        @Override
+        public void run() throws Exception {
+            logger.finest("JoinManager - UpdateAttributesTask started");
+            proxyReg.setAttributes((Entry[])lookupAttr.clone());
+            logger.finest("JoinManager - UpdateAttributesTask completed");
+        }//end run
+
+    }//end class UpdateAttributesTask
+
     /** Wrapper class in which each instance corresponds to a lookup
      *  service to discover, and with which this join manager's service
      *  should be registered.
@@ -1272,6 +1341,14 @@ public class JoinManager {
          *  manger's service.
          */
         final List<Future> runningTasks = new ArrayList<Future>();
+        /** Wakeup manager ticket of a deferred <code>UpdateAttributesTask</code>,
+         *  or <code>null</code>. Access sync on taskList.
+         */
+        Ticket attrTicket;
+        /** Time the last attribute sub-task was queued. Access sync on
+         *  taskList.
+         */
+        long attrQueuedTime;
         
 	private final DiscLeaseListener dListener = new DiscLeaseListener();
 
@@ -1327,6 +1404,47 @@ public class JoinManager {
             }
         }//end addTask
 
+        /** Adds an attribute change sub-task to this class' task queue,
+         *  unless the change can be merged with an attribute change that
+         *  has not yet been sent, or must be deferred until the
+         *  <code>attributeUpdateInterval</code> has elapsed.
+         *
+         *  @param task the attribute change task to add to the task queue
+         */
+        public void addAttributeTask(JoinTask task) {
+            if(bTerminated) return;
+            synchronized(taskList) {
+                if(attrTicket != null) return;//deferred update will send it
+                int last = taskList.size() - 1;
+                /* The task at index zero may already be running */
+                if(last > 0) {
+                    JoinTask t = taskList.get(last);
+                    if(t instanceof UpdateAttributesTask) return;
+                    if(t instanceof AddAttributesTask) {
+                        taskList.set(last, new UpdateAttributesTask(this));
+                        return;
+                    }//endif
+                }//endif
+                long now = System.currentTimeMillis();
+                long due = attrQueuedTime + attributeUpdateInterval;
+                if(attributeUpdateInterval > 0 && due > now) {
+                    attrTicket = wakeupMgr.schedule(due, new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized(taskList) {
+                                attrTicket = null;
+                                attrQueuedTime = System.currentTimeMillis();
+                            }//end sync
+                            addTask(new UpdateAttributesTask(ProxyReg.this));
+                        }//end run
+                    });
+                    return;
+                }//endif
+                attrQueuedTime = now;
+            }//end sync(taskList)
+            addTask(task);
+        }//end addAttributeTask
+
         /** Registers the service associated with this join manager with the
          *  the lookup service corresponding to this class. Additionally,
          *  this method retrieves the lease granted by the lookup service
@@ -1633,6 +1751,10 @@ public class JoinManager {
      *  goes down.
      */
     private final long renewalDuration;
+    /** The minimum interval between attribute updates sent to each lookup
+     *  service, zero if attribute updates are only merged while queued.
+     */
+    private final long attributeUpdateInterval;
     /** Flag that indicates if this join manager has been terminated. */
     private volatile boolean bTerminated = false; // write access sync on this.
     /* Preparer for the proxies to the lookup services that are discovered
@@ -2238,7 +2360,7 @@ public class JoinManager {
         Iterator<ProxyReg> it = joinSet.iterator();
         while (it.hasNext()){
             ProxyReg proxyReg = it.next();
-            proxyReg.addTask(new AddAttributesTask(proxyReg,attrSets, context));
+            proxyReg.addAttributeTask(new AddAttributesTask(proxyReg,attrSets, context));
         }//end loop
     }//end addAttributes
 
@@ -2292,7 +2414,7 @@ public class JoinManager {
         Iterator<ProxyReg> it = joinSet.iterator();
         while (it.hasNext()){
             ProxyReg proxyReg = it.next();
-            proxyReg.addTask(new SetAttributesTask(proxyReg,attrSets, context));
+            proxyReg.addAttributeTask(new SetAttributesTask(proxyReg,attrSets, context));
         }
     }//end setAttributes
 
@@ -2428,7 +2550,7 @@ public class JoinManager {
         Iterator<ProxyReg> it = joinSet.iterator();
         while (it.hasNext()){
             ProxyReg proxyReg = it.next();
-            proxyReg.addTask(new ModifyAttributesTask(proxyReg,
+            proxyReg.addAttributeTask(new ModifyAttributesTask(proxyReg,
                                                       attrSetTemplates,
                                                       attrSets, context));
         }//end loop
@@ -2574,6 +2696,7 @@ public class JoinManager {
         Integer maxNretrys;
         LeaseRenewalManager leaseRenewalManager;
         Long renewalDuration;
+        long attributeUpdateInterval;
         DiscoveryManagement discoveryMgr;
         boolean bcreateDisco;
         
@@ -2585,6 +2708,7 @@ public class JoinManager {
                 Integer maxNretrys,
                 LeaseRenewalManager leaseRenewalManager,
                 Long renewalDuration,
+                long attributeUpdateInterval,
                 DiscoveryManagement discoveryMgr,
                 boolean bcreateDisco)
         {
@@ -2596,6 +2720,7 @@ public class JoinManager {
             this.maxNretrys = maxNretrys;
             this.leaseRenewalManager = leaseRenewalManager;
             this.renewalDuration = renewalDuration;
+            this.attributeUpdateInterval = attributeUpdateInterval;
             this.discoveryMgr = discoveryMgr;
             this.bcreateDisco = bcreateDisco;
         }
@@ -2724,6 +2849,17 @@ public class JoinManager {
                                              +renewalDuration+") must be "
                                              +"positive or Lease.ANY");
         }//endif
+        long attributeUpdateInterval = (config.getEntry
+                                      (COMPONENT_NAME,
+                                       "attributeUpdateInterval",
+                                       long.class,
+                                       Long.valueOf(0))).longValue();
+        if(attributeUpdateInterval < 0) {
+            throw new ConfigurationException("invalid configuration entry: "
+                                             +"attributeUpdateInterval ("
+                                             +attributeUpdateInterval+") must "
+                                             +"be zero or positive");
+        }//endif
         /* Discovery manager */
         boolean bCreateDiscMgr = false;
 	if(discoveryMgr == null) {
@@ -2740,7 +2876,7 @@ public class JoinManager {
 	}//endif
         return new Conf(registrarPreparer, registrationPreparer, serviceLeasePreparer,
                 taskMgr, wakeupMgr, maxNRetries, leaseMgr, renewalDuration,
-                discoveryMgr, bCreateDiscMgr);
+                attributeUpdateInterval, discoveryMgr, bCreateDiscMgr);
     }
     
     /** Convenience method invoked by the constructors of this class that
@@ -2778,6 +2914,7 @@ public class JoinManager {
         maxNRetries = conf.maxNretrys;
         leaseRenewalMgr = conf.leaseRenewalManager;
         renewalDuration = conf.renewalDuration;
+        attributeUpdateInterval = conf.attributeUpdateInterval;
         bCreateDiscMgr = conf.bcreateDisco;
         DiscMgrListener discMgrListen = new DiscMgrListener();
         if(attrSets == null) {
@@ -2818,6 +2955,10 @@ public class JoinManager {
                 proxyReg.proxyRegTask.cancel(false);                
                 proxyReg.proxyRegTask = null;  //don't reuse because of seq#
             }//endif
+            if(proxyReg.attrTicket != null) {
+                wakeupMgr.cancel(proxyReg.attrTicket);
+                proxyReg.attrTicket = null;
+            }//endif
             proxyReg.taskList.clear();
         }//end sync(proxyReg.taskList)
         proxyReg.terminate();
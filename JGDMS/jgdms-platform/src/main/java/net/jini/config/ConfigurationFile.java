@@ -34,10 +34,14 @@ import java.io.Serializable;
 import java.io.StreamTokenizer;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.MalformedURLException;
@@ -363,6 +367,12 @@ import org.apache.river.logging.Levels;
  *
  * <!-- Implementation Specifics -->
  *
+ * This implementation binds constructors, static methods and static fields
+ * to method handles when entries are first resolved, falling back to
+ * reflection for members, such as caller sensitive methods, that method
+ * handles obtained from the public lookup can't access.  Entries whose
+ * values are constant are evaluated only once.<p>
+ *
  * This implementation uses the {@link Logger} named
  * <code>net.jini.config</code> to log information at the following logging
  * levels: <br>
@@ -667,7 +677,7 @@ public class ConfigurationFile extends AbstractConfiguration {
 	private boolean resolving;	/* resolve in progress */
 	private boolean isConstant;
 	private boolean refersToData;	/* computed in parse and resolve */
-	private boolean evaluated;	/* static eval done */
+	private volatile boolean evaluated; /* static or constant eval done */
 	private boolean evaluating;	/* static eval in progress */
 	private Object value;
 
@@ -731,9 +741,16 @@ public class ConfigurationFile extends AbstractConfiguration {
 
 	Object eval(Object data) throws ConfigurationException {
 	    resolve(this);
-	    if (!isStatic) {
+	    if (!isStatic && !isConstant) {
 		return node.eval(data);
 	    }
+	    /*
+	     * Constant entries are folded, evaluated once like static
+	     * entries, since their values can't change.
+	     */
+	    if (evaluated) {
+		return value;
+	    }
 	    /*
 	     * Grab a separate lock when evaluating each static entry.  Using
 	     * separate locks permits entries to be evaluated simultaneously if
@@ -770,6 +787,7 @@ public class ConfigurationFile extends AbstractConfiguration {
 	private final String fullName; /* The fully qualified entry name */
 	private Entry entry;
 	private Field field;
+	private MethodHandle getter;
 
 	NameRef(String component, String name, int lineno) {
 	    super(lineno);
@@ -807,6 +825,7 @@ public class ConfigurationFile extends AbstractConfiguration {
 		return null;	/* Not reached */
 	    } else {
 		field = findField(name, lineno, override);
+		getter = getterHandle(field);
 		return field.getType();
 	    }
 	}
@@ -822,6 +841,15 @@ public class ConfigurationFile extends AbstractConfiguration {
 	Object eval(Object data) throws ConfigurationException {
 	    if (entry != null) {
 		return entry.eval(data);
+	    } else if (getter != null) {
+		try {
+		    return (Object) getter.invokeExact();
+		} catch (Error e) {
+		    throw e;
+		} catch (Throwable e) {
+		    oops("problem accessing field '" + name + "'", e);
+		    return null; /* Not reached */
+		}
 	    } else if (field != null) {
 		try {
 		    return field.get(null);
@@ -1030,7 +1058,7 @@ public class ConfigurationFile extends AbstractConfiguration {
 	}
 
         @Override
-	boolean isConstant() {
+	boolean isConstant() throws ConfigurationException {
 	    return false;
 	}
 
@@ -1074,8 +1102,11 @@ public class ConfigurationFile extends AbstractConfiguration {
         }
         
         @Override
-        boolean isConstant() {
-            return false;
+        boolean isConstant() throws ConfigurationException {
+            for (int i = 0; i < args.length; i++) {
+                if (!args[i].isConstant()) return false;
+            }
+            return true;
         }
         
         @Override
@@ -1098,6 +1129,8 @@ public class ConfigurationFile extends AbstractConfiguration {
 
 	private Constructor constructor;
 
+	private MethodHandle handle;
+
 	ConstructorCall(String typeName, ParseNode[] args, int lineno) {
 	    super(args, lineno);
 	    this.typeName = typeName;
@@ -1107,6 +1140,7 @@ public class ConfigurationFile extends AbstractConfiguration {
 	Class resolve(Entry inEntry) throws ConfigurationException {
 	    constructor = findConstructor(
 		typeName, resolveArgs(inEntry), lineno, override);
+	    handle = spreadHandle(constructor, args.length);
 	    return constructor.getDeclaringClass();
 	}
 
@@ -1114,6 +1148,16 @@ public class ConfigurationFile extends AbstractConfiguration {
 	Object eval(Object data) throws ConfigurationException {
 	    Object[] evaluatedArgs = evalArgs(data);
 	    Throwable except;
+	    if (handle != null) {
+		try {
+		    return (Object) handle.invokeExact(evaluatedArgs);
+		} catch (Error e) {
+		    throw e;
+		} catch (Throwable e) {
+		    except = e;
+		}
+		oops("problem invoking constructor for " + typeName, except);
+	    }
 	    try {
 		return constructor.newInstance(evaluatedArgs);
 	    } catch (InvocationTargetException e) {
@@ -1137,6 +1181,8 @@ public class ConfigurationFile extends AbstractConfiguration {
 
 	private Method method;
 
+	private MethodHandle handle;
+
 	MethodCall(String fullName, ParseNode[] args, int lineno) {
 	    super(args, lineno);
 	    this.fullName = fullName;
@@ -1150,6 +1196,7 @@ public class ConfigurationFile extends AbstractConfiguration {
 	    if (c == Void.TYPE) {
 		oops("method has void return type: " + fullName);
 	    }
+	    handle = spreadHandle(method, args.length);
 	    return c;
 	}
 
@@ -1157,6 +1204,16 @@ public class ConfigurationFile extends AbstractConfiguration {
 	Object eval(Object data) throws ConfigurationException {
 	    Object[] evaluatedArgs = evalArgs(data);
 	    Throwable except;
+	    if (handle != null) {
+		try {
+		    return (Object) handle.invokeExact(evaluatedArgs);
+		} catch (Error e) {
+		    throw e;
+		} catch (Throwable e) {
+		    except = e;
+		}
+		oops("problem invoking method " + fullName, except);
+	    }
 	    try {
 		return method.invoke(null, evaluatedArgs);
 	    } catch (InvocationTargetException e) {
@@ -2429,6 +2486,40 @@ public class ConfigurationFile extends AbstractConfiguration {
 	}
     }
 
+    /**
+     * Returns a method handle for a public constructor or static method,
+     * that takes its arguments as an Object array and returns an Object,
+     * converting arguments and results as reflection does.  Returns null if
+     * the member must be invoked reflectively, for example if it is caller
+     * sensitive.  Call sites are created once, when entries are resolved.
+     */
+    private static MethodHandle spreadHandle(Member member, int argCount) {
+	try {
+	    MethodHandle mh = member instanceof Constructor
+		? MethodHandles.publicLookup().unreflectConstructor(
+		    (Constructor) member)
+		: MethodHandles.publicLookup().unreflect((Method) member);
+	    return mh.asFixedArity()
+		.asType(MethodType.genericMethodType(argCount))
+		.asSpreader(Object[].class, argCount);
+	} catch (IllegalAccessException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Returns a method handle that returns the value of a public static
+     * field as an Object, or null if it must be read reflectively.
+     */
+    private static MethodHandle getterHandle(Field field) {
+	try {
+	    return MethodHandles.publicLookup().unreflectGetter(field)
+		.asType(MethodType.methodType(Object.class));
+	} catch (IllegalAccessException e) {
+	    return null;
+	}
+    }
+
     /** Resolves a method name to a method */
     Method findMethod(String fullName,
 		      Class[] argumentTypes,
@@ -79,6 +79,7 @@ import net.jini.security.ProxyPreparer;
 import net.jini.security.Security;
 import net.jini.security.SecurityContext;
 import org.apache.river.action.GetBooleanAction;
+import org.apache.river.collection.BoundedCache;
 import org.apache.river.config.Config;
 import org.apache.river.config.LocalHostLookup;
 import org.apache.river.discovery.Discovery;
@@ -122,6 +123,11 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
     private static final int DEFAULT_MULTICAST_TTL = 15;
     /** Default timeout to set on sockets used for unicast discovery. */
     private static final int DEFAULT_SOCKET_TIMEOUT = 1*60*1000;
+    /** Number of verified multicast announcements remembered. */
+    private static final int VERIFIED_ANNOUNCEMENTS = 128;
+    /** Multicast announcement counters, shared by all instances. */
+    private static final AnnouncementStatistics announcementStats =
+	AnnouncementStatistics.INSTANCE;
 
     /** Flag indicating whether or not this class is still functional. */
     private volatile boolean terminated = false;
@@ -191,6 +197,12 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
      * Access synchronised on registrars.
      */
     private final ConcurrentMap<ServiceID,AnnouncementInfo> regInfo = new ConcurrentHashMap<ServiceID,AnnouncementInfo>(11);
+    /** Recently verified multicast announcements, duplicates of which,
+     *  such as those received on more than one network interface, needn't
+     *  have their constraints checked or signatures verified again.
+     */
+    private final Map<AnnouncementKey,Boolean> verifiedAnnouncements =
+	new BoundedCache<AnnouncementKey,Boolean>(VERIFIED_ANNOUNCEMENTS);
     /** Thread that monitors multicast announcements from already-discovered
      *  lookup services and, upon determining that those announcements have
      *  stopped, queues a reachability test with the UnicastDiscoveryTask
@@ -571,6 +583,7 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 	public void run() {
             logger.finest("LookupDiscovery - AnnouncementListener thread "
                           +"started");
+	    announcementStats.register();
 	    byte[] buf = new byte[
 		multicastAnnouncementConstraints.getMulticastMaxPacketSize(
 		    DEFAULT_MAX_PACKET_SIZE)];
@@ -598,6 +611,7 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 		    } catch (NullPointerException e) {
 			break; // workaround for bug 4190513
 		    }
+		    announcementStats.received();
 		    restoreContextAddTask(new DecodeAnnouncementTask(pkt));
 
 		    buf = new byte[buf.length];
@@ -879,6 +893,54 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 	}
     }
 
+    /**
+     * Identifies the content of a verified multicast announcement: the
+     * announcement type, which depends on the discovery format, and every
+     * field covered by its signature.  The sequence number is included, so
+     * a forged announcement can't advance the sequence number of a lookup
+     * service by resembling one previously verified.
+     */
+    private static final class AnnouncementKey {
+	private final Class type;
+	private final ServiceID serviceID;
+	private final long sequenceNumber;
+	private final String host;
+	private final int port;
+	private final String[] groups;
+	private final int hashCode;
+
+	AnnouncementKey(MulticastAnnouncement announcement) {
+	    type = announcement.getClass();
+	    serviceID = announcement.getServiceID();
+	    sequenceNumber = announcement.getSequenceNumber();
+	    host = announcement.getHost();
+	    port = announcement.getPort();
+	    groups = announcement.getGroups();
+	    int hash = serviceID.hashCode();
+	    hash = 31 * hash + (int) (sequenceNumber ^ (sequenceNumber >>> 32));
+	    hash = 31 * hash + host.hashCode();
+	    hash = 31 * hash + port;
+	    hashCode = 31 * hash + Arrays.hashCode(groups);
+	}
+
+	public int hashCode() {
+	    return hashCode;
+	}
+
+	public boolean equals(Object obj) {
+	    if (this == obj) return true;
+	    if (!(obj instanceof AnnouncementKey)) return false;
+	    AnnouncementKey k = (AnnouncementKey) obj;
+	    return hashCode == k.hashCode
+		&& sequenceNumber == k.sequenceNumber
+		&& port == k.port
+		&& type == k.type
+		&& serviceID.equals(k.serviceID)
+		&& host.equals(k.host)
+		&& Arrays.equals(groups, k.groups);
+	}
+    }
+
     /**
      * Marker object placed in pendingDiscoveries set to indicate to
      * UnicastDiscoveryTask that reachability of the lookup service which sent
@@ -951,6 +1013,7 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
 		}
 		return;
 	    }
+	    announcementStats.decoded();
 
 	    /* If the registrars map contains the service ID of the registrar
 	     * that sent the current announcement then that registrar has
@@ -1012,15 +1075,36 @@ abstract class AbstractLookupDiscovery implements DiscoveryManagement,
                 pending = new LookupLocator(ann.getHost(), ann.getPort());
             }
 	    if (pending != null) {
-		try {
-		    checkAnnouncementConstraints(ann);
-		} catch (Exception e) {
-		    if (!(e instanceof InterruptedIOException)) {
-			logger.log(Levels.HANDLED,
-			       "exception decoding multicast announcement", e);
-		    }
+		/* An announcement from a lookup service already queued for
+		 * unicast discovery would be discarded by pendingDiscoveries
+		 * below, so don't verify it.  Otherwise verify the
+		 * announcement, unless an identical announcement, received
+		 * on another interface or as a repeated packet, has already
+		 * been verified.
+		 */
+		if (pending instanceof LookupLocator
+			&& pendingDiscoveries.contains(pending))
+		{
+		    announcementStats.duplicate();
 		    return;
 		}
+		AnnouncementKey key = new AnnouncementKey(ann);
+		if (verifiedAnnouncements.containsKey(key)) {
+		    announcementStats.duplicate();
+		} else {
+		    try {
+			checkAnnouncementConstraints(ann);
+		    } catch (Exception e) {
+			if (!(e instanceof InterruptedIOException)) {
+			    announcementStats.verificationFailed();
+			    logger.log(Levels.HANDLED,
+				   "exception decoding multicast announcement", e);
+			}
+			return;
+		    }
+		    announcementStats.verified();
+		    verifiedAnnouncements.put(key, Boolean.TRUE);
+		}
 		if (pending instanceof CheckGroupsMarker) {
                     // Since this is a valid announcement, update the
                     // sequence number.
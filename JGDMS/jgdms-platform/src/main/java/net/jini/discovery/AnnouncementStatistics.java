@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.discovery;
+
+import java.lang.management.ManagementFactory;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+import org.apache.river.logging.Levels;
+
+/**
+ * Multicast announcement counters shared by all LookupDiscovery instances,
+ * published as a {@link MulticastAnnouncementMXBean}.
+ *
+ * @since 3.1.1
+ */
+final class AnnouncementStatistics implements MulticastAnnouncementMXBean {
+
+    private static final Logger logger =
+	Logger.getLogger("net.jini.discovery.LookupDiscovery");
+
+    static final AnnouncementStatistics INSTANCE = new AnnouncementStatistics();
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong decoded = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicBoolean registered = new AtomicBoolean();
+
+    private AnnouncementStatistics() {}
+
+    void received() {
+	received.incrementAndGet();
+    }
+
+    void decoded() {
+	decoded.incrementAndGet();
+    }
+
+    void duplicate() {
+	duplicates.incrementAndGet();
+    }
+
+    void verified() {
+	verified.incrementAndGet();
+    }
+
+    void verificationFailed() {
+	failures.incrementAndGet();
+    }
+
+    /** Registers this MXBean, once, with the platform MBeanServer. */
+    void register() {
+	if (registered.get() || !registered.compareAndSet(false, true)) return;
+	AccessController.doPrivileged(new PrivilegedAction<Object>() {
+	    @Override
+	    public Object run() {
+		try {
+		    ManagementFactory.getPlatformMBeanServer().registerMBean(
+			AnnouncementStatistics.this,
+			new ObjectName(
+			    "net.jini.discovery:type=MulticastAnnouncement"));
+		} catch (Exception e) {
+		    logger.log(Levels.HANDLED,
+			"Unable to register multicast announcement MBean", e);
+		}
+		return null;
+	    }
+	});
+    }
+
+    @Override
+    public long getReceived() {
+	return received.get();
+    }
+
+    @Override
+    public long getDecoded() {
+	return decoded.get();
+    }
+
+    @Override
+    public long getDuplicates() {
+	return duplicates.get();
+    }
+
+    @Override
+    public long getVerified() {
+	return verified.get();
+    }
+
+    @Override
+    public long getVerificationFailures() {
+	return failures.get();
+    }
+}
@@ -40,6 +40,7 @@ import net.jini.core.constraint.MethodConstraints;
  * The following implementation-specific items are discussed below:
  * <ul><li> <a href="#ldConfigEntries">Configuring LookupDiscovery</a>
  *     <li> <a href="#ldLogging">Logging</a>
+ *     <li> <a href="#ldAnnouncements">Multicast Announcements</a>
  * </ul>
  *
  * <a name="ldConfigEntries"><b>Configuring LookupDiscovery</b></a>
@@ -626,6 +627,18 @@ import net.jini.core.constraint.MethodConstraints;
  * </table>
  * <p>
  *
+ * <a name="ldAnnouncements"><b>Multicast Announcements</b></a>
+ * <p>
+ * Each instance remembers the multicast announcements whose constraints it
+ * has recently checked, an identical announcement, such as a copy received
+ * on another network interface, is not verified again.  Announcements from
+ * a lookup service already queued for unicast discovery are not verified.
+ * The number of announcement packets received, decoded, suppressed as
+ * duplicates and verified by all instances is available from the
+ * {@link MulticastAnnouncementMXBean} registered under the name
+ * <code>net.jini.discovery:type=MulticastAnnouncement</code>.
+ * <p>
+ *
  * @author Sun Microsystems, Inc.
  *
  * @see net.jini.core.lookup.ServiceRegistrar
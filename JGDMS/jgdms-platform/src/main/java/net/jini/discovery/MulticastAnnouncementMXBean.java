@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.jini.discovery;
+
+/**
+ * Management interface exposing multicast announcement statistics, totalled
+ * over all {@link LookupDiscovery} instances in the virtual machine.  An
+ * instance is registered with the platform <code>MBeanServer</code> under
+ * the name <code>net.jini.discovery:type=MulticastAnnouncement</code> when
+ * the first announcement listener starts.
+ *
+ * @since 3.1.1
+ */
+public interface MulticastAnnouncementMXBean {
+
+    /**
+     * Returns the number of multicast announcement packets received.
+     *
+     * @return the number of packets received.
+     */
+    long getReceived();
+
+    /**
+     * Returns the number of packets successfully decoded as multicast
+     * announcements.
+     *
+     * @return the number of announcements decoded.
+     */
+    long getDecoded();
+
+    /**
+     * Returns the number of decoded announcements that were not verified
+     * because an identical announcement had already been verified, or
+     * because discovery of the announcing lookup service was already
+     * pending.
+     *
+     * @return the number of duplicate announcements suppressed.
+     */
+    long getDuplicates();
+
+    /**
+     * Returns the number of announcements that satisfied the multicast
+     * announcement constraints when checked, including signature
+     * verification where the discovery format requires it.
+     *
+     * @return the number of announcements verified.
+     */
+    long getVerified();
+
+    /**
+     * Returns the number of announcements that failed the multicast
+     * announcement constraints when checked.
+     *
+     * @return the number of announcements that failed verification.
+     */
+    long getVerificationFailures();
+}
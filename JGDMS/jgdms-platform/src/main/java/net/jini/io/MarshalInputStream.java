@@ -23,11 +23,13 @@ import java.io.InputStream;
 import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
 import java.rmi.server.RMIClassLoaderSpi;
 import java.security.Guard;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import net.jini.io.context.ConnectionDictionary;
 import net.jini.loader.ClassLoading;
 
 /**
@@ -75,6 +77,13 @@ import net.jini.loader.ClassLoading;
  * readAnnotation} method to read the class annotations from a
  * different location.
  *
+ * <p>If the context collection passed to the public constructor contains
+ * a {@link ConnectionDictionary}, codebase annotations and class
+ * descriptors are read in the form written by a
+ * <code>MarshalOutputStream</code> constructed with a dictionary, values
+ * sent in full are recorded in the dictionary and identifiers are resolved
+ * using it.
+ *
  * <p>A <code>MarshalInputStream</code> is not guaranteed to be
  * safe for concurrent use by multiple threads.
  *
@@ -106,6 +115,9 @@ public class MarshalInputStream
     /** context for ObjectStreamContext implementation */
     private final Collection context;
 
+    /** connection dictionary from the context, or null */
+    private final ConnectionDictionary dictionary;
+
     /**
      * value to pass as the "default loader" argument to loadClass and
      * loadProxyClass
@@ -196,6 +208,7 @@ public class MarshalInputStream
 	this.verifyCodebaseIntegrity = verifyCodebaseIntegrity;
 	this.verifierLoader = verifierLoader;
 	this.context = context;
+	this.dictionary = MarshalOutputStream.dictionary(context);
     }
 
     /**
@@ -237,6 +250,7 @@ public class MarshalInputStream
 	this.verifyCodebaseIntegrity = verifyCodebaseIntegrity;
 	this.verifierLoader = verifierLoader;
 	this.context = context;
+	this.dictionary = null;
             }
             
     private static InputStream check(InputStream in, Collection context){
@@ -442,7 +456,11 @@ public class MarshalInputStream
      * ObjectInputStream#readObject readObject}, and if
      * <code>readObject</code> returns a non-<code>null</code> value
      * that is not a <code>String</code>, an {@link
-     * InvalidObjectException} is thrown.
+     * InvalidObjectException} is thrown.  If this stream was constructed
+     * with a {@link ConnectionDictionary}, the tag and identifier written
+     * by the corresponding <code>MarshalOutputStream</code> are read first,
+     * and an annotation sent only as an identifier is obtained from the
+     * dictionary.
      *
      * <p>A subclass can override this method to read the annotation
      * from a different location.
@@ -459,6 +477,37 @@ public class MarshalInputStream
      **/
     protected String readAnnotation()
 	throws IOException, ClassNotFoundException
+    {
+	if (dictionary != null) {
+	    switch (readUnsignedByte()) {
+		case MarshalOutputStream.DICTIONARY_NONE:
+		    break;
+		case MarshalOutputStream.DICTIONARY_REFERENCE:
+		    Object value = dictionary.lookup(readUnsignedShort());
+		    if (!(value instanceof String)) {
+			throw new InvalidObjectException(
+			    "dictionary entry not an annotation");
+		    }
+		    return (String) value;
+		case MarshalOutputStream.DICTIONARY_DEFINE:
+		    int id = readUnsignedShort();
+		    String annotation = readAnnotationObject();
+		    if (annotation == null) {
+			throw new InvalidObjectException(
+			    "null annotation defined");
+		    }
+		    dictionary.defined(id, annotation);
+		    return annotation;
+		default:
+		    throw new StreamCorruptedException(
+			"invalid annotation dictionary tag");
+	    }
+	}
+	return readAnnotationObject();
+    }
+
+    private String readAnnotationObject()
+	throws IOException, ClassNotFoundException
     {
 	try {
 	    return (String) readObject();
@@ -469,7 +518,50 @@ public class MarshalInputStream
 	    throw ioe;
 	}
     }
-    
+
+    /**
+     * Reads a class descriptor from the stream.
+     *
+     * <p>If this stream was constructed with a {@link ConnectionDictionary},
+     * the tag and identifier written by the corresponding
+     * <code>MarshalOutputStream</code> are read first, and a descriptor
+     * sent only as an identifier is obtained from the dictionary;
+     * otherwise the descriptor is read as by the superclass.
+     *
+     * @return the class descriptor read
+     * @throws IOException if an I/O error has occurred
+     * @throws ClassNotFoundException if the class of a serialized object
+     * used in the class descriptor representation cannot be found
+     * @since 3.1.1
+     **/
+    @Override
+    protected ObjectStreamClass readClassDescriptor()
+	throws IOException, ClassNotFoundException
+    {
+	if (dictionary != null) {
+	    switch (readUnsignedByte()) {
+		case MarshalOutputStream.DICTIONARY_NONE:
+		    break;
+		case MarshalOutputStream.DICTIONARY_REFERENCE:
+		    Object value = dictionary.lookup(readUnsignedShort());
+		    if (!(value instanceof ObjectStreamClass)) {
+			throw new InvalidObjectException(
+			    "dictionary entry not a class descriptor");
+		    }
+		    return (ObjectStreamClass) value;
+		case MarshalOutputStream.DICTIONARY_DEFINE:
+		    int id = readUnsignedShort();
+		    ObjectStreamClass desc = super.readClassDescriptor();
+		    dictionary.defined(id, desc);
+		    return desc;
+		default:
+		    throw new StreamCorruptedException(
+			"invalid class descriptor dictionary tag");
+	    }
+	}
+	return super.readClassDescriptor();
+    }
+
     /**
      * The default class loader passed in during construction.
      * @return the default ClassLoader, or null.
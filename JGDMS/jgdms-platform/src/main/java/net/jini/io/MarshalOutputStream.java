@@ -20,9 +20,12 @@ package net.jini.io;
 
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.io.OutputStream;
 import java.rmi.server.RMIClassLoaderSpi;
 import java.util.Collection;
+import java.util.Iterator;
+import net.jini.io.context.ConnectionDictionary;
 import net.jini.loader.ClassLoading;
 /**
  * An extension of <code>ObjectOutputStream</code> that implements the
@@ -45,6 +48,14 @@ import net.jini.loader.ClassLoading;
  * writeAnnotation} method to write the class annotations to a
  * different location.
  *
+ * <p>If the context collection passed to the public constructor contains
+ * a {@link ConnectionDictionary}, codebase annotations and class
+ * descriptors that the dictionary reports as already held by the remote
+ * end of the connection are written as small integer identifiers instead
+ * of in full.  The corresponding <code>MarshalInputStream</code> must be
+ * constructed with a context containing the dictionary of the other end of
+ * the same connection.
+ *
  * <p><code>MarshalOutputStream</code> does not modify the stream
  * protocol version of its instances' superclass state (see {@link
  * ObjectOutputStream#useProtocolVersion
@@ -57,9 +68,19 @@ public class MarshalOutputStream
     extends ObjectOutputStream
     implements ObjectStreamContext
 {
+    /** dictionary tag: value written in full, without an identifier */
+    static final int DICTIONARY_NONE = 0x00;
+    /** dictionary tag: identifier of a value already held by the reader */
+    static final int DICTIONARY_REFERENCE = 0x01;
+    /** dictionary tag: identifier followed by the value it stands for */
+    static final int DICTIONARY_DEFINE = 0x02;
+
     /** context for ObjectStreamContext implementation */
     private final Collection context;
 
+    /** connection dictionary from the context, or null */
+    private final ConnectionDictionary dictionary;
+
     /**
      * Creates a new <code>MarshalOutputStream</code> that writes
      * marshalled data to the specified underlying
@@ -95,6 +116,7 @@ public class MarshalOutputStream
 	    throw new NullPointerException();
 	}
 	this.context = context;
+	this.dictionary = dictionary(context);
         
 //        AccessController.doPrivileged(new PrivilegedAction<Object>(){
 //
@@ -110,6 +132,21 @@ public class MarshalOutputStream
     protected MarshalOutputStream(Collection context) throws IOException{
 	super();
 	this.context = context;
+	this.dictionary = null;
+    }
+
+    /**
+     * Returns the first ConnectionDictionary element of the given context,
+     * or null if there is none.
+     */
+    static ConnectionDictionary dictionary(Collection context) {
+	for (Iterator i = context.iterator(); i.hasNext(); ) {
+	    Object o = i.next();
+	    if (o instanceof ConnectionDictionary) {
+		return (ConnectionDictionary) o;
+	    }
+	}
+	return null;
     }
 
 
@@ -181,7 +218,10 @@ public class MarshalOutputStream
      *
      * <p><code>MarshalOutputStream</code> implements this method to
      * just write the annotation value to this stream using {@link
-     * ObjectOutputStream#writeObject writeObject}.
+     * ObjectOutputStream#writeObject writeObject}.  If this stream was
+     * constructed with a {@link ConnectionDictionary}, the annotation is
+     * preceded by a tag and identifier, or replaced by them if the
+     * remote end of the connection already holds it.
      *
      * <p>A subclass can override this method to write the annotation
      * to a different location.
@@ -193,6 +233,62 @@ public class MarshalOutputStream
      * annotation
      **/
     protected void writeAnnotation(String annotation) throws IOException {
+	if (dictionary != null) {
+	    if (annotation != null) {
+		int id = dictionary.reference(annotation);
+		if (id >= 0) {
+		    writeByte(DICTIONARY_REFERENCE);
+		    writeShort(id);
+		    return;
+		}
+		id = dictionary.define(annotation);
+		if (id >= 0) {
+		    writeByte(DICTIONARY_DEFINE);
+		    writeShort(id);
+		    writeObject(annotation);
+		    return;
+		}
+	    }
+	    writeByte(DICTIONARY_NONE);
+	}
 	writeObject(annotation);
     }
+
+    /**
+     * Writes the specified class descriptor to the stream.
+     *
+     * <p>If this stream was constructed with a {@link ConnectionDictionary},
+     * the descriptor is preceded by a tag and identifier, or replaced by
+     * them if the remote end of the connection already holds it; otherwise
+     * the descriptor is written as by the superclass.
+     *
+     * @param desc class descriptor to write to the stream
+     * @throws IOException if an I/O error has occurred
+     * @since 3.1.1
+     **/
+    @Override
+    protected void writeClassDescriptor(ObjectStreamClass desc)
+	throws IOException
+    {
+	if (dictionary != null) {
+	    Class cl = desc.forClass();
+	    if (cl != null) {
+		int id = dictionary.reference(cl);
+		if (id >= 0) {
+		    writeByte(DICTIONARY_REFERENCE);
+		    writeShort(id);
+		    return;
+		}
+		id = dictionary.define(cl);
+		if (id >= 0) {
+		    writeByte(DICTIONARY_DEFINE);
+		    writeShort(id);
+		    super.writeClassDescriptor(desc);
+		    return;
+		}
+	    }
+	    writeByte(DICTIONARY_NONE);
+	}
+	super.writeClassDescriptor(desc);
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.io.context;
+
+import java.io.IOException;
+
+/**
+ * Defines a context element interface for a dictionary shared by the two
+ * ends of a connection, allowing values already sent over the connection
+ * to be referred to by a small integer identifier in later streams.
+ * <p>
+ * When a {@link net.jini.io.MarshalOutputStream} or
+ * {@link net.jini.io.MarshalInputStream} is constructed with a context
+ * collection containing an instance of this interface, codebase
+ * annotations and class descriptors are written to and read from the
+ * stream using identifiers obtained from the dictionary.  Both ends of a
+ * stream must agree on the presence of the dictionary; it is normally
+ * placed in the context by the invocation layer, after the transport has
+ * negotiated its use for the connection.
+ * <p>
+ * The sending side of a connection uses {@link #reference reference} and
+ * {@link #define define}, the receiving side uses {@link #defined defined}
+ * and {@link #lookup lookup}.  An identifier returned by
+ * <code>reference</code> must only be one that the remote
+ * dictionary is known to hold.
+ *
+ * @since 3.1.1
+ * @see net.jini.io.ObjectStreamContext
+ */
+public interface ConnectionDictionary {
+
+    /**
+     * Returns the identifier of a value the remote end of the connection
+     * already holds, or <code>-1</code> if the value must be sent.
+     *
+     * @param key the codebase annotation <code>String</code> or the
+     * <code>Class</code> of a class descriptor
+     * @return the identifier, in the range 0 to 65535, or <code>-1</code>
+     */
+    int reference(Object key);
+
+    /**
+     * Returns the identifier to send along with a value that the remote
+     * end of the connection is not yet known to hold, or <code>-1</code>
+     * if the dictionary is full and the value should be sent without one.
+     *
+     * @param key the codebase annotation <code>String</code> or the
+     * <code>Class</code> of a class descriptor
+     * @return the identifier, in the range 0 to 65535, or <code>-1</code>
+     */
+    int define(Object key);
+
+    /**
+     * Records a value received along with its identifier.
+     *
+     * @param id the identifier read from the stream
+     * @param value the codebase annotation <code>String</code> or the
+     * <code>ObjectStreamClass</code> read from the stream
+     * @throws IOException if the identifier is out of range, or already
+     * in use for a different kind of value
+     */
+    void defined(int id, Object value) throws IOException;
+
+    /**
+     * Returns the value previously recorded for an identifier.
+     *
+     * @param id the identifier read from the stream
+     * @return the value recorded for <code>id</code>
+     * @throws IOException if no value has been recorded for
+     * <code>id</code>
+     */
+    Object lookup(int id) throws IOException;
+}
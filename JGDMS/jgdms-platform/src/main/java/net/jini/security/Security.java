@@ -143,6 +143,11 @@ import org.apache.river.resource.Service;
  * </tr>
  * <tr>
  * <td>{@link Level#FINE FINE}</td>
+ * <td><code>verifyObjectTrust</code> trusts an object because a trust
+ * equivalent object was verified recently</td>
+ * </tr>
+ * <tr>
+ * <td>{@link Level#FINE FINE}</td>
  * <td><code>TrustVerifier.Context.isTrustedObject</code> returns
  * <code>false</code> because no trust verifier trusts the specified
  * object</td>
@@ -277,6 +282,26 @@ public final class Security {
      * verifier instance. An implementation of this method is permitted to
      * cache the verifier instances associated with a class loader, rather than
      * recreating them on every call.
+     * <p>
+     * This implementation can also cache, for a limited time, objects that
+     * implement {@link net.jini.security.proxytrust.TrustEquivalence
+     * TrustEquivalence} and have been verified; caching is disabled unless
+     * the <code>org.apache.river.security.trustCacheSize</code> system
+     * property is set to the number of keys to cache. A later object of the same
+     * class, verified with the same class loader, an equal collection of
+     * context objects and the same caller <code>Subject</code>, is trusted
+     * without consulting the trust verifiers if the
+     * <code>checkTrustEquivalence</code> method of a cached object returns
+     * <code>true</code> for it. This avoids repeating remote calls made by
+     * verifiers such as
+     * {@link net.jini.security.proxytrust.ProxyTrustVerifier} for each proxy
+     * prepared for the same service. Cached objects, and their classes and
+     * class loaders, are only weakly referenced, and cached objects
+     * expire after the number of milliseconds set by the
+     * <code>org.apache.river.security.trustCacheTimeout</code> system property
+     * (default 60000). The cache can be cleared with
+     * {@link #clearTrustCache clearTrustCache}, and its statistics are
+     * available from a {@link TrustCacheMXBean}.
      *
      * @param obj the object in which to verify trust
      * @param loader the class loader for finding trust verifiers, or
@@ -292,11 +317,34 @@ public final class Security {
 					 ClassLoader loader,
 					 Collection context)
 	throws RemoteException
+    {
+	verifyObjectTrust(obj, loader, context, TrustCache.INSTANCE);
+    }
+
+    /**
+     * Verifies that the specified object can be trusted, using the given
+     * cache of verified objects.
+     */
+    static void verifyObjectTrust(Object obj,
+				  ClassLoader loader,
+				  Collection context,
+				  TrustCache cache)
+	throws RemoteException
     {
 	if (context == null) {
 	    throw new NullPointerException("collection cannot be null");
 	}
+	TrustCache.Key key = cache.key(obj,
+	    loader != null ? loader : getContextClassLoader(), context);
+	if (key != null && cache.isTrusted(key, obj)) {
+	    if (getTrustLogger().isLoggable(Level.FINE)) {
+		getTrustLogger().log(Level.FINE,
+		    "trust equivalent object verified, trusting {0}", obj);
+	    }
+	    return;
+	}
 	if (new Context(loader, context).isTrustedObject(obj)) {
+	    if (key != null) cache.trusted(key, obj);
 	    return;
 	}
 	SecurityException e = new SecurityException(
@@ -310,6 +358,19 @@ public final class Security {
 	throw e;
     }
     
+    /**
+     * Discards the verified objects cached by
+     * {@link #verifyObjectTrust verifyObjectTrust}, so that objects are
+     * verified by the trust verifiers again. Applications that change trust
+     * verifiers, or that have reason to stop trusting a service, can call
+     * this method rather than wait for cached objects to expire.
+     *
+     * @since 3.1.1
+     */
+    public static void clearTrustCache() {
+	TrustCache.INSTANCE.clear();
+    }
+
     /**
      * Verifies that the URLs in the specified codebase all provide content
      * integrity, using verifiers from the specified class loader. If a
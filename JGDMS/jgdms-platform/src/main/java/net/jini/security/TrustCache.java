@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.security;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+import javax.security.auth.Subject;
+import net.jini.security.proxytrust.TrustEquivalence;
+import org.apache.river.action.GetIntegerAction;
+import org.apache.river.action.GetLongAction;
+import org.apache.river.collection.BoundedCache;
+import org.apache.river.logging.Levels;
+
+/**
+ * Recently verified objects, used by {@link Security#verifyObjectTrust
+ * Security.verifyObjectTrust} to trust an object without consulting the
+ * trust verifiers again.  The cache is disabled unless the
+ * <code>org.apache.river.security.trustCacheSize</code> system property is
+ * set to the number of keys to cache.
+ * <p>
+ * Only objects that implement {@link TrustEquivalence} are cached.  Results
+ * are keyed on the object's class, the class loader of the trust verifiers,
+ * the caller's context objects (such as constraints) and the
+ * <code>Subject</code> of the caller.  An object is trusted if one of up
+ * to eight unexpired objects verified under the same key finds it trust
+ * equivalent; <code>checkTrustEquivalence</code> is always invoked on the
+ * verified object, and no other method of the object being checked,
+ * not even <code>hashCode</code>, is invoked.
+ * <p>
+ * Verified objects, their classes, class loaders and subjects are only
+ * weakly referenced, so the cache doesn't keep a proxy or its class loader
+ * reachable.  Results expire after the number of milliseconds given by the
+ * <code>org.apache.river.security.trustCacheTimeout</code> system property
+ * (default 60000), expired results are discarded each time an object is
+ * verified by the trust verifiers.
+ *
+ * @since 3.1.1
+ */
+final class TrustCache implements TrustCacheMXBean {
+
+    private static final Logger logger =
+	Logger.getLogger("net.jini.security.trust");
+
+    /** Verified objects kept per key. */
+    private static final int INSTANCES = 8;
+
+    static final TrustCache INSTANCE = new TrustCache(
+	(AccessController.doPrivileged(new GetIntegerAction(
+	    "org.apache.river.security.trustCacheSize", 0))).intValue(),
+	(AccessController.doPrivileged(new GetLongAction(
+	    "org.apache.river.security.trustCacheTimeout", 60000))).longValue());
+
+    private final long timeout;
+    private final BoundedCache<Key,Verified> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicBoolean registered = new AtomicBoolean();
+
+    /**
+     * Creates a cache of verified objects.
+     *
+     * @param size the number of keys, zero disables the cache.
+     * @param timeout the time in milliseconds results are cached.
+     */
+    TrustCache(int size, long timeout) {
+	this.timeout = timeout;
+	cache = size > 0 && timeout > 0 ?
+	    new BoundedCache<Key,Verified>(size) : null;
+    }
+
+    /**
+     * Returns the key for verifying the given object with the trust
+     * verifiers of the given class loader and the given context objects,
+     * or <code>null</code> if the result cannot be cached.
+     */
+    Key key(Object obj, ClassLoader loader, Collection context) {
+	if (cache == null || !(obj instanceof TrustEquivalence)) return null;
+	register();
+	final AccessControlContext acc = AccessController.getContext();
+	Subject subject = AccessController.doPrivileged(
+	    new PrivilegedAction<Subject>() {
+		@Override
+		public Subject run() {
+		    return Subject.getSubject(acc);
+		}
+	    });
+	Set ctx;
+	try {
+	    ctx = context.isEmpty() ? Collections.EMPTY_SET
+		: Collections.unmodifiableSet(new HashSet(context));
+	} catch (RuntimeException e) {
+	    /* Context objects that can't be hashed aren't cacheable. */
+	    logger.log(Levels.HANDLED, "context not cacheable", e);
+	    return null;
+	}
+	return new Key(obj.getClass(), loader, ctx, subject);
+    }
+
+    /**
+     * Returns <code>true</code> if an object verified under the given key
+     * finds the given object trust equivalent.
+     */
+    boolean isTrusted(Key key, Object obj) {
+	Verified verified = cache.get(key);
+	if (verified != null && verified.isTrusted(obj)) {
+	    hits.incrementAndGet();
+	    return true;
+	}
+	misses.incrementAndGet();
+	return false;
+    }
+
+    /** Records that the given object was verified under the given key. */
+    void trusted(Key key, Object obj) {
+	purge();
+	Verified verified = cache.get(key);
+	if (verified == null) {
+	    verified = new Verified();
+	    Verified existing = cache.putIfAbsent(key, verified);
+	    if (existing != null) verified = existing;
+	}
+	verified.add((TrustEquivalence) obj);
+    }
+
+    /**
+     * Discards expired results and those whose objects, classes, class
+     * loaders or subjects have been collected.
+     */
+    private void purge() {
+	long now = System.currentTimeMillis();
+	for (Iterator<Map.Entry<Key,Verified>> it = cache.entrySet().iterator();
+	     it.hasNext(); )
+	{
+	    Map.Entry<Key,Verified> entry = it.next();
+	    Verified verified = entry.getValue();
+	    if (entry.getKey().isCleared() || verified.purge(now) == 0) {
+		it.remove();
+	    }
+	}
+    }
+
+    /** Registers this MXBean, once, with the platform MBeanServer. */
+    private void register() {
+	if (this != INSTANCE) return;
+	if (registered.get() || !registered.compareAndSet(false, true)) return;
+	AccessController.doPrivileged(new PrivilegedAction<Object>() {
+	    @Override
+	    public Object run() {
+		try {
+		    ManagementFactory.getPlatformMBeanServer().registerMBean(
+			TrustCache.this,
+			new ObjectName("net.jini.security:type=TrustCache"));
+		} catch (Exception e) {
+		    logger.log(Levels.HANDLED,
+			"Unable to register trust cache MBean", e);
+		}
+		return null;
+	    }
+	});
+    }
+
+    @Override
+    public long getHits() {
+	return hits.get();
+    }
+
+    @Override
+    public long getMisses() {
+	return misses.get();
+    }
+
+    @Override
+    public long getExpirations() {
+	return expirations.get();
+    }
+
+    @Override
+    public long getEvictions() {
+	return cache == null ? 0L : cache.statistics().evictionCount();
+    }
+
+    @Override
+    public int getSize() {
+	if (cache == null) return 0;
+	int size = 0;
+	for (Verified verified : cache.values()) {
+	    size += verified.size();
+	}
+	return size;
+    }
+
+    @Override
+    public void clear() {
+	if (cache != null) cache.clear();
+    }
+
+    /**
+     * Identifies the circumstances of a verification: all fields are
+     * trusted objects, compared by identity except for the context.  The
+     * class, class loader and subject are weakly referenced, a key whose
+     * referents have been collected equals no other key.
+     */
+    static final class Key {
+	private final WeakReference<Class> type;
+	private final WeakReference<ClassLoader> loader;
+	private final Set context;
+	private final WeakReference<Subject> subject;
+	private final int hash;
+
+	Key(Class type, ClassLoader loader, Set context, Subject subject) {
+	    this.type = new WeakReference<Class>(type);
+	    this.loader = loader != null ?
+		new WeakReference<ClassLoader>(loader) : null;
+	    this.context = context;
+	    this.subject = subject != null ?
+		new WeakReference<Subject>(subject) : null;
+	    int h = System.identityHashCode(type);
+	    h = 31 * h + System.identityHashCode(loader);
+	    h = 31 * h + context.hashCode();
+	    h = 31 * h + System.identityHashCode(subject);
+	    hash = h;
+	}
+
+	boolean isCleared() {
+	    return type.get() == null
+		|| (loader != null && loader.get() == null)
+		|| (subject != null && subject.get() == null);
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+	    if (this == o) return true;
+	    if (!(o instanceof Key)) return false;
+	    Key k = (Key) o;
+	    return hash == k.hash && !isCleared()
+		&& type.get() == k.type.get()
+		&& get(loader) == get(k.loader)
+		&& get(subject) == get(k.subject)
+		&& context.equals(k.context);
+	}
+
+	private static <T> T get(WeakReference<T> ref) {
+	    return ref != null ? ref.get() : null;
+	}
+    }
+
+    /**
+     * The most recently verified objects for a key, most recent first,
+     * with the times at which they expire.
+     */
+    private final class Verified {
+	private final WeakReference<TrustEquivalence>[] objects =
+	    new WeakReference[INSTANCES];
+	private final long[] expires = new long[INSTANCES];
+	private int size;
+
+	synchronized boolean isTrusted(Object obj) {
+	    purge(System.currentTimeMillis());
+	    for (int i = 0; i < size; i++) {
+		TrustEquivalence verified = objects[i].get();
+		if (verified != null && verified.checkTrustEquivalence(obj)) {
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	synchronized void add(TrustEquivalence obj) {
+	    int n = Math.min(size, INSTANCES - 1);
+	    System.arraycopy(objects, 0, objects, 1, n);
+	    System.arraycopy(expires, 0, expires, 1, n);
+	    objects[0] = new WeakReference<TrustEquivalence>(obj);
+	    expires[0] = System.currentTimeMillis() + timeout;
+	    size = n + 1;
+	}
+
+	/**
+	 * Discards expired and collected objects, returning the number left.
+	 */
+	synchronized int purge(long now) {
+	    int n = 0;
+	    for (int i = 0; i < size; i++) {
+		if (expires[i] - now < 0) {
+		    expirations.incrementAndGet();
+		} else if (objects[i].get() != null) {
+		    objects[n] = objects[i];
+		    expires[n] = expires[i];
+		    n++;
+		}
+	    }
+	    for (int i = n; i < size; i++) objects[i] = null;
+	    size = n;
+	    return n;
+	}
+
+	synchronized int size() {
+	    return size;
+	}
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.security;
+
+/**
+ * Management interface of the cache of trust verification results kept by
+ * {@link Security#verifyObjectTrust Security.verifyObjectTrust}.  An
+ * instance is registered with the platform <code>MBeanServer</code> under
+ * the name <code>net.jini.security:type=TrustCache</code> when the cache is
+ * first used.
+ *
+ * @since 3.1.1
+ */
+public interface TrustCacheMXBean {
+
+    /**
+     * Returns the number of objects trusted because a trust equivalent
+     * object had been verified.
+     *
+     * @return the number of cache hits.
+     */
+    long getHits();
+
+    /**
+     * Returns the number of cacheable objects that had to be verified by
+     * the trust verifiers.
+     *
+     * @return the number of cache misses.
+     */
+    long getMisses();
+
+    /**
+     * Returns the number of cached results discarded because they had
+     * expired.
+     *
+     * @return the number of expired results.
+     */
+    long getExpirations();
+
+    /**
+     * Returns the number of cached results discarded to keep the cache
+     * within its bounds.
+     *
+     * @return the number of evicted results.
+     */
+    long getEvictions();
+
+    /**
+     * Returns the number of verified objects currently cached.
+     *
+     * @return the number of cached results.
+     */
+    int getSize();
+
+    /**
+     * Discards all cached results, so that every object is verified by the
+     * trust verifiers again.
+     *
+     * @see Security#clearTrustCache
+     */
+    void clear();
+}
@@ -0,0 +1,232 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.river.api.io;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.river.api.io.AtomicSerial.GetArg;
+import org.apache.river.api.io.AtomicSerial.ReadObject;
+
+/**
+ * The reflective accessors AtomicMarshalInputStream needs to reconstruct
+ * instances of a class, looked up once per class and shared by all streams,
+ * so that reading an object doesn't repeat getDeclaredField,
+ * getDeclaredMethod, getDeclaredConstructor or setAccessible calls.
+ * <p>
+ * Accessors are looked up lazily, on first use, with the same checks and
+ * exceptions as the lookups they replace; lookups that fail are not cached.
+ * Plans are held by a ClassValue, so they don't prevent class unloading.
+ *
+ * @since 3.1.1
+ */
+final class AccessorPlan {
+
+    private static final ClassValue<AccessorPlan> PLANS =
+	new ClassValue<AccessorPlan>() {
+	    @Override
+	    protected AccessorPlan computeValue(Class<?> type) {
+		return new AccessorPlan(type);
+	    }
+	};
+
+    /** Marks an absent field, method or descriptor in the lazy caches. */
+    private static final Object NONE = new Object();
+
+    /**
+     * Returns the plan for the given class.
+     */
+    static AccessorPlan of(Class<?> type) {
+	return PLANS.get(type);
+    }
+
+    private final Class<?> type;
+    /** Declared fields by name, accessible, or NONE. */
+    private final ConcurrentMap<String,Object> fields =
+	new ConcurrentHashMap<String,Object>();
+    /** Types of the first field with a name in the hierarchy, or NONE. */
+    private final ConcurrentMap<String,Object> fieldTypes =
+	new ConcurrentHashMap<String,Object>();
+    private volatile Object localDescriptor;
+    private volatile Object readObjectMethod;
+    private volatile Object readerMethod;
+    private volatile Constructor<?> atomicConstructor;
+    private volatile Method readResolveMethod;
+    private volatile Method privateReadObjectMethod;
+    private volatile boolean containerMethodsResolved;
+
+    private AccessorPlan(Class<?> type) {
+	this.type = type;
+    }
+
+    /**
+     * Returns the local serialization descriptor of the class, or null if
+     * it isn't serializable.
+     */
+    ObjectStreamClass localDescriptor() {
+	Object d = localDescriptor;
+	if (d == null) {
+	    d = ObjectStreamClass.lookup(type);
+	    if (d == null) d = NONE;
+	    localDescriptor = d;
+	}
+	return d == NONE ? null : (ObjectStreamClass) d;
+    }
+
+    /**
+     * Returns the accessible field of the given name declared by the class,
+     * or null if the class doesn't declare it.
+     */
+    Field field(final String name) {
+	Object f = fields.get(name);
+	if (f == null) {
+	    f = AccessController.doPrivileged(new PrivilegedAction<Object>() {
+		@Override
+		public Object run() {
+		    try {
+			Field f = type.getDeclaredField(name);
+			f.setAccessible(true);
+			return f;
+		    } catch (NoSuchFieldException ex) {
+			return NONE;
+		    } catch (SecurityException ex) {
+			Logger.getLogger(AtomicMarshalInputStream.class.getName())
+			    .log(Level.INFO, null, ex);
+			return NONE;
+		    }
+		}
+	    });
+	    fields.putIfAbsent(name, f);
+	}
+	return f == NONE ? null : (Field) f;
+    }
+
+    /**
+     * Returns the type of the first field of the given name found in the
+     * class or its superclasses, or null if there is no such field.
+     */
+    Class<?> fieldType(final String name) {
+	Object t = fieldTypes.get(name);
+	if (t == null) {
+	    t = AccessController.doPrivileged(new PrivilegedAction<Object>() {
+		@Override
+		public Object run() {
+		    for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			try {
+			    return c.getDeclaredField(name).getType();
+			} catch (NoSuchFieldException e) {
+			    // Ignored
+			}
+		    }
+		    return NONE;
+		}
+	    });
+	    fieldTypes.putIfAbsent(name, t);
+	}
+	return t == NONE ? null : (Class<?>) t;
+    }
+
+    /**
+     * Returns true if the class declares a readObject(ObjectInputStream)
+     * method, which AtomicMarshalInputStream doesn't support.
+     */
+    boolean declaresReadObject() {
+	Object m = readObjectMethod;
+	if (m == null) {
+	    m = AccessController.doPrivileged(new PrivilegedAction<Object>() {
+		@Override
+		public Object run() {
+		    try {
+			return type.getDeclaredMethod("readObject",
+			    ObjectInputStream.class);
+		    } catch (NoSuchMethodException ex) {
+			return NONE;
+		    }
+		}
+	    });
+	    readObjectMethod = m;
+	}
+	return m != NONE;
+    }
+
+    /**
+     * Returns a new ReadObject from the class's @ReadInput method, or null
+     * if it doesn't have one.
+     */
+    ReadObject streamReader() throws IOException {
+	Object m = readerMethod;
+	if (m == null) {
+	    m = AtomicSerial.Factory.readerMethod(type);
+	    if (m == null) m = NONE;
+	    readerMethod = m;
+	}
+	return m == NONE ? null : AtomicSerial.Factory.streamReader((Method) m);
+    }
+
+    /**
+     * Creates an instance of the class with its AtomicSerial constructor.
+     */
+    Object instantiate(GetArg arg) throws IOException, ClassNotFoundException {
+	return instantiate(type, arg);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T instantiate(Class<T> type, GetArg arg)
+	    throws IOException, ClassNotFoundException
+    {
+	Constructor<T> c = (Constructor<T>) atomicConstructor;
+	if (c == null) {
+	    c = AtomicSerial.Factory.constructor(type);
+	    atomicConstructor = c;
+	}
+	return AtomicSerial.Factory.instantiate(c, type, arg);
+    }
+
+    /**
+     * Returns the readResolve method an ObjectStreamClassContainer uses.
+     */
+    Method readResolveMethod() {
+	resolveContainerMethods();
+	return readResolveMethod;
+    }
+
+    /**
+     * Returns the readObject method an ObjectStreamClassContainer uses.
+     */
+    Method privateReadObjectMethod() {
+	resolveContainerMethods();
+	return privateReadObjectMethod;
+    }
+
+    private void resolveContainerMethods() {
+	if (containerMethodsResolved) return;
+	readResolveMethod = ObjectStreamClassContainer.getReadResolveMethod(type);
+	privateReadObjectMethod = ObjectStreamClassContainer.getPrivateInstanceMethod(
+	    type, "readObject", new Class[]{ObjectInputStream.class}, Object.class);
+	containerMethodsResolved = true;
+    }
+}
@@ -1360,52 +1360,23 @@ public class AtomicMarshalInputStream extends MarshalInputStream implements Atom
             throws OptionalDataException, ClassNotFoundException, IOException {
         // Now we must read all fields and assign them to the receiver
 //	System.out.println("readFieldValues called");
-	ObjectStreamClass lclass = ObjectStreamClass.lookup(classDesc.forClass());
         ObjectStreamField[] dfields = classDesc.getFields();
         dfields = (null == dfields ? new ObjectStreamField[0] : dfields);
         final Class<?> declaringClass = classDesc.forClass();
         if (declaringClass == null && mustResolve) {
             throw new ClassNotFoundException(classDesc.getName());
         }
-	
+	AccessorPlan plan = declaringClass == null ? null : AccessorPlan.of(declaringClass);
+	ObjectStreamClass lclass = plan == null ? null : plan.localDescriptor();
+	AccessorPlan objPlan = AccessorPlan.of(obj.getClass());
 
-//	System.out.println("Declaring class" + declaringClass);
         for (int i = 0, l = dfields.length; i < l; i++) {
 	    final ObjectStreamField dfield = dfields[i];
-            // get associated Field 
-//            long fieldID = fieldDesc.getFieldID(accessor, declaringClass);
-	    Field f = null;
-	    boolean exists = false;
-	    f = AccessController.doPrivileged(new PrivilegedAction<Field>(){
-
-		@Override
-		public Field run() {
-		    try {
-			return dfield == null || declaringClass == null ?  null : 
-				declaringClass.getDeclaredField(dfield.getName());
-		    } catch (NoSuchFieldException ex) {
-			return null;
-		    } catch (SecurityException ex) {
-			Logger.getLogger(AtomicMarshalInputStream.class.getName()).log(Level.INFO, null, ex);
-			return null;
-		    }
-		}
-		
-	    });
-	    if (f != null) exists = true;
-//	    if (fieldDesc != null) System.out.println("Field: " + fieldDesc + " is primitive " + fieldDesc.isPrimitive());
+	    Field f = dfield == null || plan == null ? null : plan.field(dfield.getName());
+	    boolean exists = f != null;
             // Code duplication starts, just because Java is typed
             if (dfield != null && dfield.isPrimitive()) {
-               IOException ex = AccessController.doPrivileged(
-		       new SetPrimitiveFieldAction(
-			       obj,
-			       input,
-			       f,
-			       exists,
-			       dfields[i].getTypeCode()
-		       )
-	       );
-	       if (ex != null) throw ex;
+		setPrimitiveField(obj, input, f, dfield.getTypeCode());
             } else {
                 // Object type (array included).
                 String fieldName = dfield == null ? null :
@@ -1419,7 +1390,7 @@ public class AtomicMarshalInputStream extends MarshalInputStream implements Atom
 		if (dfield != null && !dfield.isPrimitive()){
 		    try {
 			// Local field descriptor.
-			ObjectStreamField streamField = lclass.getField(fieldName);
+			ObjectStreamField streamField = lclass == null ? null : lclass.getField(fieldName);
 			// Class type is Object.class for deserialized fields
 			// therefore for defensive purposes we must use the local descriptor.
 			Class fieldType = streamField == null ? null : streamField.getType();
@@ -1454,7 +1425,7 @@ public class AtomicMarshalInputStream extends MarshalInputStream implements Atom
                 }
                 if (dfield != null) {
                     if (toSet != null) {
-                        Class<?> fieldType = getFieldClass(obj, fieldName);
+                        Class<?> fieldType = objPlan.fieldType(fieldName);
                         Class<?> valueType = toSet.getClass();
                         if (fieldType != null) {
 			    // Redundant check, but harmless.
@@ -1466,20 +1437,10 @@ public class AtomicMarshalInputStream extends MarshalInputStream implements Atom
                                                     + fieldName }));
                             }
                             try {
-				final Field fld = f;
-				final Object o = obj;
-				final Object toS = toSet;
-				if (exists) {
-				    AccessController.doPrivileged(new PrivilegedExceptionAction(){
-					@Override
-					public Object run() throws Exception {
-					    fld.setAccessible(true);
-					    fld.set(o, toS);
-					    return null;
-					}
-				    });
-				}
-			    } catch (PrivilegedActionException ex) {
+				if (exists) f.set(obj, toSet);
+			    } catch (IllegalAccessException ex) {
+				Logger.getLogger(AtomicMarshalInputStream.class.getName()).log(Level.INFO, null, ex);
+			    } catch (IllegalArgumentException ex) {
 				Logger.getLogger(AtomicMarshalInputStream.class.getName()).log(Level.INFO, null, ex);
 			    }
                         }
@@ -1489,95 +1450,58 @@ public class AtomicMarshalInputStream extends MarshalInputStream implements Atom
         }
     }
     
-    private static class SetPrimitiveFieldAction implements PrivilegedAction<IOException> {
-	private final Object obj;
-	private final DataInputStream input;
-	private final Field f;
-	private final boolean exists;
-	private final char typeCode;
-	
-	SetPrimitiveFieldAction(Object obj, DataInputStream in, Field f, boolean exists, char typeCode){
-	    this.input = in;
-	    this.f = f;
-	    this.exists = exists;
-	    this.typeCode = typeCode;
-	    this.obj = obj;
-	}
-
-	@Override
-	public IOException run() {
-	    try {
-		f.setAccessible(true);
-                    switch (typeCode) {
-                        case 'B':
-                            byte srcByte = input.readByte();
-			    if (exists) f.setByte(obj, srcByte);
-                            break;
-                        case 'C':
-                            char srcChar = input.readChar();
-                            if (exists) f.setChar(obj, srcChar);
-                            break;
-                        case 'D':
-                            double srcDouble = input.readDouble();
-			    if (exists) f.setDouble(obj, srcDouble);
-                            break;
-                        case 'F':
-                            float srcFloat = input.readFloat();
-                            if (exists) f.setFloat(obj, srcFloat);
-                            break;
-                        case 'I':
-                            int srcInt = input.readInt();
-                            if (exists) f.setInt(obj, srcInt);
-                            break;
-                        case 'J':
-                            long srcLong = input.readLong();
-                            if (exists) f.setLong(obj, srcLong);
-                            break;
-                        case 'S':
-                            short srcShort = input.readShort();
-                            if (exists) f.setShort(obj, srcShort);
-                            break;
-                        case 'Z':
-                            boolean srcBoolean = input.readBoolean();
-                            if (exists) f.setBoolean(obj, srcBoolean);
-                            break;
-                        default:
-                            throw new StreamCorruptedException(Messages.getString(
-                                    "luni.BF", typeCode)); //$NON-NLS-1$
-                    }
-                } catch (NoSuchFieldError err) {
-		    Logger.getLogger(AtomicMarshalInputStream.class.getName()).log(Level.INFO, null, err);
-                } catch (IllegalArgumentException ex) {
-		    Logger.getLogger(AtomicMarshalInputStream.class.getName()).log(Level.INFO, null, ex);
-		} catch (IllegalAccessException ex) {
-		    Logger.getLogger(AtomicMarshalInputStream.class.getName()).log(Level.INFO, null, ex);
-		} catch (IOException ex) {
-		    return ex;
+    /**
+     * Reads a primitive field value and sets it, the value is read and
+     * discarded if the field doesn't exist locally.
+     * 
+     * @param f accessible field from the AccessorPlan, or null.
+     */
+    private static void setPrimitiveField(Object obj, DataInputStream input,
+	    Field f, char typeCode) throws IOException
+    {
+	try {
+	    switch (typeCode) {
+		case 'B':
+		    byte srcByte = input.readByte();
+		    if (f != null) f.setByte(obj, srcByte);
+		    break;
+		case 'C':
+		    char srcChar = input.readChar();
+		    if (f != null) f.setChar(obj, srcChar);
+		    break;
+		case 'D':
+		    double srcDouble = input.readDouble();
+		    if (f != null) f.setDouble(obj, srcDouble);
+		    break;
+		case 'F':
+		    float srcFloat = input.readFloat();
+		    if (f != null) f.setFloat(obj, srcFloat);
+		    break;
+		case 'I':
+		    int srcInt = input.readInt();
+		    if (f != null) f.setInt(obj, srcInt);
+		    break;
+		case 'J':
+		    long srcLong = input.readLong();
+		    if (f != null) f.setLong(obj, srcLong);
+		    break;
+		case 'S':
+		    short srcShort = input.readShort();
+		    if (f != null) f.setShort(obj, srcShort);
+		    break;
+		case 'Z':
+		    boolean srcBoolean = input.readBoolean();
+		    if (f != null) f.setBoolean(obj, srcBoolean);
+		    break;
+		default:
+		    throw new StreamCorruptedException(Messages.getString(
+			    "luni.BF", typeCode)); //$NON-NLS-1$
 	    }
-	    return null;
+	} catch (IllegalArgumentException ex) {
+	    Logger.getLogger(AtomicMarshalInputStream.class.getName()).log(Level.INFO, null, ex);
+	} catch (IllegalAccessException ex) {
+	    Logger.getLogger(AtomicMarshalInputStream.class.getName()).log(Level.INFO, null, ex);
 	}
-	
-    }
-
-    private static Class<?> getFieldClass(final Object obj,
-                                          final String fieldName) {
-        return AccessController.doPrivileged(new PrivilegedAction<Class<?>>() {
-		@Override
-                public Class<?> run() {
-                    Class<?> objClass = obj.getClass();
-                    while (objClass != null) {
-                        try {
-                            Class<?> fc =
-                                objClass.getDeclaredField(fieldName).getType();
-                            return fc;
-                        } catch (NoSuchFieldException e) {
-                            // Ignored
-                        }
-                        objClass = objClass.getSuperclass();
-                    }
-                    return null;
-                }
-            });
     }
 
     /**
@@ -1802,16 +1726,10 @@ public class AtomicMarshalInputStream extends MarshalInputStream implements Atom
         currentObject = object;
         currentClass = classDesc;
 	Class<?> targetClass = classDesc.forClass();
-	Class [] paramTypes = {ObjectOutputStream.class};
-        final Method readMethod;
-        if (targetClass == null || !mustResolve) {
-            readMethod = null;
-        } else {
-	    paramTypes[0] = ObjectInputStream.class;
-            readMethod = getMethod(targetClass, "readObject", paramTypes);
-        }
+        final boolean hasReadMethod = targetClass != null && mustResolve
+		&& AccessorPlan.of(targetClass).declaresReadObject();
         try {
-            if (readMethod != null) { //  readObject not supported.
+            if (hasReadMethod) { //  readObject not supported.
                 throw new InvalidObjectException ("readObject method not supported");
             } else {
 		//defaultReadObject()
@@ -2796,7 +2714,7 @@ public class AtomicMarshalInputStream extends MarshalInputStream implements Atom
 	    // so we do our best to retrieve it.
 	    
 	    if (c != null) {
-		ReadObject reader = AtomicSerial.Factory.streamReader(c);
+		ReadObject reader = AccessorPlan.of(c).streamReader();
 		if (reader != null){
 		    reader.read(this);
 		    readers.put(c, reader);
@@ -2811,9 +2729,7 @@ public class AtomicMarshalInputStream extends MarshalInputStream implements Atom
 	GetArg arg = new GetArgImpl(fields, readers, this);
 	Object result = discard ? 
 		Reference.DISCARDED : 
-		Factory.instantiate(classDesc.forClass(),
-		    arg
-		);
+		AccessorPlan.of(classDesc.forClass()).instantiate(arg);
 	return result;
     }
 
@@ -254,11 +254,24 @@ public @interface AtomicSerial {
 		throws IOException, ClassNotFoundException {
 	    if (arg == null) throw new NullPointerException();
 	    if (type == null) throw new NullPointerException();
+	    return instantiate(constructor(type), type, arg);
+	}
+
+	/**
+	 * Returns the accessible AtomicSerial constructor of the given class,
+	 * so de-serializers can look it up once per class.
+	 * 
+	 * @param <T> AtomicSerial implementation type.
+	 * @param type AtomicSerial implementing class.
+	 * @return the constructor taking a GetArg parameter.
+	 * @throws InvalidClassException if constructor is non compliant
+	 * or doesn't exist.
+	 */
+	static <T> Constructor<T> constructor(final Class<T> type)
+		throws InvalidClassException {
 	    final Class[] param = { GetArg.class };
-	    Object[] args = { arg };
-	    Constructor<T> c;
 	    try {
-		c = AccessController.doPrivileged(
+		return AccessController.doPrivileged(
 		    new PrivilegedExceptionAction<Constructor<T>>(){
 
 			@Override
@@ -282,7 +295,6 @@ public @interface AtomicSerial {
 			}
 
 		    });
-		return c.newInstance(args);
 	    } catch (PrivilegedActionException ex) {
 		Exception e = ex.getException();
 		if (e instanceof NoSuchMethodException) throw new InvalidClassException(type.getCanonicalName(), "No matching AtomicSerial constructor signature found");
@@ -291,6 +303,25 @@ public @interface AtomicSerial {
 		InvalidClassException ice = new InvalidClassException("Unexpected exception while attempting to access constructor");
 		ice.initCause(ex);
 		throw ice;
+	    }
+	}
+
+	/**
+	 * Invokes a constructor obtained from {@link #constructor(Class)}.
+	 * 
+	 * @param <T> AtomicSerial implementation type.
+	 * @param c AtomicSerial constructor of type.
+	 * @param type AtomicSerial implementing class.
+	 * @param arg GetArg caller sensitive arguments used by implementing constructor.
+	 * @return new instance of T.
+	 * @throws java.lang.ClassNotFoundException 
+	 * @throws java.io.InvalidObjectException if invariant check fails
+	 */
+	static <T> T instantiate(Constructor<T> c, Class<T> type, GetArg arg)
+		throws IOException, ClassNotFoundException {
+	    Object[] args = { arg };
+	    try {
+		return c.newInstance(args);
 	    } catch (InvocationTargetException ex) {
 		Throwable e = ex.getCause();
 		if (e instanceof InvalidObjectException) throw (InvalidObjectException) e;
@@ -321,8 +352,21 @@ public @interface AtomicSerial {
 	 */
 	public static ReadObject streamReader( final Class<?> streamClass) throws IOException {
 	    if (streamClass == null) throw new NullPointerException();
+	    return streamReader(readerMethod(streamClass));
+	}
+
+	/**
+	 * Returns the accessible static method annotated with @ReadInput
+	 * declared by the given class, or null if there isn't one, so
+	 * de-serializers can look it up once per class.
+	 * 
+	 * @param streamClass
+	 * @return the @ReadInput method or null.
+	 * @throws IOException 
+	 */
+	static Method readerMethod(final Class<?> streamClass) throws IOException {
 	    try {
-		Method readerMethod = AccessController.doPrivileged(
+		return AccessController.doPrivileged(
 		    new PrivilegedExceptionAction<Method>(){
 			@Override
 			public Method run() throws Exception {
@@ -336,16 +380,27 @@ public @interface AtomicSerial {
 			}
 		    }
 		);
-		if (readerMethod != null){
-		    ReadObject result = (ReadObject) readerMethod.invoke(null, (Object []) null);
-		    return result;
-		}
 	    } catch (PrivilegedActionException ex) {
 		Exception e = ex.getException();
 		if (e instanceof SecurityException ) throw (SecurityException) e;
 		InvalidClassException ice = new InvalidClassException("Unexpected exception while attempting to obtain Reader");
 		ice.initCause(ex);
 		throw ice;
+	    }
+	}
+
+	/**
+	 * Obtains a new ReadObject instance from a method obtained from
+	 * {@link #readerMethod(Class)}.
+	 * 
+	 * @param readerMethod the @ReadInput method or null.
+	 * @return a new ReadObject or null if readerMethod is null.
+	 * @throws IOException 
+	 */
+	static ReadObject streamReader(Method readerMethod) throws IOException {
+	    if (readerMethod == null) return null;
+	    try {
+		return (ReadObject) readerMethod.invoke(null, (Object []) null);
 	    } catch (IllegalAccessException ex) {
 		throw new AssertionError("This shouldn't happen ", ex);
 	    } catch (IllegalArgumentException ex) {
@@ -355,7 +410,6 @@ public @interface AtomicSerial {
 		ice.initCause(ex);
 		throw ice;
 	    }
-	    return null;
 	}
     }
 
@@ -382,7 +382,7 @@ class ObjectStreamClassContainer {
 	return readObjectNoDataMethod != null;
     }
 
-    Method getPrivateInstanceMethod(final Class<?> c, final String methodName, final Class<?>[] parameters, final Class<?> returnType) {
+    static Method getPrivateInstanceMethod(final Class<?> c, final String methodName, final Class<?>[] parameters, final Class<?> returnType) {
 	return AccessController.doPrivileged(new PrivilegedAction<Method>() {
 	    @Override
 	    public Method run() {
@@ -405,14 +405,14 @@ class ObjectStreamClassContainer {
     void setClass(final Class<?> c) throws ClassNotFoundException {
 	if (c == null) throw new NullPointerException("class cannot be null");
 	resolvedClass = c;
-	readResolveMethod = getReadResolveMethod(c);
-	Class[] params = {ObjectInputStream.class};
-	readObjectMethod = getPrivateInstanceMethod(c, "readObject", params, Object.class);
+	AccessorPlan plan = AccessorPlan.of(c);
+	readResolveMethod = plan.readResolveMethod();
+	readObjectMethod = plan.privateReadObjectMethod();
 //	readObjectNoDataMethod = getPrivateInstanceMethod(c, "readObjectNoData", null, Void.TYPE);
 	putInMap();
     }
 
-    Method getReadResolveMethod(final Class<?> c) {
+    static Method getReadResolveMethod(final Class<?> c) {
 	return AccessController.doPrivileged(new PrivilegedAction<Method>() {
 	    @Override
 	    public Method run() {
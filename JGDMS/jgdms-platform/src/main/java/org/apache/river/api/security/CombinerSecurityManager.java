@@ -50,6 +50,7 @@ import java.util.logging.Logger;
 import net.jini.security.Security;
 import net.jini.security.SecurityContext;
 import net.jini.security.policy.PolicyInitializationException;
+import org.apache.river.collection.BoundedCache;
 import org.apache.river.concurrent.RC;
 import org.apache.river.concurrent.Ref;
 import org.apache.river.concurrent.Referrer;
@@ -74,6 +75,12 @@ import org.apache.river.thread.NamedThreadFactory;
  * Note: this security manager is not compatible with the jvm option
  * -Djava.security.manager=
  * 
+ * By default cached contexts and their checked permissions expire after a
+ * period of no access.  Setting the system property
+ * org.apache.river.api.security.CombinerSecurityManager.cacheSize to a
+ * positive integer instead bounds each cache to that number of contexts,
+ * evicting the least frequently used.
+ * 
  * @see Security
  * @see SecurityContext
  * @see AccessControlContext
@@ -165,15 +172,24 @@ extends SecurityManager implements CachingSecurityManager {
         context[0] = privilegedDomain;
         SMPrivilegedContext = new AccessControlContext(context);
         dc = new DelegateDomainCombiner();
-        ConcurrentMap<Referrer<AccessControlContext>, 
-                Referrer<AccessControlContext>> internal = 
-                new ConcurrentHashMap<Referrer<AccessControlContext>, 
-                Referrer<AccessControlContext>>();
-        contextCache = RC.concurrentMap(internal, Ref.TIME, Ref.STRONG, 60000L, 60000L);
-        ConcurrentMap<Referrer<Object>, Referrer<NavigableSet<Permission>>> refmap 
-                = new ConcurrentHashMap<Referrer<Object>, 
-                Referrer<NavigableSet<Permission>>>();
-        checked = RC.concurrentMap(refmap, Ref.TIME, Ref.STRONG, 20000L, 20000L);
+        int cacheSize = Integer.getInteger(
+            "org.apache.river.api.security.CombinerSecurityManager.cacheSize", 0);
+        if (cacheSize > 0){
+            // Size bounded caches, retaining the most frequently used contexts.
+            contextCache = 
+                new BoundedCache<AccessControlContext, AccessControlContext>(cacheSize);
+            checked = new BoundedCache<Object, NavigableSet<Permission>>(cacheSize);
+        } else {
+            ConcurrentMap<Referrer<AccessControlContext>, 
+                    Referrer<AccessControlContext>> internal = 
+                    new ConcurrentHashMap<Referrer<AccessControlContext>, 
+                    Referrer<AccessControlContext>>();
+            contextCache = RC.concurrentMap(internal, Ref.TIME, Ref.STRONG, 60000L, 60000L);
+            ConcurrentMap<Referrer<Object>, Referrer<NavigableSet<Permission>>> refmap 
+                    = new ConcurrentHashMap<Referrer<Object>, 
+                    Referrer<NavigableSet<Permission>>>();
+            checked = RC.concurrentMap(refmap, Ref.TIME, Ref.STRONG, 20000L, 20000L);
+        }
         g = new SecurityPermission("getPolicy");
         action = new Action();
         inTrustedCodeRecursiveCall = new ThreadLocal<Boolean>();
@@ -433,9 +433,17 @@ class DiscoveryV1 extends Discovery {
 	// write LUS proxy
 	ObjectOutputStream oout = new ObjectOutputStream(
 	    new BufferedOutputStream(socket.getOutputStream()));
-	oout.writeObject(
-	    new MarshalledInstance(
-		response.getRegistrar(), context).convertToMarshalledObject());
+	boolean shareable = UnicastResponse.isShareable(context);
+	MarshalledObject mo = shareable ? (MarshalledObject)
+	    response.getMarshalled(UnicastResponse.MARSHALLED_OBJECT) : null;
+	if (mo == null) {
+	    mo = new MarshalledInstance(
+		response.getRegistrar(), context).convertToMarshalledObject();
+	    if (shareable) {
+		response.setMarshalled(UnicastResponse.MARSHALLED_OBJECT, mo);
+	    }
+	}
+	oout.writeObject(mo);
 
 	// write LUS member groups
 	String[] groups = response.getGroups();
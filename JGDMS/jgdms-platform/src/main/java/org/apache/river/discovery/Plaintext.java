@@ -434,6 +434,11 @@ public class Plaintext {
 	    // MarshalOutputStream
 	    MarshalledInstance mi = null;
 	    Object registrar = response.getRegistrar();
+	    boolean shareable = UnicastResponse.isShareable(context);
+	    if (shareable) {
+		mi = (MarshalledInstance) response.getMarshalled(
+		    UnicastResponse.MARSHALLED_INSTANCE);
+	    }
 	    if (context != null){
 		for (Object o : context){
 		    if (o instanceof AtomicValidationEnforcement &&
@@ -448,7 +453,13 @@ public class Plaintext {
 	    } else { // Avoid NPE.
 		context = Collections.EMPTY_SET;
 	    }
-	    mi = new MarshalledInstance(registrar, context);
+	    if (mi == null) {
+		mi = new MarshalledInstance(registrar, context);
+		if (shareable) {
+		    response.setMarshalled(
+			UnicastResponse.MARSHALLED_INSTANCE, mi);
+		}
+	    }
 	    new ObjectOutputStream(out).writeObject(mi);
 	} catch (RuntimeException e) {
 	    throw new DiscoveryProtocolException(null, e);
@@ -490,7 +501,23 @@ public class Plaintext {
 	    // it writes codebase annotations, it isn't compatible with
 	    // ObjectOutputStream
 	    Object registrar = response.getRegistrar();
-	    new AtomicMarshalOutputStream(out, getLoader(registrar), context, true).writeObject(registrar);
+	    if (!UnicastResponse.isShareable(context)) {
+		new AtomicMarshalOutputStream(out, getLoader(registrar), context, true).writeObject(registrar);
+		return;
+	    }
+	    byte[] bytes = (byte[]) response.getMarshalled(
+		UnicastResponse.SERIALIZED_REGISTRAR);
+	    if (bytes == null) {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream(1024);
+		AtomicMarshalOutputStream mout = new AtomicMarshalOutputStream(
+		    bout, getLoader(registrar), context, true);
+		mout.writeObject(registrar);
+		mout.flush();
+		bytes = bout.toByteArray();
+		response.setMarshalled(
+		    UnicastResponse.SERIALIZED_REGISTRAR, bytes);
+	    }
+	    out.write(bytes);
 	} catch (RuntimeException e) {
 	    throw new DiscoveryProtocolException(null, e);
 	}
@@ -19,10 +19,19 @@
 package org.apache.river.discovery;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import net.jini.core.lookup.ServiceRegistrar;
 
 /**
  * Class representing the values obtained as the result of unicast discovery.
+ * <p>
+ * When responding to unicast discovery without a marshalling context, the
+ * discovery protocol implementations marshal the registrar proxy of an
+ * instance at most once for each response format and reuse the result, a
+ * lookup service may therefore use the same instance for all of its
+ * responses, until its host, port, member groups or proxy change.
  *
  * @author Sun Microsystems, Inc.
  * @since 2.0
@@ -38,6 +47,16 @@ public class UnicastResponse {
     /** The lookup service proxy. */
     private final ServiceRegistrar registrar;
 
+    /** Key of the marshalled registrar written by DiscoveryV1. */
+    static final int MARSHALLED_OBJECT = 0;
+    /** Key of the marshalled registrar written by the plaintext format. */
+    static final int MARSHALLED_INSTANCE = 1;
+    /** Key of the serialized registrar written by the V2 response. */
+    static final int SERIALIZED_REGISTRAR = 2;
+    /** Marshalled forms of the registrar, keyed by the above. */
+    private final ConcurrentMap<Integer,Object> marshalled =
+	new ConcurrentHashMap<Integer,Object>(4);
+
     /**
      * Creates new <code>UnicastResponse</code> instance containing the given
      * values.  The <code>groups</code> array is copied; a <code>null</code>
@@ -109,6 +128,30 @@ public class UnicastResponse {
 	return registrar;
     }
 
+    /**
+     * Returns the marshalled form of the registrar previously recorded for
+     * the given key, or <code>null</code>.
+     */
+    Object getMarshalled(int key) {
+	return marshalled.get(Integer.valueOf(key));
+    }
+
+    /**
+     * Records the marshalled form of the registrar for the given key, it
+     * must be immutable, or never modified.
+     */
+    void setMarshalled(int key, Object value) {
+	marshalled.putIfAbsent(Integer.valueOf(key), value);
+    }
+
+    /**
+     * Returns true if the marshalled form of the registrar may be shared
+     * for the given marshalling context, that is, the context is empty.
+     */
+    static boolean isShareable(Collection context) {
+	return context == null || context.isEmpty();
+    }
+
     /**
      * Returns a string representation of this response.
      *
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.security;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.rmi.RemoteException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.jini.security.proxytrust.TrustEquivalence;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests caching of verified objects by Security.verifyObjectTrust.
+ */
+public class TrustCacheTest {
+
+    static final AtomicInteger verifications = new AtomicInteger();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ClassLoader loader;
+    private TrustCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+	final File services = folder.newFile("verifiers");
+	FileOutputStream out = new FileOutputStream(services);
+	try {
+	    out.write(CountingVerifier.class.getName().getBytes("UTF-8"));
+	} finally {
+	    out.close();
+	}
+	loader = new ClassLoader(getClass().getClassLoader()) {
+	    @Override
+	    public Enumeration<URL> getResources(String name)
+		throws IOException
+	    {
+		if (name.equals(
+		    "META-INF/services/net.jini.security.TrustVerifier"))
+		{
+		    return Collections.enumeration(
+			Collections.singleton(services.toURI().toURL()));
+		}
+		return super.getResources(name);
+	    }
+	};
+	cache = new TrustCache(256, 60000L);
+	verifications.set(0);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+	Assume.assumeTrue(
+	    System.getProperty("org.apache.river.security.trustCacheSize") == null);
+	Security.verifyObjectTrust(new Proxy(1), loader, Collections.EMPTY_SET);
+	Security.verifyObjectTrust(new Proxy(1), loader, Collections.EMPTY_SET);
+	assertEquals(2, verifications.get());
+	assertEquals(0, TrustCache.INSTANCE.getSize());
+    }
+
+    @Test
+    public void testTrustEquivalentObjectsVerifiedOnce() throws Exception {
+	verify(new Proxy(1), Collections.EMPTY_SET);
+	verify(new Proxy(1), Collections.EMPTY_SET);
+	assertEquals(1, verifications.get());
+	verify(new Proxy(2), Collections.EMPTY_SET);
+	assertEquals(2, verifications.get());
+	verify(new Proxy(1), Collections.EMPTY_SET);
+	assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void testDifferentContextVerified() throws Exception {
+	verify(new Proxy(1), Collections.EMPTY_SET);
+	verify(new Proxy(1), Collections.singleton("constraints"));
+	assertEquals(2, verifications.get());
+	verify(new Proxy(1), Collections.singletonList("constraints"));
+	assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+	verify(new Proxy(1), Collections.EMPTY_SET);
+	cache.clear();
+	verify(new Proxy(1), Collections.EMPTY_SET);
+	assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void testUntrustedNotCached() throws Exception {
+	for (int i = 0; i < 2; i++) {
+	    try {
+		verify(new Proxy(-1), Collections.EMPTY_SET);
+		fail("untrusted object verified");
+	    } catch (SecurityException e) {
+	    }
+	}
+	assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void testOtherObjectsNotCached() throws Exception {
+	verify("trusted", Collections.EMPTY_SET);
+	verify("trusted", Collections.EMPTY_SET);
+	assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+	cache = new TrustCache(256, 1L);
+	verify(new Proxy(1), Collections.EMPTY_SET);
+	Thread.sleep(10L);
+	verify(new Proxy(1), Collections.EMPTY_SET);
+	assertEquals(2, verifications.get());
+	assertEquals(1, cache.getExpirations());
+	assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testVerifiedObjectsWeaklyReferenced() throws Exception {
+	Proxy proxy = new Proxy(1);
+	verify(proxy, Collections.EMPTY_SET);
+	WeakReference<Proxy> ref = new WeakReference<Proxy>(proxy);
+	proxy = null;
+	for (int i = 0; i < 50 && ref.get() != null; i++) {
+	    System.gc();
+	    Thread.sleep(10L);
+	}
+	assertNull("cache keeps verified object reachable", ref.get());
+	verify(new Proxy(1), Collections.EMPTY_SET);
+	assertEquals(2, verifications.get());
+	assertEquals(1, cache.getSize());
+    }
+
+    private void verify(Object obj, Collection context)
+	throws RemoteException
+    {
+	Security.verifyObjectTrust(obj, loader, context, cache);
+    }
+
+    public static class CountingVerifier implements TrustVerifier {
+	@Override
+	public boolean isTrustedObject(Object obj, TrustVerifier.Context ctx) {
+	    verifications.incrementAndGet();
+	    return obj instanceof String ||
+		(obj instanceof Proxy && ((Proxy) obj).id >= 0);
+	}
+    }
+
+    static class Proxy implements TrustEquivalence {
+	final int id;
+
+	Proxy(int id) {
+	    this.id = id;
+	}
+
+	@Override
+	public boolean checkTrustEquivalence(Object obj) {
+	    return obj instanceof Proxy && ((Proxy) obj).id == id;
+	}
+
+	@Override
+	public int hashCode() {
+	    throw new AssertionError("untrusted object's hashCode called");
+	}
+
+	@Override
+	public String toString() {
+	    return "Proxy[" + id + "]";
+	}
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.discovery;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.util.Collection;
+import java.util.Collections;
+import net.jini.core.lookup.ServiceRegistrar;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the marshalled registrar cached by a {@link UnicastResponse}
+ * produces the same encoding as marshalling the registrar afresh, for
+ * discovery protocol version 1 and the plaintext unicast formats.
+ */
+public class UnicastResponseEncodingTest {
+
+    private static final Collection NO_CONTEXT = Collections.EMPTY_SET;
+
+    private final UnicastResponse shared = response();
+
+    @Test
+    public void testPlaintext() throws Exception {
+	byte[] first = plaintext(shared, NO_CONTEXT);
+	Object cached = shared.getMarshalled(
+	    UnicastResponse.MARSHALLED_INSTANCE);
+	assertNotNull(cached);
+	byte[] second = plaintext(shared, NO_CONTEXT);
+	assertSame(cached, shared.getMarshalled(
+	    UnicastResponse.MARSHALLED_INSTANCE));
+	assertArrayEquals(plaintext(response(), NO_CONTEXT), first);
+	assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testV2Plaintext() throws Exception {
+	byte[] first = v2Plaintext(shared, NO_CONTEXT);
+	Object cached = shared.getMarshalled(
+	    UnicastResponse.SERIALIZED_REGISTRAR);
+	assertNotNull(cached);
+	byte[] second = v2Plaintext(shared, NO_CONTEXT);
+	assertSame(cached, shared.getMarshalled(
+	    UnicastResponse.SERIALIZED_REGISTRAR));
+	assertArrayEquals(v2Plaintext(response(), NO_CONTEXT), first);
+	assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testV1() throws Exception {
+	byte[] first = v1(shared, NO_CONTEXT);
+	Object cached = shared.getMarshalled(
+	    UnicastResponse.MARSHALLED_OBJECT);
+	assertNotNull(cached);
+	byte[] second = v1(shared, NO_CONTEXT);
+	assertSame(cached, shared.getMarshalled(
+	    UnicastResponse.MARSHALLED_OBJECT));
+	assertArrayEquals(v1(response(), NO_CONTEXT), first);
+	assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testNullContextIsShared() throws Exception {
+	assertArrayEquals(plaintext(response(), NO_CONTEXT),
+			  plaintext(shared, null));
+	assertNotNull(shared.getMarshalled(
+	    UnicastResponse.MARSHALLED_INSTANCE));
+    }
+
+    @Test
+    public void testContextIsNotShared() throws Exception {
+	Collection context = Collections.singleton("context");
+	plaintext(shared, context);
+	v2Plaintext(shared, context);
+	v1(shared, context);
+	assertNull(shared.getMarshalled(UnicastResponse.MARSHALLED_INSTANCE));
+	assertNull(shared.getMarshalled(UnicastResponse.SERIALIZED_REGISTRAR));
+	assertNull(shared.getMarshalled(UnicastResponse.MARSHALLED_OBJECT));
+    }
+
+    private static byte[] plaintext(UnicastResponse response,
+				    Collection context)
+	throws IOException
+    {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	Plaintext.writeUnicastResponse(out, response, context);
+	return out.toByteArray();
+    }
+
+    private static byte[] v2Plaintext(UnicastResponse response,
+				      Collection context)
+	throws IOException
+    {
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	Plaintext.writeV2UnicastResponse(out, response, context);
+	return out.toByteArray();
+    }
+
+    private static byte[] v1(UnicastResponse response, Collection context)
+	throws IOException
+    {
+	final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	Socket socket = new Socket() {
+	    public OutputStream getOutputStream() {
+		return out;
+	    }
+	};
+	DiscoveryV1.getInstance().handleUnicastDiscovery(
+	    response, socket, null, null, context);
+	return out.toByteArray();
+    }
+
+    private static UnicastResponse response() {
+	ServiceRegistrar registrar = (ServiceRegistrar) Proxy.newProxyInstance(
+	    ServiceRegistrar.class.getClassLoader(),
+	    new Class[] {ServiceRegistrar.class}, new Handler());
+	return new UnicastResponse(
+	    "host", 4160, new String[] {"a", "b"}, registrar);
+    }
+
+    private static class Handler implements InvocationHandler, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public Object invoke(Object proxy, Method method, Object[] args) {
+	    throw new UnsupportedOperationException();
+	}
+    }
+}
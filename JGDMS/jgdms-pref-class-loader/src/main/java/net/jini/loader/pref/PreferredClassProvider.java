@@ -56,8 +56,10 @@ import java.util.logging.Logger;
 import net.jini.loader.ClassAnnotation;
 import net.jini.loader.DownloadPermission;
 import net.jini.loader.LoadClass;
+import org.apache.river.action.GetIntegerAction;
 import org.apache.river.action.GetPropertyAction;
 import org.apache.river.api.net.Uri;
+import org.apache.river.collection.BoundedCache;
 import org.apache.river.concurrent.RC;
 import org.apache.river.concurrent.Ref;
 import org.apache.river.concurrent.Referrer;
@@ -157,6 +159,25 @@ import org.apache.river.logging.LogDispatch;
  * different IP addresses, provided they can be reached by their domain name
  * address.
  *
+ * <p>Classes resolved by {@link #loadClass loadClass} are cached, shared by
+ * all instances, keyed by the codebase annotation, the class name, the
+ * default loader and the current thread's context class loader.  The cache
+ * refers to loaders and classes weakly, so it doesn't prevent them from
+ * being garbage collected.  Where a class was resolved by the codebase
+ * loader with a security manager installed, the permission to access that
+ * loader is checked again each time the cached class is used.  The
+ * <code>net.jini.loader.pref.resolutionCacheSize</code> system property
+ * sets the maximum number of cached classes, the default is 1024, zero
+ * disables the cache.  Cache statistics are available through the
+ * {@link ResolutionCacheMXBean} registered with the platform
+ * <code>MBeanServer</code>.
+ *
+ * <p>Parsed codebase annotations are also cached, each expiring after a
+ * period of no access.  If the
+ * <code>net.jini.loader.pref.codebaseCacheSize</code> system property is
+ * set to a positive integer, the number of cached annotations is bounded
+ * instead, retaining those used most frequently.
+ *
  * <p>The methods {@link #loadClass loadClass}, {@link #loadProxyClass
  * loadProxyClass}, and {@link #getClassLoader getClassLoader}, which
  * each have a <code>String</code> parameter named
@@ -343,24 +364,48 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
     
     /**
      * URL cache is time based, we need this to be as fast as possible,
-     * every remote class to be loaded is annotated.  Tuning may be required.
+     * every remote class to be loaded is annotated.  Tuning may be required,
+     * the net.jini.loader.pref.codebaseCacheSize property replaces time
+     * based expiry with a size bound.
      */
     private final static ConcurrentMap<List<Uri>,URL[]> urlCache;
     private final static ConcurrentMap<String,Uri[]> uriCache;
     
     
     static {
-        ConcurrentMap<Referrer<List<Uri>>,Referrer<URL[]>> intern =
-                new ConcurrentHashMap<Referrer<List<Uri>>,Referrer<URL[]>>();
-        urlCache = RC.concurrentMap(intern, Ref.TIME, Ref.STRONG, 10000L, 10000L);
-        ConcurrentMap<Referrer<String>,Referrer<Uri[]>> intern1 =
-                new ConcurrentHashMap<Referrer<String>,Referrer<Uri[]>>();
-        uriCache = RC.concurrentMap(intern1, Ref.TIME, Ref.STRONG, 10000L, 10000L);
+        Integer codebaseCacheSize = AccessController.doPrivileged(
+            new GetIntegerAction("net.jini.loader.pref.codebaseCacheSize", 0));
+        if (codebaseCacheSize.intValue() > 0) {
+            // Size bounded, retaining the most frequently used codebases.
+            urlCache = new BoundedCache<List<Uri>,URL[]>(codebaseCacheSize.intValue());
+            uriCache = new BoundedCache<String,Uri[]>(codebaseCacheSize.intValue());
+        } else {
+            ConcurrentMap<Referrer<List<Uri>>,Referrer<URL[]>> intern =
+                    new ConcurrentHashMap<Referrer<List<Uri>>,Referrer<URL[]>>();
+            urlCache = RC.concurrentMap(intern, Ref.TIME, Ref.STRONG, 10000L, 10000L);
+            ConcurrentMap<Referrer<String>,Referrer<Uri[]>> intern1 =
+                    new ConcurrentHashMap<Referrer<String>,Referrer<Uri[]>>();
+            uriCache = RC.concurrentMap(intern1, Ref.TIME, Ref.STRONG, 10000L, 10000L);
+        }
                 ConcurrentMap<Referrer<LoaderKey>,Referrer<ClassLoader>> internal =
                 new ConcurrentHashMap<Referrer<LoaderKey>,Referrer<ClassLoader>>();
         loaderTable = RC.concurrentMap(internal, Ref.STRONG, Ref.WEAK_IDENTITY, 5000L, 5000L);
     }
     
+    /**
+     * Cache of classes resolved by loadClass, shared by all instances for
+     * the same reasons as loaderTable, or null if disabled.  Hits that
+     * depend on permission to access the codebase loader repeat that
+     * check in the caller's security context.
+     */
+    private static final ResolutionCache resolutionCache;
+    static {
+	Integer size = AccessController.doPrivileged(new GetIntegerAction(
+	    "net.jini.loader.pref.resolutionCacheSize", 1024));
+	resolutionCache = size.intValue() > 0 ?
+	    new ResolutionCache(size.intValue()) : null;
+    }
+    
     /**
      * Creates a new <code>PreferredClassProvider</code>.
      *
@@ -407,13 +452,8 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
     protected PreferredClassProvider(boolean requireDlPerm) {
 	this(
 	    check(requireDlPerm),
-	    RC.concurrentMap(
-		 new ConcurrentHashMap<Referrer<ClassLoader>,
-			 Referrer<Collection<Permission>>>(),
-		Ref.WEAK_IDENTITY,
-		Ref.STRONG,
-		5000L,
-		5000L)
+	    RC.<ClassLoader,Collection<Permission>>referenceKeyConcurrentMap(
+		Ref.WEAK_IDENTITY, 64)
 	);
     }
     
@@ -586,6 +626,31 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
 		       });
 	}
         
+	/*
+	 * Try the resolved class cache.
+	 */
+	SecurityManager sm = System.getSecurityManager();
+	ClassLoader contextLoader = getRMIContextClassLoader();
+	ClassLoader originalDefaultLoader = defaultLoader;
+	if (resolutionCache != null) {
+	    ResolutionCache.Resolution r = resolutionCache.get(
+		codebase, name, defaultLoader, contextLoader, sm != null);
+	    Class c = r != null ? r.getResolvedClass() : null;
+	    if (c != null) {
+		if (!r.checkRequired()) return c;
+		ClassLoader codebaseLoader = r.getCodebaseLoader();
+		if (codebaseLoader != null) {
+		    try {
+			checkLoader(codebaseLoader, contextLoader,
+				    r.uris, r.urls);
+			return c;
+		    } catch (SecurityException e) {
+			// resolve in full below
+		    }
+		}
+	    }
+	}
+
         // throws MalformedURLException
     	Uri[] codebaseURIs = pathToURIs(codebase);	// may be null
         URL[] codebaseURLs = asURL(codebaseURIs); // throws MalformedURLException
@@ -613,7 +678,6 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
 	 * Try defaultLoader cases that don't require determining the
 	 * codebase loader.
 	 */
-	SecurityManager sm = System.getSecurityManager();
 	if (defaultLoader != null &&
 	    (sm == null || codebaseURIs == null ||
 	     urlsMatchLoaderAnnotation(codebaseURIs, defaultLoader)))
@@ -625,6 +689,8 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
 			"via defaultLoader, defined by {1}",
 			new Object[] { name, getClassLoader(c) });
 		}
+		cacheResolution(codebase, name, originalDefaultLoader,
+				contextLoader, sm, c);
 		return c;
 	    } catch (ClassNotFoundException e) {
 		defaultLoader = null;	// don't try defaultLoader again
@@ -634,7 +700,6 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
 	/*
 	 * Determine the codebase loader.
 	 */
-	ClassLoader contextLoader = getRMIContextClassLoader();
 	if (logger.isLoggable(Level.FINEST)) {
 	    logger.log(Level.FINEST,
 		       "(thread context class loader: {0})", new Object[]{contextLoader});
@@ -657,6 +722,8 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
 			"via defaultLoader, defined by {1}",
 			new Object[] { name, getClassLoader(c) });
 		}
+		cacheResolution(codebase, name, originalDefaultLoader,
+				contextLoader, sm, c);
 		return c;
 	    } catch (ClassNotFoundException e) {
 		defaultLoader = null;	// don't try defaultLoader again
@@ -708,6 +775,13 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
 			    "via defaultLoader, defined by {1}",
 			    new Object[] { name, getClassLoader(c) });
 		    }
+		    /*
+		     * Had access to the codebase loader been denied,
+		     * defaultLoader would have been tried anyway, so this
+		     * result doesn't depend on the security context.
+		     */
+		    cacheResolution(codebase, name, originalDefaultLoader,
+				    contextLoader, sm, c);
 		    return c;
 		} catch (ClassNotFoundException e) {
 		}
@@ -739,6 +813,16 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
 		logger.log(Level.FINEST, message,
 			   new Object[] { name, getClassLoader(c) });
 	    }
+	    if (resolutionCache != null) {
+		if (sm == null) {
+		    resolutionCache.put(codebase, name, originalDefaultLoader,
+					contextLoader, false, c);
+		} else if (secEx == null) {
+		    resolutionCache.put(codebase, name, originalDefaultLoader,
+					contextLoader, true, c, codebaseLoader,
+					codebaseURIs, codebaseURLs);
+		}
+	    }
 	    return c;
 	} catch (ClassNotFoundException e) {
 	    if (sm == null) {
@@ -791,6 +875,21 @@ public class PreferredClassProvider extends RMIClassLoaderSpi {
 	}
     }
 
+    /**
+     * Records a class resolved by loadClass whose resolution doesn't
+     * depend on permission to access the codebase loader.
+     */
+    private static void cacheResolution(String codebase, String name,
+					ClassLoader defaultLoader,
+					ClassLoader contextLoader,
+					SecurityManager sm, Class c)
+    {
+	if (resolutionCache != null) {
+	    resolutionCache.put(codebase, name, defaultLoader, contextLoader,
+				sm != null, c);
+	}
+    }
+
     /**
      * Provides the implementation for {@link
      * RMIClassLoaderSpi#getClassAnnotation(Class)}.
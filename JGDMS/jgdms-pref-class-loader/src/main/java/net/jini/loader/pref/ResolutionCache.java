@@ -0,0 +1,322 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.loader.pref;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+import org.apache.river.api.net.Uri;
+import org.apache.river.logging.Levels;
+import org.apache.river.logging.LogDispatch;
+
+/**
+ * Cache of classes resolved by {@link PreferredClassProvider#loadClass
+ * loadClass}, keyed by codebase annotation, class name, default loader and
+ * context class loader.
+ * <p>
+ * Loaders and classes are only weakly referenced, an entry is discarded
+ * once its class or either of its loaders has been collected.  Classes
+ * that were resolved through the codebase loader with a security manager
+ * installed are recorded with that loader and its codebase, so the caller
+ * can repeat the permission check for the current security context before
+ * using the cached class.
+ * <p>
+ * When the cache is full an arbitrary entry is evicted to make room.
+ *
+ * @since 3.1.1
+ */
+final class ResolutionCache {
+
+    private static final LogDispatch logger =
+	new LogDispatch(
+	    Logger.getLogger("net.jini.loader.pref.PreferredClassProvider"),
+	    "net.jini.loader.pref.ResolutionCache"
+	);
+
+    private final int maxSize;
+    private final ConcurrentMap<Key,Resolution> map =
+	new ConcurrentHashMap<Key,Resolution>();
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicBoolean registered = new AtomicBoolean();
+
+    ResolutionCache(int maxSize) {
+	this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached resolution, or null, counting the lookup as a
+     * hit or a miss.
+     */
+    Resolution get(String codebase, String name, ClassLoader defaultLoader,
+		   ClassLoader contextLoader, boolean sm)
+    {
+	Key probe = new Key(codebase, name, defaultLoader, contextLoader, sm);
+	Resolution r = map.get(probe);
+	if (r != null && r.cl.get() == null) {
+	    map.remove(probe, r);
+	    r = null;
+	}
+	if (r == null) {
+	    misses.incrementAndGet();
+	} else {
+	    hits.incrementAndGet();
+	}
+	return r;
+    }
+
+    /**
+     * Records a class resolved without the codebase loader permission
+     * check.
+     */
+    void put(String codebase, String name, ClassLoader defaultLoader,
+	     ClassLoader contextLoader, boolean sm, Class cl)
+    {
+	put(codebase, name, defaultLoader, contextLoader, sm,
+	    new Resolution(cl, null, null, null));
+    }
+
+    /**
+     * Records a class resolved by the codebase loader, which requires
+     * the codebase loader permission check to be repeated when used.
+     */
+    void put(String codebase, String name, ClassLoader defaultLoader,
+	     ClassLoader contextLoader, boolean sm, Class cl,
+	     ClassLoader codebaseLoader, Uri[] uris, URL[] urls)
+    {
+	put(codebase, name, defaultLoader, contextLoader, sm,
+	    new Resolution(cl, codebaseLoader, uris, urls));
+    }
+
+    private void put(String codebase, String name, ClassLoader defaultLoader,
+		     ClassLoader contextLoader, boolean sm, Resolution r)
+    {
+	expunge();
+	if (map.size() >= maxSize) {
+	    Iterator<Key> i = map.keySet().iterator();
+	    if (i.hasNext()) {
+		i.next();
+		i.remove();
+	    }
+	}
+	map.put(new Key(codebase, name, defaultLoader, contextLoader, sm,
+			queue), r);
+	if (!registered.get() && registered.compareAndSet(false, true)) {
+	    register();
+	}
+    }
+
+    /** Removes entries whose loaders have been collected. */
+    private void expunge() {
+	Reference<?> ref;
+	while ((ref = queue.poll()) != null) {
+	    map.remove(((LoaderRef) ref).key);
+	}
+    }
+
+    private void register() {
+	AccessController.doPrivileged(new PrivilegedAction<Object>() {
+	    @Override
+	    public Object run() {
+		try {
+		    ManagementFactory.getPlatformMBeanServer().registerMBean(
+			new Monitor(),
+			new ObjectName("net.jini.loader.pref:type=ResolutionCache"));
+		} catch (Exception e) {
+		    logger.log(Levels.HANDLED,
+			"Unable to register resolution cache MBean", e);
+		}
+		return null;
+	    }
+	});
+    }
+
+    /**
+     * A cached class, and if the codebase loader permission check must be
+     * repeated, the codebase loader with its codebase.
+     */
+    static final class Resolution {
+	private final WeakReference<Class> cl;
+	private final WeakReference<ClassLoader> codebaseLoader;
+	final Uri[] uris;
+	final URL[] urls;
+
+	Resolution(Class cl, ClassLoader codebaseLoader, Uri[] uris,
+		   URL[] urls)
+	{
+	    this.cl = new WeakReference<Class>(cl);
+	    this.codebaseLoader = codebaseLoader == null ? null :
+		new WeakReference<ClassLoader>(codebaseLoader);
+	    this.uris = uris;
+	    this.urls = urls;
+	}
+
+	/** Returns the class, or null if it has been collected. */
+	Class getResolvedClass() {
+	    return cl.get();
+	}
+
+	/** Returns true if the permission check must be repeated. */
+	boolean checkRequired() {
+	    return codebaseLoader != null;
+	}
+
+	/** Returns the codebase loader, or null if it has been collected. */
+	ClassLoader getCodebaseLoader() {
+	    return codebaseLoader == null ? null : codebaseLoader.get();
+	}
+    }
+
+    /**
+     * Weak reference to a loader of a stored key.
+     */
+    private static final class LoaderRef extends WeakReference<ClassLoader> {
+	final Key key;
+
+	LoaderRef(ClassLoader loader, Key key, ReferenceQueue<Object> queue) {
+	    super(loader, queue);
+	    this.key = key;
+	}
+    }
+
+    /**
+     * Cache key.  Stored keys refer to loaders weakly, keys used only to
+     * look up entries refer to them directly.  Loaders are compared by
+     * identity.
+     */
+    private static final class Key {
+	private final String codebase;
+	private final String name;
+	private final Object defaultLoader;
+	private final Object contextLoader;
+	private final boolean sm;
+	private final int hash;
+
+	Key(String codebase, String name, ClassLoader defaultLoader,
+	    ClassLoader contextLoader, boolean sm)
+	{
+	    this.codebase = codebase;
+	    this.name = name;
+	    this.defaultLoader = defaultLoader;
+	    this.contextLoader = contextLoader;
+	    this.sm = sm;
+	    hash = hash(codebase, name, defaultLoader, contextLoader, sm);
+	}
+
+	Key(String codebase, String name, ClassLoader defaultLoader,
+	    ClassLoader contextLoader, boolean sm, ReferenceQueue<Object> queue)
+	{
+	    this.codebase = codebase;
+	    this.name = name;
+	    this.defaultLoader = defaultLoader == null ? null :
+		new LoaderRef(defaultLoader, this, queue);
+	    this.contextLoader = contextLoader == null ? null :
+		new LoaderRef(contextLoader, this, queue);
+	    this.sm = sm;
+	    hash = hash(codebase, name, defaultLoader, contextLoader, sm);
+	}
+
+	private static int hash(String codebase, String name,
+				ClassLoader defaultLoader,
+				ClassLoader contextLoader, boolean sm)
+	{
+	    int h = name.hashCode();
+	    h = 31 * h + (codebase == null ? 0 : codebase.hashCode());
+	    h = 31 * h + System.identityHashCode(defaultLoader);
+	    h = 31 * h + System.identityHashCode(contextLoader);
+	    return sm ? h : ~h;
+	}
+
+	private static Object loader(Object o) {
+	    return o instanceof LoaderRef ? ((LoaderRef) o).get() : o;
+	}
+
+	@Override
+	public int hashCode() {
+	    return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (obj == this) return true;
+	    if (!(obj instanceof Key)) return false;
+	    Key k = (Key) obj;
+	    if (hash != k.hash || sm != k.sm || !name.equals(k.name)) {
+		return false;
+	    }
+	    if (codebase == null ? k.codebase != null :
+		!codebase.equals(k.codebase))
+	    {
+		return false;
+	    }
+	    Object dl = loader(defaultLoader);
+	    Object cl = loader(contextLoader);
+	    // a cleared loader never matches, the entry is being expunged
+	    if ((defaultLoader != null && dl == null) ||
+		(contextLoader != null && cl == null))
+	    {
+		return false;
+	    }
+	    return dl == loader(k.defaultLoader) &&
+		   cl == loader(k.contextLoader);
+	}
+    }
+
+    private final class Monitor implements ResolutionCacheMXBean {
+
+	@Override
+	public long getHits() {
+	    return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+	    return misses.get();
+	}
+
+	@Override
+	public double getHitRate() {
+	    long h = hits.get();
+	    long total = h + misses.get();
+	    return total == 0 ? 0.0 : (double) h / total;
+	}
+
+	@Override
+	public int getSize() {
+	    return map.size();
+	}
+
+	@Override
+	public int getMaxSize() {
+	    return maxSize;
+	}
+    }
+}
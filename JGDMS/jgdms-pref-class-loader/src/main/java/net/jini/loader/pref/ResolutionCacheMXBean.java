@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.loader.pref;
+
+/**
+ * Management interface exposing the statistics of the resolved class
+ * cache shared by all {@link PreferredClassProvider} instances.  An
+ * instance is registered with the platform <code>MBeanServer</code> under
+ * the name <code>net.jini.loader.pref:type=ResolutionCache</code> when the
+ * cache first stores a resolved class.
+ *
+ * @since 3.1.1
+ */
+public interface ResolutionCacheMXBean {
+
+    /**
+     * Returns the number of class loads answered by the cache.
+     *
+     * @return the number of cache hits.
+     */
+    long getHits();
+
+    /**
+     * Returns the number of class loads that had to be resolved in full.
+     *
+     * @return the number of cache misses.
+     */
+    long getMisses();
+
+    /**
+     * Returns the fraction of class loads answered by the cache, or zero
+     * if there have been none.
+     *
+     * @return the cache hit rate, between 0 and 1.
+     */
+    double getHitRate();
+
+    /**
+     * Returns the number of resolved classes currently cached.
+     *
+     * @return the cache size.
+     */
+    int getSize();
+
+    /**
+     * Returns the maximum number of resolved classes cached.
+     *
+     * @return the cache capacity.
+     */
+    int getMaxSize();
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.loader.pref;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.CodeSource;
+import java.security.Permissions;
+import java.security.Policy;
+import java.security.PrivilegedExceptionAction;
+import java.security.PrivilegedActionException;
+import java.security.ProtectionDomain;
+import java.security.cert.Certificate;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that classes cached by {@link PreferredClassProvider#loadClass
+ * loadClass} are keyed on the codebase and the parent of the codebase
+ * loader, and that a cache hit still checks permission to access the
+ * codebase loader.
+ */
+public class PreferredClassProviderCacheTest {
+
+    private static final String NAME = Payload.class.getName();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final PreferredClassProvider provider =
+	new PreferredClassProvider();
+    private Thread thread;
+    private ClassLoader savedContextLoader;
+    private Policy savedPolicy;
+    private SecurityManager savedSecurityManager;
+
+    @Before
+    public void setUp() {
+	thread = Thread.currentThread();
+	savedContextLoader = thread.getContextClassLoader();
+	savedPolicy = Policy.getPolicy();
+	savedSecurityManager = System.getSecurityManager();
+    }
+
+    @After
+    public void tearDown() {
+	System.setSecurityManager(savedSecurityManager);
+	Policy.setPolicy(savedPolicy);
+	thread.setContextClassLoader(savedContextLoader);
+    }
+
+    @Test
+    public void testHitChecksCodebaseLoaderAccess() throws Exception {
+	final String codebase = codebase("checked");
+	thread.setContextClassLoader(parent());
+	installSecurityManager();
+	Class c = provider.loadClass(codebase, NAME, null);
+	assertTrue(c.getClassLoader() instanceof PreferredClassLoader);
+	long hits = hits();
+	assertSame(c, provider.loadClass(codebase, NAME, null));
+	assertEquals(hits + 1, hits());
+	// No permission to access the codebase loader, and the context
+	// loader can't find the class.
+	AccessControlContext denied = new AccessControlContext(
+	    new ProtectionDomain[] {new ProtectionDomain(
+		new CodeSource(null, (Certificate[]) null),
+		new Permissions())});
+	try {
+	    AccessController.doPrivileged(
+		new PrivilegedExceptionAction<Class>() {
+		    public Class run() throws Exception {
+			return provider.loadClass(codebase, NAME, null);
+		    }
+		}, denied);
+	    fail("expected ClassNotFoundException");
+	} catch (PrivilegedActionException e) {
+	    assertTrue(e.getException() instanceof ClassNotFoundException);
+	}
+	assertEquals(hits + 2, hits());
+    }
+
+    @Test
+    public void testKeyedOnCodebase() throws Exception {
+	thread.setContextClassLoader(parent());
+	installSecurityManager();
+	String a = codebase("a");
+	String b = codebase("b");
+	Class ca = provider.loadClass(a, NAME, null);
+	Class cb = provider.loadClass(b, NAME, null);
+	assertNotSame(ca, cb);
+	assertSame(ca, provider.loadClass(a, NAME, null));
+	assertSame(cb, provider.loadClass(b, NAME, null));
+    }
+
+    @Test
+    public void testKeyedOnParentLoader() throws Exception {
+	String codebase = codebase("parent");
+	installSecurityManager();
+	thread.setContextClassLoader(parent());
+	Class first = provider.loadClass(codebase, NAME, null);
+	thread.setContextClassLoader(parent());
+	Class second = provider.loadClass(codebase, NAME, null);
+	assertNotSame(first, second);
+	assertNotSame(first.getClassLoader(), second.getClassLoader());
+    }
+
+    @Test
+    public void testKeyedOnParentLoaderWithoutSecurityManager()
+	throws Exception
+    {
+	String codebase = codebase("nosm");
+	ClassLoader first = new URLClassLoader(
+	    new URL[] {new URL(codebase)}, null);
+	ClassLoader second = new URLClassLoader(
+	    new URL[] {new URL(codebase)}, null);
+	thread.setContextClassLoader(first);
+	assertSame(first, provider.loadClass(codebase, NAME, null)
+	    .getClassLoader());
+	thread.setContextClassLoader(second);
+	assertSame(second, provider.loadClass(codebase, NAME, null)
+	    .getClassLoader());
+    }
+
+    /**
+     * Returns a codebase containing a copy of Payload, which is not
+     * visible to a parent loader returned by {@link #parent}.
+     */
+    private String codebase(String name) throws Exception {
+	File dir = folder.newFolder(name);
+	File file = new File(dir, NAME.replace('.', '/') + ".class");
+	file.getParentFile().mkdirs();
+	InputStream in = Payload.class.getResourceAsStream(
+	    NAME.substring(NAME.lastIndexOf('.') + 1) + ".class");
+	try {
+	    Files.copy(in, file.toPath());
+	} finally {
+	    in.close();
+	}
+	return dir.toURI().toURL().toString();
+    }
+
+    /** Returns a loader that only delegates to the bootstrap loader. */
+    private static ClassLoader parent() {
+	return new URLClassLoader(new URL[0], null);
+    }
+
+    private static void installSecurityManager() {
+	Policy.setPolicy(new Policy() {
+	    public boolean implies(ProtectionDomain domain,
+				   java.security.Permission permission)
+	    {
+		return true;
+	    }
+	});
+	System.setSecurityManager(new SecurityManager());
+    }
+
+    private static long hits() throws Exception {
+	return ((Long) ManagementFactory.getPlatformMBeanServer().getAttribute(
+	    new ObjectName("net.jini.loader.pref:type=ResolutionCache"),
+	    "Hits")).longValue();
+    }
+
+    /** Loaded from a codebase by the tests. */
+    public static class Payload {
+    }
+}
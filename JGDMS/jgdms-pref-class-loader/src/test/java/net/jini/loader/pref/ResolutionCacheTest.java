@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.jini.loader.pref;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that resolutions are keyed on the codebase, class name, default
+ * loader, context loader and presence of a security manager.
+ */
+public class ResolutionCacheTest {
+
+    private static final String NAME = "a.B";
+
+    private final ResolutionCache cache = new ResolutionCache(16);
+    private final ClassLoader parent = loader();
+    private final ClassLoader defaultLoader = loader();
+
+    @Test
+    public void testHit() {
+	cache.put("file:/a/", NAME, defaultLoader, parent, false,
+		  ResolutionCacheTest.class);
+	ResolutionCache.Resolution r =
+	    cache.get("file:/a/", NAME, defaultLoader, parent, false);
+	assertNotNull(r);
+	assertSame(ResolutionCacheTest.class, r.getResolvedClass());
+	assertFalse(r.checkRequired());
+    }
+
+    @Test
+    public void testKeyedOnCodebase() {
+	cache.put("file:/a/", NAME, defaultLoader, parent, false,
+		  ResolutionCacheTest.class);
+	assertNull(cache.get("file:/b/", NAME, defaultLoader, parent, false));
+	assertNull(cache.get(null, NAME, defaultLoader, parent, false));
+    }
+
+    @Test
+    public void testKeyedOnName() {
+	cache.put("file:/a/", NAME, defaultLoader, parent, false,
+		  ResolutionCacheTest.class);
+	assertNull(cache.get("file:/a/", "a.C", defaultLoader, parent, false));
+    }
+
+    @Test
+    public void testKeyedOnParentLoader() {
+	cache.put("file:/a/", NAME, defaultLoader, parent, false,
+		  ResolutionCacheTest.class);
+	assertNull(cache.get("file:/a/", NAME, defaultLoader, loader(), false));
+	assertNull(cache.get("file:/a/", NAME, defaultLoader, null, false));
+    }
+
+    @Test
+    public void testKeyedOnDefaultLoader() {
+	cache.put("file:/a/", NAME, defaultLoader, parent, false,
+		  ResolutionCacheTest.class);
+	assertNull(cache.get("file:/a/", NAME, loader(), parent, false));
+	assertNull(cache.get("file:/a/", NAME, null, parent, false));
+    }
+
+    @Test
+    public void testKeyedOnSecurityManager() {
+	cache.put("file:/a/", NAME, defaultLoader, parent, false,
+		  ResolutionCacheTest.class);
+	assertNull(cache.get("file:/a/", NAME, defaultLoader, parent, true));
+    }
+
+    @Test
+    public void testCodebaseLoaderCheckRequired() throws Exception {
+	ClassLoader codebaseLoader = loader();
+	URL[] urls = {new URL("file:/a/")};
+	cache.put("file:/a/", NAME, defaultLoader, parent, true,
+		  ResolutionCacheTest.class, codebaseLoader, null, urls);
+	ResolutionCache.Resolution r =
+	    cache.get("file:/a/", NAME, defaultLoader, parent, true);
+	assertTrue(r.checkRequired());
+	assertSame(codebaseLoader, r.getCodebaseLoader());
+	assertSame(urls, r.urls);
+    }
+
+    private static ClassLoader loader() {
+	return new URLClassLoader(new URL[0], null);
+    }
+}
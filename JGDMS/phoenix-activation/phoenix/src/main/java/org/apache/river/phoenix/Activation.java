@@ -168,6 +168,8 @@ class Activation implements Serializable {
     private transient String[] command;
     /** timeout on wait for child process to be created or destroyed */
     private transient long groupTimeout;
+    /** pre-started group processes and launch statistics */
+    private transient GroupProcessPool groupPool;
     /** timeout on wait for unexport to succeed */
     private transient long unexportTimeout;
     /** timeout on wait between unexport attempts */
@@ -301,6 +303,7 @@ class Activation implements Serializable {
             System.arraycopy(opts, 0, command, 1, opts.length);
             command[command.length - 1] =
                 "org.apache.river.phoenix.init.ActivationGroupInit";
+            groupPool = new GroupProcessPool(getInt(config, "groupPoolSize", 0));
             shutdownHook = new ShutdownHook();
             Runtime.getRuntime().addShutdownHook(shutdownHook);
             groupPreparer = getPreparer(config, "instantiatorPreparer");
@@ -677,6 +680,7 @@ class Activation implements Serializable {
             } finally {
                 writeLock.unlock();
             }
+	    groupPool.prime(activationArgs(desc));
 	    return id;
 	}
 	
@@ -706,6 +710,7 @@ class Activation implements Serializable {
 		groupEntry = getGroupEntry(id);		
 		groupTable.remove(id);
                 groupEntry.unregisterGroup(true);
+                releaseGroupProcesses(groupEntry.desc);
             } finally {
                 writeLock.unlock();
             }
@@ -735,12 +740,16 @@ class Activation implements Serializable {
 						     ActivationGroupDesc desc)
 	    throws ActivationException
 	{
+            ActivationGroupDesc old;
             writeLock.lock();
             try {
-                return getGroupEntry(id).setActivationGroupDesc(id, desc, true);
+                old = getGroupEntry(id).setActivationGroupDesc(id, desc, true);
+                releaseGroupProcesses(old);
             } finally {
                 writeLock.unlock();
             }
+            groupPool.prime(activationArgs(desc));
+            return old;
 	}
 
         @Override
@@ -891,6 +900,7 @@ class Activation implements Serializable {
                 for (int i = 0; i < l; i++) {
                     groupEntries[i].shutdown();
                 }
+                groupPool.shutdown();
                 Runtime.getRuntime().removeShutdownHook(shutdownHook);
                 try {
                     log.close();
@@ -936,6 +946,7 @@ class Activation implements Serializable {
 		{
 		    iter.next().shutdownFast();
 		}
+		if (groupPool != null) groupPool.shutdown();
             } finally {
                 writeLock.unlock();
             }
@@ -1442,8 +1453,10 @@ class Activation implements Serializable {
 		    logger.log(Level.FINE, "{0} exec {1}",
 			       new Object[]{groupName, Arrays.asList(argv)});
 		}
+		Process pooled = activation.groupPool.take(argv);
+		long start = System.nanoTime();
 		try {
-		    child = Runtime.getRuntime().exec(argv);
+		    child = pooled != null ? pooled : Runtime.getRuntime().exec(argv);
 		    status = CREATING;
 		    ++incarnation;
 		    watchdog = new Watchdog();
@@ -1494,6 +1507,8 @@ class Activation implements Serializable {
 		    do {
 			activation.signal.await(stop - now, TimeUnit.MILLISECONDS);
 			if (group != null) {
+			    activation.groupPool.launched(pooled != null,
+				System.nanoTime() - start);
 			    return group;
 			}
 			now = System.currentTimeMillis();
@@ -1593,6 +1608,20 @@ class Activation implements Serializable {
 	}
     }
 	
+    /**
+     * Destroys the idle group processes started with the command line of
+     * the given group descriptor, unless a registered group still uses it.
+     * Called with the write lock held.
+     */
+    private void releaseGroupProcesses(ActivationGroupDesc desc) {
+	if (groupPool.getPoolSize() == 0) return;
+	String[] argv = activationArgs(desc);
+	for (GroupEntry entry : groupTable.values()) {
+	    if (Arrays.equals(argv, activationArgs(entry.desc))) return;
+	}
+	groupPool.release(argv);
+    }
+
     private String[] activationArgs(ActivationGroupDesc desc) {
 	ActivationGroupDesc.CommandEnvironment cmdenv;
 	cmdenv = desc.getCommandEnvironment();
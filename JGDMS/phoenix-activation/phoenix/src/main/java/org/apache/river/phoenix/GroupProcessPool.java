@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.phoenix;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+import org.apache.river.thread.NamedThreadFactory;
+
+/**
+ * Keeps pre-started activation group processes, so a group can be
+ * activated without waiting for a virtual machine to start.
+ * <p>
+ * A group process blocks reading its group identifier, descriptor and
+ * incarnation from its standard input, so a process started with the
+ * same command line as a group can be assigned to that group later.
+ * Processes are kept for each distinct command line of the groups that
+ * have been registered, updated or activated since Phoenix started, a
+ * process taken is replaced in the background.  The idle processes of a
+ * command line no group uses any longer are destroyed when released.
+ *
+ * @since 3.1.1
+ */
+final class GroupProcessPool implements GroupProcessPoolMXBean {
+
+    private static final Logger logger =
+	Logger.getLogger("org.apache.river.phoenix");
+
+    private final int size;
+    /**
+     * idle processes by command line, guarded by this, a command line is
+     * present from when it's primed or taken until it's released
+     */
+    private final Map<List<String>,Deque<Process>> idle =
+	new HashMap<List<String>,Deque<Process>>();
+    /** starts idle processes, null if size is zero */
+    private final ExecutorService starter;
+    private volatile boolean shutdown;
+
+    private final AtomicLong coldCount = new AtomicLong();
+    private final AtomicLong coldNanos = new AtomicLong();
+    private final AtomicLong coldMax = new AtomicLong();
+    private final AtomicLong pooledCount = new AtomicLong();
+    private final AtomicLong pooledNanos = new AtomicLong();
+    private final AtomicLong pooledMax = new AtomicLong();
+
+    GroupProcessPool(int size) {
+	this.size = Math.max(size, 0);
+	starter = this.size == 0 ? null : Executors.newSingleThreadExecutor(
+	    new NamedThreadFactory("Phoenix GroupProcessPool", true));
+	AccessController.doPrivileged(new PrivilegedAction<Object>() {
+	    @Override
+	    public Object run() {
+		try {
+		    ManagementFactory.getPlatformMBeanServer().registerMBean(
+			GroupProcessPool.this,
+			new ObjectName("org.apache.river.phoenix:type=GroupProcessPool"));
+		} catch (Exception e) {
+		    logger.log(Level.FINE,
+			"Unable to register group process pool MBean", e);
+		}
+		return null;
+	    }
+	});
+    }
+
+    /**
+     * Returns an idle process started with the given command line, or
+     * null if there are none, in either case another process is started
+     * in the background to replace it.
+     */
+    Process take(String[] argv) {
+	if (size == 0) return null;
+	List<String> key = Arrays.asList(argv.clone());
+	Process p = null;
+	synchronized (this) {
+	    Deque<Process> processes = processes(key);
+	    while (!processes.isEmpty()) {
+		Process candidate = processes.poll();
+		if (candidate.isAlive()) {
+		    p = candidate;
+		    break;
+		}
+	    }
+	}
+	fill(key);
+	return p;
+    }
+
+    /**
+     * Starts idle processes with the given command line in the background,
+     * if fewer than the pool size are idle.
+     */
+    void prime(String[] argv) {
+	if (size == 0) return;
+	List<String> key = Arrays.asList(argv.clone());
+	synchronized (this) {
+	    processes(key);
+	}
+	fill(key);
+    }
+
+    /**
+     * Destroys the idle processes started with the given command line,
+     * no more will be started for it until it's primed or taken again.
+     * Called when no group uses the command line any longer.
+     */
+    void release(String[] argv) {
+	if (size == 0) return;
+	Deque<Process> processes;
+	synchronized (this) {
+	    processes = idle.remove(Arrays.asList(argv));
+	}
+	if (processes == null) return;
+	if (logger.isLoggable(Level.FINE)) {
+	    logger.log(Level.FINE, "destroy {0} idle group processes {1}",
+		new Object[]{processes.size(), Arrays.asList(argv)});
+	}
+	for (Process p : processes) {
+	    p.destroy();
+	}
+    }
+
+    /**
+     * Records the time taken for a group to become active.
+     *
+     * @param pooled true if the group was started in an idle process.
+     * @param nanos time from obtaining the process until the group was active.
+     */
+    void launched(boolean pooled, long nanos) {
+	AtomicLong max;
+	if (pooled) {
+	    pooledCount.incrementAndGet();
+	    pooledNanos.addAndGet(nanos);
+	    max = pooledMax;
+	} else {
+	    coldCount.incrementAndGet();
+	    coldNanos.addAndGet(nanos);
+	    max = coldMax;
+	}
+	long m;
+	while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {}
+	if (logger.isLoggable(Level.FINE)) {
+	    logger.log(Level.FINE, "group active after {0} ms, {1} process",
+		new Object[]{nanos / 1000000L, pooled ? "pooled" : "new"});
+	}
+    }
+
+    /**
+     * Destroys all idle processes, no more will be started.
+     */
+    void shutdown() {
+	shutdown = true;
+	if (starter != null) starter.shutdownNow();
+	synchronized (this) {
+	    for (Deque<Process> processes : idle.values()) {
+		for (Iterator<Process> it = processes.iterator(); it.hasNext(); ) {
+		    it.next().destroy();
+		}
+	    }
+	    idle.clear();
+	}
+    }
+
+    /** Returns the idle processes of a command line, the caller holds the lock. */
+    private Deque<Process> processes(List<String> key) {
+	Deque<Process> processes = idle.get(key);
+	if (processes == null) {
+	    processes = new ArrayDeque<Process>(size);
+	    idle.put(key, processes);
+	}
+	return processes;
+    }
+
+    private void fill(final List<String> key) {
+	if (shutdown) return;
+	try {
+	    starter.execute(new Runnable() {
+		@Override
+		public void run() {
+		    while (!shutdown) {
+			synchronized (GroupProcessPool.this) {
+			    Deque<Process> processes = idle.get(key);
+			    // released or full
+			    if (processes == null || processes.size() >= size) return;
+			}
+			Process p;
+			try {
+			    p = exec(key);
+			} catch (IOException e) {
+			    logger.log(Level.WARNING,
+				"unable to start idle group process", e);
+			    return;
+			}
+			synchronized (GroupProcessPool.this) {
+			    Deque<Process> processes = idle.get(key);
+			    if (!shutdown && processes != null) {
+				processes.add(p);
+				continue;
+			    }
+			}
+			// released while starting
+			p.destroy();
+			return;
+		    }
+		}
+	    });
+	} catch (RejectedExecutionException e) {
+	    // shutdown
+	}
+    }
+
+    private static Process exec(final List<String> argv) throws IOException {
+	if (logger.isLoggable(Level.FINE)) {
+	    logger.log(Level.FINE, "exec idle group process {0}", argv);
+	}
+	try {
+	    return AccessController.doPrivileged(
+		new PrivilegedExceptionAction<Process>() {
+		    @Override
+		    public Process run() throws IOException {
+			return Runtime.getRuntime().exec(
+			    argv.toArray(new String[argv.size()]));
+		    }
+		});
+	} catch (PrivilegedActionException e) {
+	    throw (IOException) e.getException();
+	}
+    }
+
+    @Override
+    public int getPoolSize() {
+	return size;
+    }
+
+    @Override
+    public synchronized int getIdleCount() {
+	int count = 0;
+	for (Deque<Process> processes : idle.values()) {
+	    count += processes.size();
+	}
+	return count;
+    }
+
+    @Override
+    public long getColdLaunchCount() {
+	return coldCount.get();
+    }
+
+    @Override
+    public long getPooledLaunchCount() {
+	return pooledCount.get();
+    }
+
+    @Override
+    public double getAverageColdLaunchTime() {
+	return average(coldNanos.get(), coldCount.get());
+    }
+
+    @Override
+    public double getAveragePooledLaunchTime() {
+	return average(pooledNanos.get(), pooledCount.get());
+    }
+
+    @Override
+    public long getMaxColdLaunchTime() {
+	return coldMax.get() / 1000000L;
+    }
+
+    @Override
+    public long getMaxPooledLaunchTime() {
+	return pooledMax.get() / 1000000L;
+    }
+
+    private static double average(long nanos, long count) {
+	return count == 0 ? 0.0 : nanos / (count * 1000000.0);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.phoenix;
+
+/**
+ * Management interface for the activation group processes created by
+ * Phoenix, registered with the platform <code>MBeanServer</code> under the
+ * name <code>org.apache.river.phoenix:type=GroupProcessPool</code>.
+ * Launch times are measured from when a group process is obtained until
+ * the group reports it is active, for processes created on demand and for
+ * processes taken from the pool of pre-started processes configured with
+ * the <code>groupPoolSize</code> entry.
+ *
+ * @since 3.1.1
+ */
+public interface GroupProcessPoolMXBean {
+
+    /**
+     * @return the number of idle processes kept for each group command line.
+     */
+    int getPoolSize();
+
+    /**
+     * @return the number of idle processes waiting to be assigned a group.
+     */
+    int getIdleCount();
+
+    /**
+     * @return the number of groups started in a process created on demand.
+     */
+    long getColdLaunchCount();
+
+    /**
+     * @return the number of groups started in a pre-started process.
+     */
+    long getPooledLaunchCount();
+
+    /**
+     * @return the mean launch time in milliseconds of groups started in a
+     * process created on demand.
+     */
+    double getAverageColdLaunchTime();
+
+    /**
+     * @return the mean launch time in milliseconds of groups started in a
+     * pre-started process.
+     */
+    double getAveragePooledLaunchTime();
+
+    /**
+     * @return the longest launch time in milliseconds of groups started in
+     * a process created on demand.
+     */
+    long getMaxColdLaunchTime();
+
+    /**
+     * @return the longest launch time in milliseconds of groups started in
+     * a pre-started process.
+     */
+    long getMaxPooledLaunchTime();
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.phoenix;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that idle group processes are released with their command line.
+ */
+public class GroupProcessPoolTest {
+
+    private static final long TIMEOUT = 30000L;
+
+    private GroupProcessPool pool;
+
+    @After
+    public void tearDown() {
+	if (pool != null) pool.shutdown();
+    }
+
+    @Test
+    public void testReleaseDestroysIdleProcesses() throws Exception {
+	pool = new GroupProcessPool(1);
+	String[] first = command("first");
+	String[] second = command("second");
+	pool.prime(first);
+	pool.prime(second);
+	awaitIdle(2);
+	Process p = pool.take(first);
+	assertNotNull(p);
+	p.destroy();
+	awaitIdle(2);
+
+	pool.release(first);
+	assertEquals(1, pool.getIdleCount());
+	p = pool.take(second);
+	assertNotNull("other command line released", p);
+	p.destroy();
+	pool.release(second);
+	assertEquals(0, pool.getIdleCount());
+	// the replacement for the process taken isn't kept either
+	Thread.sleep(2000L);
+	assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testReleaseWhileStarting() throws Exception {
+	pool = new GroupProcessPool(2);
+	String[] argv = command("starting");
+	pool.prime(argv);
+	pool.release(argv);
+	// processes being started when released are destroyed
+	Thread.sleep(2000L);
+	assertEquals(0, pool.getIdleCount());
+	pool.prime(argv);
+	awaitIdle(2);
+    }
+
+    private void awaitIdle(int count) throws InterruptedException {
+	long stop = System.currentTimeMillis() + TIMEOUT;
+	while (pool.getIdleCount() != count
+	       && System.currentTimeMillis() < stop)
+	{
+	    Thread.sleep(50L);
+	}
+	assertEquals(count, pool.getIdleCount());
+    }
+
+    /**
+     * Returns the command line of a process that waits on its standard
+     * input, like a group process waiting to be assigned a group.
+     */
+    private static String[] command(String name) {
+	return new String[]{
+	    System.getProperty("java.home") + File.separator + "bin"
+		+ File.separator + "java",
+	    "-cp", System.getProperty("java.class.path"),
+	    "-Dname=" + name,
+	    Idle.class.getName()
+	};
+    }
+
+    public static class Idle {
+	public static void main(String[] args) throws IOException {
+	    while (System.in.read() != -1) {}
+	}
+    }
+}
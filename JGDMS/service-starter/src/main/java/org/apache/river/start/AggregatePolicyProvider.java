@@ -20,7 +20,6 @@ package org.apache.river.start;
 
 import org.apache.river.concurrent.RC;
 import org.apache.river.concurrent.Ref;
-import org.apache.river.concurrent.Referrer;
 import java.lang.reflect.Method;
 import java.security.AccessControlContext;
 import java.security.AccessController;
@@ -41,7 +40,6 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -92,9 +90,7 @@ public class AggregatePolicyProvider
 	"net.jini.security.policy.DynamicPolicyProvider";
 
     private static final ConcurrentMap<Class<? extends Thread>,Boolean> trustGetCCL
-    = RC.concurrentMap(
-            new ConcurrentHashMap<Referrer<Class<? extends Thread>>,Referrer<Boolean>>(), 
-            Ref.WEAK_IDENTITY, Ref.STRONG, 10000L, 10000L);
+    = RC.referenceKeyConcurrentMap(Ref.WEAK_IDENTITY, 16);
     private static final ProtectionDomain myDomain 
         = AccessController.doPrivileged(
             new PrivilegedAction<ProtectionDomain>() {
@@ -110,9 +106,7 @@ public class AggregatePolicyProvider
     // cannot be used to cache child ClassLoaders because their policy could
     // change if a policy is updated.
     private final ConcurrentMap<ClassLoader,Policy> subPolicyChildClassLoaderCache =
-            RC.concurrentMap(
-            new ConcurrentHashMap<Referrer<ClassLoader>,Referrer<Policy>>(),
-            Ref.WEAK_IDENTITY, Ref.STRONG, 10000L, 0L);
+            RC.referenceKeyConcurrentMap(Ref.WEAK_IDENTITY, 64);
     private final ReadWriteLock rwl = new ReentrantReadWriteLock();
     private final Lock lock = rwl.writeLock();
     private final Lock readLock = rwl.readLock(); // stop access to subPolicyChildClassLoaderCache while write in progress.
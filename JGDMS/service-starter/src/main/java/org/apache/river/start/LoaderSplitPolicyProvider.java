@@ -29,11 +29,9 @@ import java.security.Policy;
 import java.security.Principal;
 import java.security.PrivilegedAction;
 import java.security.ProtectionDomain;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import org.apache.river.concurrent.RC;
 import org.apache.river.concurrent.Ref;
-import org.apache.river.concurrent.Referrer;
 
 /**
  * Security policy provider which handles permission queries and grants by
@@ -96,9 +94,7 @@ public class LoaderSplitPolicyProvider
 	this.loader = loader;
 	this.loaderPolicy = loaderPolicy;
 	this.defaultPolicy = defaultPolicy;
-        delegateMap = RC.concurrentMap(
-                new ConcurrentHashMap<Referrer<ClassLoader>,Referrer<Policy>>()
-                ,Ref.WEAK_IDENTITY , Ref.STRONG, 10000L, 10000L);
+        delegateMap = RC.referenceKeyConcurrentMap(Ref.WEAK_IDENTITY, 64);
 	ensureDependenciesResolved();
     }
 
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.start;
+
+import java.util.Arrays;
+
+/**
+ * Declares that a service descriptor in the <code>serviceDescriptors</code>
+ * entry of a {@link ServiceStarter} configuration must only be created
+ * after other descriptors have been created successfully.  Descriptors are
+ * identified by their index in the <code>serviceDescriptors</code> array,
+ * for example:
+ * <pre>
+ * serviceDependencies = new ServiceDependency[] {
+ *     new ServiceDependency(2, new int[] {0, 1})
+ * };
+ * </pre>
+ *
+ * @see ServiceStarter
+ * @since 3.1.1
+ */
+public final class ServiceDependency {
+
+    private final int service;
+    private final int[] dependencies;
+
+    /**
+     * Creates a dependency declaration.
+     *
+     * @param service index of the dependent service descriptor.
+     * @param dependencies indices of the descriptors that must be created
+     * first.
+     * @throws NullPointerException if <code>dependencies</code> is
+     * <code>null</code>.
+     */
+    public ServiceDependency(int service, int[] dependencies) {
+        this.service = service;
+        this.dependencies = dependencies.clone();
+    }
+
+    /**
+     * @return index of the dependent service descriptor.
+     */
+    public int getService() {
+        return service;
+    }
+
+    /**
+     * @return indices of the descriptors that must be created first.
+     */
+    public int[] getDependencies() {
+        return dependencies.clone();
+    }
+
+    @Override
+    public String toString() {
+        return service + " -> " + Arrays.toString(dependencies);
+    }
+}
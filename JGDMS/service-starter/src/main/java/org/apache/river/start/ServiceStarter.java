@@ -31,9 +31,17 @@ import net.jini.activation.arg.ActivationSystem;
 import java.rmi.Naming;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.security.AccessControlContext;
+import java.security.PrivilegedAction;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.MissingResourceException;
@@ -47,9 +55,11 @@ import org.apache.river.api.security.CombinerSecurityManager;
 //import org.apache.river.tool.SecurityPolicyWriter;
 
 import au.net.zeus.rmi.tls.TlsRMIClientSocketFactory;
+import java.io.File;
 import java.io.IOException;
 import java.security.AccessController;
 import org.apache.river.action.GetBooleanAction;
+import org.apache.river.thread.NamedThreadFactory;
 
 /** 
  * This class provides the main routine for starting shared groups,
@@ -99,6 +109,42 @@ import org.apache.river.action.GetBooleanAction;
  *     Description: <td> Array of service descriptors to start.
  * </table>
  *
+ * <table summary="Describes the startupThreads configuration entry"
+ *	  border="0" cellpadding="2">
+ *   <tr valign="top">
+ *     <th scope="col">&#X2022;
+ *     <th scope="col" align="left" colspan="2"><code>
+ *	 startupThreads</code>
+ *   <tr valign="top"> <td> &nbsp; <th scope="row" align="right">
+ *     Type: <td> <code>int</code>
+ *   <tr valign="top"> <td> &nbsp; <th scope="row" align="right">
+ *     Default: <td> <code>1</code>
+ *   <tr valign="top"> <td> &nbsp; <th scope="row" align="right">
+ *     Description: <td> Maximum number of service descriptors created
+ *     concurrently. If <code>1</code>, descriptors are created one at a
+ *     time by the calling thread, in array order unless a dependency
+ *     requires a later descriptor to be created first.
+ * </table>
+ *
+ * <table summary="Describes the serviceDependencies configuration entry"
+ *	  border="0" cellpadding="2">
+ *   <tr valign="top">
+ *     <th scope="col">&#X2022;
+ *     <th scope="col" align="left" colspan="2"><code>
+ *	 serviceDependencies</code>
+ *   <tr valign="top"> <td> &nbsp; <th scope="row" align="right">
+ *     Type: <td> {@link ServiceDependency}[]
+ *   <tr valign="top"> <td> &nbsp; <th scope="row" align="right">
+ *     Default: <td> empty array
+ *   <tr valign="top"> <td> &nbsp; <th scope="row" align="right">
+ *     Description: <td> Descriptors that must be created before others.
+ *     A descriptor is not created if one it depends on fails. A
+ *     {@link SharedActivatableServiceDescriptor} is also created after the
+ *     {@link SharedActivationGroupDescriptor} with the same log directory,
+ *     but is still created if that group descriptor fails, as it does when
+ *     the group log already exists.
+ * </table>
+ *
  *
  *<a name="logging"></a>
  *<h3>Loggers and Logging Levels</h3>
@@ -124,6 +170,11 @@ import org.apache.river.action.GetBooleanAction;
  *  <tr> <td> {@link java.util.logging.Level#WARNING WARNING} <td> 
  *    for problems with service creation that don't prevent further
  *    processing
+ *  <tr> <td> {@link java.util.logging.Level#INFO INFO} <td> 
+ *    for the total time taken to create all services
+ *  <tr> <td> {@link java.util.logging.Level#FINE FINE} <td> 
+ *    for the time taken to create each service, and the time it waited
+ *    for its dependencies
  *  <tr> <td> {@link java.util.logging.Level#FINER FINER} <td> 
  *    for high level
  *    service creation operation tracing
@@ -179,7 +230,7 @@ public class ServiceStarter {
      * proxy (if any), exception (if any), associated
      * descriptor object. 
      */
-    private static class Result {
+    static class Result {
         /** Service proxy object, if any. */
         public final Object result;
 	/** Service creation exception, if any. */
@@ -188,14 +239,26 @@ public class ServiceStarter {
 	 * used to create the service instance
 	 */
 	public final ServiceDescriptor descriptor;
+	/** Milliseconds waited for dependencies to be created. */
+	public final long waitMillis;
+	/** Milliseconds taken to create the service. */
+	public final long createMillis;
 	/**
 	 * Trivial constructor. Simply assigns each argument
 	 * to the appropriate field.
 	 */
         Result(ServiceDescriptor d, Object o, Exception e) {
+	    this(d, o, e, 0L, 0L);
+	}
+
+        Result(ServiceDescriptor d, Object o, Exception e,
+	       long waitMillis, long createMillis)
+	{
 	    descriptor = d;
 	    result = o;
 	    exception = e;
+	    this.waitMillis = waitMillis;
+	    this.createMillis = createMillis;
 	}
 	// javadoc inherited from super class
 	public String toString() {
@@ -275,34 +338,275 @@ public class ServiceStarter {
     * @see ServiceDescriptor
     * @see net.jini.config.Configuration
     */
-    private static Result[] create(final ServiceDescriptor[] descs, 
+    static Result[] create(final ServiceDescriptor[] descs, 
         final Configuration config) 
         throws Exception
     {
         logger.entering(ServiceStarter.class.getName(), "create", 
 	    new Object[] {descs, config});
-	ArrayList<Result> proxies = new ArrayList<Result>();
+	int threads = Config.getIntEntry(config, START_PACKAGE,
+	    "startupThreads", 1, 1, Integer.MAX_VALUE);
+	List<List<Integer>> dependencies = dependencies(descs, config);
+	List<List<Integer>> predecessors = predecessors(descs, dependencies);
+	List<Integer> order = startOrder(predecessors);
+	long start = System.nanoTime();
+	Result[] results = threads == 1 ?
+	    createSequentially(descs, config, dependencies, order, start) :
+	    createConcurrently(descs, config, predecessors, dependencies,
+			       order, start, threads);
+	long millis = (System.nanoTime() - start) / 1000000L;
+	for (int i = 0; i < results.length; i++) {
+	    logger.log(Level.FINE, "service.creation.time", new Object[] {
+		Integer.valueOf(i), Long.valueOf(results[i].createMillis),
+		Long.valueOf(results[i].waitMillis), results[i].descriptor});
+	}
+	logger.log(Level.INFO, "service.startup.time", new Object[] {
+	    Integer.valueOf(results.length), Long.valueOf(millis),
+	    Integer.valueOf(threads)});
+        logger.exiting(ServiceStarter.class.getName(), "create", results);
+        return results;
+    }
+
+    /**
+     * Creates the services one at a time, in the calling thread.
+     */
+    private static Result[] createSequentially(ServiceDescriptor[] descs,
+	Configuration config, List<List<Integer>> dependencies,
+	List<Integer> order, long start)
+    {
+	Result[] results = new Result[descs.length];
+	for (Integer i : order) {
+	    results[i] = createOne(i, descs, config, dependencies.get(i),
+				   results, start);
+	}
+	return results;
+    }
+
+    /**
+     * Creates the services using a pool of threads, each service is
+     * created once all the services that must precede it have been
+     * created, in the access control context and with the context class
+     * loader of the calling thread.
+     */
+    private static Result[] createConcurrently(final ServiceDescriptor[] descs,
+	final Configuration config, List<List<Integer>> predecessors,
+	final List<List<Integer>> dependencies, List<Integer> order,
+	final long start, int threads)
+	throws InterruptedException
+    {
+	final int n = descs.length;
+	final Result[] results = new Result[n];
+	final AtomicIntegerArray unmet = new AtomicIntegerArray(n);
+	final List<List<Integer>> dependents = new ArrayList<List<Integer>>(n);
+	for (int i = 0; i < n; i++) {
+	    dependents.add(new ArrayList<Integer>());
+	}
+	for (int i = 0; i < n; i++) {
+	    unmet.set(i, predecessors.get(i).size());
+	    for (Integer d : predecessors.get(i)) {
+		dependents.get(d).add(i);
+	    }
+	}
+	final CountDownLatch done = new CountDownLatch(n);
+	final AccessControlContext acc = AccessController.getContext();
+	final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+	final ExecutorService executor = Executors.newFixedThreadPool(
+	    Math.min(threads, n), new NamedThreadFactory("ServiceStarter", false));
+	try {
+	    final class Creator implements Runnable {
+		private final int index;
+
+		Creator(int index) {
+		    this.index = index;
+		}
+
+		@Override
+		public void run() {
+		    Thread thread = Thread.currentThread();
+		    ClassLoader old = thread.getContextClassLoader();
+		    try {
+			thread.setContextClassLoader(loader);
+			results[index] = AccessController.doPrivileged(
+			    new PrivilegedAction<Result>() {
+				@Override
+				public Result run() {
+				    return createOne(index, descs, config,
+					dependencies.get(index), results, start);
+				}
+			    }, acc);
+		    } catch (Throwable t) {
+			/* An Error thrown by the descriptor fails this
+			 * service and its dependents, rather than leaving
+			 * them waiting forever.
+			 */
+			results[index] = new Result(descs[index], null,
+			    new ActivationException("Service descriptor ["
+				+ index + "] creation failed", t));
+		    } finally {
+			thread.setContextClassLoader(old);
+			for (Integer d : dependents.get(index)) {
+			    if (unmet.decrementAndGet(d) == 0) {
+				executor.execute(new Creator(d));
+			    }
+			}
+			done.countDown();
+		    }
+		}
+	    }
+	    for (Integer i : order) {
+		if (predecessors.get(i).isEmpty()) executor.execute(new Creator(i));
+	    }
+	    done.await();
+	} finally {
+	    executor.shutdown();
+	}
+	return results;
+    }
 
+    /**
+     * Creates one service, unless a service it depends on failed.
+     */
+    private static Result createOne(int index, ServiceDescriptor[] descs,
+	Configuration config, List<Integer> dependencies, Result[] results,
+	long start)
+    {
+	ServiceDescriptor desc = descs[index];
+	long begin = System.nanoTime();
+	long waitMillis = (begin - start) / 1000000L;
+	for (Integer d : dependencies) {
+	    if (results[d].exception != null) {
+		return new Result(desc, null, new ActivationException(
+		    "Service descriptor [" + index + "] not created, "
+		    + "dependency [" + d + "] failed"), waitMillis, 0L);
+	    }
+	}
 	Object result = null;
 	Exception problem = null;
-        ServiceDescriptor desc = null;
-	for (int i=0; i < descs.length; i++) {
-	    desc = descs[i];
-	    result = null;
-	    problem = null;
-	    try {
-   	        if (desc != null) {
-		    result = desc.create(config);
-	        } 
-	    } catch (Exception e) {
-	        problem = e;
-	    } finally {
-	        proxies.add(new Result(desc, result, problem));
+	try {
+	    if (desc != null) {
+		result = desc.create(config);
+	    }
+	} catch (Exception e) {
+	    problem = e;
+	}
+	return new Result(desc, result, problem, waitMillis,
+			  (System.nanoTime() - begin) / 1000000L);
+    }
+
+    /**
+     * Returns the indices of the descriptors that each descriptor depends
+     * on, declared by the <code>serviceDependencies</code> entry.
+     */
+    static List<List<Integer>> dependencies(ServiceDescriptor[] descs,
+	Configuration config) throws ConfigurationException
+    {
+	int n = descs.length;
+	List<List<Integer>> dependencies = new ArrayList<List<Integer>>(n);
+	for (int i = 0; i < n; i++) {
+	    dependencies.add(new ArrayList<Integer>());
+	}
+	ServiceDependency[] declared = (ServiceDependency[])
+	    Config.getNonNullEntry(config, START_PACKAGE,
+		"serviceDependencies", ServiceDependency[].class,
+		new ServiceDependency[0]);
+	for (ServiceDependency dependency : declared) {
+	    if (dependency == null) continue;
+	    int service = dependency.getService();
+	    checkIndex(service, n, dependency);
+	    for (int d : dependency.getDependencies()) {
+		checkIndex(d, n, dependency);
+		if (d == service) {
+		    throw new ConfigurationException(
+			"service depends on itself: " + dependency);
+		}
+		if (!dependencies.get(service).contains(d)) {
+		    dependencies.get(service).add(d);
+		}
+	    }
+	}
+	return dependencies;
+    }
+
+    /**
+     * Returns the indices of the descriptors that must be created before
+     * each descriptor: those it depends on, and for a shared activatable
+     * service, the group descriptor with the same log.  A service doesn't
+     * depend on its group descriptor, since that fails whenever the group
+     * log already exists, as it does when the services are started again.
+     */
+    static List<List<Integer>> predecessors(ServiceDescriptor[] descs,
+	List<List<Integer>> dependencies)
+    {
+	int n = descs.length;
+	List<List<Integer>> predecessors = new ArrayList<List<Integer>>(n);
+	for (int i = 0; i < n; i++) {
+	    predecessors.add(new ArrayList<Integer>(dependencies.get(i)));
+	}
+	for (int i = 0; i < n; i++) {
+	    if (!(descs[i] instanceof SharedActivatableServiceDescriptor)) continue;
+	    String log =
+		((SharedActivatableServiceDescriptor) descs[i]).getSharedGroupLog();
+	    if (log == null) continue;
+	    File groupLog = new File(log).getAbsoluteFile();
+	    for (int j = 0; j < n; j++) {
+		if (descs[j] instanceof SharedActivationGroupDescriptor
+		    && groupLog.equals(new File(
+			((SharedActivationGroupDescriptor) descs[j]).getLog())
+			.getAbsoluteFile())
+		    && !predecessors.get(i).contains(j))
+		{
+		    predecessors.get(i).add(j);
+		}
+	    }
+	}
+	return predecessors;
+    }
+
+    private static void checkIndex(int index, int length,
+	ServiceDependency dependency) throws ConfigurationException
+    {
+	if (index < 0 || index >= length) {
+	    throw new ConfigurationException(
+		"service descriptor index out of range: " + dependency);
+	}
+    }
+
+    /**
+     * Returns the order in which to create the descriptors, each after
+     * those that must precede it, otherwise in array order.
+     *
+     * @throws ConfigurationException if the dependencies contain a cycle.
+     */
+    static List<Integer> startOrder(List<List<Integer>> predecessors)
+	throws ConfigurationException
+    {
+	int n = predecessors.size();
+	int[] unmet = new int[n];
+	List<List<Integer>> dependents = new ArrayList<List<Integer>>(n);
+	for (int i = 0; i < n; i++) {
+	    dependents.add(new ArrayList<Integer>());
+	}
+	PriorityQueue<Integer> ready = new PriorityQueue<Integer>();
+	for (int i = 0; i < n; i++) {
+	    unmet[i] = predecessors.get(i).size();
+	    for (Integer d : predecessors.get(i)) {
+		dependents.get(d).add(i);
 	    }
+	    if (unmet[i] == 0) ready.add(i);
+	}
+	List<Integer> order = new ArrayList<Integer>(n);
+	while (!ready.isEmpty()) {
+	    Integer i = ready.poll();
+	    order.add(i);
+	    for (Integer d : dependents.get(i)) {
+		if (--unmet[d] == 0) ready.add(d);
+	    }
+	}
+	if (order.size() != n) {
+	    throw new ConfigurationException(
+		"serviceDependencies contains a cycle");
 	}
-	    
-        logger.exiting(ServiceStarter.class.getName(), "create", proxies);
-        return proxies.toArray(new Result[proxies.size()]);
+	return order;
     }
     
     /**
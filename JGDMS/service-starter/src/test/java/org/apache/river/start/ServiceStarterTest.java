@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.start;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import net.jini.config.Configuration;
+import net.jini.config.ConfigurationException;
+import net.jini.config.ConfigurationFile;
+import org.apache.river.start.ServiceStarter.Result;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests dependency ordering of service creation.
+ */
+public class ServiceStarterTest {
+
+    @Test
+    public void testConcurrentCreationRespectsDependencies() throws Exception {
+        Queue<Integer> created = new ConcurrentLinkedQueue<Integer>();
+        // The independent descriptors wait for each other to be created
+        CountDownLatch overlap = new CountDownLatch(3);
+        ServiceDescriptor[] descs = new ServiceDescriptor[4];
+        for (int i = 0; i < descs.length; i++) {
+            descs[i] = new Sleeper(i, 200L, created, i < 3 ? overlap : null);
+        }
+        Configuration config = config(4,
+            "new org.apache.river.start.ServiceDependency[]{ new org.apache.river.start.ServiceDependency(3, new int[]{1}) }");
+        Result[] results = ServiceStarter.create(descs, config);
+        for (int i = 0; i < results.length; i++) {
+            assertNull(results[i].exception);
+            assertEquals(Integer.valueOf(i), results[i].result);
+        }
+        Integer[] order = created.toArray(new Integer[0]);
+        assertTrue(indexOf(order, 1) < indexOf(order, 3));
+        assertTrue(results[3].waitMillis >= results[1].createMillis);
+    }
+
+    @Test
+    public void testFailedDependencyIsNotCreated() throws Exception {
+        Queue<Integer> created = new ConcurrentLinkedQueue<Integer>();
+        ServiceDescriptor[] descs = new ServiceDescriptor[] {
+            new ServiceDescriptor() {
+                @Override
+                public Object create(Configuration config) throws Exception {
+                    throw new Exception("failed");
+                }
+            },
+            new Sleeper(1, 0L, created)
+        };
+        Configuration config = config(1,
+            "new org.apache.river.start.ServiceDependency[]{ new org.apache.river.start.ServiceDependency(1, new int[]{0}) }");
+        Result[] results = ServiceStarter.create(descs, config);
+        assertNotNull(results[0].exception);
+        assertNotNull(results[1].exception);
+        assertTrue(created.isEmpty());
+    }
+
+    @Test
+    public void testErrorFailsServiceAndDependents() throws Exception {
+        Queue<Integer> created = new ConcurrentLinkedQueue<Integer>();
+        ServiceDescriptor[] descs = new ServiceDescriptor[] {
+            new ServiceDescriptor() {
+                @Override
+                public Object create(Configuration config) throws Exception {
+                    throw new NoClassDefFoundError("failed");
+                }
+            },
+            new Sleeper(1, 0L, created),
+            new Sleeper(2, 0L, created)
+        };
+        Configuration config = config(2,
+            "new org.apache.river.start.ServiceDependency[]{ new org.apache.river.start.ServiceDependency(1, new int[]{0}) }");
+        Result[] results = assertTimeoutPreemptively(Duration.ofSeconds(10),
+            () -> ServiceStarter.create(descs, config));
+        assertTrue(results[0].exception.getCause() instanceof NoClassDefFoundError);
+        assertNotNull(results[1].exception);
+        assertNull(results[2].exception);
+        assertArrayEquals(new Integer[] {2}, created.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void testSharedServiceCreatedAfterFailedGroup() throws Exception {
+        Queue<Integer> created = new ConcurrentLinkedQueue<Integer>();
+        String log = new File("group").getAbsolutePath();
+        ServiceDescriptor[] descs = new ServiceDescriptor[] {
+            new SharedActivatableServiceDescriptor("", "policy", "",
+                "Impl", log, null, false)
+            {
+                @Override
+                public Object create(Configuration config) {
+                    created.add(0);
+                    return 0;
+                }
+            },
+            new SharedActivationGroupDescriptor("policy", "", log,
+                null, null, null)
+            {
+                @Override
+                public Object create(Configuration config) throws Exception {
+                    created.add(1);
+                    throw new Exception("Log " + log + " exists");
+                }
+            }
+        };
+        Result[] results = ServiceStarter.create(descs, config(1,
+            "new org.apache.river.start.ServiceDependency[] {}"));
+        assertNotNull(results[1].exception);
+        assertNull(results[0].exception);
+        assertEquals(Integer.valueOf(0), results[0].result);
+        assertArrayEquals(new Integer[] {1, 0}, created.toArray(new Integer[0]));
+    }
+
+    @Test
+    public void testCycleRejected() throws Exception {
+        Configuration config = config(1,
+            "new org.apache.river.start.ServiceDependency[]{ new org.apache.river.start.ServiceDependency(0, new int[]{1}),"
+            + " new org.apache.river.start.ServiceDependency(1, new int[]{0}) }");
+        ServiceDescriptor[] descs = new ServiceDescriptor[] {
+            new Sleeper(0, 0L, null), new Sleeper(1, 0L, null)
+        };
+        assertThrows(ConfigurationException.class,
+            () -> ServiceStarter.create(descs, config));
+    }
+
+    private static Configuration config(int threads, String dependencies)
+        throws ConfigurationException
+    {
+        return new ConfigurationFile(new String[] {
+            "-",
+            "org.apache.river.start.startupThreads=" + threads,
+            "org.apache.river.start.serviceDependencies=" + dependencies
+        });
+    }
+
+    private static int indexOf(Integer[] order, int i) {
+        for (int j = 0; j < order.length; j++) {
+            if (order[j] == i) return j;
+        }
+        return -1;
+    }
+
+    private static class Sleeper implements ServiceDescriptor {
+        private final int index;
+        private final long millis;
+        private final Queue<Integer> created;
+        private final CountDownLatch overlap;
+
+        Sleeper(int index, long millis, Queue<Integer> created) {
+            this(index, millis, created, null);
+        }
+
+        Sleeper(int index, long millis, Queue<Integer> created,
+                CountDownLatch overlap)
+        {
+            this.index = index;
+            this.millis = millis;
+            this.created = created;
+            this.overlap = overlap;
+        }
+
+        @Override
+        public Object create(Configuration config) throws Exception {
+            if (overlap != null) {
+                overlap.countDown();
+                if (!overlap.await(10, TimeUnit.SECONDS)) {
+                    throw new Exception("not created concurrently");
+                }
+            }
+            Thread.sleep(millis);
+            created.add(index);
+            return index;
+        }
+    }
+}
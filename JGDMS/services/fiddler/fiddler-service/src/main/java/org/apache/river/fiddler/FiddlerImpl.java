@@ -44,11 +44,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -285,6 +287,17 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
      *  where the elements of the map are ordered by lease expiration time.
      */
     private final TreeMap registrationByTime = new TreeMap();
+    /** Index of the registrations by the groups and locators each is
+     *  interested in, so that discovery events only visit the
+     *  registrations that may be interested.
+     */
+    private final InterestIndex<RegistrationInfo> interestIndex
+                                     = new InterestIndex<RegistrationInfo>();
+    /** Map from registrationID to the remote events waiting to be sent to
+     *  the listener of that registration.
+     */
+    private final Map<Uuid,PendingEvents> pendingEvents
+                                  = new ConcurrentHashMap<Uuid,PendingEvents>();
     /** Performs all group and locator discovery on behalf of clients */
     private final LookupDiscoveryManager discoveryMgr; 
     /** The listener registered for both group discovery events and locator
@@ -1094,10 +1107,17 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                     Map.Entry pair = (Map.Entry)itr.next();
                     allDiscoveredRegs.put(pair.getKey(),pair.getValue());
                 }//end loop
-                /* Loop thru regInfo's, adding only those not already known */
-                for( Iterator itr=registrationByID.values().iterator();
-                                                              itr.hasNext(); )
-                {
+                /* Loop thru the regInfo's that may be interested, adding only
+                 * those not already known
+                 */
+                Set candidates = new HashSet();
+                for(Iterator itr = regMap.values().iterator(); itr.hasNext();){
+                    LocatorGroupsStruct locGroups
+                                          = (LocatorGroupsStruct)itr.next();
+                    candidates.addAll(interestIndex.candidates
+                                         (locGroups.locator,locGroups.groups));
+                }//end loop
+                for(Iterator itr = candidates.iterator(); itr.hasNext(); ) {
                     RegistrationInfo regInfo = (RegistrationInfo)itr.next();
                     /* Build and send the "discovered event" if appropriate */
                     maybeSendDiscoveredEvent(regInfo,regMap);
@@ -1163,9 +1183,20 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                         allDiscardedRegs.add(jtr.next());
                     }
                 } else {
-                    /* Send discard event to each "eligible" registration */
-                    for( Iterator itr=registrationByID.values().iterator();
-                                                              itr.hasNext(); )
+                    /* Send discard event to each "eligible" registration;
+                     * only registrations interested in the old groups of a
+                     * discarded registrar are eligible
+                     */
+                    Set candidates = new HashSet();
+                    for(Iterator itr = groupsMap.keySet().iterator();
+                                                             itr.hasNext(); ) {
+                        LocatorGroupsStruct locGroups
+                          = (LocatorGroupsStruct)allDiscoveredRegs.get(itr.next());
+                        if(locGroups == null) continue;
+                        candidates.addAll
+                              (interestIndex.groupCandidates(locGroups.groups));
+                    }//end loop
+                    for(Iterator itr = candidates.iterator(); itr.hasNext(); )
                     {
                         regInfo = (RegistrationInfo)itr.next();
                         HashSet discardedRegs = maybeSendDiscardedEvent
@@ -1257,9 +1288,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                 }//end if
             }//end loop
             /* Build and send the "discarded event" */
-            RemoteDiscoveryEvent event = buildEvent(regInfo,discardMap,true);
-            if(event != null) {
-                queueEvent(regInfo,event);
+            if(queueEvent(regInfo,discardMap,true)) {
                 logInfoEvents("DiscardedEventTask.run(): "
                               +"DISCARDED Event SENT to regInfo\n");
             }
@@ -1309,10 +1338,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                     HashMap groupsMap = mapRegToGroups(registrar,
                ((LocatorGroupsStruct)allDiscoveredRegs.get(registrar)).groups);
 
-                    RemoteDiscoveryEvent event = buildEvent
-                                                      (regInfo,groupsMap,true);
-                    if(event != null) {
-                        queueEvent(regInfo,event);
+                    if(queueEvent(regInfo,groupsMap,true)) {
                         logInfoEvents("DiscardRegistrarTask.run(): "
                                       +"DISCARDED Event was SENT\n");
                     }//endif
@@ -1362,17 +1388,23 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                 Map groupsMap = event.getGroups();
                 HashSet allDiscardedRegs = new HashSet(groupsMap.size());
                 HashMap locatorMap = new HashMap(groupsMap.size());
-                /* Retrieve the locators of each registrar in the event */
+                /* Retrieve the locators of each registrar in the event, and
+                 * the regInfo's that may have discovered the registrar
+                 * through its locator or its old member groups
+                 */
+                Set candidates = new HashSet();
                 for(Iterator itr = (groupsMap.keySet()).iterator();
                                                             itr.hasNext(); )
                 {
                     ServiceRegistrar reg = (ServiceRegistrar)itr.next();
-                    locatorMap.put(reg,
-                    ((LocatorGroupsStruct)allDiscoveredRegs.get(reg)).locator);
+                    LocatorGroupsStruct locGroups
+                                = (LocatorGroupsStruct)allDiscoveredRegs.get(reg);
+                    locatorMap.put(reg,locGroups.locator);
+                    candidates.addAll(interestIndex.candidates
+                                         (locGroups.locator,locGroups.groups));
                 }//end loop
 
-                for( Iterator itr=registrationByID.values().iterator();
-                                                              itr.hasNext(); )
+                for(Iterator itr = candidates.iterator(); itr.hasNext(); )
                 {
                     RegistrationInfo regInfo = (RegistrationInfo)itr.next();
                     HashSet discardedRegs = maybeSendDiscardedEvent
@@ -1481,9 +1513,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                 }
             }//end loop
             /* Build and send the "discarded event" */
-            RemoteDiscoveryEvent event = buildEvent(regInfo,discardMap,true);
-            if(event != null) {
-                queueEvent(regInfo,event);
+            if(queueEvent(regInfo,discardMap,true)) {
                 logInfoEvents("ChangedEventTask.run(): "
                               +"DISCARDED Event was SENT\n");
             }//endif
@@ -1541,16 +1571,14 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
             try {
                 HashSet newGroupSet = addRegInfoGroups(regInfo,groups);  // a.
                 if(newGroupSet.size() > 0) {
+                    indexInterest(regInfo);
                     logInfoTasks("AddGroupsTask.run(): adding to the "
                                  +"registration's groups");
                     Map discoveredRegs = getDesiredRegsByGroup
                                                               (regInfo); // b.
                     Map regsAdded = regInfo.addToDiscoveredRegs
                                                        (discoveredRegs); // c.
-                    RemoteDiscoveryEvent event = buildEvent
-                                              (regInfo,regsAdded,false); // d.
-                    if(event != null) {
-                        queueEvent(regInfo,event);                       // d.
+                    if(queueEvent(regInfo,regsAdded,false)) { // d.
                         logInfoEvents("AddGroupsTask.run(): DISCOVERED "
                                       +"Event was SENT\n");
                     }//endif
@@ -1649,13 +1677,11 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                              +"registration's groups");
                 Map oldDesiredRegs = getDesiredRegsByGroup(regInfo);     // a.
                 setRegInfoGroups(regInfo,groups);                        // b.
+                indexInterest(regInfo);
                 Map newDesiredRegs = getDesiredRegsByGroup(regInfo); // c.
                 Map regsAdded = regInfo.addToDiscoveredRegs
                                                        (newDesiredRegs); // d.
-                RemoteDiscoveryEvent event = buildEvent
-                                              (regInfo,regsAdded,false); // e.
-                if(event != null) {
-                    queueEvent(regInfo,event);                           // e.
+                if(queueEvent(regInfo,regsAdded,false)) { // e.
                     logInfoEvents("SetGroupsTask.run(): DISCOVERED "
                                   +"Event was SENT\n");
                 }//endif
@@ -1666,9 +1692,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                 {
                     (regInfo.discoveredRegsMap).remove(itr.next());     // g.
                 }//end loop
-                event = buildEvent(regInfo,discardRegs,true);           // g.
-                if(event != null) {
-                    queueEvent(regInfo,event);                          // g.
+                if(queueEvent(regInfo,discardRegs,true)) {           // g.
                     logInfoEvents("SetGroupsTask.run(): "
                                   +"DISCARDED Event was SENT\n");
                 }//endif
@@ -1731,6 +1755,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                 Map oldDesiredRegs = getDesiredRegsByGroup(regInfo);
                 /* update regInfo's desired regs */
                 removeRegInfoGroups(regInfo,groups);
+                indexInterest(regInfo);
                 /* regInfo's discovered regs (by group) no longer desired */
                 Map discardRegs = getUndesiredRegsByGroup(oldDesiredRegs,
                                                           regInfo);
@@ -1740,10 +1765,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                 {
                     (regInfo.discoveredRegsMap).remove(itr.next());
                 }//end loop
-                RemoteDiscoveryEvent event = buildEvent
-                                                    (regInfo,discardRegs,true);
-                if(event != null) {
-                    queueEvent(regInfo,event);
+                if(queueEvent(regInfo,discardRegs,true)) {
                     logInfoEvents("RemoveGroupsTask.run(): "
                                   +"DISCARDED Event was SENT\n");
                 }//endif
@@ -1820,16 +1842,14 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
             try {
                 HashSet newLocSet = addRegInfoLocators(regInfo,locators);// a.
                 if(newLocSet.size() > 0) {
+                    indexInterest(regInfo);
                     logInfoTasks("AddLocatorsTask.run(): adding to the "
                                  +"registration's locators");
                     Map discoveredRegs = getDesiredRegsByLocator
                                                               (regInfo); // b.
                     Map regsAdded = regInfo.addToDiscoveredRegs
                                                        (discoveredRegs); // c.
-                    RemoteDiscoveryEvent event = buildEvent
-                                              (regInfo,regsAdded,false); // d.
-                    if(event != null) {
-                        queueEvent(regInfo,event);                       // d.
+                    if(queueEvent(regInfo,regsAdded,false)) { // d.
                         logInfoEvents("AddLocatorsTask.run(): DISCOVERED "
                                       +"Event was SENT\n");
                     }//endif
@@ -1928,13 +1948,11 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                              +"registration's locators");
                 Map oldDesiredRegs = getDesiredRegsByLocator(regInfo);    // a.
                 setRegInfoLocators(regInfo,locators);                     // b.
+                indexInterest(regInfo);
                 Map newDesiredRegs = getDesiredRegsByLocator(regInfo);// c.
                 Map regsAdded = regInfo.addToDiscoveredRegs
                                                        (newDesiredRegs);  // d.
-                RemoteDiscoveryEvent event = buildEvent
-                                              (regInfo,regsAdded,false);  // e.
-                if(event != null) {
-                    queueEvent(regInfo,event);                            // e.
+                if(queueEvent(regInfo,regsAdded,false)) {  // e.
                     logInfoEvents("SetLocatorsTask.run(): DISCOVERED "
                                   +"Event was SENT\n");
                 }//endif
@@ -1950,9 +1968,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                     ((LocatorGroupsStruct)allDiscoveredRegs.get(reg)).groups);
 
                 }//end loop
-                event = buildEvent(regInfo,discardRegs,true);             // g.
-                if(event != null) {
-                    queueEvent(regInfo,event);                            // g.
+                if(queueEvent(regInfo,discardRegs,true)) {             // g.
                     logInfoEvents("SetLocatorsTask.run(): "
                                   +"DISCARDED Event was SENT\n");
                 }//endif
@@ -2015,6 +2031,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                 Map oldDesiredRegs = getDesiredRegsByLocator(regInfo);
                 /* update regInfo's desired regs */
                 removeRegInfoLocators(regInfo,locators);
+                indexInterest(regInfo);
                 /* regInfo's discovered regs (by locator) no longer desired */
                 Map undesiredRegs = getUndesiredRegsByLocator
                                                     (oldDesiredRegs,regInfo);
@@ -2031,10 +2048,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                     ((LocatorGroupsStruct)allDiscoveredRegs.get(reg)).groups);
                 }//end loop
                 /* Construct the registrars-to-groups map for the event */
-                RemoteDiscoveryEvent event = buildEvent
-                                                    (regInfo,discardRegs,true);
-                if(event != null) {
-                    queueEvent(regInfo,event);
+                if(queueEvent(regInfo,discardRegs,true)) {
                     logInfoEvents("SetLocatorsTask.run(): "
                                   +"DISCARDED Event was SENT\n");
                 }//endif
@@ -2059,35 +2073,169 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
         }//end removeRegInfoLocators
     }//end class RemoveLocatorsTask
 
+    /** This class holds the remote events waiting to be sent to the
+     *  listener of a registration, as the registrars and their member
+     *  groups that each event will contain. Events are only constructed
+     *  when they are about to be sent, so that consecutive events of the
+     *  same kind can be combined.
+     */
+    private static final class PendingEvents {
+        /** Data structure record corresponding to registration to get events*/
+        public final RegistrationInfo regInfo;
+        /** The registrars-to-groups maps of the events, in order */
+        private final List<Map<ServiceRegistrar,String[]>> groupsMaps
+                             = new ArrayList<Map<ServiceRegistrar,String[]>>();
+        /** Whether each of the events is a discarded event */
+        private final List<Boolean> discards = new ArrayList<Boolean>();
+        /** Whether a SendEventTask is queued or running for these events */
+        private boolean scheduled;
+
+        public PendingEvents(RegistrationInfo regInfo) {
+            this.regInfo = regInfo;
+        }//end constructor
+
+        /** Adds the given registrars to the last event if it is of the same
+         *  kind, or as a new event otherwise.
+         *
+         * @return <code>true</code> if a task must be queued to send the
+         *         events, <code>false</code> if one is already queued
+         */
+        public synchronized boolean add(Map<ServiceRegistrar,String[]> groupsMap,
+                                        boolean discarded)
+        {
+            int last = discards.size() - 1;
+            if(last >= 0 && discards.get(last).booleanValue() == discarded) {
+                groupsMaps.get(last).putAll(groupsMap);
+            } else {
+                groupsMaps.add(new LinkedHashMap<ServiceRegistrar,String[]>
+                                                                  (groupsMap));
+                discards.add(Boolean.valueOf(discarded));
+            }//endif
+            if(scheduled) return false;
+            scheduled = true;
+            return true;
+        }//end add
+
+        /** Removes and returns the registrars-to-groups maps of the waiting
+         *  events, along with whether each is a discarded event; or returns
+         *  <code>null</code>, and marks that no task is queued, if there
+         *  are none.
+         */
+        public synchronized Object[] take() {
+            if(discards.isEmpty()) {
+                scheduled = false;
+                return null;
+            }//endif
+            Object[] result = new Object[] { groupsMaps.toArray(),
+                                             discards.toArray() };
+            groupsMaps.clear();
+            discards.clear();
+            return result;
+        }//end take
+
+        /** Discards any events waiting to be sent. */
+        public synchronized void clear() {
+            groupsMaps.clear();
+            discards.clear();
+        }//end clear
+
+        /** Discards any events waiting to be sent, and marks that no task
+         *  is queued; called when the sending task fails unexpectedly.
+         */
+        public synchronized void abandon() {
+            clear();
+            scheduled = false;
+        }//end abandon
+    }//end class PendingEvents
+
     /** This class represents a <code>Task</code> object that is placed
      *  in the <code>TaskManager</code> queue for processing in the thread
      *  pool. Instances of this class are placed on the task queue when
-     *  a remote event is to be sent to a given registration. 
+     *  remote events are to be sent to a given registration, and no such
+     *  task is already queued for that registration. 
      *  <p>
      *  Remote events are sent in a separate task such as this to avoid
      *  making the remote call to the registration's listener within a
-     *  synchronization block.
+     *  synchronization block. Since only one task sends events to a
+     *  given registration at a time, events are received by the listener
+     *  in the order they were generated; and events generated while a
+     *  remote call is in progress are combined where possible.
      */
     private final class SendEventTask implements Runnable {
-        /** Data structure record corresponding to registration to get event */
-        public final RegistrationInfo     regInfo;
-        /** The remote event to send to the given registration's listener */
-        public final RemoteDiscoveryEvent event;
+        /** The events waiting to be sent to the registration's listener */
+        public final PendingEvents pending;
         /** Constructs an instance of this class and stores the registration
          *  information.
          */
-        public SendEventTask(RegistrationInfo     regInfo,
-                             RemoteDiscoveryEvent event)
-        {
-            this.regInfo = regInfo;
-            this.event   = event;
+        public SendEventTask(PendingEvents pending) {
+            this.pending = pending;
         }//end constructor
-        /** This method sends a <code>RemoteDiscoveryEvent</code> to the
-         *  listener of the registration that corresponds to the
-         *  <code>regInfo</code> field of this class. This method handles
-         *  all exceptions and error conditions in the appropriate manner.
+        /** This method sends the waiting <code>RemoteDiscoveryEvent</code>s
+         *  to the listener of the registration that corresponds to the
+         *  <code>pending</code> field of this class, until none are left.
+         *  This method handles all exceptions and error conditions in the
+         *  appropriate manner.
          */
         public void run() {
+            try {
+                sendAll();
+            } catch (RuntimeException e) {
+                pending.abandon();
+                throw e;
+            } catch (Error e) {
+                pending.abandon();
+                throw e;
+            }
+        }//end run
+
+        /** Constructs and sends the waiting events until none are left. */
+        private void sendAll() {
+            RegistrationInfo regInfo = pending.regInfo;
+            Object[] next;
+            while( (next = pending.take()) != null ) {
+                Object[] groupsMaps = (Object[])next[0];
+                Object[] discards   = (Object[])next[1];
+                List<RemoteDiscoveryEvent> events
+                           = new ArrayList<RemoteDiscoveryEvent>(discards.length);
+                /* Construct the events; sequence numbers are assigned in
+                 * the order the events are sent.
+                 */
+                concurrentObj.writeLock();
+                try {
+                    if(registrationByID.get(regInfo.registrationID) != regInfo)
+                    {
+                        pending.clear(); // registration has gone away
+                        continue;
+                    }//endif
+                    for(int i=0;i<discards.length;i++) {
+                        RemoteDiscoveryEvent event = buildEvent
+                           (regInfo,
+                            (Map<ServiceRegistrar,String[]>)groupsMaps[i],
+                            ((Boolean)discards[i]).booleanValue());
+                        if(event != null) events.add(event);
+                    }//end loop
+                } finally {
+                    concurrentObj.writeUnlock();
+                }
+                for(int i=0, l=events.size();i<l;i++) {
+                    if( !send(regInfo,events.get(i)) ) {
+                        pending.clear(); // lease cancelled
+                        break;
+                    }//endif
+                }//end loop
+            }//end loop
+        }//end sendAll
+
+        /** Sends a <code>RemoteDiscoveryEvent</code> to the listener of the
+         *  given registration, handling all exceptions and error conditions
+         *  in the appropriate manner.
+         *
+         * @return <code>false</code> if the registration's lease was
+         *         cancelled as a result of the failure to send the event
+         */
+        private boolean send(RegistrationInfo regInfo,
+                             RemoteDiscoveryEvent event)
+        {
             try {
                 regInfo.listener.notify(event);
             } catch (Throwable e) {
@@ -2118,9 +2266,11 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
                     } finally {
                         concurrentObj.writeUnlock();
                     }
+                    return false;
                 }//end switch
             }//end try
-        }//end run
+            return true;
+        }//end send
     }//end class SendEventTask
 
     /**
@@ -5567,6 +5717,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
         /* First add the indicated registration */
         registrationByID.put(regInfo.registrationID, regInfo);
         registrationByTime.put(regInfo,regInfo);
+        indexInterest(regInfo);
         /* Update the set of groups managed by the discovery manager */
         updateDiscoveryMgrGroups();
         /* Update the set of locators managed by the discovery manager */
@@ -5599,6 +5750,8 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
         /* First remove the current registration */
         registrationByID.remove(regInfo.registrationID);
         registrationByTime.remove(regInfo);
+        interestIndex.remove(regInfo);
+        pendingEvents.remove(regInfo.registrationID);
         logInfoRegistration("\nremoved registration: registrationID = ",
                             regInfo.registrationID);
         /* Update the set of groups managed by the discovery manager */
@@ -5608,6 +5761,22 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
         logInfoGroups();
         logInfoLocators();
     }//end removeRegistration
+
+    /**
+     * Updates the index of registrations by interest with the current
+     * groups and locators of the given registration. This method should
+     * be called whenever a registration is added, or its managed sets of
+     * groups or locators are changed.
+     *
+     * Note that this method must be called from within a synchronization
+     * block.
+     *
+     * @param regInfo  the data structure record corresponding to the
+     *                 registration whose interest has changed
+     */
+    private void indexInterest(RegistrationInfo regInfo) {
+        interestIndex.update(regInfo, regInfo.groups, regInfo.locators);
+    }//end indexInterest
     /* END Private Registration Methods ------------------------------------ */
 
     /* BEGIN Private Group Management Methods ------------------------------ */
@@ -5763,21 +5932,16 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
 
     /** Builds a set containing the groups from all registrations. 
      *
-     *  Iterates through all the active registrations, retrieving the groups
-     *  to discover for each registration (minus duplicates). If at least one
-     *  registration has requested that all groups be discovered, stops
-     *  iterating (because the set must be ALL_GROUPS) and returns null.
+     *  Retrieves the groups to discover for the active registrations
+     *  (minus duplicates) from the index of registrations by interest. If
+     *  at least one registration has requested that all groups be
+     *  discovered, returns null (because the set must be ALL_GROUPS).
      */
     private String[] getGroupsFromAllRegs() {
-        HashSet  groupSet = new HashSet();
-        for(Iterator itr=registrationByID.values().iterator();itr.hasNext();) {
-            RegistrationInfo rInfo = (RegistrationInfo)itr.next();
-            if(rInfo.groups == null) {
-                return DiscoveryGroupManagement.ALL_GROUPS;
-            } else {
-                groupSet.addAll(rInfo.groups);
-            }//end if
-        }//end loop
+        if(interestIndex.allGroupsWanted()) {
+            return DiscoveryGroupManagement.ALL_GROUPS;
+        }//end if
+        Set groupSet = interestIndex.groups();
         return (String[])groupSet.toArray(new String[groupSet.size()]);
     }//end getGroupsFromAllRegs
 
@@ -6034,20 +6198,11 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
 
     /** Builds a set containing the locators from all registrations. 
      *
-     *  Iterates through all the active registrations, retrieving the locators
-     *  to discover for each registration (minus duplicates).
+     *  Retrieves the locators to discover for the active registrations
+     *  (minus duplicates) from the index of registrations by interest.
      */
     private LookupLocator[] getLocatorsFromAllRegs() {
-        HashSet locatorSet = new HashSet();
-        for(Iterator itr=registrationByID.values().iterator();itr.hasNext();) {
-            RegistrationInfo rInfo = (RegistrationInfo)itr.next();
-            if(rInfo.locators == null) {
-                throw new AssertionError
-                            ("registration contains a null set of locators");
-            } else {
-                locatorSet.addAll(rInfo.locators);
-            }//end if
-        }//end loop
+        Set locatorSet = interestIndex.locators();
         return (LookupLocator[])locatorSet.toArray
                                         (new LookupLocator[locatorSet.size()]);
     }//end getLocatorsFromAllRegs
@@ -6571,9 +6726,7 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
          */
         Map regsAdded = regInfo.addToDiscoveredRegs(regsToAdd);
         /* Build and send a "discovered event" */
-        RemoteDiscoveryEvent event = buildEvent(regInfo,regsAdded,false);
-        if(event != null) {
-            queueEvent(regInfo,event);
+        if(queueEvent(regInfo,regsAdded,false)) {
             logInfoEvents("NewReg/Discovered EventTask.run(): "
                           +"DISCOVERED Event was SENT\n");
         }//endif
@@ -6655,7 +6808,13 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
      * @param dReg set of registrars that were just discarded
      */
     private void maybeRemoveDiscardedRegFromGlobalSet(Object dReg) {
-        for(Iterator jtr=registrationByID.values().iterator();jtr.hasNext();){
+        /* Only regInfo's interested in the reg can have discovered it */
+        LocatorGroupsStruct locGroups
+                             = (LocatorGroupsStruct)allDiscoveredRegs.get(dReg);
+        if(locGroups == null) return;
+        Set candidates = interestIndex.candidates(locGroups.locator,
+                                                  locGroups.groups);
+        for(Iterator jtr = candidates.iterator(); jtr.hasNext(); ) {
             RegistrationInfo regInfo = (RegistrationInfo)jtr.next();
             if( (regInfo.discoveredRegsMap).containsKey(dReg) ) {
                 return; // this dReg is in at least 1 regInfo, goto next reg
@@ -6754,22 +6913,45 @@ public class FiddlerImpl implements ServerProxyTrust, ProxyAccessor, Fiddler,
     }//end buildEvent
 
     /**
-     * This method simply queues a new <code>SendEventTask</code> instance
-     * that will send the given remote event to the given registration's
-     * listener.
-     * 
-     * @param regInfo the data structure record corresponding to the 
-     *                registration whose listener will receive the event
+     * This method adds the given registrars to the events waiting to be
+     * sent to the given registration's listener, and if necessary queues
+     * a new <code>SendEventTask</code> instance that will send them.
+     * <p>
+     * If the most recent event waiting to be sent is of the same kind
+     * (discovered or discarded), the registrars are added to that event
+     * rather than to a new one; so that a burst of discovery activity
+     * results in one remote event per listener, rather than one for each
+     * change. The order of discovered and discarded events is preserved.
+     * <p>
+     * Note that this method must be called from within a synchronization
+     * block.
      * 
-     * @param event   the instance of <code>RemoteDiscoveryEvent</code> to
-     *                send to the registration's listener
+     * @param regInfo   the data structure record corresponding to the 
+     *                  registration whose listener will receive the event
+     * @param groupsMap map containing the registrars, and their corresponding
+     *                  member groups, to include in the event
+     * @param discarded flag indicating whether the registrars included in
+     *                  the event have been discarded or discovered
+     *
+     * @return <code>true</code> if an event will be sent, that is if
+     *         <code>groupsMap</code> is not empty
      */
-    private void queueEvent(RegistrationInfo regInfo,
-                           RemoteDiscoveryEvent event)
+    private boolean queueEvent(RegistrationInfo regInfo,
+                               Map<ServiceRegistrar,String[]> groupsMap,
+                               boolean discarded)
     {
-        executorService.execute(
-		Security.withContext(new SendEventTask(regInfo,event), context)
-	);
+        if(groupsMap.isEmpty()) return false;
+        PendingEvents pending = pendingEvents.get(regInfo.registrationID);
+        if(pending == null || pending.regInfo != regInfo) {
+            pending = new PendingEvents(regInfo);
+            pendingEvents.put(regInfo.registrationID, pending);
+        }//endif
+        if(pending.add(groupsMap,discarded)) {
+            executorService.execute(
+                Security.withContext(new SendEventTask(pending), context)
+            );
+        }//endif
+        return true;
     }//end queueEvent
     /* END Private Event-Related Methods ----------------------------------- */
 
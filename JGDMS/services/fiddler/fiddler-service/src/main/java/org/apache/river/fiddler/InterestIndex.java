@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.fiddler;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import net.jini.core.discovery.LookupLocator;
+
+/**
+ * Index of registrations by the groups and locators they are interested
+ * in discovering, used to find the registrations that may be interested
+ * in a lookup service without visiting every registration.
+ * <p>
+ * The index is conservative: every registration interested in a lookup
+ * service is among the candidates returned for it, but candidates must
+ * still be checked for interest.  Locators are indexed by port, since a
+ * registration's locator matches a lookup service's locator when their
+ * ports are equal and their hosts resolve to the same address.
+ * <p>
+ * A registration must be re-indexed whenever its groups or locators are
+ * changed.  Updates are expected to be made by one thread at a time, while
+ * lookups may be made concurrently.
+ *
+ * @param <T> the type of registration record
+ * @since 3.1.1
+ */
+class InterestIndex<T> {
+
+    /** Registrations interested in all groups */
+    private final Set<T> allGroups =
+	    Collections.newSetFromMap(new ConcurrentHashMap<T,Boolean>());
+    /** Registrations by each group they are interested in */
+    private final ConcurrentMap<String,Set<T>> byGroup =
+	    new ConcurrentHashMap<String,Set<T>>();
+    /** Registrations by the port of each locator they are interested in */
+    private final ConcurrentMap<Integer,Set<T>> byPort =
+	    new ConcurrentHashMap<Integer,Set<T>>();
+    /** Number of registrations interested in each locator */
+    private final ConcurrentMap<LookupLocator,Integer> locatorCount =
+	    new ConcurrentHashMap<LookupLocator,Integer>();
+    /** What each registration is currently indexed under */
+    private final ConcurrentMap<T,Interest> indexed =
+	    new ConcurrentHashMap<T,Interest>();
+
+    /**
+     * Index, or re-index, a registration.
+     *
+     * @param reg the registration
+     * @param groups the groups the registration wishes to discover,
+     *        <code>null</code> meaning all groups
+     * @param locators the locators the registration wishes to discover
+     */
+    void update(T reg, Set<String> groups, Set<LookupLocator> locators) {
+	remove(reg);
+	final Interest interest = new Interest(groups, locators);
+	if (interest.groups == null) {
+	    allGroups.add(reg);
+	} else {
+	    for (String group : interest.groups) {
+		add(byGroup, group, reg);
+	    }
+	}
+	for (LookupLocator loc : interest.locators) {
+	    add(byPort, Integer.valueOf(loc.getPort()), reg);
+	    final Integer count = locatorCount.get(loc);
+	    locatorCount.put(loc, Integer.valueOf(
+		count == null ? 1 : count.intValue() + 1));
+	}
+	indexed.put(reg, interest);
+    }
+
+    /**
+     * Remove a registration from the index.
+     *
+     * @param reg the registration
+     */
+    void remove(T reg) {
+	final Interest interest = indexed.remove(reg);
+	if (interest == null) return;
+	if (interest.groups == null) {
+	    allGroups.remove(reg);
+	} else {
+	    for (String group : interest.groups) {
+		remove(byGroup, group, reg);
+	    }
+	}
+	for (LookupLocator loc : interest.locators) {
+	    remove(byPort, Integer.valueOf(loc.getPort()), reg);
+	    final int count = locatorCount.get(loc).intValue() - 1;
+	    if (count == 0) {
+		locatorCount.remove(loc);
+	    } else {
+		locatorCount.put(loc, Integer.valueOf(count));
+	    }
+	}
+    }
+
+    /**
+     * Returns the registrations that may be interested, through group
+     * discovery, in a lookup service that is a member of the given groups.
+     *
+     * @param groups the member groups of the lookup service
+     * @return the candidate registrations
+     */
+    Set<T> groupCandidates(String[] groups) {
+	final Set<T> result = new HashSet<T>(allGroups);
+	for (int i = 0; i < groups.length; i++) {
+	    final Set<T> regs = byGroup.get(groups[i]);
+	    if (regs != null) result.addAll(regs);
+	}
+	return result;
+    }
+
+    /**
+     * Returns the registrations that may be interested, through group or
+     * locator discovery, in a lookup service with the given locator that
+     * is a member of the given groups.
+     *
+     * @param locator the locator of the lookup service
+     * @param groups the member groups of the lookup service
+     * @return the candidate registrations
+     */
+    Set<T> candidates(LookupLocator locator, String[] groups) {
+	final Set<T> result = groupCandidates(groups);
+	final Set<T> regs = byPort.get(Integer.valueOf(locator.getPort()));
+	if (regs != null) result.addAll(regs);
+	return result;
+    }
+
+    /**
+     * Returns true if any registration is interested in all groups.
+     */
+    boolean allGroupsWanted() {
+	return !allGroups.isEmpty();
+    }
+
+    /**
+     * Returns the groups that at least one registration is interested in.
+     */
+    Set<String> groups() {
+	return byGroup.keySet();
+    }
+
+    /**
+     * Returns the locators that at least one registration is interested in.
+     */
+    Set<LookupLocator> locators() {
+	return locatorCount.keySet();
+    }
+
+    private static <K,T> void add(ConcurrentMap<K,Set<T>> map, K key, T reg) {
+	Set<T> regs = map.get(key);
+	if (regs == null) {
+	    regs = Collections.newSetFromMap(new ConcurrentHashMap<T,Boolean>());
+	    final Set<T> existing = map.putIfAbsent(key, regs);
+	    if (existing != null) regs = existing;
+	}
+	regs.add(reg);
+    }
+
+    private static <K,T> void remove(ConcurrentMap<K,Set<T>> map, K key, T reg) {
+	final Set<T> regs = map.get(key);
+	if (regs == null) return;
+	regs.remove(reg);
+	if (regs.isEmpty()) map.remove(key, regs);
+    }
+
+    /**
+     * Copy of the interest of a registration at the time it was indexed,
+     * so that it can be removed after the registration's sets change.
+     */
+    private static class Interest {
+	final Set<String> groups;
+	final Set<LookupLocator> locators;
+
+	Interest(Set<String> groups, Set<LookupLocator> locators) {
+	    this.groups = groups == null ? null : new HashSet<String>(groups);
+	    this.locators = locators == null ?
+		Collections.<LookupLocator>emptySet() :
+		new HashSet<LookupLocator>(locators);
+	}
+    }
+}
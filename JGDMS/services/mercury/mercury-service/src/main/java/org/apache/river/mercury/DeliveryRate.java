@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.mercury;
+
+/**
+ * Tracks the number of events delivered on behalf of a single
+ * registration and the rate at which they were delivered.  The rate
+ * is sampled over fixed intervals, so it reflects recent throughput
+ * rather than the lifetime average.
+ *
+ * @since 3.1.1
+ */
+class DeliveryRate {
+
+    /** Length of a sampling interval, in milliseconds */
+    private static final long INTERVAL = 10000L;
+
+    /** Total events delivered */
+    private long delivered;
+    /** Events delivered in the current interval */
+    private long intervalCount;
+    /** Start of the current interval */
+    private long intervalStart;
+    /** Rate, in events per second, measured over the last interval */
+    private double rate;
+
+    DeliveryRate(long now) {
+        intervalStart = now;
+    }
+
+    /**
+     * Record the successful delivery of <code>count</code> events.
+     */
+    synchronized void delivered(int count, long now) {
+        roll(now);
+        delivered += count;
+        intervalCount += count;
+    }
+
+    /** Returns the total number of events delivered. */
+    synchronized long total() {
+        return delivered;
+    }
+
+    /** Returns the delivery rate in events per second. */
+    synchronized double rate(long now) {
+        roll(now);
+        return rate;
+    }
+
+    private void roll(long now) {
+        long elapsed = now - intervalStart;
+        if (elapsed >= INTERVAL) {
+            rate = intervalCount * 1000.0 / elapsed;
+            intervalCount = 0;
+            intervalStart = now;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.mercury;
+
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.jini.core.event.RemoteEvent;
+import net.jini.core.event.RemoteEventListener;
+import net.jini.core.event.UnknownEventException;
+import net.jini.event.BatchRemoteEventListener;
+import org.apache.river.constants.ThrowableConstants;
+import org.apache.river.logging.Levels;
+
+/**
+ * Delivers events to the target of a single registration and categorizes
+ * the outcome of each delivery.  A window of events is delivered in one
+ * call to a {@link BatchRemoteEventListener}, otherwise one call at a
+ * time, or concurrently on a pipeline executor if one is given.  No locks
+ * may be held while delivering events.  Subclasses apply the outcomes to
+ * the registration.
+ *
+ * @since 3.1.1
+ */
+abstract class EventDelivery {
+
+    /** Logger for event delivery messages */
+    private static final Logger DELIVERY_LOGGER = MailboxImpl.DELIVERY_LOGGER;
+
+    /* Outcomes of an attempt to deliver an event */
+    /** The target accepted the event */
+    static final int DELIVERED = 0;
+    /** The event will never be accepted and should be dropped */
+    static final int DISCARDED = 1;
+    /** Delivery may succeed if attempted again later */
+    static final int RETRY = 2;
+    /** The target is unusable, delivery for the registration was disabled */
+    static final int DISABLED = 3;
+    /** A batch was refused, its events must be delivered individually */
+    static final int FALLBACK = 4;
+
+    /** The delivery target */
+    private final RemoteEventListener listener;
+
+    /** The context in which the target is called */
+    private final AccessControlContext context;
+
+    /**
+     * Executor for concurrent <code>notify</code> calls within a window,
+     * <code>null</code> unless pipelining is enabled.
+     */
+    private final ExecutorService pipelineExecutor;
+
+    EventDelivery(RemoteEventListener listener, AccessControlContext context,
+            ExecutorService pipelineExecutor)
+    {
+        this.listener = listener;
+        this.context = context;
+        this.pipelineExecutor = pipelineExecutor;
+    }
+
+    /** Record the successful delivery of <code>count</code> events. */
+    abstract void delivered(int count);
+
+    /** Record a failed, but retryable, delivery attempt. */
+    abstract void failed();
+
+    /** Record that the target rejected the type of the given event. */
+    abstract void unknownEvent(RemoteEvent ev);
+
+    /** Disable delivery to the target, which is unusable. */
+    abstract void disable();
+
+    /**
+     * Deliver a window of events to the target, setting the outcome of
+     * each.  Null events, those that can't be delivered, are discarded.
+     * Return the number of leading events that were delivered or
+     * discarded, which may be removed from the registration's log.
+     */
+    int deliverWindow(RemoteEvent[] events, int[] outcomes) {
+        int count = 0;
+        for (int i = 0; i < events.length; i++) {
+            outcomes[i] = DISCARDED;
+            if (events[i] != null) count++;
+        }
+        if (count > 0) {
+            if (listener instanceof BatchRemoteEventListener) {
+                RemoteEvent[] batch = new RemoteEvent[count];
+                for (int i = 0, j = 0; i < events.length; i++) {
+                    if (events[i] != null) batch[j++] = events[i];
+                }
+                int outcome = deliverBatch(batch);
+                if (outcome == FALLBACK) {
+                    deliverSerially(events, outcomes);
+                } else {
+                    for (int i = 0; i < events.length; i++) {
+                        if (events[i] != null) outcomes[i] = outcome;
+                    }
+                }
+            } else if (pipelineExecutor != null) {
+                deliverPipelined(events, outcomes);
+            } else {
+                deliverSerially(events, outcomes);
+            }
+        }
+        int done = 0;
+        while (done < outcomes.length &&
+            (outcomes[done] == DELIVERED || outcomes[done] == DISCARDED))
+        {
+            done++;
+        }
+        return done;
+    }
+
+    /**
+     * Deliver the non-null events one at a time, in order, stopping
+     * at the first one that can't be delivered now. Events following
+     * it are given the same outcome.
+     */
+    private void deliverSerially(RemoteEvent[] events, int[] outcomes) {
+        int outcome = DELIVERED;
+        for (int i = 0; i < events.length; i++) {
+            if (events[i] == null) continue;
+            if (outcome == RETRY || outcome == DISABLED) {
+                outcomes[i] = outcome;
+            } else {
+                outcome = outcomes[i] = deliver(events[i]);
+            }
+        }
+    }
+
+    /**
+     * Deliver the non-null events concurrently using the pipeline
+     * executor. Events may arrive out of order, and an event following
+     * one that could not be delivered will be delivered again in the
+     * next round.
+     */
+    private void deliverPipelined(RemoteEvent[] events, int[] outcomes) {
+        List<Future<Integer>> pending = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < events.length; i++) {
+            if (events[i] == null) {
+                pending.add(null);
+                continue;
+            }
+            final RemoteEvent ev = events[i];
+            try {
+                pending.add(pipelineExecutor.submit(
+                    new Callable<Integer>() {
+                        public Integer call() {
+                            return Integer.valueOf(deliver(ev));
+                        }
+                    }));
+            } catch (RejectedExecutionException e) {
+                pending.add(null);
+                outcomes[i] = RETRY;
+            }
+        }
+        boolean interrupted = false;
+        for (int i = 0; i < events.length; i++) {
+            Future<Integer> f = pending.get(i);
+            if (f == null) continue;
+            if (interrupted) {
+                f.cancel(false);
+                outcomes[i] = RETRY;
+                continue;
+            }
+            try {
+                outcomes[i] = f.get().intValue();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                f.cancel(false);
+                outcomes[i] = RETRY;
+            } catch (ExecutionException e) {
+                outcomes[i] = RETRY;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Deliver a single event to the target and categorize the outcome.
+     */
+    int deliver(RemoteEvent ev) {
+        if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+            DELIVERY_LOGGER.log(Level.FINEST,
+                "Delivering evt: {0}, ID {1}, Seq# {2}",
+                new Object[] {ev, Long.valueOf(ev.getID()),
+                    Long.valueOf(ev.getSequenceNumber())});
+        }
+        try {
+            try {
+                AccessController.doPrivileged(
+                    new NotifyListener(listener, ev), context);
+            } catch (PrivilegedActionException e) {
+                throw e.getException();
+            }
+            if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                DELIVERY_LOGGER.log(Level.FINEST, "Delivery was successful");
+            }
+            delivered(1);
+            return DELIVERED;
+        } catch (UnknownEventException e) {
+            // Target wasn't expecting this event, so prevent
+            // future notifications of the same event type.
+            if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
+                DELIVERY_LOGGER.log(Levels.HANDLED,
+                    "Caught UnknownEventException during notify");
+            }
+            unknownEvent(ev);
+            return DISCARDED;
+        } catch (Throwable t) {
+            return failure(t);
+        }
+    }
+
+    /**
+     * Deliver the events to a batch capable target in a single call.
+     */
+    private int deliverBatch(RemoteEvent[] events) {
+        try {
+            try {
+                AccessController.doPrivileged(new NotifyBatchListener(
+                    (BatchRemoteEventListener) listener, events), context);
+            } catch (PrivilegedActionException e) {
+                throw e.getException();
+            }
+            if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                DELIVERY_LOGGER.log(Level.FINEST,
+                    "Batch delivery of {0} events was successful",
+                    Integer.valueOf(events.length));
+            }
+            delivered(events.length);
+            return DELIVERED;
+        } catch (UnknownEventException e) {
+            // One or more events were unknown, deliver individually
+            // to find out which.
+            if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
+                DELIVERY_LOGGER.log(Levels.HANDLED,
+                    "Caught UnknownEventException during batch notify");
+            }
+            return FALLBACK;
+        } catch (Throwable t) {
+            if (ThrowableConstants.retryable(t)
+                    == ThrowableConstants.BAD_INVOCATION)
+            {
+                // Don't drop the whole batch for one bad event.
+                if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
+                    DELIVERY_LOGGER.log(Levels.HANDLED,
+                        "Caught a BAD_INVOCATION exception during batch "
+                        + "notify", t);
+                }
+                return FALLBACK;
+            }
+            return failure(t);
+        }
+    }
+
+    /**
+     * Categorize an exception thrown by a <code>notify</code> call as
+     * definite or indefinite. If it's indefinite, then try again
+     * (reschedule). If it's definite, then drop the listener and don't
+     * try again.
+     */
+    private int failure(Throwable t) {
+        final int cat = ThrowableConstants.retryable(t);
+        if (cat == ThrowableConstants.BAD_OBJECT) {
+            // Definite remote exception means there is
+            // no possibility that a retry attempt will
+            // succeed (ex: NoSuchObjectException).
+            if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
+                DELIVERY_LOGGER.log(Levels.HANDLED,
+                    "Caught a BAD_OBJECT exception during notify", t);
+            }
+            // Disable event delivery for this particular
+            // target listener and move onto the next task
+            disable();
+            return DISABLED;
+        } else if (cat == ThrowableConstants.INDEFINITE) {
+            if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                DELIVERY_LOGGER.log(Level.FINEST,
+                    "Caught an INDEFINITE exception during notify", t);
+            }
+            // Indefinite remote exception means there is
+            // possibility that a retry attempt will succeed
+            failed();
+            return RETRY;
+        } else if (cat == ThrowableConstants.BAD_INVOCATION) {
+            if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
+                DELIVERY_LOGGER.log(Levels.HANDLED,
+                    "Caught a BAD_INVOCATION exception during notify", t);
+            }
+            // BAD_INVOCATION exception means there is little
+            // possibility that a retry attempt with the
+            // same argument will succeed.
+            return DISCARDED;
+        } else { // uncategorized
+            if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                DELIVERY_LOGGER.log(Level.FINEST,
+                    "Caught an uncategorized exception during notify", t);
+            }
+            // uncategorized exception means there is a
+            // possibility that a retry attempt will succeed
+            // Note: we've already checked for
+            // UnknownEventException
+            failed();
+            return RETRY;
+        }
+    }
+
+    private static class NotifyBatchListener
+        implements PrivilegedExceptionAction
+    {
+        private final BatchRemoteEventListener listener;
+        private final RemoteEvent[] events;
+
+        NotifyBatchListener(BatchRemoteEventListener listener,
+            RemoteEvent[] events)
+        {
+            this.listener = listener;
+            this.events = events;
+        }
+
+        public Object run() throws Exception {
+            listener.notify(events);
+            return null;
+        }
+    }
+
+    private static class NotifyListener implements PrivilegedExceptionAction {
+
+        private final RemoteEventListener listener;
+        private final RemoteEvent event;
+
+        NotifyListener(RemoteEventListener listener, RemoteEvent event) {
+            this.listener = listener;
+            this.event = event;
+        }
+
+        public Object run() throws Exception {
+            listener.notify(event);
+            return null;
+        }
+    }
+}
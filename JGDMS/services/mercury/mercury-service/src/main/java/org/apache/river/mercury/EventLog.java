@@ -87,6 +87,14 @@ interface EventLog {
      * false otherwise.
      */
     boolean isEmpty() throws IOException;
+
+    /**
+     * Returns the number of events in this log that have not yet been
+     * removed, that is, the current backlog of undelivered events.
+     *
+     * @exception IOException if an I/O error occurs
+     */
+    long size() throws IOException;
     
     /**
      * Effectively removes the last read event from the log.
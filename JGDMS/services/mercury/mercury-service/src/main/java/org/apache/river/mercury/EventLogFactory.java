@@ -165,6 +165,11 @@ class EventLogFactory {
             return !log.isEmpty();
         }
 
+        // Inherit documentation from supertype
+        public long size() throws IOException {
+            return log.size();
+        }
+
         // Inherit documentation from supertype
         public RemoteEvent next() throws IOException, 
 		ClassNotFoundException, NoSuchElementException 
@@ -52,6 +52,13 @@ interface EventLogIterator {
      */
     boolean hasNext() throws IOException;
 
+    /**
+     * Return the number of events in the collection that have not
+     * yet been removed.
+     * @throws IOException if an I/O errors occurs
+     */
+    long size() throws IOException;
+
     /** 
      * Return the next event in the collection. 
      * @throws IOException if an I/O errors occurs
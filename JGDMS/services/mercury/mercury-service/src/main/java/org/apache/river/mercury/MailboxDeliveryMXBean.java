@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.mercury;
+
+import java.util.Map;
+
+/**
+ * Management interface exposing event delivery gauges of a mailbox
+ * service.  Mercury registers an instance with the platform
+ * <code>MBeanServer</code> under the name
+ * <code>org.apache.river.mercury:type=Delivery,id=</code><i>serviceID</i>
+ * while its notifier thread is running.
+ * <p>
+ * Per registration values are keyed by the string form of the
+ * registration's <code>Uuid</code>.
+ *
+ * @since 3.1.1
+ */
+public interface MailboxDeliveryMXBean {
+
+    /**
+     * Returns the total number of events successfully delivered to
+     * registration targets.
+     *
+     * @return the number of delivered events.
+     */
+    long getDeliveredEvents();
+
+    /**
+     * Returns the total number of delivery attempts that failed with
+     * an exception that may allow a later retry to succeed.
+     *
+     * @return the number of failed delivery attempts.
+     */
+    long getFailedDeliveries();
+
+    /**
+     * Returns the number of registrations that currently have a delivery
+     * task in progress.
+     *
+     * @return the number of active registrations.
+     */
+    int getActiveRegistrations();
+
+    /**
+     * Returns the maximum number of events handed to a registration's
+     * target in one delivery round.
+     *
+     * @return the delivery window.
+     */
+    int getDeliveryWindow();
+
+    /**
+     * Returns, for each registration with delivery enabled, the number of
+     * stored events that have not yet been delivered.
+     *
+     * @return the backlog of each push registration.
+     */
+    Map<String,Long> getBacklogs();
+
+    /**
+     * Returns, for each registration that has had events delivered, the
+     * recent delivery rate in events per second.
+     *
+     * @return the delivery rate of each registration.
+     */
+    Map<String,Double> getDeliveryRates();
+}
@@ -20,7 +20,6 @@ package org.apache.river.mercury;
 
 import org.apache.river.config.Config;
 import org.apache.river.constants.TimeConstants;
-import org.apache.river.constants.ThrowableConstants;
 import org.apache.river.landlord.LeasedResource;
 import org.apache.river.landlord.LeaseFactory;
 import org.apache.river.landlord.LeasePeriodPolicy;
@@ -64,6 +63,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
 import net.jini.activation.arg.ActivationException;
 import net.jini.activation.ActivationGroup;
 import net.jini.activation.arg.ActivationGroupID;
@@ -89,11 +89,15 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.ObjectName;
 import javax.security.auth.Subject;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
@@ -2631,6 +2635,13 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
     // to pool event delivery tasks, but there will only be one active task for
     // any one registration. This allows us to ensure "in order" delivery of 
     // events. 
+    //
+    // When the notificationDeliveryWindow entry is greater than one, each
+    // task reads up to that many events ahead and hands them to the target
+    // in one round: as a single call for a BatchRemoteEventListener,
+    // otherwise one call at a time, or concurrently through the pipeline
+    // executor when orderedNotificationDelivery is false.  Events are only
+    // removed from the log once they and all their predecessors are done.
     private class Notifier extends InterruptedStatusThread implements TimeConstants {
         /** 
          * <code>TaskManager</code> that will be handling the 
@@ -2650,6 +2661,35 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
     
         /** Time to wait between notification checks */
         private final static long	PAUSE_TIME = 5000; // 5 seconds
+
+        /** 
+         * Maximum number of events handed to a target in one delivery
+         * round. A value of one retains the classic one event per task
+         * behaviour.
+         */
+        private final int deliveryWindow;
+
+        /** 
+         * Whether events for a registration must arrive at a non-batch 
+         * target in the order they were received.
+         */
+        private final boolean orderedDelivery;
+
+        /** 
+         * Executor for concurrent <code>notify</code> calls within a
+         * delivery round, <code>null</code> unless pipelining is enabled.
+         */
+        private final ExecutorService pipelineExecutor;
+
+        /** Delivery rate of each registration that has received events */
+        private final ConcurrentMap<Uuid,DeliveryRate> deliveryRates =
+            new ConcurrentHashMap<Uuid,DeliveryRate>();
+
+        /** Total number of failed, retryable, delivery attempts */
+        private final AtomicLong failedDeliveries = new AtomicLong();
+
+        /** Total number of events delivered */
+        private final AtomicLong deliveredEvents = new AtomicLong();
     
         /**
          * Simple constructor.
@@ -2668,9 +2708,159 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
                     new NamedThreadFactory("EventTypeGenerator", false)
                 )
             );
+            deliveryWindow = Config.getIntEntry(config, MERCURY,
+                "notificationDeliveryWindow", 1, 1, Integer.MAX_VALUE);
+            orderedDelivery = ((Boolean) config.getEntry(MERCURY,
+                "orderedNotificationDelivery", boolean.class,
+                Boolean.TRUE)).booleanValue();
+            if (deliveryWindow > 1 && !orderedDelivery) {
+                pipelineExecutor = Config.getNonNullEntry(config,
+                    MERCURY, "notificationPipelineExecutorService",
+                    ExecutorService.class,
+                    new ThreadPoolExecutor(
+                        Math.min(deliveryWindow, 64),
+                        Math.min(deliveryWindow, 64), /* Ignored */
+                        15,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(), /* Unbounded Queue */
+                        new NamedThreadFactory("NotificationPipeline", true)
+                    )
+                );
+            } else {
+                pipelineExecutor = null;
+            }
+            if (DELIVERY_LOGGER.isLoggable(Level.CONFIG)) {
+                DELIVERY_LOGGER.log(Level.CONFIG,
+                    "Notifier delivery window: {0}, ordered: {1}",
+                    new Object[] {Integer.valueOf(deliveryWindow),
+                        Boolean.valueOf(orderedDelivery)});
+            }
 //TODO - defer TaskManager() creation to catch block of getEntry()
     	    //start();
         }
+
+        /**
+         * Record the successful delivery of <code>count</code> events
+         * to the target of the given registration.
+         */
+        void delivered(Uuid regID, int count) {
+            long now = System.currentTimeMillis();
+            DeliveryRate rate = deliveryRates.get(regID);
+            if (rate == null) {
+                DeliveryRate existed = 
+                    deliveryRates.putIfAbsent(regID, rate = new DeliveryRate(now));
+                if (existed != null) rate = existed;
+            }
+            rate.delivered(count, now);
+            deliveredEvents.addAndGet(count);
+        }
+
+        /** Record a failed, but retryable, delivery attempt. */
+        void failed() {
+            failedDeliveries.incrementAndGet();
+        }
+
+        /**
+         * Register the delivery gauges with the platform MBean server.
+         * Failure to do so is not fatal to event delivery.
+         */
+        private ObjectName registerMBean() {
+            try {
+                ObjectName name = new ObjectName(
+                    "org.apache.river.mercury:type=Delivery,id=" + serviceID);
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new DeliveryMonitor(), name);
+                return name;
+            } catch (Exception e) {
+                if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
+                    DELIVERY_LOGGER.log(Levels.HANDLED,
+                        "Unable to register delivery MBean", e);
+                }
+            }
+            return null;
+        }
+
+        private void unregisterMBean(ObjectName name) {
+            if (name == null) return;
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (Exception e) {
+                if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
+                    DELIVERY_LOGGER.log(Levels.HANDLED,
+                        "Unable to unregister delivery MBean", e);
+                }
+            }
+        }
+
+        /**
+         * Delivery gauges exported through JMX. Backlogs are read under
+         * the service read lock; rates of registrations that no longer
+         * exist are discarded as they are encountered.
+         */
+        private class DeliveryMonitor implements MailboxDeliveryMXBean {
+
+            public long getDeliveredEvents() {
+                return deliveredEvents.get();
+            }
+
+            public long getFailedDeliveries() {
+                return failedDeliveries.get();
+            }
+
+            public int getActiveRegistrations() {
+                concurrentObj.readLock();
+                try {
+                    return activeReg.size();
+                } finally {
+                    concurrentObj.readUnlock();
+                }
+            }
+
+            public int getDeliveryWindow() {
+                return deliveryWindow;
+            }
+
+            public Map<String,Long> getBacklogs() {
+                Map<String,Long> backlogs = new TreeMap<String,Long>();
+                concurrentObj.readLock();
+                try {
+                    for (ServiceRegistration reg : regByID.values()) {
+                        if (!reg.hasEventTarget()) continue;
+                        try {
+                            backlogs.put(reg.getCookie().toString(),
+                                Long.valueOf(reg.iterator().size()));
+                        } catch (IOException e) {
+                            // Registration data inaccessible ... skip
+                        }
+                    }
+                } finally {
+                    concurrentObj.readUnlock();
+                }
+                return backlogs;
+            }
+
+            public Map<String,Double> getDeliveryRates() {
+                Map<String,Double> rates = new TreeMap<String,Double>();
+                long now = System.currentTimeMillis();
+                concurrentObj.readLock();
+                try {
+                    Iterator<Map.Entry<Uuid,DeliveryRate>> it = 
+                        deliveryRates.entrySet().iterator();
+                    while (it.hasNext()) {
+                        Map.Entry<Uuid,DeliveryRate> e = it.next();
+                        if (regByID.containsKey(e.getKey())) {
+                            rates.put(e.getKey().toString(), 
+                                Double.valueOf(e.getValue().rate(now)));
+                        } else {
+                            it.remove();
+                        }
+                    }
+                } finally {
+                    concurrentObj.readUnlock();
+                }
+                return rates;
+            }
+        }
     
         /**
          * Schedule delivery tasks for any enabled registrations.
@@ -2680,9 +2870,11 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
 	        OPERATIONS_LOGGER.entering(NOTIFIER_SOURCE_CLASS, 
 	            "run");
             }
+            ObjectName mbeanName = registerMBean();
 	    try {
 		concurrentObj.writeLock();
 	    } catch (ConcurrentLockException e) {
+                unregisterMBean(mbeanName);
 		return;
 	    }
 
@@ -2715,8 +2907,8 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
 				    "Scheduling delivery task for reg: {0} ", reg); 
 				}
 				// Create and schedule a event delivery task
-    	                        NotifyTask t = 
-				    new NotifyTask(taskManager, wakeupMgr, uuid);
+    	                        NotifyTask t = new NotifyTask(
+				    taskManager, wakeupMgr, uuid, this);
     	                        taskManager.execute(t);
     	                        // Put registration onto active list
     	                        activeReg.put(uuid, t);
@@ -2767,7 +2959,11 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
 		    wakeupMgr.stop();
 		    wakeupMgr.cancelAll();
     	            taskManager.shutdownNow();
+                    if (pipelineExecutor != null) {
+                        pipelineExecutor.shutdownNow();
+                    }
 		} 
+                unregisterMBean(mbeanName);
                 if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
                     DELIVERY_LOGGER.log(Level.FINEST,
 		        " Notifier: exiting ...");
@@ -2790,6 +2986,7 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
 
     /** The maximum mnumber of times to retry event delivery */
     private final static int	MAX_ATTEMPTS = 5;	// max times to retry
+
     
     /**
      * A task that represents an event notification task for a particular
@@ -2809,12 +3006,18 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
         /** The Uuid of the associated registration */
         private Uuid	regID;
 
+        /** The notifier that scheduled this task */
+        private final Notifier delivery;
+
     	/**
     	 * Create an object to represent an event notification task.
     	 */
-    	NotifyTask(ExecutorService tm, WakeupManager mgr, Uuid regID) {
+    	NotifyTask(ExecutorService tm, WakeupManager mgr, Uuid regID,
+                Notifier delivery)
+        {
     	    super(tm, mgr);
     	    this.regID = regID;
+            this.delivery = delivery;
     	}
 
     	/**
@@ -2950,6 +3153,7 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
     	 * point in the future.
     	 */
     	public boolean tryOnce() {
+            if (delivery.deliveryWindow > 1) return tryWindow();
             if (OPERATIONS_LOGGER.isLoggable(Level.FINER)) {
 	        OPERATIONS_LOGGER.entering(NOTIFY_TASK_SOURCE_CLASS, 
 	            "tryOnce");
@@ -3055,91 +3259,10 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
     	    
     	    // Important - don't hold any locks during a remote invocation
             if (doNotify) { 
-	        if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
-                    DELIVERY_LOGGER.log(Level.FINEST,
-		        "Delivering evt: {0}, ID {1}, Seq# {2}",
-		            new Object[] {ev, Long.valueOf(ev.getID()), 
-		            Long.valueOf(ev.getSequenceNumber())});
-	        }
-		try {
-		    // Notify target listener and note a successful delivery
-		    try {
-			AccessController.doPrivileged(
-			    new NotifyListener(listener, ev), 
-			    context
-			);
-		    } catch (PrivilegedActionException e){
-			throw e.getException();
-		    }
-		    succeeded = true;
-    		    deleteEvent = true;
-    	            if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
-                        DELIVERY_LOGGER.log(Level.FINEST,
-		            "Delivery was successful");
-		    }
-		} catch (UnknownEventException e) {
-		    // Target wasn't expecting this event, so prevent
-		    // future notifications of the same event type.
-    	            if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
-                        DELIVERY_LOGGER.log(Levels.HANDLED,
-		            "Caught UnknownEventException during notify");
-	            }
-	            // Add offending event type to this registration's
-	            // "unknown" list and move on to the next task.
-		    addUnknownEvent(regID, new EventID(ev));
-		    succeeded = true;
-		    deleteEvent = true;
-	        } catch (Throwable t) {
-		    // Categorize exception as definite or indefinite.
-		    // If its indefinite, then try again (reschedule).
-		    // If its definite, then drop the drop the listener
-		    // and don't try again.
-		    final int cat = ThrowableConstants.retryable(t);
-	            if (cat == ThrowableConstants.BAD_OBJECT) {
-		        // Definite remote exception means there is
-		        // no possibility that a retry attempt will
-		        // succeed (ex: NoSuchObjectException).
-    	                if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
-                            DELIVERY_LOGGER.log(Levels.HANDLED,
-		                "Caught a BAD_OBJECT exception during notify", t);
-			}
-	                // Disable event delivery for this particular
-	                // target listener and move onto the next task
-		        disableRegistration(regID, listener);
-		        succeeded = true;
-		        deleteEvent = false;
-		    } else if (cat == ThrowableConstants.INDEFINITE) {
-    	                if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
-                            DELIVERY_LOGGER.log(Level.FINEST,
-		                "Caught an INDEFINITE exception during notify", t);
-			}
-		        // Indefinite remote exception means there is
-		        // possibility that a retry attempt will succeed
-		        succeeded = false;
-		        deleteEvent = false;
-		    } else if (cat == ThrowableConstants.BAD_INVOCATION) {
-    	                if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
-                            DELIVERY_LOGGER.log(Levels.HANDLED,
-		                "Caught a BAD_INVOCATION exception during notify", t);
-			}
-		        // BAD_INVOCATION exception means there is little 
-			// possibility that a retry attempt with the
-			// same argument will succeed.
-		        succeeded = true;
-		        deleteEvent = true;
-		    } else { // uncategorized or bad invocation
-    	                if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
-                            DELIVERY_LOGGER.log(Level.FINEST,
-		                "Caught an uncategorized exception during notify",t);
-			}
-		        // uncategorized exception means there is a 
-			// possibility that a retry attempt will succeed
-			// Note: we've already checked for 
-			// UnknownEventException
-		        succeeded = false;
-		        deleteEvent = false;
-		    }
-		} // end catch     // end catch    
+		int outcome = eventDelivery(listener).deliver(ev);
+		succeeded = outcome != EventDelivery.RETRY;
+		deleteEvent = outcome == EventDelivery.DELIVERED
+		    || outcome == EventDelivery.DISCARDED;
 	    } // end if
     
             // If we still aren't successful after MAX_ATTEMPTS
@@ -3219,23 +3342,174 @@ public class MailboxImpl implements MailboxBackEnd, TimeConstants,
     	    return succeeded;
     	}
 
-	
-    }
+    	/**
+    	 * Deliver up to <code>deliveryWindow</code> events to the target
+    	 * in one round. Events are only removed from the registration's
+    	 * log once they, and every event before them, have either been
+    	 * delivered or discarded. Return <code>true</code> if this round
+    	 * is complete, <code>false</code> if it should be retried later.
+    	 */
+    	private boolean tryWindow() {
+            if (OPERATIONS_LOGGER.isLoggable(Level.FINER)) {
+	        OPERATIONS_LOGGER.entering(NOTIFY_TASK_SOURCE_CLASS, 
+	            "tryWindow");
+	    }
+    	    boolean succeeded = true;            // attempt this task again?
+    	    RemoteEventListener listener = null; // event delivery target
+    	    RemoteEventData[] window = null;     // events to deliver
+    	    Map unknown = null;                  // rejected event types
+    	    int done = 0;         // leading events delivered or discarded
 
-    private static class NotifyListener implements PrivilegedExceptionAction {
+	    if (System.currentTimeMillis() - startTime() > MAX_TIME) {
+    	        if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                    DELIVERY_LOGGER.log(Level.FINEST,
+		        "Cancelling delivery due to time limit expiration.");
+		}
+	    } else {
+                concurrentObj.readLock();
+        	try {
+                    // Note: the following method will throw a 
+                    // ThrowThis exception if the registration 
+                    // is invalid (i.e. expired or non-existent)
+                    ServiceRegistration reg = getServiceRegistration(regID); 
+        	    listener = reg.getEventTarget();
+        	    if (listener != null) window = readWindow(reg);
+        	    // Copied, the map is modified under the write lock
+        	    // while events are being delivered
+        	    unknown = new HashMap(reg.getUnknownEvents());
+		} catch (ThrowThis tt) { // reg was not valid ... skip it
+    	            if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                        DELIVERY_LOGGER.log(Level.FINEST,
+		            "Cancelling delivery because of unknown registration");
+		    }
+        	} finally {
+                    concurrentObj.readUnlock();
+        	}
+	    }
 
-	private final RemoteEventListener listener;
-	private final RemoteEvent event;
+    	    // Important - don't hold any locks during a remote invocation
+    	    if (listener != null && window != null && window.length > 0) {
+    	        // Events that can't be unmarshalled, or whose type the
+    	        // target has rejected before, are left null and discarded.
+    	        RemoteEvent[] events = new RemoteEvent[window.length];
+    	        int [] outcomes = new int[window.length];
+    	        int count = 0;
+    	        for (int i = 0; i < window.length; i++) {
+    	            try {
+    	                RemoteEvent ev = window[i].getRemoteEvent();
+    	                if (!unknown.containsKey(new EventID(ev))) {
+    	                    events[i] = ev;
+    	                    count++;
+    	                }
+    	            } catch (ClassNotFoundException e) {
+    	                if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
+                            DELIVERY_LOGGER.log(Levels.HANDLED,
+		                "Discarding event that could not be unmarshalled",
+		                e);
+		        }
+    	            }
+    	        }
+    	        if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                    DELIVERY_LOGGER.log(Level.FINEST,
+		        "Delivering {0} of {1} events for {2}",
+		        new Object[] {Integer.valueOf(count), 
+		            Integer.valueOf(window.length), regID});
+	        }
+    	        done = eventDelivery(listener).deliverWindow(events, outcomes);
+    	        // Only retry if no progress at all was made in this round,
+    	        // otherwise let the notifier schedule a fresh round.
+    	        if (done == 0 && outcomes[0] == EventDelivery.RETRY) {
+    	            if (attempt() > MAX_ATTEMPTS) {
+    	                if (DELIVERY_LOGGER.isLoggable(Levels.HANDLED)) {
+                            DELIVERY_LOGGER.log(Levels.HANDLED,
+		                "Maximum delivery attempts reached");
+		        }
+    	                done = 1;
+    	            } else {
+    	                succeeded = false;
+    	            }
+    	        }
+    	    }
 
-	public NotifyListener(RemoteEventListener listener, RemoteEvent event) {
-	    this.listener = listener;
-	    this.event = event;
-	}
+            if (succeeded || done > 0) {
+                concurrentObj.writeLock();
+        	try {
+                    ServiceRegistration reg = getServiceRegistration(regID); 
+                    if (succeeded) { 
+                        // If we are still enabled, then move this reg
+                        // from active --> pending list
+        	        activeReg.remove(regID);
+                        if (reg.hasEventTarget()) pendingReg.add(regID);
+    		    }
+    		    if (done > 0) {
+    		        try {
+    		            reg.iterator().moveAhead(window[done - 1].getCookie());
+    		        } catch (IOException ioe) {
+	                    if (DELIVERY_LOGGER.isLoggable(Level.FINEST)) {
+                                DELIVERY_LOGGER.log(Level.FINEST,
+			            "NotifyTask could not move past delivered "
+			            + "events for reg: {0}", reg);
+			    }
+    		        }
+    		    }
+    		} catch (ThrowThis tt) { 
+    		    // Registration is gone ... nothing to do
+    		} finally {
+	            concurrentObj.waiterNotify(eventNotifier);
+                    concurrentObj.writeUnlock();
+        	}
+	    }
+            if (OPERATIONS_LOGGER.isLoggable(Level.FINER)) {
+	        OPERATIONS_LOGGER.exiting(NOTIFY_TASK_SOURCE_CLASS, 
+	            "tryWindow", Boolean.valueOf(succeeded));
+	    }
+    	    return succeeded;
+    	}
 
-	public Object run() throws Exception {
-	    listener.notify(event);
+    	/**
+    	 * Read ahead up to <code>deliveryWindow</code> events from the
+    	 * registration's log, or return <code>null</code> if there are none
+    	 * or they can't be read. Assumes caller holds a read lock.
+    	 */
+    	private RemoteEventData[] readWindow(ServiceRegistration reg) {
+	    try {
+    	        if (reg.iterator().hasNext()) {
+		    return reg.iterator().readAhead(delivery.deliveryWindow);
+		}
+	    } catch (IOException ioe) {
+		//just return null in this case.
+	    } catch (ClassNotFoundException cnfe) {
+		//just return null in this case.
+	    } catch (NoSuchElementException nse) {
+		//just return null in this case.
+	    }
 	    return null;
-	}
+    	}
+
+    	/**
+    	 * Return the delivery of events to the given target on behalf of
+    	 * this task's registration. Must not be used while holding any
+    	 * locks.
+    	 */
+    	private EventDelivery eventDelivery(final RemoteEventListener listener) {
+    	    return new EventDelivery(listener, context, delivery.pipelineExecutor) {
+    	        void delivered(int count) {
+    	            delivery.delivered(regID, count);
+    	        }
+
+    	        void failed() {
+    	            delivery.failed();
+    	        }
+
+    	        void unknownEvent(RemoteEvent ev) {
+    	            addUnknownEvent(regID, new EventID(ev));
+    	        }
+
+    	        void disable() {
+    	            disableRegistration(regID, listener);
+    	        }
+    	    };
+    	}
     }
 
     /**
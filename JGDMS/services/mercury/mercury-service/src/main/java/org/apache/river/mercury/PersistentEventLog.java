@@ -91,8 +91,14 @@ class PersistentEventLog implements EventLog {
     private static final Logger persistenceLogger = 
 	MailboxImpl.PERSISTENCE_LOGGER;
 
-    /** Size of control data file: 4 longs * 8 bytes per long */
-    private static final int CTLBLOCK_LEN = 8 * 4;
+    /** Size of control data file: 5 longs * 8 bytes per long */
+    private static final int CTLBLOCK_LEN = 8 * 5;
+
+    /** 
+     * Size of control data files written before the pending count was
+     * added: 4 longs * 8 bytes per long
+     */
+    private static final int OLD_CTLBLOCK_LEN = 8 * 4;
 
     /** File suffix for the control file */
     private static final String CTLFILE_SUFFIX = "ctl";
@@ -150,6 +156,20 @@ class PersistentEventLog implements EventLog {
     /** The current number of read events. */
     private long rcount = 0;
 
+    /** 
+     * The number of events written and not yet removed. Unlike
+     * <tt>wcount - rcount</tt> this doesn't include the slots skipped
+     * when a log file is abandoned after an I/O error.
+     */
+    private long pending = 0;
+
+    /** 
+     * The read counts of the events returned by the last call to
+     * <tt>readAhead</tt>, in ascending order. Used by <tt>moveAhead</tt>
+     * to count the events it removes.
+     */
+    private long[] readAheadCounts = new long[0];
+
     /** The current write offset into the current "write" log. */
     private long wpos = 0;
 
@@ -289,6 +309,7 @@ class PersistentEventLog implements EventLog {
 	    // Update the control data
 	    wpos = out.getOffset();
 	    ++wcount;
+	    ++pending;
 	} catch (IOException ioe) {
 	    // We'll get interrupted when asked to shutdown.
 	    // In this case, we can skip the call to nextWriteLog.
@@ -556,6 +577,13 @@ class PersistentEventLog implements EventLog {
             }
         }
 
+        readAheadCounts = new long[rData.size()];
+        for (int j = 0; j < readAheadCounts.length; j++) {
+            RemoteEventData data = (RemoteEventData) rData.get(j);
+            readAheadCounts[j] = 
+                ((RemoteEventDataCursor) data.getCookie()).getReadCount();
+        }
+
         printControlData(persistenceLogger, "After Event::readAhead");
 
 	if (debugState) {
@@ -571,6 +599,12 @@ class PersistentEventLog implements EventLog {
         return !(rcount < wcount);
     }
 
+    // Inherit documentation from supertype
+    public long size() throws IOException {
+        stateCheck();
+        return pending;
+    }
+
     // Inherit documentation from supertype
     public void remove() throws IOException {
         stateCheck();
@@ -586,6 +620,7 @@ class PersistentEventLog implements EventLog {
 	if (rcount < wcount) {
 	    ++rcount;
 	    rpos = nextReadPos;
+	    if (pending > 0) --pending;
 	} else {
 	    throw new NoSuchElementException();
 	}
@@ -693,7 +728,9 @@ class PersistentEventLog implements EventLog {
                 currentLogNum++;
             }
         }
+        pending -= countRemoved(readCount);
         rcount = readCount;
+        clampPending();
         // If we started a new log file, then reset the read pointer.
         if ((rcount % eventsPerLogFile) == 0) {
             rpos = 0;
@@ -842,6 +879,8 @@ class PersistentEventLog implements EventLog {
 	if (verifyInvariants() == false) {
 	    nextWriteLog();
 	}
+        // The skipped events are lost
+        clampPending();
 
         // Assert that state is still valid
 	if (debugState)
@@ -850,6 +889,38 @@ class PersistentEventLog implements EventLog {
         printControlData(persistenceLogger, "EventLog::nextReadLog");
     }
 
+    /**
+     * Return the number of events between the current read count and 
+     * the given one. Events returned by the last <tt>readAhead</tt> are
+     * counted individually, so the slots it skipped over aren't.
+     */
+    private long countRemoved(long readCount) {
+        int n = readAheadCounts.length;
+        if (n == 0 || readAheadCounts[n - 1] < readCount) {
+            // Not covered by the last readAhead
+            return readCount - rcount;
+        }
+        long removed = 0;
+        for (int i = 0; i < n; i++) {
+            if (readAheadCounts[i] > rcount && readAheadCounts[i] <= readCount)
+                removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Bound the pending count by the number of slots between the read
+     * and write counts, which drops events lost by skipping a log.
+     */
+    private void clampPending() {
+        if (pending > wcount - rcount) {
+            pending = wcount - rcount;
+        }
+        if (pending < 0) {
+            pending = 0;
+        }
+    }
+
     /**
      * Advance the temporary "read" state to the next available log.
      */
@@ -912,6 +983,7 @@ class PersistentEventLog implements EventLog {
 	packLong(rcount, ctlbuf, 8);
 	packLong(wpos, ctlbuf, 16);
 	packLong(rpos, ctlbuf, 24);
+	packLong(pending, ctlbuf, 32);
 	
 	ControlLog ctl = streamPool.getControlLog(controlFile);
 	ctl.seek(0L);
@@ -926,13 +998,16 @@ class PersistentEventLog implements EventLog {
     private void readControlFile() throws IOException {
 	ControlLog ctl = streamPool.getControlLog(controlFile);
 	ctl.seek(0L);
-	ctl.readFully(ctlbuf);
+	// Older control files don't hold the pending count
+	boolean counted = ctl.length() >= CTLBLOCK_LEN;
+	ctl.readFully(ctlbuf, 0, counted ? CTLBLOCK_LEN : OLD_CTLBLOCK_LEN);
 	streamPool.releaseLogStream(ctl);
 
 	wcount = unpackLong(ctlbuf, 0);
 	rcount = unpackLong(ctlbuf, 8);
 	wpos = unpackLong(ctlbuf, 16);
 	rpos = unpackLong(ctlbuf, 24);
+	pending = counted ? unpackLong(ctlbuf, 32) : wcount - rcount;
     }
     
     /**
@@ -198,6 +198,12 @@ class TransientEventLog implements EventLog {
         return entries.isEmpty();
     }
 
+    // Inherit documentation from supertype
+    public long size() throws IOException {
+	stateCheck();
+        return entries.size();
+    }
+
     // Inherit documentation from supertype
     public void remove() throws IOException {
 	stateCheck();
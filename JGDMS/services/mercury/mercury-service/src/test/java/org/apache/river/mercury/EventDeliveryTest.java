@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.mercury;
+
+import java.rmi.ConnectException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.security.AccessController;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.jini.core.event.RemoteEvent;
+import net.jini.core.event.RemoteEventListener;
+import net.jini.core.event.UnknownEventException;
+import net.jini.event.BatchRemoteEventListener;
+import net.jini.io.MarshalledInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the window, pipeline and batch delivery paths of
+ * {@link EventDelivery}.
+ */
+public class EventDeliveryTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSerialWindow() {
+        Listener listener = new Listener();
+        Recorder delivery = new Recorder(listener, null);
+        RemoteEvent[] events = events(3);
+        int[] outcomes = new int[3];
+        assertEquals(3, delivery.deliverWindow(events, outcomes));
+        assertOutcomes(outcomes, EventDelivery.DELIVERED,
+            EventDelivery.DELIVERED, EventDelivery.DELIVERED);
+        assertEquals(3, delivery.delivered);
+        assertEquals(seqs(0, 1, 2), listener.received);
+    }
+
+    @Test
+    public void testNullEventsAreDiscarded() {
+        Listener listener = new Listener();
+        Recorder delivery = new Recorder(listener, null);
+        RemoteEvent[] events = events(3);
+        events[1] = null;
+        int[] outcomes = new int[3];
+        assertEquals(3, delivery.deliverWindow(events, outcomes));
+        assertOutcomes(outcomes, EventDelivery.DELIVERED,
+            EventDelivery.DISCARDED, EventDelivery.DELIVERED);
+        assertEquals(seqs(0, 2), listener.received);
+    }
+
+    @Test
+    public void testRetryStopsSerialWindow() {
+        Listener listener = new Listener();
+        listener.fail(1, new ConnectException("unreachable"));
+        Recorder delivery = new Recorder(listener, null);
+        int[] outcomes = new int[3];
+        assertEquals(1, delivery.deliverWindow(events(3), outcomes));
+        assertOutcomes(outcomes, EventDelivery.DELIVERED,
+            EventDelivery.RETRY, EventDelivery.RETRY);
+        assertEquals(1, delivery.failed);
+        // The event after the failed one isn't attempted
+        assertEquals(seqs(0), listener.received);
+    }
+
+    @Test
+    public void testUnknownEventIsDiscarded() {
+        Listener listener = new Listener();
+        listener.fail(0, new UnknownEventException("unknown"));
+        Recorder delivery = new Recorder(listener, null);
+        int[] outcomes = new int[2];
+        assertEquals(2, delivery.deliverWindow(events(2), outcomes));
+        assertOutcomes(outcomes, EventDelivery.DISCARDED,
+            EventDelivery.DELIVERED);
+        assertEquals(1, delivery.unknown.size());
+        assertEquals(0L, delivery.unknown.get(0).getSequenceNumber());
+    }
+
+    @Test
+    public void testBadObjectDisablesDelivery() {
+        Listener listener = new Listener();
+        listener.fail(0, new NoSuchObjectException("gone"));
+        Recorder delivery = new Recorder(listener, null);
+        int[] outcomes = new int[2];
+        assertEquals(0, delivery.deliverWindow(events(2), outcomes));
+        assertOutcomes(outcomes, EventDelivery.DISABLED,
+            EventDelivery.DISABLED);
+        assertEquals(1, delivery.disabled);
+        assertTrue(listener.received.isEmpty());
+    }
+
+    @Test
+    public void testPipelinedWindow() {
+        Listener listener = new Listener();
+        Recorder delivery = new Recorder(listener, executor);
+        RemoteEvent[] events = events(8);
+        int[] outcomes = new int[8];
+        assertEquals(8, delivery.deliverWindow(events, outcomes));
+        for (int i = 0; i < outcomes.length; i++) {
+            assertEquals(EventDelivery.DELIVERED, outcomes[i]);
+        }
+        assertEquals(8, delivery.delivered);
+        List<Long> received = new ArrayList<Long>(listener.received);
+        Collections.sort(received);
+        assertEquals(seqs(0, 1, 2, 3, 4, 5, 6, 7), received);
+    }
+
+    @Test
+    public void testPipelinedWindowStopsAtFirstRetry() {
+        Listener listener = new Listener();
+        listener.fail(2, new ConnectException("unreachable"));
+        Recorder delivery = new Recorder(listener, executor);
+        int[] outcomes = new int[4];
+        // Later events are still delivered, but only those before the
+        // failure may be removed from the log.
+        assertEquals(2, delivery.deliverWindow(events(4), outcomes));
+        assertOutcomes(outcomes, EventDelivery.DELIVERED,
+            EventDelivery.DELIVERED, EventDelivery.RETRY,
+            EventDelivery.DELIVERED);
+        assertEquals(1, delivery.failed);
+    }
+
+    @Test
+    public void testPipelinedWindowRejected() {
+        executor.shutdown();
+        Listener listener = new Listener();
+        Recorder delivery = new Recorder(listener, executor);
+        int[] outcomes = new int[2];
+        assertEquals(0, delivery.deliverWindow(events(2), outcomes));
+        assertOutcomes(outcomes, EventDelivery.RETRY, EventDelivery.RETRY);
+        assertTrue(listener.received.isEmpty());
+    }
+
+    @Test
+    public void testBatchWindow() {
+        BatchListener listener = new BatchListener();
+        Recorder delivery = new Recorder(listener, executor);
+        RemoteEvent[] events = events(3);
+        events[1] = null;
+        int[] outcomes = new int[3];
+        assertEquals(3, delivery.deliverWindow(events, outcomes));
+        assertOutcomes(outcomes, EventDelivery.DELIVERED,
+            EventDelivery.DISCARDED, EventDelivery.DELIVERED);
+        assertEquals(1, listener.batches.size());
+        assertEquals(seqs(0, 2), listener.batches.get(0));
+        assertTrue(listener.received.isEmpty());
+        assertEquals(2, delivery.delivered);
+    }
+
+    @Test
+    public void testBatchFallsBackOnUnknownEvent() {
+        BatchListener listener = new BatchListener();
+        listener.batchFailure = new UnknownEventException("unknown");
+        listener.fail(1, new UnknownEventException("unknown"));
+        Recorder delivery = new Recorder(listener, null);
+        int[] outcomes = new int[3];
+        assertEquals(3, delivery.deliverWindow(events(3), outcomes));
+        assertOutcomes(outcomes, EventDelivery.DELIVERED,
+            EventDelivery.DISCARDED, EventDelivery.DELIVERED);
+        assertEquals(seqs(0, 2), listener.received);
+        assertEquals(1, delivery.unknown.size());
+        assertEquals(1L, delivery.unknown.get(0).getSequenceNumber());
+        assertEquals(2, delivery.delivered);
+    }
+
+    @Test
+    public void testBatchRetry() {
+        BatchListener listener = new BatchListener();
+        listener.batchFailure = new ConnectException("unreachable");
+        Recorder delivery = new Recorder(listener, null);
+        int[] outcomes = new int[2];
+        assertEquals(0, delivery.deliverWindow(events(2), outcomes));
+        assertOutcomes(outcomes, EventDelivery.RETRY, EventDelivery.RETRY);
+        assertEquals(1, delivery.failed);
+        assertTrue(listener.received.isEmpty());
+    }
+
+    private static RemoteEvent[] events(int count) {
+        RemoteEvent[] events = new RemoteEvent[count];
+        for (int i = 0; i < count; i++) {
+            events[i] = new RemoteEvent("source", 1L, i,
+                (MarshalledInstance) null);
+        }
+        return events;
+    }
+
+    private static List<Long> seqs(long... seqs) {
+        List<Long> list = new ArrayList<Long>();
+        for (long seq : seqs) list.add(Long.valueOf(seq));
+        return list;
+    }
+
+    private static void assertOutcomes(int[] actual, int... expected) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("outcome " + i, expected[i], actual[i]);
+        }
+    }
+
+    /** Records the outcomes applied by an EventDelivery. */
+    private static class Recorder extends EventDelivery {
+        int delivered;
+        int failed;
+        int disabled;
+        final List<RemoteEvent> unknown = new ArrayList<RemoteEvent>();
+
+        Recorder(RemoteEventListener listener, ExecutorService executor) {
+            super(listener, AccessController.getContext(), executor);
+        }
+
+        synchronized void delivered(int count) {
+            delivered += count;
+        }
+
+        synchronized void failed() {
+            failed++;
+        }
+
+        synchronized void unknownEvent(RemoteEvent ev) {
+            unknown.add(ev);
+        }
+
+        synchronized void disable() {
+            disabled++;
+        }
+    }
+
+    /** Listener that fails the events it's told to. */
+    private static class Listener implements RemoteEventListener {
+        final List<Long> received =
+            Collections.synchronizedList(new ArrayList<Long>());
+        private final Map<Long,Exception> failures =
+            new HashMap<Long,Exception>();
+
+        void fail(long seq, Exception e) {
+            failures.put(Long.valueOf(seq), e);
+        }
+
+        public void notify(RemoteEvent theEvent)
+            throws UnknownEventException, RemoteException
+        {
+            Exception e = failures.get(
+                Long.valueOf(theEvent.getSequenceNumber()));
+            if (e instanceof UnknownEventException) {
+                throw (UnknownEventException) e;
+            } else if (e != null) {
+                throw (RemoteException) e;
+            }
+            received.add(Long.valueOf(theEvent.getSequenceNumber()));
+        }
+    }
+
+    /** Batch capable listener that can fail whole batches. */
+    private static class BatchListener extends Listener
+        implements BatchRemoteEventListener
+    {
+        final List<List<Long>> batches = new ArrayList<List<Long>>();
+        Exception batchFailure;
+
+        public void notify(RemoteEvent[] events)
+            throws UnknownEventException, RemoteException
+        {
+            if (batchFailure instanceof UnknownEventException) {
+                throw (UnknownEventException) batchFailure;
+            } else if (batchFailure != null) {
+                throw (RemoteException) batchFailure;
+            }
+            List<Long> batch = new ArrayList<Long>();
+            for (RemoteEvent ev : events) {
+                batch.add(Long.valueOf(ev.getSequenceNumber()));
+            }
+            batches.add(batch);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.mercury;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import net.jini.core.event.RemoteEvent;
+import net.jini.id.Uuid;
+import net.jini.id.UuidFactory;
+import net.jini.io.MarshalledInstance;
+import org.apache.river.mercury.proxy.RemoteEventData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that {@link PersistentEventLog#size} counts the events that are
+ * actually pending.
+ */
+public class PersistentEventLogTest {
+
+    private Uuid uuid;
+    private File dir;
+    private PersistentEventLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        uuid = UuidFactory.generate();
+        dir = File.createTempFile("eventlog", "");
+        assertTrue(dir.delete());
+        log = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        log.close();
+        log.delete();
+    }
+
+    @Test
+    public void testAddAndRemove() throws Exception {
+        assertEquals(0, log.size());
+        for (int i = 0; i < 3; i++) log.add(event(i));
+        assertEquals(3, log.size());
+        assertEquals(0L, log.next().getSequenceNumber());
+        assertEquals(3, log.size());
+        log.remove();
+        assertEquals(2, log.size());
+    }
+
+    @Test
+    public void testMoveAhead() throws Exception {
+        // Span more than one log file
+        for (int i = 0; i < 14; i++) log.add(event(i));
+        RemoteEventData[] data = log.readAhead(12);
+        assertEquals(12, data.length);
+        assertEquals(14, log.size());
+        log.moveAhead(data[4].getCookie());
+        assertEquals(9, log.size());
+        log.moveAhead(data[11].getCookie());
+        assertEquals(2, log.size());
+        log.moveAhead(null);
+        assertEquals(2, log.size());
+    }
+
+    @Test
+    public void testFailedWriteIsNotCounted() throws Exception {
+        // Make the first log file unwritable, so the write moves on to
+        // the next log file.
+        assertTrue(new File(dir, "0.log").mkdir());
+        try {
+            log.add(event(0));
+            fail("add should fail");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(0, log.size());
+        log.add(event(1));
+        assertEquals(1, log.size());
+        try {
+            log.next();
+            fail("next should fail");
+        } catch (IOException e) {
+            // expected, skips to the next log file
+        }
+        assertEquals(1, log.size());
+        assertEquals(1L, log.next().getSequenceNumber());
+        log.remove();
+        assertEquals(0, log.size());
+        assertTrue(log.isEmpty());
+    }
+
+    @Test
+    public void testSizeIsRecovered() throws Exception {
+        for (int i = 0; i < 5; i++) log.add(event(i));
+        log.next();
+        log.remove();
+        log.close();
+        log = open();
+        assertEquals(4, log.size());
+    }
+
+    @Test
+    public void testOldControlFile() throws Exception {
+        for (int i = 0; i < 5; i++) log.add(event(i));
+        log.close();
+        // Truncate to the control data written by earlier versions
+        RandomAccessFile ctl =
+            new RandomAccessFile(new File(dir, "log.ctl"), "rw");
+        try {
+            ctl.setLength(8 * 4);
+        } finally {
+            ctl.close();
+        }
+        log = open();
+        assertEquals(5, log.size());
+        log.add(event(5));
+        assertEquals(6, log.size());
+    }
+
+    private PersistentEventLog open() throws IOException {
+        PersistentEventLog log = new PersistentEventLog(uuid, dir);
+        log.init();
+        return log;
+    }
+
+    private static RemoteEvent event(long seq) {
+        return new RemoteEvent("source", 1L, seq, (MarshalledInstance) null);
+    }
+}
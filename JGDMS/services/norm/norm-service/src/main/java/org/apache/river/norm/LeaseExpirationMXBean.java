@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.norm;
+
+/**
+ * Management interface exposing gauges of the lease set expiration
+ * scheduler of a lease renewal service.  Norm registers an instance with
+ * the platform <code>MBeanServer</code> under the name
+ * <code>org.apache.river.norm:type=Expiration,id=</code><i>serviceID</i>
+ * while the service is running.
+ * <p>
+ * Lateness is the time, in milliseconds, between when a set expired or
+ * a warning event was due and when the service got around to processing
+ * it.
+ *
+ * @since 3.1.1
+ */
+public interface LeaseExpirationMXBean {
+
+    /**
+     * Returns the number of threads expiring lease sets, each of which
+     * serves its own share of the sets.
+     *
+     * @return the number of expiration threads.
+     */
+    int getExpirationThreads();
+
+    /**
+     * Returns the number of lease set expirations that have been
+     * processed.
+     *
+     * @return the number of processed expirations.
+     */
+    long getProcessedExpirations();
+
+    /**
+     * Returns the number of lease sets that are due to be expired but
+     * are still waiting for an expiration thread.
+     *
+     * @return the number of pending expirations.
+     */
+    int getPendingExpirations();
+
+    /**
+     * Returns the mean lateness of processed expirations.
+     *
+     * @return the mean expiration lateness, in milliseconds.
+     */
+    double getMeanExpirationLateness();
+
+    /**
+     * Returns the largest lateness of any processed expiration.
+     *
+     * @return the maximum expiration lateness, in milliseconds.
+     */
+    long getMaxExpirationLateness();
+
+    /**
+     * Returns the number of expiration warning events that have been
+     * scheduled for sending.
+     *
+     * @return the number of warnings.
+     */
+    long getWarnings();
+
+    /**
+     * Returns the largest lateness of any expiration warning.
+     *
+     * @return the maximum warning lateness, in milliseconds.
+     */
+    long getMaxWarningLateness();
+}
@@ -17,15 +17,18 @@
  */
 package org.apache.river.norm;
 
+import java.lang.management.ManagementFactory;
 import java.lang.ref.WeakReference;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.ObjectName;
 
 import org.apache.river.collection.WeakTable;
 import org.apache.river.landlord.LeasedResource;
+import org.apache.river.logging.Levels;
 import org.apache.river.thread.InterruptedStatusThread;
 import org.apache.river.thread.wakeup.WakeupManager;
 
@@ -33,6 +36,13 @@ import org.apache.river.thread.wakeup.WakeupManager;
  * Lease manager that aggressively expires leases as their expiration times
  * occur.  Also schedules and manages expiration warning events.
  * <p>
+ * Sets are divided between a number of shards by the hash of their
+ * <code>Uuid</code>.  Each shard has its own queue of timed tasks and its
+ * own expiration thread, so that renewals rescheduling tasks on one shard
+ * do not contend with those on another, and a large number of sets
+ * expiring at the same time are expired in parallel rather than one
+ * after another.
+ * <p>
  * Note, unlike Mahalo's <code>LeaseExpirationManager</code> (which this
  * was seeded from), we make no attempt to make it generic because of
  * the need to schedule expiration warning events.
@@ -61,25 +71,36 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
     /** Ref to the main server object has all the top level methods */
     private volatile NormServerBaseImpl	server;
 
-    /** Queue of tasks, ordered by time */
-    private final WakeupManager	runQueue = new WakeupManager();
-
-    /** Queue of tasks to expire sets */
-    private final List expireQueue = new LinkedList();
+    /** The shards sets are divided between */
+    private final Shard[] shards;
 
-    /** Thread to expire sets */
-    private final Thread expireThread = new ExpirationThread();
+    /** Name the management bean was registered under, if any */
+    private ObjectName mbeanName;
 
     /**
      * Create a <code>LeaseExpirationMgr</code> to aggressively expire
      * the leases of the passed <code>NormServerBaseImpl</code>
      */
     LeaseExpirationMgr(NormServerBaseImpl server) {
+	this(1);
 	this.server = server;
-        ticketMap = new WeakTable(this); //this escape is safe.
     }
     
     LeaseExpirationMgr(){
+        this(1);
+    }
+
+    /**
+     * Create a <code>LeaseExpirationMgr</code> that divides sets between
+     * the specified number of shards, each with its own expiration thread.
+     *
+     * @param shardCount the number of shards, at least one
+     */
+    LeaseExpirationMgr(int shardCount) {
+	shards = new Shard[shardCount];
+	for (int i = 0; i < shardCount; i++) {
+	    shards[i] = new Shard(i);
+	}
         ticketMap = new WeakTable(this); //this escape is safe.
     }
     
@@ -94,7 +115,10 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
     }
     
     void start(){
-        expireThread.start();
+	for (int i = 0; i < shards.length; i++) {
+	    shards[i].expireThread.start();
+	}
+	registerMBean();
     }
 
     /**
@@ -102,9 +126,21 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
      * threads it has started
      */
     void terminate() {
-	runQueue.stop();
-	runQueue.cancelAll();
-	expireThread.interrupt();
+	for (int i = 0; i < shards.length; i++) {
+	    shards[i].runQueue.stop();
+	    shards[i].runQueue.cancelAll();
+	    shards[i].expireThread.interrupt();
+	}
+	unregisterMBean();
+    }
+
+    /**
+     * Returns the shard responsible for the passed set.
+     */
+    private Shard shardFor(LeaseSet set) {
+	if (shards.length == 1) return shards[0];
+	final int h = set.getUuid().hashCode();
+	return shards[((h ^ (h >>> 16)) & Integer.MAX_VALUE) % shards.length];
     }
     
     /**
@@ -137,7 +173,7 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
 	WakeupManager.Ticket ticket =
 	    (WakeupManager.Ticket) ticketMap.remove(resource);
 	if (ticket != null) {
-	    runQueue.cancel(ticket);
+	    shardFor((LeaseSet) resource).runQueue.cancel(ticket);
 	}
 	// Schedule the new event
 	schedule(resource);	
@@ -154,14 +190,15 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
     void schedule(LeasedResource resource) {
 	WakeupManager.Ticket ticket;
 	final LeaseSet set = (LeaseSet) resource;
+	final Shard shard = shardFor(set);
 	MgrTask task;
 
 	if (set.haveWarningRegistration()) {
-	    task = new SendWarning(set);	    
-	    ticket = runQueue.schedule(set.getWarningTime(), task);	    
+	    task = new SendWarning(shard, set);	    
+	    ticket = shard.runQueue.schedule(set.getWarningTime(), task);	    
 	} else {
-	    task = new QueueExpiration(set);
-	    ticket = runQueue.schedule(set.getExpiration(), task);
+	    task = new QueueExpiration(shard, set);
+	    ticket = shard.runQueue.schedule(set.getExpiration(), task);
 	}
 	
 	/*
@@ -177,7 +214,102 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
     // Called when LeaseResource we are tracking is garbage collected
     public void keyGC(Object value) {
 	final WakeupManager.Ticket ticket = (WakeupManager.Ticket) value;
-	runQueue.cancel(ticket);
+	((MgrTask) ticket.task).shard.runQueue.cancel(ticket);
+    }
+
+    /**
+     * Register the management bean exposing the expiration gauges of
+     * this manager.  Failure is logged, but otherwise ignored.
+     */
+    private void registerMBean() {
+	try {
+	    final ObjectName name = new ObjectName(
+		"org.apache.river.norm:type=Expiration,id=" +
+		server.serviceID());
+	    ManagementFactory.getPlatformMBeanServer().registerMBean(
+		new ExpirationMonitor(), name);
+	    synchronized (this) {
+		mbeanName = name;
+	    }
+	} catch (Exception e) {
+	    logger.log(Levels.HANDLED,
+		       "Unable to register lease expiration MBean", e);
+	}
+    }
+
+    /** Unregister the management bean, if it was registered. */
+    private void unregisterMBean() {
+	final ObjectName name;
+	synchronized (this) {
+	    name = mbeanName;
+	    mbeanName = null;
+	}
+	if (name == null) return;
+	try {
+	    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+	} catch (Exception e) {
+	    logger.log(Levels.HANDLED,
+		       "Unable to unregister lease expiration MBean", e);
+	}
+    }
+
+    /**
+     * A share of the sets managed, with its own queue of timed tasks,
+     * queue of sets to expire, expiration thread and lateness gauges.
+     */
+    private class Shard {
+	/** Queue of tasks, ordered by time */
+	final WakeupManager runQueue = new WakeupManager();
+
+	/** Queue of tasks to expire sets */
+	final List expireQueue = new LinkedList();
+
+	/** Thread to expire sets */
+	final Thread expireThread;
+
+	/** Number of expirations processed */
+	final AtomicLong expirations = new AtomicLong();
+	/** Sum of the lateness of processed expirations */
+	final AtomicLong expirationLateness = new AtomicLong();
+	/** Largest lateness of a processed expiration */
+	final AtomicLong maxExpirationLateness = new AtomicLong();
+	/** Number of warnings scheduled for sending */
+	final AtomicLong warnings = new AtomicLong();
+	/** Largest lateness of a warning */
+	final AtomicLong maxWarningLateness = new AtomicLong();
+
+	Shard(int index) {
+	    expireThread = new ExpirationThread(this, index);
+	}
+
+	/** Number of sets waiting to be expired */
+	int pending() {
+	    synchronized (expireQueue) {
+		return expireQueue.size();
+	    }
+	}
+
+	/** Record the processing of an expiration due at <code>when</code> */
+	void expired(long when) {
+	    final long lateness = Math.max(0L, System.currentTimeMillis() - when);
+	    expirations.incrementAndGet();
+	    expirationLateness.addAndGet(lateness);
+	    max(maxExpirationLateness, lateness);
+	}
+
+	/** Record the sending of a warning due at <code>when</code> */
+	void warned(long when) {
+	    final long lateness = Math.max(0L, System.currentTimeMillis() - when);
+	    warnings.incrementAndGet();
+	    max(maxWarningLateness, lateness);
+	}
+
+	private void max(AtomicLong max, long value) {
+	    long current;
+	    while ((current = max.get()) < value) {
+		if (max.compareAndSet(current, value)) return;
+	    }
+	}
     }
 
     /**
@@ -189,12 +321,17 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
      */
     private class ExpirationThread extends InterruptedStatusThread {
 
-	ExpirationThread() {
-	    super("expire lease sets thread");
+	private final Shard shard;
+
+	ExpirationThread(Shard shard, int index) {
+	    super(index == 0 ? "expire lease sets thread" :
+		  "expire lease sets thread " + index);
 	    setDaemon(false);
+	    this.shard = shard;
 	}
 
 	public void run() {
+	    final List expireQueue = shard.expireQueue;
 	    while (!hasBeenInterrupted()) {
 		try {
 		    Runnable task;
@@ -223,6 +360,9 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
      * locking for manipulating the ticketMap.
      */
     private abstract class MgrTask implements Runnable {
+	/** Shard the set this task operates on belongs to */
+	protected final Shard shard;
+
 	/** Resource this task is to operate on */
 	protected final WeakReference resourceRef;
 	
@@ -232,9 +372,11 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
 	/** 
 	 * Simple constructor.
 	 *
+	 * @param shard the shard the set belongs to
 	 * @param set the set this task is to operate on
 	 */
-	protected MgrTask(LeaseSet set) {
+	protected MgrTask(Shard shard, LeaseSet set) {
+	    this.shard = shard;
 	    resourceRef = new WeakReference(set);
 	}
 
@@ -243,6 +385,11 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
 	    this.ticket = ticket;
 	}
 
+	/** Returns the time this task was scheduled to run. */
+	protected long when() {
+	    return ticket.when;
+	}
+
 	/**
 	 * Removes this task's ticket from the ticket map iff this
 	 * task's ticket is in the map.  Returns the
@@ -276,16 +423,16 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
 
     /** Task that queues a task to expire a lease set. */
     private class QueueExpiration extends MgrTask {
-	QueueExpiration(LeaseSet set) {
-	    super(set);
+	QueueExpiration(Shard shard, LeaseSet set) {
+	    super(shard, set);
 	}
 
 	public void run() {
 	    LeaseSet set = removeOurTicket();
 	    if (set != null) {
-		synchronized (expireQueue) {
-		    expireQueue.add(new Expiration(set));
-		    expireQueue.notifyAll();
+		synchronized (shard.expireQueue) {
+		    shard.expireQueue.add(new Expiration(shard, set, when()));
+		    shard.expireQueue.notifyAll();
 		}
 	    }
 	}
@@ -293,23 +440,31 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
 
     /**
      * Objects that do the actual expiration of the set in question,
-     * stuck in <code>expireQueue</code>.
+     * stuck in the <code>expireQueue</code> of a shard.
      */
     private class Expiration implements Runnable {
 
+	private final Shard shard;
 	private final LeaseSet set;
+	/** Time the set was due to expire */
+	private final long when;
 	/**
 	 * Create a <code>Expiration</code> task for the passed resource.
 	 *
+	 * @param shard the shard the set belongs to
 	 * @param set the set this task is to operate on
+	 * @param when the time the set was due to expire
 	 */
-	private Expiration(LeaseSet set) {
+	private Expiration(Shard shard, LeaseSet set, long when) {
+	    this.shard = shard;
 	    this.set = set;
+	    this.when = when;
 	}
 
 	// purposefully inherit doc comment from supertype
 	public void run() {
 	    server.expireIfTime(set);
+	    shard.expired(when);
 	    /*
 	     * Note we don't care if it's actually time or not, if it
 	     * is not the task will be rescheduled by the renewal.
@@ -325,10 +480,11 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
 	/**
 	 * Create a <code>SendWarning</code> task for the passed resource.
 	 *
+	 * @param shard the shard the set belongs to
 	 * @param set the set this task is to operate on
 	 */
-	private SendWarning(LeaseSet set) {
-	    super(set);
+	private SendWarning(Shard shard, LeaseSet set) {
+	    super(shard, set);
 	}
 
 	// purposefully inherit doc comment from supertype
@@ -355,15 +511,74 @@ class LeaseExpirationMgr implements WeakTable.KeyGCHandler {
 		}
 
 		// Send event
+		shard.warned(when());
 		server.sendWarningEvent(set);
 
 		// Schedule expiration task
-		final MgrTask task = new QueueExpiration(set);
+		final MgrTask task = new QueueExpiration(shard, set);
 		final WakeupManager.Ticket newTicket =
-		    runQueue.schedule(set.getExpiration(), task);
+		    shard.runQueue.schedule(set.getExpiration(), task);
 		task.setTicket(newTicket);
 		ticketMap.getOrAdd(set, newTicket);
 	    }
 	}
     }
+
+    /** Exposes the gauges of all the shards to JMX clients. */
+    private class ExpirationMonitor implements LeaseExpirationMXBean {
+
+	public int getExpirationThreads() {
+	    return shards.length;
+	}
+
+	public long getProcessedExpirations() {
+	    long total = 0;
+	    for (int i = 0; i < shards.length; i++) {
+		total += shards[i].expirations.get();
+	    }
+	    return total;
+	}
+
+	public int getPendingExpirations() {
+	    int total = 0;
+	    for (int i = 0; i < shards.length; i++) {
+		total += shards[i].pending();
+	    }
+	    return total;
+	}
+
+	public double getMeanExpirationLateness() {
+	    long count = 0;
+	    long lateness = 0;
+	    for (int i = 0; i < shards.length; i++) {
+		count += shards[i].expirations.get();
+		lateness += shards[i].expirationLateness.get();
+	    }
+	    return count == 0 ? 0.0 : (double) lateness / count;
+	}
+
+	public long getMaxExpirationLateness() {
+	    long max = 0;
+	    for (int i = 0; i < shards.length; i++) {
+		max = Math.max(max, shards[i].maxExpirationLateness.get());
+	    }
+	    return max;
+	}
+
+	public long getWarnings() {
+	    long total = 0;
+	    for (int i = 0; i < shards.length; i++) {
+		total += shards[i].warnings.get();
+	    }
+	    return total;
+	}
+
+	public long getMaxWarningLateness() {
+	    long max = 0;
+	    for (int i = 0; i < shards.length; i++) {
+		max = Math.max(max, shards[i].maxWarningLateness.get());
+	    }
+	    return max;
+	}
+    }
 }
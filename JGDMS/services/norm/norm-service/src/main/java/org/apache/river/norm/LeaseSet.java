@@ -34,6 +34,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import net.jini.core.event.EventRegistration;
 import net.jini.core.event.RemoteEvent;
@@ -564,18 +565,20 @@ class LeaseSet implements Serializable, LeasedResource {
     }
 
     /**
-     * Log the renewal of a client lease.
+     * Return the operation that records the renewal of a client lease,
+     * so that it can be logged along with other renewals.
      * @param clw the wrapper for the client lease that was renewed
+     * @return the operation to log, or <code>null</code> if the lease
+     *         is no longer in this set
      */
-    void logRenewal(ClientLeaseWrapper clw) {
+    LoggedOperation renewalUpdate(ClientLeaseWrapper clw) {
 	if (!leases.contains(clw)) {
 	    // Some other thread must have removed this lease from
 	    // the set after renewal, don't bother logging change
-	    return;
+	    return null;
 	}
 
-	final Object u = new UpdateClientLease(this, clw);
-	store.update(u);
+	return new RenewClientLease(this, clw);
     }
 
     // Methods need to meet contract of LeasedResource	
@@ -725,7 +728,7 @@ class LeaseSet implements Serializable, LeasedResource {
 	 * Wrapped version of client lease
 	 * @serial
 	 */
-	private final ClientLeaseWrapper clw;
+	final ClientLeaseWrapper clw;
 
 	/**
 	 * Simple constructor
@@ -743,6 +746,43 @@ class LeaseSet implements Serializable, LeasedResource {
 	}
     }
 
+    /**
+     * Class used to log the renewal of a client lease.  Renewals are
+     * logged in batches after the set's lock has been released, so the
+     * removal of the lease, or the cancellation or expiration of the set,
+     * may precede the renewal in the log.  Since wrapper UIDs are never
+     * reused, a renewal of a lease that is no longer in its set, or of a
+     * set that no longer exists, is ignored on recovery rather than
+     * bringing the lease back.
+     */
+    private static class RenewClientLease extends UpdateClientLease {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Simple constructor
+	 * @param set that changed
+	 * @param clw Wrapped client lease
+	 */
+	private RenewClientLease(LeaseSet set, ClientLeaseWrapper clw) {
+	    super(set, clw);
+	}
+
+	// Inherit java doc from super type
+	void apply(Map setTable) throws StoreException {
+	    final LeaseSet set = (LeaseSet) setTable.get(setID);
+	    if (set != null) {
+		apply(set);
+	    }
+	}
+
+	// Inherit java doc from super type
+	void apply(LeaseSet set) {
+	    if (set.leases.contains(clw)) {
+		set.replace(clw);
+	    }
+	}
+    }
+
     /**
      * Class used to log the removal of a client lease from the set
      */
@@ -28,6 +28,7 @@ import java.rmi.NoSuchObjectException;
 import java.rmi.RemoteException;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -1033,12 +1034,20 @@ abstract class NormServerBaseImpl
     static class RenewLogThread extends InterruptedStatusThread {
         private PersistentStore store;
         private final List renewedList;
+	/**
+	 * Time in milliseconds to let renewals accumulate before they
+	 * are logged
+	 */
+	private final long interval;
+	/** Maximum number of renewals written in one log record */
+	private final int batchSize;
 	/** Don't create a daemon thread incase the jvm exits during store */
-	RenewLogThread(List renewedList) {
+	RenewLogThread(List renewedList, long interval, int batchSize) {
 	    super("log renewals thread");
 	    setDaemon(false);
             this.renewedList = renewedList;
-            
+	    this.interval = interval;
+	    this.batchSize = batchSize;
 	}
         
         private void setStore(PersistentStore store){
@@ -1051,14 +1060,13 @@ abstract class NormServerBaseImpl
 	public void run() {
 	    while (!hasBeenInterrupted()) {
 		try {
-		    ClientLeaseWrapper clw;
+		    final List batch = new ArrayList();
                     PersistentStore store;
                     synchronized (this){
                         store = this.store;
                     }
 		    synchronized (renewedList) {
-			// If there is an item on the list pull it off for
-			// processing, otherwise wait and try again
+			// If there is nothing on the list wait and try again
 			if (renewedList.isEmpty()) {
 			    try {
 				renewedList.wait();
@@ -1069,60 +1077,86 @@ abstract class NormServerBaseImpl
                                 Thread.currentThread().interrupt();
 				return;
 			    }
-			} else {
-			    clw = (ClientLeaseWrapper) renewedList.remove(0);
-			}			
+			}
+		    }
+
+		    try {
+			// Give other threads a chance to run, and let
+			// further renewals accumulate so they can be
+			// written together
+			Thread.sleep(interval);
+		    } catch (InterruptedException ex) {
+			// Reset the interrupt status.
+			Thread.currentThread().interrupt();
+			continue;
+		    }
+
+		    synchronized (renewedList) {
+			// A wrapper is only on the list once, since it
+			// is not put back until its renewed flag is cleared
+			while (!renewedList.isEmpty() && batch.size() < batchSize) {
+			    batch.add(renewedList.remove(0));
+			}
 		    }
 
 		    if (logger.isLoggable(Level.FINER)) {
 			logger.log(Level.FINER,
-				   "Attempting to renew lease {0} at {1}",
+				   "Logging {0} lease renewals at {1}",
 				   new Object[] {
-				       clw, 
+				       Integer.valueOf(batch.size()), 
 				       Long.valueOf(System.currentTimeMillis()) });
 		    }
 
-		    // A lease was renewed, log the new state
-		    final LeaseSet set = clw.getLeaseSet();
-		    if (set == null) {
-			// set must have just been removed, no state
-			// to update, go to next item in list
-			continue;
-		    }
-		    
 		    try {	
 			store.acquireMutatorLock();  
-			synchronized (set) {
-			    if (!isCurrent(set)) {
-				// expired, no state to update, go to next item
-				// in list
+			final List updates = new ArrayList(batch.size());
+			for (int i = 0, l = batch.size(); i < l; i++) {
+			    final ClientLeaseWrapper clw =
+				(ClientLeaseWrapper) batch.get(i);
+			    // A lease was renewed, log the new state
+			    final LeaseSet set = clw.getLeaseSet();
+			    if (set == null) {
+				// set must have just been removed, no state
+				// to update, go to next item in batch
 				continue;
 			    }
-			    
-			    clw.clearRenewed();
-			    // Small window here where the lease can
-			    // be renewed, it's renewed flag is re-set
-			    // and because it was cleared the clw ends
-			    // up on renewed list, we then come back
-			    // to this thread and log the new
-			    // state, and come back later and log that
-			    // state again.  Since this is just
-			    // slightly wasteful, not incorrect, this
-			    // is ok. [Reversing these two lines of
-			    // course would be wrong...]
-			    set.logRenewal(clw);	
+			    synchronized (set) {
+				if (!isCurrent(set)) {
+				    // expired, no state to update, go to
+				    // next item in batch
+				    continue;
+				}
+
+				clw.clearRenewed();
+				// Small window here where the lease can
+				// be renewed, it's renewed flag is re-set
+				// and because it was cleared the clw ends
+				// up on renewed list, we then come back
+				// to this thread and log the new
+				// state, and come back later and log that
+				// state again.  Since this is just
+				// slightly wasteful, not incorrect, this
+				// is ok. [Reversing these two lines of
+				// course would be wrong...]
+				final LoggedOperation u = set.renewalUpdate(clw);
+				if (u != null) updates.add(u);
+			    }
+			}
+
+			// The mutator lock keeps a snapshot from being
+			// taken until the batch is in the log.  Set locks
+			// are no longer held, so a lease may be removed, or
+			// its set cancelled, before its renewal is logged;
+			// recovery ignores such renewals
+			if (updates.size() == 1) {
+			    store.update(updates.get(0));
+			} else if (!updates.isEmpty()) {
+			    store.update(new RenewalBatch((LoggedOperation[])
+				updates.toArray(new LoggedOperation[updates.size()])));
 			}
 		    } finally {
 			store.releaseMutatorLock();
 		    }
-                    try {
-                        // Give other threads a chance to run
-                        Thread.sleep(100L);
-                        // Thread.yield();
-                    } catch (InterruptedException ex) {
-                        // Reset the interrupt status.
-                        Thread.currentThread().interrupt();
-                    }
 		} catch (RuntimeException e) {
 		    logger.log(
 			Level.INFO,
@@ -1369,7 +1403,7 @@ abstract class NormServerBaseImpl
 	    // in that set have been renewed, but not logged, and clear
 	    // them from the renewedList (this assumes that the
 	    // renewal changes the persisted state of the wrapper, not
-	    // the processing by logRenewal()).  This is not a bug
+	    // the processing by RenewLogThread).  This is not a bug
 	    // since any clw we pull off the renewedList and persist
 	    // after this point will have state at least as up-to-date
 	    // as this snapshot.
@@ -54,6 +54,8 @@ class NormServerInitializer {
     List renewedList = new LinkedList();
     float snapshotWt;
     int logToSnapshotThresh;
+    long renewalLogInterval = 100L;
+    int renewalLogBatchSize = 256;
     ProxyPreparer leasePreparer;
     ProxyPreparer listenerPreparer;
     ProxyPreparer locatorPreparer;
@@ -65,6 +67,7 @@ class NormServerInitializer {
     LeaseRenewalManager lrm;
     Exporter exporter;
     LeaseExpirationMgr expMgr;
+    int expirationThreads;
     EventTypeGenerator generator;
     LRMEventListener lrmEventListener;
     NormServerBaseImpl.RenewLogThread renewLogger;
@@ -98,6 +101,8 @@ class NormServerInitializer {
             persistenceDirectory = (String) Config.getNonNullEntry(config, NormServerBaseImpl.NORM, "persistenceDirectory", String.class);
             snapshotWt = Config.getFloatEntry(config, NormServerBaseImpl.NORM, "persistenceSnapshotWeight", 10, 0, Float.MAX_VALUE);
             logToSnapshotThresh = Config.getIntEntry(config, NormServerBaseImpl.NORM, "persistenceSnapshotThreshold", 200, 0, Integer.MAX_VALUE);
+            renewalLogInterval = Config.getLongEntry(config, NormServerBaseImpl.NORM, "persistenceRenewalInterval", 100L, 0L, Long.MAX_VALUE);
+            renewalLogBatchSize = Config.getIntEntry(config, NormServerBaseImpl.NORM, "persistenceRenewalBatchSize", 256, 1, Integer.MAX_VALUE);
         }
         leasePreparer = (ProxyPreparer) Config.getNonNullEntry(config, NormServerBaseImpl.NORM, "leasePreparer", ProxyPreparer.class, new BasicProxyPreparer());
         listenerPreparer = (ProxyPreparer) Config.getNonNullEntry(config, NormServerBaseImpl.NORM, "listenerPreparer", ProxyPreparer.class, new BasicProxyPreparer());
@@ -108,6 +113,7 @@ class NormServerInitializer {
             recoveredLocatorPreparer = (ProxyPreparer) Config.getNonNullEntry(config, NormServerBaseImpl.NORM, "recoveredLocatorPreparer", ProxyPreparer.class, new BasicProxyPreparer());
         }
         setLeasePolicy = (LeasePeriodPolicy) Config.getNonNullEntry(config, NormServerBaseImpl.NORM, "leasePolicy", LeasePeriodPolicy.class, new FixedLeasePeriodPolicy(2 * 60 * 60 * 1000, 60 * 60 * 1000));
+        expirationThreads = Config.getIntEntry(config, NormServerBaseImpl.NORM, "expirationThreads", 1, 1, Integer.MAX_VALUE);
         isolateSets = ((Boolean) config.getEntry(NormServerBaseImpl.NORM, "isolateSets", boolean.class, Boolean.FALSE)).booleanValue();
         try {
             lrm = (LeaseRenewalManager) Config.getNonNullEntry(config, NormServerBaseImpl.NORM, "leaseManager", LeaseRenewalManager.class);
@@ -125,10 +131,10 @@ class NormServerInitializer {
 		"Codebase_Certs", byte[].class, new byte[0]);
 	
         // We use some of these during the recovery process
-        expMgr = new LeaseExpirationMgr();
+        expMgr = new LeaseExpirationMgr(expirationThreads);
         generator = new EventTypeGenerator();
         lrmEventListener = new LRMEventListener();
-        renewLogger = new NormServerBaseImpl.RenewLogThread(renewedList);
+        renewLogger = new NormServerBaseImpl.RenewLogThread(renewedList, renewalLogInterval, renewalLogBatchSize);
         context = AccessController.getContext();
     }
 
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.norm;
+
+import java.util.Map;
+import org.apache.river.norm.proxy.StoreException;
+
+/**
+ * Logged operation that records a number of client lease renewals,
+ * possibly on different sets, as a single log record.  Writing renewals
+ * together means a burst of renewals costs one forced write to disk.
+ *
+ * @since 3.1.1
+ */
+class RenewalBatch extends LoggedOperation {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The renewals, in the order they were logged
+     * @serial
+     */
+    private final LoggedOperation[] renewals;
+
+    /**
+     * Simple constructor
+     * @param renewals the operations recording each renewal
+     */
+    RenewalBatch(LoggedOperation[] renewals) {
+	super(null);
+	this.renewals = renewals;
+    }
+
+    // Inherit java doc from super type
+    void apply(Map setTable) throws StoreException {
+	for (int i = 0; i < renewals.length; i++) {
+	    renewals[i].apply(setTable);
+	}
+    }
+}
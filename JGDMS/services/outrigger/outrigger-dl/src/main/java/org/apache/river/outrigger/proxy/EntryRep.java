@@ -46,6 +46,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Logger;
 
 /**
@@ -703,6 +704,43 @@ public class EntryRep implements StorableResource<EntryRep>, LeasedResource, Ser
         }
     }
 
+    /**
+     * Replace field values of this entry with equivalent instances held by
+     * <code>canonical</code>, and add any values it does not yet hold, so
+     * that entries with the same field values share them rather than each
+     * having a copy.  Only values with identical serialized forms,
+     * including codebase annotations, are shared.  This reduces the memory
+     * used by a space holding many entries with common field values; it
+     * does not affect how templates, which are not shared, are matched.
+     * <p>
+     * The values in the map are expected to be the same instances as the
+     * keys.
+     *
+     * @param canonical map of field values to their shared instances.
+     */
+    public void shareValuesWith(
+	    ConcurrentMap<MarshalledInstance,MarshalledInstance> canonical)
+    {
+	synchronized (this){
+	    final MarshalledInstance [] values = this.values;
+	    if (values == null) return;
+	    MarshalledInstance [] shared = null;
+	    for (int i = 0; i < values.length; i++) {
+		final MarshalledInstance value = values[i];
+		if (value == null) continue;
+		final MarshalledInstance existing =
+		    canonical.putIfAbsent(value, value);
+		if (existing != null && existing != value &&
+		    existing.fullyEquals(value))
+		{
+		    if (shared == null) shared = values.clone();
+		    shared[i] = existing;
+		}
+	    }
+	    if (shared != null) this.values = shared; // safe publication
+	}
+    }
+
     /**
      * @return the <code>MarshalledObject</code> for the given field.
      */
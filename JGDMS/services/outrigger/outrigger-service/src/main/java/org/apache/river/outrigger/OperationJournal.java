@@ -17,11 +17,18 @@
  */
 package org.apache.river.outrigger;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.SortedSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.ObjectName;
+import org.apache.river.logging.Levels;
 
 /**   
  * Maintain a journal of operations on entries (writes, takes, and
@@ -47,6 +54,12 @@ import java.util.logging.Logger;
  * Each operation that is recored in the journal is assigned an
  * <em>ordinal</em>. Operations with higher ordinals must be considered
  * to have taken place after operations with lower ordinals.
+ * <p>
+ * Finding the watchers interested in a transition can be spread over
+ * a number of match threads. Transitions are partitioned between them
+ * by the class of the transitioning entry, the journal thread then
+ * processes the matched watchers in journal order, so watchers see
+ * transitions in exactly the order they would with a single thread.
  */
 class OperationJournal extends Thread {
     /** The object to ask about who is interested in a transition */
@@ -57,7 +70,8 @@ class OperationJournal extends Thread {
 
     /**
      * The <code>JournalNode</code> we are currently processing or if
-     * none are in process the last one we processed.
+     * none are in process the last one we processed. When match threads
+     * are used, the last node handed off to them.
      */
     private volatile JournalNode lastProcessed;
 
@@ -67,6 +81,30 @@ class OperationJournal extends Thread {
     /** The last ordinal value used */
     private final AtomicLong lastOrdinalUsed = new AtomicLong(1L);
 
+    /** 
+     * The ordinal of the last operation whose processing has been
+     * completed.
+     */
+    private volatile long lastOrdinalCompleted;
+
+    /**
+     * Threads finding the watchers interested in transitions, empty if
+     * the journal thread does this itself.
+     */
+    private final MatchThread[] matchThreads;
+
+    /**
+     * Operations handed off to the match threads, in journal order.
+     * Only accessed by the journal thread.
+     */
+    private final ArrayDeque<PendingOperation> inFlight;
+
+    /** Maximum number of operations that may be in flight at once */
+    private static final int MAX_IN_FLIGHT = 1024;
+
+    /** Name of our management bean, <code>null</code> if not registered */
+    private ObjectName mbeanName;
+
     /** Logger for logging exceptions */
     private static final Logger logger = 
 	Logger.getLogger(OutriggerServerImpl.opsLoggerName);
@@ -293,18 +331,120 @@ class OperationJournal extends Thread {
     }
 
     /**
-     * Create a new <code>OperationJournal</code>.
+     * An operation handed off to a match thread, along with the
+     * watchers found to be interested in it once matching is complete.
+     */
+    private static class PendingOperation {
+	/** The payload of the journal node */
+	private final Object payload;
+
+	/** The ordinal of the journal node */
+	private final long ordinal;
+
+	/** 
+	 * The interested watchers, <code>null</code> if matching has
+	 * not been completed.
+	 */
+	private volatile SortedSet<TransitionWatcher> matches;
+
+	private PendingOperation(Object payload, long ordinal) {
+	    this.payload = payload;
+	    this.ordinal = ordinal;
+	}
+    }
+
+    /**
+     * Thread that asks the <code>TransitionWatchers</code> object which
+     * watchers are interested in each of the transitions handed to it.
+     */
+    private class MatchThread extends Thread {
+	/** Transitions waiting to be matched */
+	private final BlockingQueue<PendingOperation> queue =
+	    new LinkedBlockingQueue<PendingOperation>();
+
+	private MatchThread(int index) {
+	    super("OperationJournal match " + index);
+	    setDaemon(true);
+	}
+
+	public void run() {
+	    while (!dead) {
+		final PendingOperation op;
+		try {
+		    op = queue.take();
+		} catch (InterruptedException e) {
+		    // fin
+		    return;
+		}
+		SortedSet<TransitionWatcher> matches = null;
+		try {
+		    matches = watchers.allMatches(
+			(EntryTransition)op.payload, op.ordinal);
+		} catch (Throwable t) {
+		    /* Errors are not rethrown either, the operations
+		     * queued behind this one, and every later one handed
+		     * to this thread, would never be matched and the
+		     * journal would stop processing.
+		     */
+		    try {
+			logger.log(Level.INFO,
+			    "OperationJournal match thread encountered " +
+				t.getClass().getName() + ", continuing",
+			    t);
+		    } catch (Throwable tt) {
+			// don't let a problem in logging kill the thread
+		    }
+		} finally {
+		    if (matches == null) 
+			matches = Collections.<TransitionWatcher>emptySortedSet();
+		    synchronized (OperationJournal.this) {
+			op.matches = matches;
+			OperationJournal.this.notifyAll();
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Create a new <code>OperationJournal</code> that finds the
+     * watchers interested in each transition itself.
      * @param watchers Set of watchers that need
      *                 to be asked if they are interested in the transitions.
      * @throws NullPointerException if watchers is <code>null</code>.
      */
     OperationJournal(TransitionWatchers watchers) {
+	this(watchers, 1);
+    }
+
+    /**
+     * Create a new <code>OperationJournal</code>.
+     * @param watchers Set of watchers that need
+     *                 to be asked if they are interested in the transitions.
+     * @param matchThreads The number of threads used to find the
+     *                 watchers interested in transitions, if 
+     *                 <code>1</code> or less the journal thread does
+     *                 this itself.
+     * @throws NullPointerException if watchers is <code>null</code>.
+     */
+    OperationJournal(TransitionWatchers watchers, int matchThreads) {
 	super("OperationJournal");
 	if (watchers == null)
 	    throw new NullPointerException("watchers must be non-null");
 	this.watchers = watchers;
         tail = new JournalNode(null);
 	lastProcessed = tail;
+	lastOrdinalCompleted = tail.ordinal;
+	if (matchThreads > 1) {
+	    this.matchThreads = new MatchThread[matchThreads];
+	    for (int i = 0; i < matchThreads; i++) {
+		this.matchThreads[i] = new MatchThread(i);
+	    }
+	    inFlight = new ArrayDeque<PendingOperation>();
+	} else {
+	    this.matchThreads = new MatchThread[0];
+	    inFlight = null;
+	}
     }
 
     /**
@@ -410,6 +550,46 @@ class OperationJournal extends Thread {
             dead = true;
             notifyAll();
         }
+	for (int i = 0; i < matchThreads.length; i++) {
+	    matchThreads[i].interrupt();
+	}
+	unregisterMBean();
+    }
+
+    /**
+     * Register the management bean exposing the progress of this
+     * journal.  Failure is logged, but otherwise ignored.
+     * @param id The id of the space, used to name the bean.
+     */
+    void registerMBean(Object id) {
+	try {
+	    final ObjectName name = new ObjectName(
+		"org.apache.river.outrigger:type=OperationJournal,id=" + id);
+	    ManagementFactory.getPlatformMBeanServer().registerMBean(
+		new JournalMonitor(), name);
+	    synchronized (this) {
+		mbeanName = name;
+	    }
+	} catch (Exception e) {
+	    logger.log(Levels.HANDLED,
+		       "Unable to register operation journal MBean", e);
+	}
+    }
+
+    /** Unregister the management bean, if it was registered. */
+    private void unregisterMBean() {
+	final ObjectName name;
+	synchronized (this) {
+	    name = mbeanName;
+	    mbeanName = null;
+	}
+	if (name == null) return;
+	try {
+	    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+	} catch (Exception e) {
+	    logger.log(Levels.HANDLED,
+		       "Unable to unregister operation journal MBean", e);
+	}
     }
 
     /**
@@ -420,6 +600,20 @@ class OperationJournal extends Thread {
      * of the watchers.
      */
     public void run() {
+	if (matchThreads.length > 0) {
+	    for (int i = 0; i < matchThreads.length; i++) {
+		matchThreads[i].start();
+	    }
+	    try {
+		runPipelined();
+	    } finally {
+		for (int i = 0; i < matchThreads.length; i++) {
+		    matchThreads[i].interrupt();
+		}
+	    }
+	    return;
+	}
+
 	while (!dead) {
 	    try {
 		// Wait until there is something to process
@@ -441,43 +635,164 @@ class OperationJournal extends Thread {
                     ordinal = lastProcessed.ordinal;
 		}
 
-		
+		if (payload instanceof EntryTransition) {
+		    process(payload, ordinal, 
+			watchers.allMatches((EntryTransition)payload, ordinal));
+		} else {
+		    process(payload, ordinal, null);
+		}
+	    } catch (InterruptedException e) {
+		// fin
+		return;
+	    } catch (Throwable t) {
+		logAndRethrow(t);
+	    }
+	}
+    }
 
-		if (payload == null) {
-		    throw new 
-			AssertionError("JournalNode with null payload");
-		} else if (payload instanceof EntryTransition) {
-		    final EntryTransition t = (EntryTransition)payload;
-		    final SortedSet<TransitionWatcher> set = 
-			watchers.allMatches(t, ordinal);
-		    final long now = System.currentTimeMillis();
+    /**
+     * Loop handing transitions to the match threads and processing
+     * the results in journal order. Transitions for entries of the same
+     * class always go to the same match thread.
+     */
+    private void runPipelined() {
+	while (!dead) {
+	    try {
+		final PendingOperation op;
+		synchronized (this) {
+		    while (!dead) {
+			/* Hand off anything new, keeping the number of
+			 * operations in flight bounded.
+			 */
+			JournalNode n = lastProcessed.getNext();
+			while (n != null && inFlight.size() < MAX_IN_FLIGHT) {
+			    lastProcessed = n;
+			    dispatch(n);
+			    n = n.getNext();
+			}
+
+			final PendingOperation head = inFlight.peek();
+			if (head != null && head.matches != null)
+			    break;
 
-		    for (Iterator<TransitionWatcher> i = set.iterator(); i.hasNext() && !dead; ) {
-			final TransitionWatcher watcher = i.next();
-			watcher.process(t, now);
+			wait();
 		    }
-		} else if (payload instanceof CaughtUpMarker) {
-		    ((CaughtUpMarker)payload).watcher.caughtUp();
-		} else {
-		    throw new 
-			AssertionError("JournalNode with unknown payload:" +
-				       payload.getClass());
+
+		    if (dead)
+			return;
+
+		    op = inFlight.poll();
 		}
+
+		process(op.payload, op.ordinal, op.matches);
 	    } catch (InterruptedException e) {
 		// fin
 		return;
 	    } catch (Throwable t) {
-		try {
-		    logger.log(Level.INFO,
-			       "OperationJournal.run encountered " +
-			           t.getClass().getName() + ", continuing",
-			       t);
-		} catch (Throwable tt) {
-		    // don't let a problem in logging kill the thread
+		logAndRethrow(t);
+	    }
+	}
+    }
+
+    /**
+     * Add the operation in the passed node to the operations in flight,
+     * handing it to the appropriate match thread if it is a transition.
+     * Assumes the lock on this object is held.
+     */
+    private void dispatch(JournalNode n) {
+	final PendingOperation op = new PendingOperation(n.payload, n.ordinal);
+	inFlight.add(op);
+	if (n.payload instanceof EntryTransition) {
+	    final String className = 
+		((EntryTransition)n.payload).getHandle().rep().classFor();
+	    final int h = className.hashCode();
+	    matchThreads[((h ^ (h >>> 16)) & Integer.MAX_VALUE) % 
+			 matchThreads.length].queue.add(op);
+	} else {
+	    // Nothing to match
+	    op.matches = Collections.<TransitionWatcher>emptySortedSet();
+	}
+    }
+
+    /**
+     * Process a single journal operation.
+     * @param payload The payload of the journal node.
+     * @param ordinal The ordinal of the journal node.
+     * @param set The watchers interested in the transition if
+     *            <code>payload</code> is an 
+     *            <code>EntryTransition</code>.
+     */
+    private void process(Object payload, long ordinal,
+			 SortedSet<TransitionWatcher> set)
+    {
+	try {
+	    if (payload == null) {
+		throw new 
+		    AssertionError("JournalNode with null payload");
+	    } else if (payload instanceof EntryTransition) {
+		final EntryTransition t = (EntryTransition)payload;
+		final long now = System.currentTimeMillis();
+
+		for (Iterator<TransitionWatcher> i = set.iterator(); i.hasNext() && !dead; ) {
+		    final TransitionWatcher watcher = i.next();
+		    watcher.process(t, now);
 		}
-                if (t instanceof Error) throw (Error) t;
-                if (t instanceof RuntimeException) throw (RuntimeException) t;
+	    } else if (payload instanceof CaughtUpMarker) {
+		((CaughtUpMarker)payload).watcher.caughtUp();
+	    } else {
+		throw new 
+		    AssertionError("JournalNode with unknown payload:" +
+				   payload.getClass());
+	    }
+	} finally {
+	    lastOrdinalCompleted = ordinal;
+	}
+    }
+
+    /**
+     * Log a throwable caught while processing the journal, rethrowing
+     * it if it is unchecked.
+     */
+    private void logAndRethrow(Throwable t) {
+	try {
+	    logger.log(Level.INFO,
+		       "OperationJournal.run encountered " +
+			   t.getClass().getName() + ", continuing",
+		       t);
+	} catch (Throwable tt) {
+	    // don't let a problem in logging kill the thread
+	}
+	if (t instanceof Error) throw (Error) t;
+	if (t instanceof RuntimeException) throw (RuntimeException) t;
+    }
+
+    /**
+     * Management bean exposing the progress of the journal.
+     */
+    private class JournalMonitor implements OperationJournalMXBean {
+	public long getLastOrdinalUsed() {
+	    return lastOrdinalUsed.get();
+	}
+
+	public long getLastOrdinalProcessed() {
+	    return lastOrdinalCompleted;
+	}
+
+	public long getLag() {
+	    final long completed = lastOrdinalCompleted;
+	    return Math.max(0L, lastOrdinalUsed.get() - completed);
+	}
+
+	public int getMatchThreads() {
+	    return matchThreads.length;
+	}
+
+	public int getPendingMatches() {
+	    int pending = 0;
+	    for (int i = 0; i < matchThreads.length; i++) {
+		pending += matchThreads[i].queue.size();
 	    }
+	    return pending;
 	}
     }
 }
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.outrigger;
+
+/**
+ * Management interface exposing the progress of the operation journal of
+ * a JavaSpaces service. Outrigger registers an instance with the platform
+ * <code>MBeanServer</code> under the name
+ * <code>org.apache.river.outrigger:type=OperationJournal,id=</code><i>serviceID</i>
+ * while the service is running.
+ * <p>
+ * Every write, take and lock resolution is recorded in the journal with
+ * an increasing ordinal, and blocked queries and event registrations
+ * only learn of it once the journal has processed it.
+ *
+ * @since 3.1.1
+ */
+public interface OperationJournalMXBean {
+
+    /**
+     * Returns the ordinal of the last operation recorded in the journal.
+     *
+     * @return the last ordinal used.
+     */
+    long getLastOrdinalUsed();
+
+    /**
+     * Returns the ordinal of the last operation whose processing has
+     * been completed.
+     *
+     * @return the last ordinal processed.
+     */
+    long getLastOrdinalProcessed();
+
+    /**
+     * Returns the number of operations recorded in the journal that have
+     * not yet been processed, the difference between the last ordinal
+     * used and the last ordinal processed.
+     *
+     * @return the journal lag.
+     */
+    long getLag();
+
+    /**
+     * Returns the number of threads used to find the watchers interested
+     * in each transition, zero if the journal thread does this itself.
+     *
+     * @return the number of match threads.
+     */
+    int getMatchThreads();
+
+    /**
+     * Returns the number of transitions waiting for a match thread.
+     *
+     * @return the number of pending matches.
+     */
+    int getPendingMatches();
+}
@@ -95,6 +95,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -498,6 +499,14 @@ public class OutriggerServerImpl
     /** Max number of entries to return in a take multiple call */
     private final int takeLimit;
 
+    /**
+     * Canonical instances of the field values of stored entries, shared
+     * between entries with equal field values.  <code>null</code> if
+     * field value sharing has not been enabled.
+     */
+    private final ConcurrentMap<MarshalledInstance,MarshalledInstance>
+	fieldValues;
+
     /**
      * When destroying the space, how long to wait for a clean
      * unexport (which allows the destroy call to return) before
@@ -628,6 +637,7 @@ public class OutriggerServerImpl
             contentsLeasePolicy = h.contentsLeasePolicy;
             nextLimit = h.nextLimit;
             takeLimit = h.takeLimit;
+            fieldValues = h.fieldValues;
             maxUnexportDelay = h.maxUnexportDelay;
             unexportRetryDelay = h.unexportRetryDelay;
             templateReaperThread = h.templateReaperThread;
@@ -659,6 +669,7 @@ public class OutriggerServerImpl
             contentsLeasePolicy = null;
             nextLimit = 0;
             takeLimit = 0;
+            fieldValues = null;
             maxUnexportDelay = 0;
             unexportRetryDelay = 0;
             notifier = null; 
@@ -819,6 +830,7 @@ public class OutriggerServerImpl
                     // Notifier uses TaskManager, which doesn't start threads until given tasks.
                     notifier = new Notifier(spaceProxy, recoveredListenerPreparer, config);
                     operationJournal.start();
+                    operationJournal.registerMBean(topUuid);
                     templateReaperThread.start(); 
                     entryReaperThread.start(); 
                     contentsQueryReaperThread.start();
@@ -945,6 +957,7 @@ public class OutriggerServerImpl
         LeasePeriodPolicy contentsLeasePolicy;
         int nextLimit;
         int takeLimit;
+        ConcurrentMap<MarshalledInstance,MarshalledInstance> fieldValues;
         long maxUnexportDelay;
         long unexportRetryDelay;
         TemplateReaper templateReaperThread;
@@ -1077,7 +1090,11 @@ public class OutriggerServerImpl
 
 
             // Use this (trivially) in log recovery
-            h.operationJournal = new OperationJournal(h.templates);
+            final int journalThreads = Config.getIntEntry(config,
+                COMPONENT_NAME, "operationJournalThreads", 1, 1,
+                Integer.MAX_VALUE);
+            h.operationJournal = 
+                new OperationJournal(h.templates, journalThreads);
             h.operationJournal.setDaemon(false);
 
 
@@ -1126,6 +1143,16 @@ public class OutriggerServerImpl
             h.takeLimit = Config.getIntEntry(config, COMPONENT_NAME, 
                 "takeMultipleLimit", 100, 1, Integer.MAX_VALUE);
 
+            final boolean shareFieldValues = ((Boolean) config.getEntry(
+                COMPONENT_NAME, "shareEntryFieldValues", boolean.class,
+                Boolean.FALSE)).booleanValue();
+            if (shareFieldValues) {
+                h.fieldValues = RC.concurrentMap(
+                    new ConcurrentHashMap<Referrer<MarshalledInstance>,
+                                          Referrer<MarshalledInstance>>(),
+                    Ref.WEAK, Ref.WEAK, 10000L, 10000L);
+            }
+
             h.maxUnexportDelay = Config.getLongEntry(config, COMPONENT_NAME, 
                 "maxUnexportDelay", 2 * MINUTES, 0, Long.MAX_VALUE);
 
@@ -1364,6 +1391,7 @@ public class OutriggerServerImpl
 	opsLogger.entering("OutriggerServerImpl", "write");
 
 	typeCheck(rep);
+	if (fieldValues != null) rep.shareValuesWith(fieldValues);
 	rep.pickID();
 
 	if (opsLogger.isLoggable(Level.FINER) && (tr != null)) {
@@ -1436,6 +1464,7 @@ public class OutriggerServerImpl
 
 	for (int i=0; i<entries.length; i++) {
 	    typeCheck(entries[i]);
+	    if (fieldValues != null) entries[i].shareValuesWith(fieldValues);
 	    entries[i].pickID();
 	}
 
@@ -3671,6 +3700,7 @@ public class OutriggerServerImpl
 	 * will throw exception if we get a hash mismatch
 	 */
 	typeCheck(rep);
+	if (fieldValues != null) rep.shareValuesWith(fieldValues);
 
 	final EntryHolder holder = contents.holderFor(rep);
 	final EntryHandle handle = holder.newEntryHandle(rep, txn);
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.outrigger;
+
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.river.outrigger.proxy.EntryRep;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import junit.framework.TestCase;
+
+import static org.mockito.Mockito.*;
+
+public class OperationJournalTest extends TestCase {
+
+	static {
+		/* EntryRep's initialization uses RMIClassLoader, the
+		 * preferred class provider isn't on the test class path.
+		 */
+		System.setProperty("java.rmi.server.RMIClassLoaderSpi", "default");
+	}
+
+	/**
+	 * An Error thrown while matching a transition must not stop the
+	 * match thread, or the transitions after it would never be
+	 * processed.
+	 */
+	public void testMatchThreadSurvivesError() throws Exception {
+		final BlockingQueue<EntryTransition> processed =
+			new LinkedBlockingQueue<EntryTransition>();
+		final TransitionWatcher watcher = new RecordingWatcher(processed);
+		final AtomicBoolean thrown = new AtomicBoolean();
+		TransitionWatchers watchers = mock(TransitionWatchers.class);
+		when(watchers.allMatches(any(EntryTransition.class), anyLong()))
+			.thenAnswer(new Answer<SortedSet<TransitionWatcher>>() {
+				public SortedSet<TransitionWatcher> answer(
+					InvocationOnMock invocation)
+				{
+					if (thrown.compareAndSet(false, true)) {
+						throw new StackOverflowError("test");
+					}
+					SortedSet<TransitionWatcher> set =
+						new TreeSet<TransitionWatcher>();
+					set.add(watcher);
+					return set;
+				}
+			});
+
+		OperationJournal journal = new OperationJournal(watchers, 2);
+		journal.start();
+		try {
+			// Same entry class, so both go to the same match thread
+			EntryTransition first = transition("Entry");
+			EntryTransition second = transition("Entry");
+			journal.recordTransition(first);
+			journal.recordTransition(second);
+			assertSame(second, processed.poll(10, TimeUnit.SECONDS));
+			assertTrue(thrown.get());
+			assertTrue(processed.isEmpty());
+		} finally {
+			journal.terminate();
+		}
+	}
+
+	private static EntryTransition transition(String className) {
+		EntryRep rep = mock(EntryRep.class);
+		when(rep.classFor()).thenReturn(className);
+		EntryHandle handle = mock(EntryHandle.class);
+		when(handle.rep()).thenReturn(rep);
+		return new EntryTransition(handle, null, true, true, true);
+	}
+
+	private static class RecordingWatcher extends TransitionWatcher {
+		private final BlockingQueue<EntryTransition> processed;
+
+		RecordingWatcher(BlockingQueue<EntryTransition> processed) {
+			super(0L, 0L);
+			this.processed = processed;
+		}
+
+		boolean addTemplateHandle(TemplateHandle h) {
+			return true;
+		}
+
+		public long getExpiration() {
+			return Long.MAX_VALUE;
+		}
+
+		void removeIfExpired(long now) {
+		}
+
+		boolean isInterested(EntryTransition transition, long ordinal) {
+			return true;
+		}
+
+		void process(EntryTransition transition, long now) {
+			processed.add(transition);
+		}
+	}
+}
@@ -61,20 +61,20 @@ import net.jini.space.InternalSpaceException;
 class BackEnd implements Observer {
 
     // The following data represent the persistent
-    // state.
-    private final AtomicLong	  sessionId;
-    private volatile StoredObject  joinState;
-    private final Map<ByteArrayWrapper,Resource>     entries;
-    private final Map<ByteArrayWrapper,Registration> 	  registrations;
-    private final Map<Long,PendingTxn> 	  pendingTxns;
-    private volatile byte          topUuid[];
-    private volatile LastLog	  lastLog;
+    // state. Package access so subclasses can store it differently.
+    final AtomicLong	  sessionId;
+    volatile StoredObject  joinState;
+    final Map<ByteArrayWrapper,Resource>     entries;
+    final Map<ByteArrayWrapper,Registration> 	  registrations;
+    final Map<Long,PendingTxn> 	  pendingTxns;
+    volatile byte          topUuid[];
+    volatile LastLog	  lastLog;
 
     /** Snapshot object */
     private volatile SnapshotFile	snapshotFile;
 
     /** Keep logs and snapshot tied, though not necessary */
-    private static final int SNAPSHOT_VERSION = LogFile.LOG_VERSION;
+    static final int SNAPSHOT_VERSION = LogFile.LOG_VERSION;
 
     /**
      * The base name for the log files.
@@ -168,16 +168,20 @@ class BackEnd implements Observer {
 	// Recover the prepared transactions and remove any
 	// non-prepared ones.
 	try {
-	    Iterator i = pendingTxns.values().iterator();
+	    Iterator<Map.Entry<Long,PendingTxn>> i = 
+		pendingTxns.entrySet().iterator();
 
 	    while (i.hasNext()) {
-		PendingTxn pt = (PendingTxn)i.next();
+		Map.Entry<Long,PendingTxn> e = i.next();
+		PendingTxn pt = e.getValue();
 
 		// If the pending transaction was not recovered
 		// (i.e. it was not prepared) then we can remove it.
 		//
-		if(!pt.recover(space))
+		if(!pt.recover(space)) {
 		    i.remove();
+		    txnChanged(e.getKey());
+		}
 	    }
 	} catch (Exception e) {
 	    throw logAndThrowRecoveryException("Error recovering transactions",
@@ -203,7 +207,10 @@ class BackEnd implements Observer {
 	startConsumer();
     }
 
-    private void recoverSnapshot() {
+    /**
+     * Recover the state held in the snapshot, if any.
+     */
+    void recoverSnapshot() {
 	try {
 	    File[] snapshot = new File[1];
 	    snapshotFile = new SnapshotFile(snapshotFileBase, snapshot);
@@ -336,8 +343,7 @@ class BackEnd implements Observer {
 	} catch (InterruptedException ignore) {
 	} finally {
 	    try {
-		if (snapshotFile != null)
-		    snapshotFile.destroy();
+		destroySnapshot();
 	    } catch (Throwable t) {
 		logger.log(Level.INFO, 
 		    "Exception encounter while destroying store", t);
@@ -345,6 +351,14 @@ class BackEnd implements Observer {
 	}
     }
 
+    /**
+     * Remove the snapshot files.
+     */
+    void destroySnapshot() {
+	if (snapshotFile != null)
+	    snapshotFile.destroy();
+    }
+
     /**
      * Stop the consumer and close the database.
      */
@@ -358,16 +372,22 @@ class BackEnd implements Observer {
 	} catch (InterruptedException e) {
 	    // never happens
 	}
-	if (snapshotFile != null) {
-	    try {
-		snapshotFile.close();
-	    } catch (Throwable t) {
-		logger.log(Level.INFO, 
-		    "Exception encounter while closing store", t);
-	    }
+	try {
+	    closeSnapshot();
+	} catch (Throwable t) {
+	    logger.log(Level.INFO, 
+		"Exception encounter while closing store", t);
 	}
     }
 
+    /**
+     * Close the snapshot files.
+     */
+    void closeSnapshot() throws IOException {
+	if (snapshotFile != null)
+	    snapshotFile.close();
+    }
+
     /**
      * Return the pending transaction description for the given
      * transaction, creating the object and adding it to the table if
@@ -379,6 +399,7 @@ class BackEnd implements Observer {
 	    pt = new PendingTxn(txnId);
 	    pendingTxns.put(txnId, pt);
 	}
+	txnChanged(txnId);
 	return pt;
     }
 
@@ -388,6 +409,31 @@ class BackEnd implements Observer {
      */
     private void removePendingTxn(Long txnId) {
 	pendingTxns.remove(txnId); // if it fails, it wasn't there to remove
+	txnChanged(txnId);
+    }
+
+    /**
+     * Called when the entry with the given cookie has been written,
+     * removed or renewed. Does nothing, subclasses that store changes
+     * incrementally override this.
+     */
+    void entryChanged(ByteArrayWrapper cookie) {
+    }
+
+    /**
+     * Called when the registration with the given cookie has been
+     * added, removed or renewed. Does nothing, subclasses that store
+     * changes incrementally override this.
+     */
+    void registrationChanged(ByteArrayWrapper cookie) {
+    }
+
+    /**
+     * Called when the pending transaction with the given id has been
+     * created, changed or removed. Does nothing, subclasses that store
+     * changes incrementally override this.
+     */
+    void txnChanged(Long txnId) {
     }
 
     // ------------------------------------------------------------
@@ -430,10 +476,13 @@ class BackEnd implements Observer {
 		       new Object[]{entry,txnId});
 	}
 
-	if (txnId != null)
+	if (txnId != null) {
 	    pendingTxn(txnId).addWrite(entry);
-	else
-	    entries.put(entry.getCookieAsWrapper(), entry);
+	} else {
+	    final ByteArrayWrapper cookie = entry.getCookieAsWrapper();
+	    entries.put(cookie, entry);
+	    entryChanged(cookie);
+	}
     }
 
     /**
@@ -448,10 +497,13 @@ class BackEnd implements Observer {
 		       new Object[]{ByteArrayWrapper.toUuid(cookie),txnId});
 	}
 
-	if (txnId != null)
+	if (txnId != null) {
 	    pendingTxn(txnId).addTake(cookie);
-	else
-	    entries.remove(new ByteArrayWrapper(cookie));
+	} else {
+	    final ByteArrayWrapper baw = new ByteArrayWrapper(cookie);
+	    if (entries.remove(baw) != null)
+		entryChanged(baw);
+	}
     }
 
     /*
@@ -460,7 +512,9 @@ class BackEnd implements Observer {
     void registerOp(Registration registration) {
 	logger.log(Level.FINE, "registerOp({0})", registration);
 
-	registrations.put(registration.getCookieAsWrapper(), registration);
+	final ByteArrayWrapper cookie = registration.getCookieAsWrapper();
+	registrations.put(cookie, registration);
+	registrationChanged(cookie);
     }
 
     /**
@@ -477,15 +531,20 @@ class BackEnd implements Observer {
 
 	Resource resource;
 
-	if ((resource = (Resource)entries.get(baw)) == null) {
-	    // not an entry, try event registrations
-	    if ((resource = (Resource)registrations.get(baw)) == null) {
-
-		// No registration either, try transactional writes
-		Iterator i = pendingTxns.values().iterator();
-		while (i.hasNext()) {
-		    if ((resource = ((PendingTxn)i.next()).get(baw)) != null)
-			break;
+	if ((resource = (Resource)entries.get(baw)) != null) {
+	    entryChanged(baw);
+	} else if ((resource = (Resource)registrations.get(baw)) != null) {
+	    // not an entry, but an event registration
+	    registrationChanged(baw);
+	} else {
+	    // No registration either, try transactional writes
+	    Iterator<Map.Entry<Long,PendingTxn>> i = 
+		pendingTxns.entrySet().iterator();
+	    while (i.hasNext()) {
+		Map.Entry<Long,PendingTxn> e = i.next();
+		if ((resource = e.getValue().get(baw)) != null) {
+		    txnChanged(e.getKey());
+		    break;
 		}
 	    }
 	}
@@ -504,13 +563,18 @@ class BackEnd implements Observer {
 	}
 	final ByteArrayWrapper baw = new ByteArrayWrapper(cookie);
 
-	if (entries.remove(baw) == null) {
-	    if (registrations.remove(baw) == null) {
-
-		Iterator i = pendingTxns.values().iterator();
-		while (i.hasNext()) {
-		    if (((PendingTxn)i.next()).remove(baw) != null)
-			break;
+	if (entries.remove(baw) != null) {
+	    entryChanged(baw);
+	} else if (registrations.remove(baw) != null) {
+	    registrationChanged(baw);
+	} else {
+	    Iterator<Map.Entry<Long,PendingTxn>> i = 
+		pendingTxns.entrySet().iterator();
+	    while (i.hasNext()) {
+		Map.Entry<Long,PendingTxn> e = i.next();
+		if (e.getValue().remove(baw) != null) {
+		    txnChanged(e.getKey());
+		    break;
 		}
 	    }
 	}
@@ -592,19 +656,7 @@ class BackEnd implements Observer {
 		if (lastLog == null || !lastLog.sameAs(logFile))
 		    log.consume(this);
 		lastLog = new LastLog(logFile);
-
-		ObjectOutputStream out = snapshotFile.next();
-
-		out.writeInt(SNAPSHOT_VERSION);
-		out.writeObject(sessionId.get());
-		out.writeObject(joinState);
-                // Serial form of maps is HashMap, cannot be changed.
-		out.writeObject(new HashMap(entries));
-		out.writeObject(new HashMap(registrations));
-		out.writeObject(new HashMap(pendingTxns));
-		out.writeObject(topUuid);
-		out.writeObject(lastLog);
-		snapshotFile.commit();
+		writeSnapshot();
 	    } catch (IOException e) {
 		final String msg = "error writing snapshot";
 		final InternalSpaceException ise = 
@@ -616,6 +668,25 @@ class BackEnd implements Observer {
 	}
     }
 
+    /**
+     * Write the current state to the snapshot, after a log file has
+     * been consumed.
+     */
+    void writeSnapshot() throws IOException {
+	ObjectOutputStream out = snapshotFile.next();
+
+	out.writeInt(SNAPSHOT_VERSION);
+	out.writeObject(sessionId.get());
+	out.writeObject(joinState);
+	// Serial form of maps is HashMap, cannot be changed.
+	out.writeObject(new HashMap(entries));
+	out.writeObject(new HashMap(registrations));
+	out.writeObject(new HashMap(pendingTxns));
+	out.writeObject(topUuid);
+	out.writeObject(lastLog);
+	snapshotFile.commit();
+    }
+
     /**
      * This class remembers which log file was the last to be
      * successfully consumed.  If the recovery mechanism reopens this
@@ -623,7 +694,7 @@ class BackEnd implements Observer {
      * happened after the contents were committed to the snapshot but
      * before the file was unlinked.  
      */
-    private static class LastLog implements Serializable {
+    static class LastLog implements Serializable {
 	private final String	logFile;
 	private final long	timeStamp;
 
@@ -643,7 +714,7 @@ class BackEnd implements Observer {
      * Log and throw an InternalSpaceException to flag a store
      * recovery problem.
      */
-    private InternalSpaceException logAndThrowRecoveryException(
+    InternalSpaceException logAndThrowRecoveryException(
 	    String msg, Throwable nested)
     {
 	final InternalSpaceException e = 
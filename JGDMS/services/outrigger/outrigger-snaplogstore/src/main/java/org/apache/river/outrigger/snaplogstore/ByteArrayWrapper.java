@@ -64,6 +64,14 @@ class ByteArrayWrapper implements Serializable {
 	return hash;
     }
 
+    /**
+     * Return the wrapped array. The array must not be modified.
+     * @return the <code>byte[16]</code> being wrapped.
+     */
+    byte[] array() {
+	return uuid;
+    }
+
     /**
      * Encode the passed <code>Uuid</code> in to a newly allocated
      * <code>byte[16]</code> in big-endian byte order.
@@ -54,6 +54,21 @@ public class LogStore implements Store {
      * @throws ConfigurationException if there's a problem with the configuration.
      */
     public LogStore(Configuration config) throws ConfigurationException {
+	this(config, false);
+    }
+
+    /**
+     * Create a new <code>LogStore</code>, whose back end either writes
+     * a full snapshot after each log file, or only the changes made by
+     * each log file to segment files.
+     * @param config the directory to use for persistence.
+     * @param segmented <code>true</code> if the back end should use
+     *        segment files.
+     * @throws ConfigurationException if there's a problem with the configuration.
+     */
+    LogStore(Configuration config, boolean segmented)
+	throws ConfigurationException 
+    {
 	path = (String)Config.getNonNullEntry(config,
 				OutriggerServerImpl.COMPONENT_NAME,
 				OutriggerServerImpl.PERSISTENCE_DIR_CONFIG_ENTRY,
@@ -63,7 +78,23 @@ public class LogStore implements Store {
 
 	FileSystem.ensureDir(path);
 
-	be = new BackEnd(path);
+	if (segmented) {
+	    final long segmentSize = Config.getLongEntry(config,
+				OutriggerServerImpl.COMPONENT_NAME,
+				"segmentSize",
+				16 * 1024 * 1024, 4096, Long.MAX_VALUE);
+	    try {
+		be = new SegmentBackEnd(path, segmentSize);
+	    } catch (IOException e) {
+		final String msg = "LogStore: segment setup failed";
+		final InternalSpaceException ise = 
+		    new InternalSpaceException(msg, e);
+		logger.log(Level.SEVERE, msg, ise);
+		throw ise;
+	    }
+	} else {
+	    be = new BackEnd(path);
+	}
 
 	maxOps = Config.getIntEntry(config, 
 				OutriggerServerImpl.COMPONENT_NAME,
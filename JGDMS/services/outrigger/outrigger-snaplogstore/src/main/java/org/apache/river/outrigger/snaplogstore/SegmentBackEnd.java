@@ -0,0 +1,941 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.outrigger.snaplogstore;
+
+import org.apache.river.outrigger.OutriggerServerImpl;
+import org.apache.river.outrigger.StoredObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Back end of the segment log store. Like <code>BackEnd</code> this
+ * class consumes the logs written by <code>LogOutputFile</code>, but
+ * rather than writing the whole state to a new snapshot after each log
+ * file, only the entries, registrations and pending transactions the
+ * log changed are appended to the current <em>segment</em> file,
+ * followed by a commit record holding the rest of the state. Once a
+ * segment reaches the configured size a new one is started.
+ * <p>
+ * Recovery streams through the segments, oldest to newest, applying the
+ * changes of each checkpoint when its commit record is read. Records
+ * after the last commit record of a segment were not completely written
+ * and are discarded.
+ * <p>
+ * As resources are rewritten or removed, older segments accumulate
+ * records that are no longer current. A compaction thread copies the
+ * current records of the oldest segments to a new segment and deletes
+ * them, whenever records that are no longer current take up more space
+ * than those that are. The segments are read and the new segment is
+ * written without holding the lock, so checkpoints are not delayed; the
+ * new segment is numbered before any segment written meanwhile, so a
+ * copied record that has since been superseded is superseded on recovery
+ * too. The lock is only held to find which records are current and to
+ * replace the compacted segments with the new one.
+ */
+class SegmentBackEnd extends BackEnd {
+
+    /** Record holding an entry, keyed by its cookie */
+    private static final byte ENTRY			= 1;
+    /** Record holding the cookie of a removed entry */
+    private static final byte ENTRY_REMOVED		= 2;
+    /** Record holding a registration, keyed by its cookie */
+    private static final byte REGISTRATION		= 3;
+    /** Record holding the cookie of a removed registration */
+    private static final byte REGISTRATION_REMOVED	= 4;
+    /** Record holding a pending transaction, keyed by its id */
+    private static final byte TXN			= 5;
+    /** Record holding the id of a removed pending transaction */
+    private static final byte TXN_REMOVED		= 6;
+    /** Record ending a checkpoint, holding the rest of the state */
+    private static final byte COMMIT			= 7;
+
+    /** Bytes used by a record's kind, payload length and checksum */
+    private static final int RECORD_HEADER = 9;
+
+    /** Maximum number of segments kept before the oldest is compacted */
+    private static final int MAX_SEGMENTS = 64;
+
+    /** The segment files */
+    private final LogFile segmentFiles;
+
+    /** The size at which a new segment is started */
+    private final long segmentSize;
+
+    /**
+     * Lock guarding the segments, the locations of current records
+     * and the segment being written.
+     */
+    private final Object writeLock = new Object();
+
+    /** The segments, by number, oldest first */
+    private final TreeMap<Integer,Segment> segments =
+	new TreeMap<Integer,Segment>();
+
+    /** Location of the current record of each entry */
+    private final Map<ByteArrayWrapper,Location> entryLocations =
+	new HashMap<ByteArrayWrapper,Location>();
+
+    /** Location of the current record of each registration */
+    private final Map<ByteArrayWrapper,Location> registrationLocations =
+	new HashMap<ByteArrayWrapper,Location>();
+
+    /** Location of the current record of each pending transaction */
+    private final Map<Long,Location> txnLocations =
+	new HashMap<Long,Location>();
+
+    /** Entries changed since the last checkpoint */
+    private final Set<ByteArrayWrapper> changedEntries =
+	ConcurrentHashMap.<ByteArrayWrapper>newKeySet();
+
+    /** Registrations changed since the last checkpoint */
+    private final Set<ByteArrayWrapper> changedRegistrations =
+	ConcurrentHashMap.<ByteArrayWrapper>newKeySet();
+
+    /** Pending transactions changed since the last checkpoint */
+    private final Set<Long> changedTxns =
+	ConcurrentHashMap.<Long>newKeySet();
+
+    /** Total size of the segments */
+    private long totalBytes;
+
+    /** Size of the current records in the segments */
+    private long liveBytes;
+
+    /** The segment being written, <code>null</code> if none is open */
+    private Segment current;
+
+    /** Stream to the segment being written */
+    private DataOutputStream out;
+
+    /** Stream to the file of the segment being written */
+    private FileOutputStream fileOut;
+
+    /** Number of the next segment to be started */
+    private int nextSegment;
+
+    /** Payload of the last commit record written */
+    private byte[] lastCommit;
+
+    /** Buffer used to build payloads */
+    private final Buffer buffer = new Buffer();
+
+    /** Checksum of payloads */
+    private final CRC32 crc = new CRC32();
+
+    /** <code>true</code> once the back end has been closed */
+    private boolean closed;
+
+    /** Thread compacting the segments */
+    private final CompactionThread compactor;
+
+    /** Logger for logging persistent store related information */
+    private static final Logger logger =
+	Logger.getLogger(OutriggerServerImpl.storeLoggerName);
+
+    /**
+     * A segment file.
+     */
+    private static class Segment {
+	/** The number of the segment */
+	private final int number;
+	/** The segment file */
+	private final File file;
+	/** The number of bytes in the file */
+	private long size;
+	/** The number of bytes of current records in the file */
+	private long live;
+
+	private Segment(int number, File file, long size) {
+	    this.number = number;
+	    this.file = file;
+	    this.size = size;
+	}
+    }
+
+    /**
+     * The location of the current record of a resource.
+     */
+    private static class Location {
+	/** The number of the segment holding the record */
+	private final int segment;
+	/** The offset of the record in the segment */
+	private final long offset;
+	/** The size of the record, including its header */
+	private final int size;
+
+	private Location(int segment, long offset, int size) {
+	    this.segment = segment;
+	    this.offset = offset;
+	    this.size = size;
+	}
+    }
+
+    /**
+     * A current record being copied to a new segment by compaction.
+     */
+    private static class Copy<K> {
+	/** The locations of the records of the same kind */
+	private final Map<K,Location> locations;
+	/** The key of the record's resource */
+	private final K key;
+	/** The record */
+	private Record record;
+	/** The number of the segment the record is copied from */
+	private final int segment;
+	/** The offset of the record in the segment it is copied from */
+	private final long from;
+	/** The offset of the copy in the new segment */
+	private long to;
+
+	private Copy(Map<K,Location> locations, K key, Record record,
+		     int segment, long from)
+	{
+	    this.locations = locations;
+	    this.key = key;
+	    this.record = record;
+	    this.segment = segment;
+	    this.from = from;
+	}
+
+	/** Returns <code>true</code> if the record is the current one. */
+	private boolean isCurrent() {
+	    final Location location = locations.get(key);
+	    return location != null && location.segment == segment &&
+		location.offset == from;
+	}
+
+	/**
+	 * Make the copy the current record, if the record still is.
+	 * @return the size of the record moved, <code>0</code> if the
+	 *         record is no longer current.
+	 */
+	private int move(int number) {
+	    if (!isCurrent()) return 0;
+	    final int size = locations.get(key).size;
+	    locations.put(key, new Location(number, to, size));
+	    return size;
+	}
+    }
+
+    /**
+     * A record read from a segment.
+     */
+    private static class Record {
+	private final byte kind;
+	private final byte[] payload;
+
+	private Record(byte kind, byte[] payload) {
+	    this.kind = kind;
+	    this.payload = payload;
+	}
+
+	/** Returns the size of the record, including its header */
+	private int size() {
+	    return RECORD_HEADER + payload.length;
+	}
+    }
+
+    /**
+     * A <code>ByteArrayOutputStream</code> whose contents can be used
+     * without being copied.
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+	private Buffer() {
+	    super(1024);
+	}
+
+	private byte[] array() {
+	    return buf;
+	}
+    }
+
+    /**
+     * Create a new <code>SegmentBackEnd</code> with the given
+     * <code>path</code>.
+     * @param path the directory to persist state in.
+     * @param segmentSize the size at which a new segment is started.
+     */
+    SegmentBackEnd(String path, long segmentSize) throws IOException {
+	super(path);
+	segmentFiles = new LogFile(
+	    new File(path, "Segment.").getAbsolutePath());
+	this.segmentSize = segmentSize;
+	compactor = new CompactionThread();
+    }
+
+    /**
+     * Recover the state held in the segments, if any.
+     */
+    void recoverSnapshot() {
+	try {
+	    synchronized (writeLock) {
+		final List<File> files = new ArrayList<File>();
+		nextSegment = segmentFiles.existingLogs(files) + 1;
+		for (File file : files) {
+		    final int number = Integer.parseInt(
+			file.getName().substring(segmentFiles.baseFile.length()));
+		    final Segment segment =
+			new Segment(number, file, file.length());
+		    segments.put(Integer.valueOf(number), segment);
+		    totalBytes += segment.size;
+		    recoverSegment(segment);
+		}
+	    }
+	} catch (RuntimeException t) {
+	    throw t;
+	} catch (Throwable t) {
+	    throw logAndThrowRecoveryException("Problem recovering segments",t);
+	}
+	compactor.start();
+    }
+
+    /**
+     * Stream through the given segment, applying each checkpoint once
+     * its commit record has been read.
+     */
+    private void recoverSegment(Segment segment)
+	throws IOException, ClassNotFoundException
+    {
+	logger.log(Level.FINE, "recovering segment {0}", segment.file);
+	final List<Record> checkpoint = new ArrayList<Record>();
+	final List<Long> offsets = new ArrayList<Long>();
+	final DataInputStream in = new DataInputStream(
+	    new BufferedInputStream(new FileInputStream(segment.file)));
+	try {
+	    long offset = 0;
+	    Record r;
+	    while ((r = readRecord(in, segment.size - offset)) != null) {
+		if (r.kind == COMMIT) {
+		    for (int i = 0; i < checkpoint.size(); i++) {
+			apply(segment, offsets.get(i).longValue(),
+			      checkpoint.get(i));
+		    }
+		    checkpoint.clear();
+		    offsets.clear();
+		    recoverState(r.payload);
+		} else {
+		    checkpoint.add(r);
+		    offsets.add(Long.valueOf(offset));
+		}
+		offset += r.size();
+	    }
+	} catch (IOException e) {
+	    logger.log(Level.WARNING, "Ignoring damaged end of segment " +
+		       segment.file, e);
+	} finally {
+	    in.close();
+	}
+	if (!checkpoint.isEmpty() && logger.isLoggable(Level.FINE)) {
+	    logger.log(Level.FINE, "discarding {0} uncommitted records",
+		       Integer.valueOf(checkpoint.size()));
+	}
+    }
+
+    /**
+     * Apply a recovered record to the state, recording its location.
+     * Assumes the write lock is held.
+     */
+    private void apply(Segment segment, long offset, Record r)
+	throws IOException, ClassNotFoundException
+    {
+	switch (r.kind) {
+	  case ENTRY: {
+	    final ByteArrayWrapper cookie = cookieOf(r.payload);
+	    entries.put(cookie, (Resource)readObject(r.payload, 16));
+	    place(entryLocations, cookie, segment, offset, r.size());
+	    break;
+	  }
+	  case ENTRY_REMOVED: {
+	    final ByteArrayWrapper cookie = cookieOf(r.payload);
+	    entries.remove(cookie);
+	    displace(entryLocations, cookie);
+	    break;
+	  }
+	  case REGISTRATION: {
+	    final ByteArrayWrapper cookie = cookieOf(r.payload);
+	    registrations.put(cookie,
+			      (Registration)readObject(r.payload, 16));
+	    place(registrationLocations, cookie, segment, offset, r.size());
+	    break;
+	  }
+	  case REGISTRATION_REMOVED: {
+	    final ByteArrayWrapper cookie = cookieOf(r.payload);
+	    registrations.remove(cookie);
+	    displace(registrationLocations, cookie);
+	    break;
+	  }
+	  case TXN: {
+	    final Long id = idOf(r.payload);
+	    pendingTxns.put(id, (PendingTxn)readObject(r.payload, 8));
+	    place(txnLocations, id, segment, offset, r.size());
+	    break;
+	  }
+	  case TXN_REMOVED: {
+	    final Long id = idOf(r.payload);
+	    pendingTxns.remove(id);
+	    displace(txnLocations, id);
+	    break;
+	  }
+	  default:
+	    throw new StreamCorruptedException("Unknown record kind:" + r.kind);
+	}
+    }
+
+    /**
+     * Recover the state held in a commit record.
+     */
+    private void recoverState(byte[] payload)
+	throws IOException, ClassNotFoundException
+    {
+	final ObjectInputStream in =
+	    new ObjectInputStream(new ByteArrayInputStream(payload));
+	final int version = in.readInt();
+	if (version != SNAPSHOT_VERSION) {
+	    logAndThrowRecoveryException(
+		"Wrong segment version:" + version, null);
+	}
+	sessionId.set(in.readLong());
+	joinState = (StoredObject)in.readObject();
+	topUuid	= (byte[])in.readObject();
+	lastLog	= (LastLog)in.readObject();
+	in.close();
+	lastCommit = payload;
+    }
+
+    /**
+     * Record the location of the current record of a resource, the
+     * previous record, if any, is no longer current.
+     * Assumes the write lock is held.
+     */
+    private <K> void place(Map<K,Location> locations, K key,
+			   Segment segment, long offset, int size)
+    {
+	final Location old =
+	    locations.put(key, new Location(segment.number, offset, size));
+	if (old != null) discard(old);
+	segment.live += size;
+	liveBytes += size;
+    }
+
+    /**
+     * Forget the location of the current record of a removed resource.
+     * Assumes the write lock is held.
+     */
+    private <K> void displace(Map<K,Location> locations, K key) {
+	final Location old = locations.remove(key);
+	if (old != null) discard(old);
+    }
+
+    /** Note the record at the given location is no longer current. */
+    private void discard(Location location) {
+	segments.get(Integer.valueOf(location.segment)).live -= location.size;
+	liveBytes -= location.size;
+    }
+
+    // Changes are only recorded, they are written at the next checkpoint.
+
+    void entryChanged(ByteArrayWrapper cookie) {
+	changedEntries.add(cookie);
+    }
+
+    void registrationChanged(ByteArrayWrapper cookie) {
+	changedRegistrations.add(cookie);
+    }
+
+    void txnChanged(Long txnId) {
+	changedTxns.add(txnId);
+    }
+
+    /**
+     * Append the resources changed since the last checkpoint to the
+     * current segment, followed by a commit record.
+     */
+    void writeSnapshot() throws IOException {
+	synchronized (writeLock) {
+	    if (closed)
+		throw new IOException("store has been closed");
+
+	    for (Iterator<ByteArrayWrapper> i = changedEntries.iterator();
+		 i.hasNext(); )
+	    {
+		final ByteArrayWrapper cookie = i.next();
+		i.remove();
+		final Resource entry = entries.get(cookie);
+		if (entry != null) {
+		    buffer.reset();
+		    buffer.write(cookie.array());
+		    writeObject(entry);
+		    appendCurrent(ENTRY, entryLocations, cookie);
+		} else if (entryLocations.containsKey(cookie)) {
+		    buffer.reset();
+		    buffer.write(cookie.array());
+		    append(ENTRY_REMOVED, buffer.array(), buffer.size());
+		    displace(entryLocations, cookie);
+		}
+	    }
+
+	    for (Iterator<ByteArrayWrapper> i =
+		     changedRegistrations.iterator(); i.hasNext(); )
+	    {
+		final ByteArrayWrapper cookie = i.next();
+		i.remove();
+		final Registration reg = registrations.get(cookie);
+		if (reg != null) {
+		    buffer.reset();
+		    buffer.write(cookie.array());
+		    writeObject(reg);
+		    appendCurrent(REGISTRATION, registrationLocations, cookie);
+		} else if (registrationLocations.containsKey(cookie)) {
+		    buffer.reset();
+		    buffer.write(cookie.array());
+		    append(REGISTRATION_REMOVED, buffer.array(), buffer.size());
+		    displace(registrationLocations, cookie);
+		}
+	    }
+
+	    for (Iterator<Long> i = changedTxns.iterator(); i.hasNext(); ) {
+		final Long id = i.next();
+		i.remove();
+		final PendingTxn txn = pendingTxns.get(id);
+		if (txn != null) {
+		    buffer.reset();
+		    writeId(id);
+		    writeObject(txn);
+		    appendCurrent(TXN, txnLocations, id);
+		} else if (txnLocations.containsKey(id)) {
+		    buffer.reset();
+		    writeId(id);
+		    append(TXN_REMOVED, buffer.array(), buffer.size());
+		    displace(txnLocations, id);
+		}
+	    }
+
+	    buffer.reset();
+	    final ObjectOutputStream state = new ObjectOutputStream(buffer);
+	    state.writeInt(SNAPSHOT_VERSION);
+	    state.writeLong(sessionId.get());
+	    state.writeObject(joinState);
+	    state.writeObject(topUuid);
+	    state.writeObject(lastLog);
+	    state.close();
+	    lastCommit = buffer.toByteArray();
+	    commit();
+
+	    if (needsCompaction()) writeLock.notifyAll();
+	}
+    }
+
+    /**
+     * Append the record in the buffer as the current record of a
+     * resource. Assumes the write lock is held.
+     */
+    private <K> void appendCurrent(byte kind, Map<K,Location> locations,
+				   K key)
+	throws IOException
+    {
+	final int length = buffer.size();
+	final long offset = append(kind, buffer.array(), length);
+	place(locations, key, current, offset, RECORD_HEADER + length);
+    }
+
+    /** Write a serialized object to the buffer. */
+    private void writeObject(Object o) throws IOException {
+	final ObjectOutputStream oos = new ObjectOutputStream(buffer);
+	oos.writeObject(o);
+	oos.close();
+    }
+
+    /** Write a pending transaction id to the buffer. */
+    private void writeId(Long id) {
+	long v = id.longValue();
+	for (int i = 0; i < 8; i++) {
+	    buffer.write((int)(v >>> 56));
+	    v <<= 8;
+	}
+    }
+
+    /**
+     * Append a record to the current segment, starting a segment if
+     * none is open. Assumes the write lock is held.
+     * @return the offset of the record in the segment.
+     */
+    private long append(byte kind, byte[] payload, int length)
+	throws IOException
+    {
+	if (current == null) startSegment();
+	crc.reset();
+	crc.update(payload, 0, length);
+	final long offset = current.size;
+	out.writeByte(kind);
+	out.writeInt(length);
+	out.writeInt((int)crc.getValue());
+	out.write(payload, 0, length);
+	current.size += RECORD_HEADER + length;
+	totalBytes += RECORD_HEADER + length;
+	return offset;
+    }
+
+    /**
+     * Append the last commit record, force the current segment to disk
+     * and start a new segment next time if the current one is full.
+     * Assumes the write lock is held.
+     */
+    private void commit() throws IOException {
+	if (lastCommit != null)
+	    append(COMMIT, lastCommit, lastCommit.length);
+	if (current == null) return;
+	out.flush();
+	fileOut.getFD().sync();
+	if (current.size >= segmentSize) closeSegment();
+    }
+
+    /**
+     * Start a new segment. Assumes the write lock is held.
+     */
+    private void startSegment() throws IOException {
+	final int number = nextSegment++;
+	final File file =
+	    new File(segmentFiles.baseDir, segmentFiles.baseFile + number);
+	fileOut = new FileOutputStream(file);
+	out = new DataOutputStream(new BufferedOutputStream(fileOut, 65536));
+	current = new Segment(number, file, 0);
+	segments.put(Integer.valueOf(number), current);
+	logger.log(Level.FINE, "started segment {0}", file);
+    }
+
+    /**
+     * Close the current segment, if any. Assumes the write lock is held.
+     */
+    private void closeSegment() throws IOException {
+	if (current == null) return;
+	try {
+	    out.flush();
+	    fileOut.getFD().sync();
+	    out.close();
+	} finally {
+	    current = null;
+	    out = null;
+	    fileOut = null;
+	}
+    }
+
+    /**
+     * Returns <code>true</code> if the oldest segment should be
+     * compacted. Assumes the write lock is held.
+     */
+    private boolean needsCompaction() {
+	if (segments.isEmpty() || segments.firstEntry().getValue() == current)
+	    return false;
+	return (totalBytes - liveBytes > Math.max(liveBytes, segmentSize)) ||
+	    segments.size() > MAX_SEGMENTS;
+    }
+
+    /**
+     * Returns the oldest segments to compact together, at least two and
+     * then as many as hold no more than a segment of current records.
+     * Assumes the write lock is held and no segment is being written.
+     */
+    private List<Segment> oldestSegments() {
+	final List<Segment> oldest = new ArrayList<Segment>();
+	long live = 0;
+	for (Segment segment : segments.values()) {
+	    if (oldest.size() >= 2 && live + segment.live > segmentSize)
+		break;
+	    oldest.add(segment);
+	    live += segment.live;
+	}
+	return oldest;
+    }
+
+    /**
+     * Copy the current records of the oldest segments to a new segment,
+     * then delete the oldest segments. Only finding the current records
+     * and replacing the segments is done while holding the write lock.
+     * The current segment is closed and the new segment takes the next
+     * number, so records written while compacting go to a later segment.
+     */
+    private void compactOldest() throws IOException {
+	final List<Segment> oldest;
+	final int number;
+	final byte[] commitPayload;
+	synchronized (writeLock) {
+	    closeSegment();
+	    oldest = oldestSegments();
+	    number = nextSegment++;
+	    commitPayload = lastCommit;
+	}
+	final File file =
+	    new File(segmentFiles.baseDir, segmentFiles.baseFile + number);
+	logger.log(Level.FINE, "compacting {0} segments to {1}",
+		   new Object[]{Integer.valueOf(oldest.size()), file});
+	final List<Copy<?>> copies = new ArrayList<Copy<?>>();
+	final FileOutputStream fos = new FileOutputStream(file);
+	final DataOutputStream copyOut =
+	    new DataOutputStream(new BufferedOutputStream(fos, 65536));
+	final CRC32 copyCrc = new CRC32();
+	long size = 0;
+	try {
+	    for (Segment segment : oldest) {
+		final List<Copy<?>> candidates = readCandidates(segment);
+		synchronized (writeLock) {
+		    for (Iterator<Copy<?>> i = candidates.iterator();
+			 i.hasNext(); )
+		    {
+			if (!i.next().isCurrent()) i.remove();
+		    }
+		}
+		for (Copy<?> c : candidates) {
+		    c.to = size;
+		    size += writeRecord(copyOut, copyCrc, c.record.kind,
+					c.record.payload);
+		    c.record = null;
+		}
+		copies.addAll(candidates);
+	    }
+	    // The copies only count once they are followed by a commit
+	    if (commitPayload != null)
+		size += writeRecord(copyOut, copyCrc, COMMIT, commitPayload);
+	    copyOut.flush();
+	    fos.getFD().sync();
+	} finally {
+	    copyOut.close();
+	}
+
+	synchronized (writeLock) {
+	    if (closed) {
+		// The segments were left as they were, drop the copies
+		if (!file.delete())
+		    logger.log(Level.INFO, "Could not delete {0}", file);
+		return;
+	    }
+	    final Segment compacted = new Segment(number, file, size);
+	    segments.put(Integer.valueOf(number), compacted);
+	    totalBytes += size;
+	    // Copies superseded since they were found are not current
+	    for (Copy<?> c : copies) {
+		final int recordSize = c.move(number);
+		segments.get(Integer.valueOf(c.segment)).live -= recordSize;
+		compacted.live += recordSize;
+	    }
+	    for (Segment segment : oldest) {
+		segments.remove(Integer.valueOf(segment.number));
+		totalBytes -= segment.size;
+		liveBytes -= segment.live;
+		if (!segment.file.delete())
+		    logger.log(Level.INFO, "Could not delete {0}", segment.file);
+	    }
+	}
+    }
+
+    /**
+     * Read the records of a segment that is no longer written, returning
+     * those that may be current. Removals and commits are not needed
+     * once the segments before them are compacted.
+     */
+    private List<Copy<?>> readCandidates(Segment segment) throws IOException {
+	final List<Copy<?>> candidates = new ArrayList<Copy<?>>();
+	final DataInputStream in = new DataInputStream(
+	    new BufferedInputStream(new FileInputStream(segment.file)));
+	try {
+	    long offset = 0;
+	    Record r;
+	    while ((r = readRecord(in, segment.size - offset)) != null) {
+		switch (r.kind) {
+		  case ENTRY:
+		    candidates.add(new Copy<ByteArrayWrapper>(entryLocations,
+			cookieOf(r.payload), r, segment.number, offset));
+		    break;
+		  case REGISTRATION:
+		    candidates.add(new Copy<ByteArrayWrapper>(registrationLocations,
+			cookieOf(r.payload), r, segment.number, offset));
+		    break;
+		  case TXN:
+		    candidates.add(new Copy<Long>(txnLocations,
+			idOf(r.payload), r, segment.number, offset));
+		    break;
+		  default:
+		    // Removals and commits are not copied
+		}
+		offset += r.size();
+	    }
+	} catch (IOException e) {
+	    // Damaged records were never recovered, so are not current
+	    logger.log(Level.FINE, "Ignoring damaged end of segment " +
+		       segment.file, e);
+	} finally {
+	    in.close();
+	}
+	return candidates;
+    }
+
+    /**
+     * Write a record to a stream.
+     * @return the size of the record, including its header.
+     */
+    private static int writeRecord(DataOutputStream out, CRC32 crc,
+				   byte kind, byte[] payload)
+	throws IOException
+    {
+	crc.reset();
+	crc.update(payload, 0, payload.length);
+	out.writeByte(kind);
+	out.writeInt(payload.length);
+	out.writeInt((int)crc.getValue());
+	out.write(payload, 0, payload.length);
+	return RECORD_HEADER + payload.length;
+    }
+
+    /**
+     * Read a record, returning <code>null</code> at the end of the
+     * segment.
+     * @param remaining the number of bytes left in the segment.
+     * @throws IOException if the record is incomplete or damaged.
+     */
+    private static Record readRecord(DataInputStream in, long remaining)
+	throws IOException
+    {
+	final int kind = in.read();
+	if (kind == -1) return null;
+	final int length = in.readInt();
+	final int checksum = in.readInt();
+	if (length < 0 || length > remaining - RECORD_HEADER)
+	    throw new StreamCorruptedException("Bad record length:" + length);
+	final byte[] payload = new byte[length];
+	in.readFully(payload);
+	final CRC32 crc = new CRC32();
+	crc.update(payload, 0, length);
+	if ((int)crc.getValue() != checksum)
+	    throw new StreamCorruptedException("Bad record checksum");
+	return new Record((byte)kind, payload);
+    }
+
+    /** Returns the cookie at the start of a payload. */
+    private static ByteArrayWrapper cookieOf(byte[] payload) {
+	final byte[] cookie = new byte[16];
+	System.arraycopy(payload, 0, cookie, 0, 16);
+	return new ByteArrayWrapper(cookie);
+    }
+
+    /** Returns the pending transaction id at the start of a payload. */
+    private static Long idOf(byte[] payload) {
+	long v = 0;
+	for (int i = 0; i < 8; i++) {
+	    v = (v << 8) | (payload[i] & 0xFF);
+	}
+	return Long.valueOf(v);
+    }
+
+    /** Returns the object serialized in a payload after its key. */
+    private static Object readObject(byte[] payload, int offset)
+	throws IOException, ClassNotFoundException
+    {
+	final ObjectInputStream in = new ObjectInputStream(
+	    new ByteArrayInputStream(payload, offset, payload.length - offset));
+	try {
+	    return in.readObject();
+	} finally {
+	    in.close();
+	}
+    }
+
+    /**
+     * Stop compaction and close the current segment.
+     */
+    void closeSnapshot() throws IOException {
+	synchronized (writeLock) {
+	    closed = true;
+	    writeLock.notifyAll();
+	}
+	compactor.interrupt();
+	try {
+	    compactor.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	synchronized (writeLock) {
+	    closeSegment();
+	}
+    }
+
+    /**
+     * Close, then remove the segment files.
+     */
+    void destroySnapshot() {
+	try {
+	    closeSnapshot();
+	} catch (IOException e) {
+	    logger.log(Level.INFO,
+		"Exception encounter while closing segments", e);
+	}
+	segmentFiles.destroy();
+    }
+
+    /**
+     * Thread compacting the oldest segment while too much of the space
+     * used by the segments is taken up by records that are no longer
+     * current.
+     */
+    private class CompactionThread extends Thread {
+	CompactionThread() {
+	    super("SegmentBackEnd compaction");
+	    setDaemon(true);
+	}
+
+	public void run() {
+	    try {
+		while (true) {
+		    synchronized (writeLock) {
+			while (!closed && !needsCompaction()) {
+			    writeLock.wait();
+			}
+			if (closed) return;
+		    }
+		    compactOldest();
+		}
+	    } catch (InterruptedException e) {
+		// fin
+	    } catch (IOException e) {
+		logger.log(Level.WARNING,
+			   "Segment compaction failed, no longer compacting", e);
+	    }
+	}
+    }
+}
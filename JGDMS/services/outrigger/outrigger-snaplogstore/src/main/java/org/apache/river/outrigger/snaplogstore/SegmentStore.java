@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.outrigger.snaplogstore;
+
+import net.jini.config.Configuration;
+import net.jini.config.ConfigurationException;
+
+/**
+ * A {@link LogStore} that, rather than writing the whole state of the
+ * space to a new snapshot each time a log file has been consumed, only
+ * appends the entries, registrations and pending transactions that
+ * changed to a segment file. The cost of consuming a log is therefore
+ * proportional to the number of changes it holds instead of the size
+ * of the space. Segments are compacted in the background and recovery
+ * streams through them without loading a snapshot into memory first.
+ * <p>
+ * The storage formats used by <code>SegmentStore</code> and
+ * <code>LogStore</code> are mutually incompatible.
+ *
+ * @see org.apache.river.outrigger.OutriggerServerImpl
+ * @since 3.1.1
+ */
+public class SegmentStore extends LogStore {
+
+    /**
+     * Create a new <code>SegmentStore</code>.
+     * @param config the directory to use for persistence.
+     * @throws ConfigurationException if there's a problem with the configuration.
+     */
+    public SegmentStore(Configuration config) throws ConfigurationException {
+	super(config, true);
+    }
+}
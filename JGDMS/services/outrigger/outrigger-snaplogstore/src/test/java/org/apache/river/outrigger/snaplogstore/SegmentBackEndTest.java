@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.outrigger.snaplogstore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import net.jini.id.Uuid;
+import net.jini.id.UuidFactory;
+import org.apache.river.outrigger.proxy.StorableResource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the state written by <code>SegmentBackEnd</code> is recovered,
+ * including after a damaged write and after compaction.
+ */
+public class SegmentBackEndTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private SegmentBackEnd backEnd;
+
+    @Before
+    public void setUp() throws IOException {
+	dir = folder.newFolder("store");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+	if (backEnd != null) backEnd.closeSnapshot();
+    }
+
+    @Test
+    public void testRecoverRoundTrip() throws Exception {
+	open(1L << 20);
+	final Uuid kept = write("kept");
+	final Uuid rewritten = write("first");
+	final Uuid removed = write("removed");
+	backEnd.sessionId.set(42L);
+	backEnd.writeSnapshot();
+	write(rewritten, "second");
+	remove(removed);
+	backEnd.writeSnapshot();
+	reopen(1L << 20);
+
+	final Map<Uuid,String> expected = new HashMap<Uuid,String>();
+	expected.put(kept, "kept");
+	expected.put(rewritten, "second");
+	assertEquals(expected, recovered());
+	assertEquals(42L, backEnd.sessionId.get());
+    }
+
+    @Test
+    public void testTornRecordDiscardsCheckpoint() throws Exception {
+	open(1L << 20);
+	final Uuid id = write("first");
+	backEnd.writeSnapshot();
+	final long committed = segmentBytes();
+	write(id, "second");
+	write("uncommitted");
+	backEnd.writeSnapshot();
+	backEnd.closeSnapshot();
+	backEnd = null;
+
+	// Lose the end of the last checkpoint, part way through a record
+	final RandomAccessFile file = new RandomAccessFile(segment(), "rw");
+	try {
+	    file.setLength(committed + 20);
+	} finally {
+	    file.close();
+	}
+	open(1L << 20);
+	assertEquals(Collections.singletonMap(id, "first"),
+		     recovered());
+    }
+
+    @Test
+    public void testDamagedRecordDiscardsCheckpoint() throws Exception {
+	open(1L << 20);
+	final Uuid id = write("first");
+	backEnd.writeSnapshot();
+	final long committed = segmentBytes();
+	write(id, "second");
+	backEnd.writeSnapshot();
+	backEnd.closeSnapshot();
+	backEnd = null;
+
+	// Corrupt the payload of the first record of the last checkpoint
+	final RandomAccessFile file = new RandomAccessFile(segment(), "rw");
+	try {
+	    file.seek(committed + 20);
+	    final int b = file.read();
+	    file.seek(committed + 20);
+	    file.write(b ^ 0xFF);
+	} finally {
+	    file.close();
+	}
+	open(1L << 20);
+	assertEquals(Collections.singletonMap(id, "first"),
+		     recovered());
+
+	// Checkpoints after the damage are written to a new segment
+	write(id, "third");
+	backEnd.writeSnapshot();
+	reopen(1L << 20);
+	assertEquals(Collections.singletonMap(id, "third"),
+		     recovered());
+    }
+
+    @Test
+    public void testRecoverAfterCompaction() throws Exception {
+	final long segmentSize = 256;
+	open(segmentSize);
+	final Map<Uuid,String> expected = new HashMap<Uuid,String>();
+	final Uuid kept = write("kept");
+	expected.put(kept, "kept");
+	final Uuid rewritten = write("version 0");
+	backEnd.writeSnapshot();
+	final int checkpoints = 200;
+	for (int i = 1; i <= checkpoints; i++) {
+	    write(rewritten, "version " + i);
+	    backEnd.writeSnapshot();
+	}
+	expected.put(rewritten, "version " + checkpoints);
+
+	// Each checkpoint fills a segment, compaction keeps up with them
+	final long deadline = System.currentTimeMillis() + 10000L;
+	while (segmentFiles() > 8 && System.currentTimeMillis() < deadline) {
+	    Thread.sleep(10L);
+	}
+	assertTrue("segments not compacted: " + segmentFiles(),
+		   segmentFiles() <= 8);
+	assertFalse(new File(dir, "Segment.0").exists());
+	reopen(segmentSize);
+	assertEquals(expected, recovered());
+
+	// Compaction continues from the recovered segments
+	remove(kept);
+	backEnd.writeSnapshot();
+	expected.remove(kept);
+	reopen(segmentSize);
+	assertEquals(expected, recovered());
+    }
+
+    private void open(long segmentSize) throws IOException {
+	backEnd = new SegmentBackEnd(dir.getPath(), segmentSize);
+	backEnd.recoverSnapshot();
+    }
+
+    private void reopen(long segmentSize) throws IOException {
+	backEnd.closeSnapshot();
+	open(segmentSize);
+    }
+
+    private Uuid write(String value) {
+	final Uuid id = UuidFactory.generate();
+	write(id, value);
+	return id;
+    }
+
+    private void write(Uuid id, String value) {
+	final Resource resource = new Resource(new StubResource(id, value));
+	final ByteArrayWrapper cookie = resource.getCookieAsWrapper();
+	backEnd.entries.put(cookie, resource);
+	backEnd.entryChanged(cookie);
+    }
+
+    private void remove(Uuid id) {
+	final ByteArrayWrapper cookie =
+	    new ByteArrayWrapper(ByteArrayWrapper.toByteArray(id));
+	backEnd.entries.remove(cookie);
+	backEnd.entryChanged(cookie);
+    }
+
+    private Map<Uuid,String> recovered() throws Exception {
+	final Map<Uuid,String> values = new HashMap<Uuid,String>();
+	for (Resource resource : backEnd.entries.values()) {
+	    final StubResource stub = new StubResource(null, null);
+	    resource.restore(stub);
+	    values.put(stub.getCookie(), stub.value);
+	}
+	return values;
+    }
+
+    private int segmentFiles() {
+	return dir.list().length;
+    }
+
+    /** Returns the only segment file. */
+    private File segment() {
+	final String[] names = dir.list();
+	assertEquals(1, names.length);
+	return new File(dir, names[0]);
+    }
+
+    private long segmentBytes() {
+	return segment().length();
+    }
+
+    /** A resource whose stored form is its cookie and a value. */
+    private static class StubResource
+	implements StorableResource<StubResource>
+    {
+	private Uuid cookie;
+	private String value;
+	private long expiration = Long.MAX_VALUE;
+
+	StubResource(Uuid cookie, String value) {
+	    this.cookie = cookie;
+	    this.value = value;
+	}
+
+	public void setExpiration(long newExpiration) {
+	    expiration = newExpiration;
+	}
+
+	public long getExpiration() {
+	    return expiration;
+	}
+
+	public Uuid getCookie() {
+	    return cookie;
+	}
+
+	public void store(ObjectOutputStream out) throws IOException {
+	    out.writeObject(cookie);
+	    out.writeUTF(value);
+	}
+
+	public StubResource restore(ObjectInputStream in)
+	    throws IOException, ClassNotFoundException
+	{
+	    cookie = (Uuid)in.readObject();
+	    value = in.readUTF();
+	    return this;
+	}
+    }
+}
@@ -73,6 +73,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -195,6 +196,8 @@ class RegistrarImpl implements Registrar, ProxyAccessor, ServerProxyTrust, Start
     private static final int DEFAULT_MULTICAST_TTL = 15;
     /** Default timeout to set on sockets used for unicast discovery */
     private static final int DEFAULT_SOCKET_TIMEOUT = 1*60*1000;
+    /** Default limit of discovery requests waiting for a response thread */
+    private static final int DEFAULT_DISCOVERY_QUEUE_LIMIT = 1024;
     /** Log format version */
     private static final int LOG_VERSION = 3;
     /** Logger and configuration component name */
@@ -390,6 +393,8 @@ class RegistrarImpl implements Registrar, ProxyAccessor, ServerProxyTrust, Start
     private Discovery httpsDiscovery;
     /** The groups we are a member of */
     private volatile String[] memberGroups; // accessed from DecodeRequestTask and Announce
+    /** Unicast discovery response, replaced when locator, groups or proxy change */
+    private volatile UnicastResponse unicastResponse;
     /** The groups we should join */
     private volatile String[] lookupGroups;
     /** The locators of other lookups we should join */
@@ -2998,7 +3003,20 @@ class RegistrarImpl implements Registrar, ProxyAccessor, ServerProxyTrust, Start
 			}
 			break;
 		    }
-		    reggie.discoveryResponseExec.execute(new SocketTask(socket, reggie));
+		    try {
+			reggie.discoveryResponseExec.execute(
+			    new SocketTask(socket, reggie));
+		    } catch (RejectedExecutionException e) {
+			/* too many queued requests, the client will retry */
+			DISCOVERY_LOGGER.log(Levels.HANDLED,
+			    "unicast discovery request rejected", e);
+			try {
+			    socket.close();
+			} catch (IOException ex) {
+			    DISCOVERY_LOGGER.log(
+				Levels.HANDLED, "exception closing socket", ex);
+			}
+		    }
 		} catch (InterruptedIOException e) {
 		    break;
 		} catch (Exception e) {
@@ -4909,10 +4927,7 @@ class RegistrarImpl implements Registrar, ProxyAccessor, ServerProxyTrust, Start
 	           DEFAULT_SOCKET_TIMEOUT));
 	    
 	    httpsDiscovery.handleUnicastDiscovery(
-		new UnicastResponse(myLocator.getHost(),
-				    myLocator.getPort(),
-				    memberGroups,
-				    proxy),
+		unicastResponse(),
 		socket,
 		unicastDiscoveryConstraints.getUnfulfilledConstraints(),
 		unicastDiscoverySubjectChecker,
@@ -4943,10 +4958,7 @@ class RegistrarImpl implements Registrar, ProxyAccessor, ServerProxyTrust, Start
 	    int pv = new DataInputStream(socket.getInputStream()).readInt();
 	    unicastDiscoveryConstraints.checkProtocolVersion(pv);
 	    getDiscovery(pv).handleUnicastDiscovery(
-		new UnicastResponse(myLocator.getHost(),
-				    myLocator.getPort(),
-				    memberGroups,
-				    proxy),
+		unicastResponse(),
 		socket,
 		unicastDiscoveryConstraints.getUnfulfilledConstraints(),
 		unicastDiscoverySubjectChecker,
@@ -4960,6 +4972,42 @@ class RegistrarImpl implements Registrar, ProxyAccessor, ServerProxyTrust, Start
 	}
     }
 
+    /**
+     * Returns the unicast discovery response.  The same instance is returned
+     * until the locator, member groups or proxy change, so the proxy is
+     * marshalled once for each discovery format, not for every request.
+     */
+    private UnicastResponse unicastResponse() {
+	UnicastResponse response = unicastResponse;
+	UnicastResponse current =
+	    unicastResponse(response, myLocator, memberGroups, proxy);
+	if (current != response) unicastResponse = current;
+	return current;
+    }
+
+    /**
+     * Returns <code>response</code> if it has the given locator, groups and
+     * registrar, otherwise a new response with them.
+     */
+    static UnicastResponse unicastResponse(UnicastResponse response,
+					   LookupLocator locator,
+					   String[] groups,
+					   ServiceRegistrar registrar)
+    {
+	if (response == null ||
+	    response.getRegistrar() != registrar ||
+	    response.getPort() != locator.getPort() ||
+	    !response.getHost().equals(locator.getHost()) ||
+	    !Arrays.equals(response.getGroups(), groups))
+	{
+	    response = new UnicastResponse(locator.getHost(),
+					   locator.getPort(),
+					   groups,
+					   registrar);
+	}
+	return response;
+    }
+
     /** Returns Discovery instance implementing the given protocol version */
     private Discovery getDiscovery(int version)
 	throws DiscoveryProtocolException
@@ -5249,6 +5297,9 @@ class RegistrarImpl implements Registrar, ProxyAccessor, ServerProxyTrust, Start
                 )
             );
             // Set up Executor to perform discovery responses
+            int discoveryQueueLimit = Config.getIntEntry(
+                config, COMPONENT, "discoveryQueueLimit",
+                DEFAULT_DISCOVERY_QUEUE_LIMIT, 1, Integer.MAX_VALUE);
             this.executor = Config.getNonNullEntry(
                 config, 
                 COMPONENT, 
@@ -5256,10 +5307,10 @@ class RegistrarImpl implements Registrar, ProxyAccessor, ServerProxyTrust, Start
                 ExecutorService.class, 
                 new ThreadPoolExecutor(
                     poolSizeLimit, 
-                    poolSizeLimit, /* Ignored */
+                    poolSizeLimit, /* Same as core, requests beyond it are queued */
                     15L, 
                     TimeUnit.MINUTES, 
-                    new LinkedBlockingQueue(), /* Unbounded Queue */
+                    new LinkedBlockingQueue(discoveryQueueLimit),
                     new NamedThreadFactory("Reggie_Discovery_Response", false)
                 ) 
             );
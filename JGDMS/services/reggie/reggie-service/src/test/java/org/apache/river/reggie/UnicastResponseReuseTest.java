@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.reggie;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import net.jini.core.discovery.LookupLocator;
+import net.jini.core.lookup.ServiceRegistrar;
+import org.apache.river.discovery.UnicastResponse;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the unicast discovery response of a lookup service is reused
+ * until its locator, member groups or proxy change.
+ */
+public class UnicastResponseReuseTest {
+
+    private final ServiceRegistrar registrar = registrar();
+    private final LookupLocator locator = new LookupLocator("host", 4160);
+    private final String[] groups = {"a", "b"};
+
+    @Test
+    public void testReused() {
+        UnicastResponse response =
+            RegistrarImpl.unicastResponse(null, locator, groups, registrar);
+        assertEquals("host", response.getHost());
+        assertEquals(4160, response.getPort());
+        assertArrayEquals(groups, response.getGroups());
+        assertSame(registrar, response.getRegistrar());
+        assertSame(response, RegistrarImpl.unicastResponse(
+            response, new LookupLocator("host", 4160),
+            new String[] {"a", "b"}, registrar));
+    }
+
+    @Test
+    public void testReplacedWhenGroupsChange() {
+        UnicastResponse response =
+            RegistrarImpl.unicastResponse(null, locator, groups, registrar);
+        UnicastResponse replaced = RegistrarImpl.unicastResponse(
+            response, locator, new String[] {"a"}, registrar);
+        assertNotSame(response, replaced);
+        assertArrayEquals(new String[] {"a"}, replaced.getGroups());
+    }
+
+    @Test
+    public void testReplacedWhenLocatorChanges() {
+        UnicastResponse response =
+            RegistrarImpl.unicastResponse(null, locator, groups, registrar);
+        UnicastResponse port = RegistrarImpl.unicastResponse(
+            response, new LookupLocator("host", 4161), groups, registrar);
+        assertNotSame(response, port);
+        assertEquals(4161, port.getPort());
+        UnicastResponse host = RegistrarImpl.unicastResponse(
+            response, new LookupLocator("other", 4160), groups, registrar);
+        assertNotSame(response, host);
+        assertEquals("other", host.getHost());
+    }
+
+    @Test
+    public void testReplacedWhenProxyChanges() {
+        UnicastResponse response =
+            RegistrarImpl.unicastResponse(null, locator, groups, registrar);
+        ServiceRegistrar other = registrar();
+        UnicastResponse replaced =
+            RegistrarImpl.unicastResponse(response, locator, groups, other);
+        assertNotSame(response, replaced);
+        assertSame(other, replaced.getRegistrar());
+    }
+
+    private static ServiceRegistrar registrar() {
+        return (ServiceRegistrar) Proxy.newProxyInstance(
+            ServiceRegistrar.class.getClassLoader(),
+            new Class[] {ServiceRegistrar.class},
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method,
+                                     Object[] args)
+                {
+                    if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    } else if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    }
+                    throw new UnsupportedOperationException();
+                }
+            });
+    }
+}
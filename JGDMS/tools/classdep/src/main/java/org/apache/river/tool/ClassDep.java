@@ -370,6 +370,20 @@ import java.util.TreeSet;
  * ignored, and the normal class output is not produced. This option is
  * useful for debugging.
  * </dd>
+ * 
+ * <dt><b><code>-threads</code> <var>count</var></b>
+ * <dd>Specifies the number of threads used to read and inspect class
+ * bytecodes. The default is the number of available processors. The output
+ * does not depend on the number of threads.
+ * </dd>
+ * 
+ * <dt><b><code>-index</code> <var>directory</var></b>
+ * <dd>Specifies a directory in which to keep an index of the classes
+ * referenced by each class in the JAR files of the class path. The index of
+ * a JAR file is used by later runs, instead of reading the class bytecodes
+ * again, until the contents of the JAR file change. Classes found in
+ * directories are always inspected.
+ * </dd>
  * </dl>
  * 
  * <a name="examples"></a>
@@ -567,6 +581,14 @@ public class ClassDep {
      */
     private boolean failed;
     private Set<String> providers = new TreeSet<String>();
+    /**
+     * Number of threads used to inspect class bytecodes.
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Directory of the persistent dependency index, or null.
+     */
+    private String indexDirectory;
 
     /**
      * No argument constructor. The user must fill in the
@@ -879,6 +901,10 @@ public class ClassDep {
         if (classpath.length() == 0) { classpath = null; }
         try {
             cd = ClassDepend.newInstance(classpath, null, true);
+            cd.setThreads(threads);
+            if (indexDirectory != null) {
+                cd.setIndexDirectory(new File(indexDirectory));
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -993,6 +1019,34 @@ public class ClassDep {
 	this.files = files;
     }
 
+    /**
+     * Set the number of threads used to read and inspect
+     * class bytecodes. If not set the default is the number
+     * of available processors.
+     * @param threads 
+     * @throws IllegalArgumentException if <code>threads</code> is less than 1
+     * @since 3.1.1
+     */
+    public void setThreads(int threads) {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("threads must be positive: "
+					       + threads);
+	}
+	this.threads = threads;
+    }
+
+    /**
+     * Set the directory of a persistent index of the classes
+     * referenced by each class in the JAR files of the classpath,
+     * reused until the contents of a JAR file change.
+     * If not set, no index is used.
+     * @param directory 
+     * @since 3.1.1
+     */
+    public void setIndexDirectory(String directory) {
+	this.indexDirectory = directory;
+    }
+
     /**
      * Add an entry into the set of package prefixes that
      * are to remain hidden from processing.
@@ -1274,6 +1328,12 @@ public class ClassDep {
 	    } else if (arg.equals("-tell")) {
 		i++;
 		addTells(args[i]);
+	    } else if (arg.equals("-threads")) {
+		i++;
+		setThreads(Integer.parseInt(args[i]));
+	    } else if (arg.equals("-index")) {
+		i++;
+		setIndexDirectory(args[i]);
 	    } else if (arg.indexOf(File.separator) >= 0) {
 		addRoots(arg);
 	    } else if ("-prov".equals(args[i])){
@@ -25,13 +25,21 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 
 /**
@@ -61,6 +69,12 @@ public class ClassDepend {
     private final PackageClasses packageClasses;
         
     private volatile boolean printClassesWithFileSeparator = false;
+
+    /** The number of threads used to read and inspect class bytecodes. */
+    private volatile int threads = Runtime.getRuntime().availableProcessors();
+
+    /** The persistent index of JAR file dependencies, or null. */
+    private volatile DependencyIndex index;
     
     /**
      * Public Factory method for creating a new instance of ClassDepend.
@@ -132,6 +146,8 @@ public class ClassDepend {
 	    boolean warn = false; //supress exceptions, print to error, warn instead
 	    boolean files = false; //print class with file path separator
             boolean graph = false; //print dependency relation ships between classes.
+            int threads = Runtime.getRuntime().availableProcessors();
+            String index = null;
 	    for (int i = 0; i < args.length; i++) {
 		String arg = args[i];
 		if (arg.equals("-cp")) {
@@ -150,6 +166,10 @@ public class ClassDepend {
                     graph = true;
                 } else if (arg.equals("-excljava")) {
                     cdpb.excludePlatformClasses(true);
+                } else if (arg.equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-index")) {
+                    index = args[++i];
 		} else if (arg.startsWith("-")) {
 		    throw new IllegalArgumentException("Bad option: " + arg);
 		} else {
@@ -158,6 +178,8 @@ public class ClassDepend {
 	    }
             ClassDependParameters cdp = cdpb.build();          
 	    ClassDepend classDepend = ClassDepend.newInstance(classpath, platform, warn);
+	    classDepend.setThreads(threads);
+	    if (index != null) classDepend.setIndexDirectory(new File(index));
             Set result = classDepend
                     .filterClassDependencyRelationShipMap(
                     classDepend.getDependencyRelationshipMap(rootClasses, recurse),
@@ -253,53 +275,57 @@ public class ClassDepend {
      * @throws java.lang.ClassNotFoundException
      * @see ClassDependencyRelationship
      */
-    public Map getDependencyRelationshipMap(Collection rootClasses, boolean recurse) 
+    public Map getDependencyRelationshipMap(Collection rootClasses, boolean recurse)
             throws IOException, ClassNotFoundException {
         Map result = new HashMap(); // May be changed to ConcurrentHashMap for Java 5
         Set seen = new HashSet();
-        Set compute = computeClasses(rootClasses);      
-	while (!compute.isEmpty()) {
-            Set computeNext = new HashSet(); //built from discovered dependencies
-            Iterator computeIterator = compute.iterator();            
-	    while (computeIterator.hasNext()) {
-                String name = (String) computeIterator.next();
-                if ( !seen.contains(name)){
-                    seen.add(name);
+        Set compute = computeClasses(rootClasses);
+        ExecutorService executor = threads > 1
+                ? Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ClassDepend");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                })
+                : null;
+        try {
+            while (!compute.isEmpty()) {
+                Set computeNext = new HashSet(); //built from discovered dependencies
+                List names = new ArrayList();
+                Iterator computeIterator = compute.iterator();
+                while (computeIterator.hasNext()) {
+                    String name = (String) computeIterator.next();
+                    if (seen.add(name)) names.add(name);
+                }
+                /* Class bytecodes are read and inspected concurrently, but the
+                 * results are processed in order, so the outcome, including
+                 * which failure is noted first, doesn't depend on timing.
+                 */
+                List scans = scan(names, recurse, executor);
+                for (int i = 0, l = names.size(); i < l; i++) {
+                    String name = (String) names.get(i);
+                    Scan scan = (Scan) scans.get(i);
                     if (rootClasses.contains(name)){
                         // Put all root classes into ClassDependencyRelationship containers
                         ClassDependencyRelationship rootClass = new ClassDependencyRelationship(name, true);
                         result.put(name, rootClass);
                     }
                     Set providerClassNames = new HashSet();
-		    String resource = getResourceName(name);
-                    if (recurse) {
-			InputStream in = loader.getResourceAsStream(resource);
-			if (in == null) {
-			    noteClassNotFound(name);
-			} else {
-			    try {
-                                // Discover the referenced classes by loading classfile and inspecting
-                                providerClassNames = ReferencedClasses.compute(
-                                        new BufferedInputStream(in));
-                                computeNext.addAll(providerClassNames);
-			    } catch (IOException e) {
-				noteClassLoadingFailed(name, e);
-			    } finally {
-				try {
-				    in.close();
-				} catch (IOException e) {
-				}
-			    }
-			}
-		    } else if (loader.getResource(resource) == null) {
-			noteClassNotFound(name);
-		    }
+                    if (scan.notFound) {
+                        noteClassNotFound(name);
+                    } else if (scan.failure != null) {
+                        noteClassLoadingFailed(name, scan.failure);
+                    } else if (scan.providers != null) {
+                        providerClassNames = scan.providers;
+                        computeNext.addAll(providerClassNames);
+                    }
                     /* Now we add all the provider classes to the dependant
-                     * this is useful for edges or classes of interest where 
-                     * we my want to pick points to recurse through dependents 
+                     * this is useful for edges or classes of interest where
+                     * we my want to pick points to recurse through dependents
                      * instead of providers.
                      */
-                   Iterator iter = providerClassNames.iterator();
+                    Iterator iter = providerClassNames.iterator();
                     while (iter.hasNext()){
                         String provider = (String) iter.next();
                         ClassDependencyRelationship providerClass;
@@ -308,19 +334,110 @@ public class ClassDepend {
                             result.put(provider, providerClass);
                         }else{
                             providerClass = (ClassDependencyRelationship) result.get(provider);
-		}
+                        }
                         ((ClassDependencyRelationship) result.get(name)).addProvider(providerClass);
-	    }
+                    }
                 }
+                /* The old list is exhausted, lets iterate through our newly
+                 * discovered collection.
+                 */
+                compute = computeNext;
             }
-            /* The old list is exhausted, lets iterate through our newly
-             * discovered collection.
-             */
-	    compute = computeNext;
-	}
+        } finally {
+            if (executor != null) executor.shutdown();
+        }
+        DependencyIndex index = this.index;
+        if (index != null) index.save();
 	return result;
     }
 
+    /**
+     * Finds the named classes, using the executor when there is more than
+     * one.  Returns a List of {@link Scan}, in the same order as the names.
+     */
+    private List scan(List names, final boolean recurse, ExecutorService executor)
+            throws IOException {
+        List scans = new ArrayList(names.size());
+        if (executor == null || names.size() < 2) {
+            Iterator it = names.iterator();
+            while (it.hasNext()) {
+                scans.add(scan((String) it.next(), recurse));
+            }
+            return scans;
+        }
+        List tasks = new ArrayList(names.size());
+        Iterator it = names.iterator();
+        while (it.hasNext()) {
+            final String name = (String) it.next();
+            tasks.add(new Callable() {
+                public Object call() throws IOException {
+                    return scan(name, recurse);
+                }
+            });
+        }
+        try {
+            it = executor.invokeAll(tasks).iterator();
+            while (it.hasNext()) {
+                scans.add(((Future) it.next()).get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while inspecting classes", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
+        }
+        return scans;
+    }
+
+    /**
+     * Finds the named class and, if <code>recurse</code> is true, the
+     * classes it refers to, from the dependency index if present, otherwise
+     * by inspecting its bytecodes.
+     *
+     * @throws IOException if the dependency index cannot be read
+     */
+    private Scan scan(String name, boolean recurse) throws IOException {
+        Scan scan = new Scan();
+        URL url = loader.getResource(getResourceName(name));
+        if (url == null) {
+            scan.notFound = true;
+            return scan;
+        }
+        if (!recurse) return scan;
+        DependencyIndex index = this.index;
+        Set providers = index != null ? index.get(url) : null;
+        if (providers == null) {
+            InputStream in = null;
+            try {
+                in = url.openStream();
+                // Discover the referenced classes by loading classfile and inspecting
+                providers = ReferencedClasses.compute(new BufferedInputStream(in));
+            } catch (IOException e) {
+                scan.failure = e;
+                return scan;
+            } finally {
+                try {
+                    if (in != null) in.close();
+                } catch (IOException e) {
+                }
+            }
+            if (index != null) index.put(url, providers);
+        }
+        scan.providers = providers;
+        return scan;
+    }
+
+    /** The outcome of finding a class and inspecting its bytecodes. */
+    private static class Scan {
+        boolean notFound;
+        IOException failure;
+        Set providers;
+    }
+
     /**
      * This method applies optional filters to provide methods to support the
      * original API of ClassDep.
@@ -567,4 +684,37 @@ public class ClassDepend {
     public void setPrintClassesWithFileSeparator(boolean printClassesWithFileSeparator) {
         this.printClassesWithFileSeparator = printClassesWithFileSeparator;
     }
+
+    /**
+     * Sets the number of threads used to read and inspect class bytecodes,
+     * the default is the number of available processors.  The result of
+     * the computation doesn't depend on the number of threads.
+     *
+     * @param threads the number of threads, 1 to inspect classes in the
+     *		calling thread
+     * @throws IllegalArgumentException if <code>threads</code> is less
+     *		than 1
+     * @since 3.1.1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the directory of a persistent index of the classes referred to
+     * by each class in a JAR file.  The index of a JAR file is reused by
+     * later computations, until the contents of the JAR file change.
+     * Classes found in directories are always inspected.
+     *
+     * @param directory the index directory, created if it doesn't exist,
+     *		or <code>null</code> for no index
+     * @throws IOException if the directory cannot be created
+     * @since 3.1.1
+     */
+    public void setIndexDirectory(File directory) throws IOException {
+        index = directory != null ? new DependencyIndex(directory) : null;
+    }
 }
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.river.tool.classdepend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A persistent index of the classes referred to by each class in a JAR
+ * file, so the bytecodes of unchanged JAR files need not be read again on
+ * subsequent runs.  The index of each JAR file is stored in its own file in
+ * the index directory, named after the SHA-256 digest of the JAR file
+ * contents; an index is never used once the contents of its JAR file
+ * change.  Classes found in directories are not indexed.  This class is
+ * thread safe.
+ */
+final class DependencyIndex {
+
+    /** The version of the index file format. */
+    private static final int VERSION = 1;
+
+    /** The directory containing the index files. */
+    private final File directory;
+
+    /** The index of each JAR file that has been referenced. */
+    private final ConcurrentMap<File, JarIndex> jars =
+	new ConcurrentHashMap<File, JarIndex>();
+
+    /**
+     * Creates an index stored in the specified directory, which is created
+     * if it doesn't exist.
+     *
+     * @param directory the directory containing the index files
+     * @throws IOException if the directory cannot be created
+     */
+    DependencyIndex(File directory) throws IOException {
+	if (!directory.isDirectory() && !directory.mkdirs()) {
+	    throw new IOException(
+		"Unable to create index directory: " + directory);
+	}
+	this.directory = directory;
+    }
+
+    /**
+     * Returns the names of the classes referred to by the class at the
+     * specified URL, or <code>null</code> if not indexed.
+     *
+     * @param url the URL of the class bytecodes
+     * @return the referenced class names, or <code>null</code>
+     * @throws IOException if the JAR file or its index cannot be read
+     */
+    Set<String> get(URL url) throws IOException {
+	String[] location = jarLocation(url);
+	if (location == null) {
+	    return null;
+	}
+	return jarIndex(location[0]).entries.get(location[1]);
+    }
+
+    /**
+     * Records the names of the classes referred to by the class at the
+     * specified URL.
+     *
+     * @param url the URL of the class bytecodes
+     * @param names the referenced class names
+     * @throws IOException if the JAR file or its index cannot be read
+     */
+    void put(URL url, Set<String> names) throws IOException {
+	String[] location = jarLocation(url);
+	if (location == null) {
+	    return;
+	}
+	JarIndex index = jarIndex(location[0]);
+	if (index.entries.putIfAbsent(location[1], names) == null) {
+	    index.modified = true;
+	}
+    }
+
+    /**
+     * Writes the index files of JAR files whose index has new entries.
+     *
+     * @throws IOException if an index file cannot be written
+     */
+    void save() throws IOException {
+	Iterator<JarIndex> it = jars.values().iterator();
+	while (it.hasNext()) {
+	    JarIndex index = it.next();
+	    if (index.modified) {
+		index.write();
+		index.modified = false;
+	    }
+	}
+    }
+
+    /**
+     * Returns the index of the specified JAR file, reading it from the index
+     * directory if present.  The index is only published once read, so
+     * other threads don't miss its entries and inspect the classes again.
+     */
+    private JarIndex jarIndex(String jar) throws IOException {
+	File file = new File(jar);
+	JarIndex index = jars.get(file);
+	if (index == null) {
+	    synchronized (this) {
+		index = jars.get(file);
+		if (index == null) {
+		    index = new JarIndex(
+			new File(directory, digest(file) + ".idx"));
+		    index.read();
+		    jars.put(file, index);
+		}
+	    }
+	}
+	return index;
+    }
+
+    /**
+     * Returns the JAR file path and entry name of a <code>jar:file:</code>
+     * URL, or <code>null</code> for any other URL.
+     */
+    private static String[] jarLocation(URL url) {
+	if (!"jar".equals(url.getProtocol())) {
+	    return null;
+	}
+	String path = url.getPath();
+	int separator = path.indexOf("!/");
+	if (separator < 0 || !path.startsWith("file:")) {
+	    return null;
+	}
+	try {
+	    return new String[] {
+		new File(new URI(path.substring(0, separator))).getPath(),
+		path.substring(separator + 2)
+	    };
+	} catch (URISyntaxException e) {
+	    return null;
+	} catch (IllegalArgumentException e) {
+	    return null;
+	}
+    }
+
+    /** Returns the SHA-256 digest of the file contents in hexadecimal. */
+    private static String digest(File file) throws IOException {
+	MessageDigest md;
+	try {
+	    md = MessageDigest.getInstance("SHA-256");
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IOException(e);
+	}
+	InputStream in = new FileInputStream(file);
+	try {
+	    byte[] buf = new byte[8192];
+	    int n;
+	    while ((n = in.read(buf)) > 0) {
+		md.update(buf, 0, n);
+	    }
+	} finally {
+	    in.close();
+	}
+	byte[] digest = md.digest();
+	StringBuilder sb = new StringBuilder(digest.length * 2);
+	for (int i = 0; i < digest.length; i++) {
+	    sb.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+	    sb.append(Character.forDigit(digest[i] & 0xf, 16));
+	}
+	return sb.toString();
+    }
+
+    /** The index of a single JAR file. */
+    private static final class JarIndex {
+	/** The index file. */
+	private final File file;
+	/** Referenced class names, keyed by JAR entry name. */
+	final ConcurrentMap<String, Set<String>> entries =
+	    new ConcurrentHashMap<String, Set<String>>();
+	/** True if entries have been added since the file was read. */
+	volatile boolean modified;
+
+	JarIndex(File file) {
+	    this.file = file;
+	}
+
+	/**
+	 * Reads the index file if present, an unreadable index file is
+	 * ignored and replaced when next saved.
+	 */
+	void read() {
+	    if (!file.isFile()) {
+		return;
+	    }
+	    try {
+		DataInputStream in = new DataInputStream(
+		    new BufferedInputStream(new FileInputStream(file)));
+		try {
+		    if (in.readInt() != VERSION) {
+			return;
+		    }
+		    for (int i = in.readInt(); i > 0; i--) {
+			String entry = in.readUTF();
+			Set<String> names = new HashSet<String>();
+			for (int j = in.readInt(); j > 0; j--) {
+			    names.add(in.readUTF());
+			}
+			entries.put(entry, names);
+		    }
+		} finally {
+		    in.close();
+		}
+	    } catch (IOException e) {
+		entries.clear();
+	    }
+	}
+
+	/**
+	 * Writes the index to a temporary file, then renames it, so a
+	 * concurrent reader never sees a partially written index.
+	 */
+	void write() throws IOException {
+	    File tmp = File.createTempFile("index", ".tmp",
+					   file.getParentFile());
+	    DataOutputStream out = new DataOutputStream(
+		new BufferedOutputStream(new FileOutputStream(tmp)));
+	    try {
+		out.writeInt(VERSION);
+		Map<String, Set<String>> snapshot =
+		    new HashMap<String, Set<String>>(entries);
+		out.writeInt(snapshot.size());
+		Iterator<Map.Entry<String, Set<String>>> it =
+		    snapshot.entrySet().iterator();
+		while (it.hasNext()) {
+		    Map.Entry<String, Set<String>> entry = it.next();
+		    out.writeUTF(entry.getKey());
+		    out.writeInt(entry.getValue().size());
+		    Iterator<String> names = entry.getValue().iterator();
+		    while (names.hasNext()) {
+			out.writeUTF(names.next());
+		    }
+		}
+	    } finally {
+		out.close();
+	    }
+	    if (!tmp.renameTo(file)) {
+		file.delete();
+		if (!tmp.renameTo(file)) {
+		    tmp.delete();
+		    throw new IOException("Unable to write index: " + file);
+		}
+	    }
+	}
+    }
+}
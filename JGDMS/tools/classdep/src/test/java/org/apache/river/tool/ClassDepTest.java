@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.tool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the output of ClassDep doesn't depend on the number of
+ * threads or on the dependency index.
+ */
+public class ClassDepTest {
+
+    private static final String ROOT = "org.apache.river.tool.ClassDep";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** A classpath of a JAR of the ClassDep classes and the ASM JAR. */
+    private String classpath;
+
+    @Before
+    public void setUp() throws Exception {
+        File jar = folder.newFile("classdep.jar");
+        jar(location(ClassDep.class), jar);
+        classpath = jar.getPath() + File.pathSeparator
+            + location(ClassReader.class).getPath();
+    }
+
+    @Test
+    public void testThreadsGiveSameResult() throws Exception {
+        String[] serial = compute(classpath, 1, null);
+        assertTrue(Arrays.asList(serial).contains(
+            "org.apache.river.tool.classdepend.ClassDepend"));
+        assertArrayEquals(serial, compute(classpath, 4, null));
+        // Classes in directories
+        String dirs = location(ClassDep.class).getPath();
+        assertArrayEquals(compute(dirs, 1, null), compute(dirs, 4, null));
+    }
+
+    @Test
+    public void testIndexGivesSameResult() throws Exception {
+        String[] expected = compute(classpath, 1, null);
+        File index = new File(folder.getRoot(), "index");
+        String[] cold = compute(classpath, 4, index);
+        String[] idx = index.list();
+        assertTrue(idx.length > 0);
+        long[] modified = new long[idx.length];
+        for (int i = 0; i < idx.length; i++) {
+            modified[i] = new File(index, idx[i]).lastModified();
+        }
+        String[] warm = compute(classpath, 4, index);
+        assertArrayEquals(expected, cold);
+        assertArrayEquals(expected, warm);
+        // A warm index isn't rewritten
+        for (int i = 0; i < idx.length; i++) {
+            assertEquals(modified[i], new File(index, idx[i]).lastModified());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroThreads() {
+        new ClassDep().setThreads(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroThreadsOption() {
+        new ClassDep().setupOptions(
+            new String[] {"-cp", classpath, "-threads", "0", ROOT});
+    }
+
+    private static String[] compute(String classpath, int threads,
+                                    File index)
+    {
+        ClassDep dep = new ClassDep();
+        dep.setClassPath(classpath);
+        dep.setThreads(threads);
+        if (index != null) {
+            dep.setIndexDirectory(index.getPath());
+        }
+        dep.addInside("org.apache.river.tool");
+        dep.addClasses(ROOT);
+        String[] result = dep.compute();
+        assertFalse(dep.hasFailed());
+        return result;
+    }
+
+    /** Returns the directory or JAR file the class was loaded from. */
+    static File location(Class<?> c) throws Exception {
+        return new File(
+            c.getProtectionDomain().getCodeSource().getLocation().toURI());
+    }
+
+    /** Writes the class files in a directory to a JAR file. */
+    static void jar(File dir, File jar) throws IOException {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            add(out, dir, "");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void add(JarOutputStream out, File dir, String prefix)
+        throws IOException
+    {
+        File[] files = dir.listFiles();
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isDirectory()) {
+                add(out, f, prefix + f.getName() + "/");
+            } else if (f.getName().endsWith(".class")) {
+                out.putNextEntry(new JarEntry(prefix + f.getName()));
+                InputStream in = new FileInputStream(f);
+                try {
+                    byte[] buf = new byte[8192];
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                } finally {
+                    in.close();
+                }
+                out.closeEntry();
+            }
+        }
+    }
+}
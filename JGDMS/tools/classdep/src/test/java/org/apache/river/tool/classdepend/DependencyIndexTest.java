@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.tool.classdepend;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that an index is reused only while its JAR file is unchanged.
+ */
+public class DependencyIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIndexReused() throws Exception {
+        File jar = folder.newFile("a.jar");
+        writeJar(jar, "a/A.class", new byte[] {1, 2, 3});
+        File dir = new File(folder.getRoot(), "index");
+        URL url = entry(jar, "a/A.class");
+        Set<String> names = new HashSet<String>();
+        names.add("a.B");
+        names.add("java.lang.Object");
+
+        DependencyIndex index = new DependencyIndex(dir);
+        assertNull(index.get(url));
+        index.put(url, names);
+        index.save();
+
+        assertEquals(names, new DependencyIndex(dir).get(url));
+    }
+
+    @Test
+    public void testChangedJarInvalidatesIndex() throws Exception {
+        File jar = folder.newFile("a.jar");
+        writeJar(jar, "a/A.class", new byte[] {1, 2, 3});
+        File dir = new File(folder.getRoot(), "index");
+        URL url = entry(jar, "a/A.class");
+        DependencyIndex index = new DependencyIndex(dir);
+        index.put(url, Collections.singleton("a.B"));
+        index.save();
+
+        // Same name, size and entry, different contents
+        writeJar(jar, "a/A.class", new byte[] {1, 2, 4});
+        assertNull(new DependencyIndex(dir).get(url));
+    }
+
+    @Test
+    public void testDirectoriesNotIndexed() throws Exception {
+        File dir = new File(folder.getRoot(), "index");
+        DependencyIndex index = new DependencyIndex(dir);
+        URL url = new File(folder.getRoot(), "a/A.class").toURI().toURL();
+        index.put(url, Collections.singleton("a.B"));
+        index.save();
+        assertNull(index.get(url));
+        assertEquals(0, dir.list().length);
+    }
+
+    private static URL entry(File jar, String name) throws Exception {
+        return new URL("jar:" + jar.toURI() + "!/" + name);
+    }
+
+    private static void writeJar(File jar, String name, byte[] contents)
+        throws Exception
+    {
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            JarEntry entry = new JarEntry(name);
+            entry.setTime(0L);
+            out.putNextEntry(entry);
+            out.write(contents);
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -35,15 +35,39 @@ import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.MissingResourceException;
+import java.util.Queue;
 import java.util.ResourceBundle;
 import java.util.StringTokenizer;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -58,10 +82,34 @@ import org.apache.river.api.util.Startable;
  * The following items are discussed below:
  * <ul>
  * <li>{@linkplain #main Command line options}
+ * <li><a href="#nio">Non-blocking I/O</a>
  * <li><a href="#logging">Logging</a>
  * <li><a href="#running">Examples for running ClassServer</a>
  * </ul>
  * <p>
+ * <h3><a name="nio">Non-blocking I/O</a></h3>
+ * <p>
+ *
+ * By default a thread is created for each connection, which is closed after
+ * a single request.  With the <code>-nio</code> option, all connections are
+ * served by the server thread using non-blocking I/O, connections are kept
+ * alive between requests as specified by HTTP/1.1, and files are written
+ * to the connection with {@link FileChannel#transferTo
+ * FileChannel.transferTo}, without being copied through the Java heap.
+ * Responses carry <code>Last-Modified</code> and <code>ETag</code> headers
+ * and conditional <code>GET</code> requests, with
+ * <code>If-None-Match</code> or <code>If-Modified-Since</code>, are
+ * answered with <code>304 Not Modified</code> when the file is unchanged.
+ * The SHA-256 digests of JAR and zip files in the top-level directories
+ * are computed at startup, and again if a file changes; the hexadecimal
+ * digest, as used in <code>httpmd</code> URLs, is the <code>ETag</code> and
+ * the base 64 digest is sent in a <code>Digest</code> header, so the
+ * digest can be obtained with a <code>HEAD</code> request.  Requested
+ * files are found, JAR entries read and digests computed by a small pool
+ * of lookup threads, so the server thread never waits for the disk while
+ * other connections are ready.  Connections idle for more than fifteen
+ * seconds are closed.
+ * <p>
  * <h3><a name="logging">Logging</a></h3>
  * <p>
  *
@@ -172,6 +220,14 @@ public class ClassServer extends Thread implements Startable {
     private static String DEFAULT_WIN_DIR = "J:";
     private static Logger logger =
 			    Logger.getLogger("org.apache.river.tool.ClassServer");
+    /** Digest algorithm for JAR and zip files served with -nio */
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    /** Milliseconds an idle -nio connection is kept open */
+    private static final long KEEP_ALIVE_TIMEOUT = 15000L;
+    /** Size of the -nio request buffer, which limits request header size */
+    private static final int REQUEST_BUFFER_SIZE = 8192;
+    /** Empty response body */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
 
     /** Server socket to accept connections on */
     private final ServerSocket server;
@@ -187,6 +243,23 @@ public class ClassServer extends Thread implements Startable {
     private final FilePermission[] perms;
     /** Life cycle control */
     private final LifeCycle lifeCycle;
+    /** Server socket channel if serving with -nio, otherwise null */
+    private final ServerSocketChannel channel;
+    /** Selector of the -nio server thread, null until it starts */
+    private volatile Selector selector;
+    /**
+     * Map from file path to digest of JAR and zip files, -nio only,
+     * accessed by the lookup threads after construction.
+     */
+    private final Map<String, Digest> digests;
+    /**
+     * Threads that find the resources requested with -nio, reading JAR
+     * entries and computing digests off the server thread, null if not
+     * serving with -nio.
+     */
+    private final ThreadPoolExecutor lookups;
+    /** Lookups completed, for the -nio server thread to respond to */
+    private final Queue<Lookup> completed;
 
     /**
      * Construct a server that does not support network shutdown.
@@ -208,7 +281,7 @@ public class ClassServer extends Thread implements Startable {
 		       boolean verbose)
 	throws IOException
     {
-	this(port, dirlist, trees, verbose, false, null);
+	this(port, dirlist, trees, verbose, false, false, null);
     }
 
     /**
@@ -233,7 +306,37 @@ public class ClassServer extends Thread implements Startable {
 		       boolean stoppable)
 	throws IOException
     {
-	this(port, dirlist, trees, verbose, stoppable, null);
+	this(port, dirlist, trees, verbose, stoppable, false, null);
+    }
+
+    /**
+     * Construct a server, optionally serving all connections with
+     * non-blocking I/O.  Use the {@link #start start} method to run it.
+     *
+     * @param port the port to use
+     * @param dirlist the list of directories to serve files from, with entries
+     * separated by the {@linkplain File#pathSeparatorChar path-separator
+     * character}
+     * @param trees <code>true</code> if files within JAR files should be
+     * served up
+     * @param verbose <code>true</code> if downloads should be logged
+     * @param stoppable <code>true</code> if network shutdown from the
+     * local host should be supported
+     * @param nio <code>true</code> if connections should be served with
+     * <a href="#nio">non-blocking I/O</a>
+     * @throws IOException if the server socket cannot be created
+     * @throws NullPointerException if <code>dir</code> is <code>null</code>
+     * @since 3.1.1
+     */
+    public ClassServer(int port,
+		       String dirlist,
+		       boolean trees,
+		       boolean verbose,
+		       boolean stoppable,
+		       boolean nio)
+	throws IOException
+    {
+	this(port, dirlist, trees, verbose, stoppable, nio, null);
     }
     
     private static class Initializer {
@@ -242,6 +345,7 @@ public class ClassServer extends Thread implements Startable {
         boolean trees;
         boolean verbose;
         boolean stoppable;
+        boolean nio;
         LifeCycle lifeCycle;
         
         Initializer(LifeCycle lifeCycle, String[] args){
@@ -251,6 +355,7 @@ public class ClassServer extends Thread implements Startable {
             trees = false;
             verbose = false;
             stoppable = false;
+            nio = false;
             for (int i = 0; i < args.length ; i++ ) {
                 String arg = args[i];
                 if (arg.equals("-port")) {
@@ -265,6 +370,8 @@ public class ClassServer extends Thread implements Startable {
                     trees = true;
                 } else if (arg.equals("-stoppable")) {
                     stoppable = true;
+                } else if (arg.equals("-nio")) {
+                    nio = true;
                 } else {
                     throw new IllegalArgumentException(arg);
                 }
@@ -273,7 +380,8 @@ public class ClassServer extends Thread implements Startable {
     }
     
     private ClassServer(Initializer init) throws IOException {
-        this(init.port, init.dirlist, init.trees, init.verbose, init.stoppable, init.lifeCycle);
+        this(init.port, init.dirlist, init.trees, init.verbose, init.stoppable,
+             init.nio, init.lifeCycle);
     }
 
     /**
@@ -284,6 +392,7 @@ public class ClassServer extends Thread implements Startable {
 		      boolean trees,
 		      boolean verbose,
 		      boolean stoppable,
+		      boolean nio,
 		      LifeCycle lifeCycle)
 	throws IOException
     {
@@ -301,7 +410,30 @@ public class ClassServer extends Thread implements Startable {
 	this.verbose = verbose;
 	this.stoppable = stoppable;
 	this.lifeCycle = lifeCycle;
-        server = new ServerSocket();
+        if (nio) {
+            channel = ServerSocketChannel.open();
+            server = channel.socket();
+            digests = new ConcurrentHashMap<String, Digest>();
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            lookups = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_TIMEOUT, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "HTTP ClassServer lookup");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+            lookups.allowCoreThreadTimeOut(true);
+            completed = new ConcurrentLinkedQueue<Lookup>();
+        } else {
+            channel = null;
+            server = new ServerSocket();
+            digests = null;
+            lookups = null;
+            completed = null;
+        }
         server.setReuseAddress(true);
         server.setSoTimeout(300000); // 5 minutes
         try {
@@ -309,6 +441,17 @@ public class ClassServer extends Thread implements Startable {
         } catch( BindException be ) {
             throw new IOException( "failure to bind to port: "+port, be );
         }
+	if (nio) {
+	    for (int i = 0; i < dirs.length; i++) {
+		String[] files = new File(dirs[i]).list();
+		if (files == null)
+		    continue;
+		for (int j = 0; j < files.length; j++) {
+		    if (isArchive(files[j]))
+			digest(new File(dirs[i] + files[j]));
+		}
+	    }
+	}
 	if (!trees) {
             map = null;
 	    return;
@@ -410,13 +553,18 @@ public class ClassServer extends Thread implements Startable {
 	}
     }
 
-    /** Just keep looping, spawning a new thread for each incoming request. */
+    /**
+     * Just keep looping, spawning a new thread for each incoming request,
+     * or with -nio, serving all connections from this thread.
+     */
     public void run() {
 	logger.log(Level.INFO, "ClassServer started [{0}, port {1}]",
 		   new Object[]{Arrays.asList(dirs),
 				Integer.toString(getPort())});
 	try {
-	    while (!isInterrupted()) {
+	    if (channel != null)
+		serve();
+	    else while (!isInterrupted()) {
                 try {
                     new Task(server.accept()).start();
                 } catch (SocketTimeoutException e){
@@ -445,6 +593,9 @@ public class ClassServer extends Thread implements Startable {
 	    server.close();
 	} catch (IOException e) {
 	}
+	Selector sel = selector;
+	if (sel != null)
+	    sel.wakeup();
 	if (lifeCycle != null)
 	    lifeCycle.unregister(this);
 	logger.log(Level.INFO, "ClassServer terminated [port {0}]",
@@ -535,6 +686,716 @@ public class ClassServer extends Thread implements Startable {
 	return initial;
     }
 
+    /** Canonicalize the path */
+    private static String canon(String path) {
+	if (path.regionMatches(true, 0, "http://", 0, 7)) {
+	    int i = path.indexOf('/', 7);
+	    if (i < 0)
+		path = "/";
+	    else
+		path = path.substring(i);
+	}
+	path = decode(path);
+	if (path == null || path.length() == 0 || path.charAt(0) != '/')
+	    return null;
+	return path.substring(1);
+    }
+
+    /** Returns true if the file name is that of a JAR or zip file. */
+    private static boolean isArchive(String name) {
+	return name.endsWith(".jar") || name.endsWith(".zip");
+    }
+
+    /**
+     * Returns the digest of a JAR or zip file, computing it if the file is
+     * new or has changed since it was last computed, or null if the digest
+     * can't be computed.  Called by the constructor, then by the -nio
+     * lookup threads; a digest being computed by two threads at once is
+     * computed twice, with the same result.
+     */
+    private Digest digest(File f) {
+	String key = f.getPath();
+	long length = f.length();
+	long lastModified = f.lastModified();
+	Digest d = digests.get(key);
+	if (d != null && d.length == length && d.lastModified == lastModified)
+	    return d;
+	try {
+	    MessageDigest md = MessageDigest.getInstance(DIGEST_ALGORITHM);
+	    FileInputStream in = new FileInputStream(f);
+	    try {
+		FileChannel fc = in.getChannel();
+		ByteBuffer buf = ByteBuffer.allocate(8192);
+		while (fc.read(buf) >= 0) {
+		    buf.flip();
+		    md.update(buf);
+		    buf.clear();
+		}
+	    } finally {
+		in.close();
+	    }
+	    d = new Digest(length, lastModified, md.digest());
+	    digests.put(key, d);
+	    return d;
+	} catch (IOException e) {
+	    logger.log(Level.WARNING, "computing digest", e);
+	} catch (NoSuchAlgorithmException e) {
+	    logger.log(Level.WARNING, "computing digest", e);
+	}
+	digests.remove(key);
+	return null;
+    }
+
+    /**
+     * Returns the requested file or JAR entry, or null if not found, for
+     * -nio.  The same files are found as for requests served by Task.
+     * Called by the lookup threads, as it reads JAR entries and computes
+     * digests.
+     */
+    private Resource getResource(String path) throws IOException {
+	if (map != null) {
+	    int i = path.indexOf('/');
+	    if (i > 0) {
+		JarFile[] jfs = map.get(path.substring(0, i));
+		if (jfs != null) {
+		    String jpath = path.substring(i + 1);
+		    for (i = 0; i < jfs.length; i++) {
+			JarEntry je = jfs[i].getJarEntry(jpath);
+			if (je != null) {
+			    byte[] bytes = new byte[(int) je.getSize()];
+			    DataInputStream din = new DataInputStream(
+				jfs[i].getInputStream(je));
+			    try {
+				din.readFully(bytes);
+			    } finally {
+				din.close();
+			    }
+			    return new Resource(null, bytes, bytes.length,
+						je.getTime(), null);
+			}
+		    }
+		}
+	    }
+	}
+	if ('/' != File.separatorChar) {
+	    path = path.replace('/', File.separatorChar);
+	}
+	for (int i = 0; i < dirs.length; i++) {
+	    File f = new File(dirs[i] + path);
+	    if (perms[i].implies(new FilePermission(f.getPath(), "read"))
+		&& f.isFile())
+	    {
+		Digest d = isArchive(path) ? digest(f) : null;
+		return new Resource(f, null, f.length(), f.lastModified(), d);
+	    }
+	}
+	return null;
+    }
+
+    /** Serve all connections using non-blocking I/O. */
+    private void serve() throws IOException {
+	Selector sel = Selector.open();
+	selector = sel;
+	try {
+	    channel.configureBlocking(false);
+	    channel.register(sel, SelectionKey.OP_ACCEPT);
+	    SimpleDateFormat format =
+		new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'",
+				     Locale.US);
+	    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+	    long swept = System.currentTimeMillis();
+	    while (!isInterrupted() && channel.isOpen()) {
+		sel.select(KEEP_ALIVE_TIMEOUT);
+		Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+		while (it.hasNext()) {
+		    SelectionKey key = it.next();
+		    it.remove();
+		    if (!key.isValid())
+			continue;
+		    if (key.isAcceptable()) {
+			accept(sel, format);
+		    } else {
+			((Connection) key.attachment()).handle(key);
+		    }
+		}
+		Lookup lookup;
+		while ((lookup = completed.poll()) != null) {
+		    lookup.connection.found(lookup, sel);
+		}
+		long now = System.currentTimeMillis();
+		if (now - swept >= KEEP_ALIVE_TIMEOUT / 2) {
+		    swept = now;
+		    for (SelectionKey key : sel.keys()) {
+			Object c = key.attachment();
+			if (c instanceof Connection
+			    && !((Connection) c).looking
+			    && now - ((Connection) c).lastActive
+				   >= KEEP_ALIVE_TIMEOUT)
+			{
+			    ((Connection) c).close();
+			}
+		    }
+		}
+	    }
+	} finally {
+	    lookups.shutdownNow();
+	    for (SelectionKey key : sel.keys()) {
+		Object c = key.attachment();
+		if (c instanceof Connection)
+		    ((Connection) c).close();
+	    }
+	    sel.close();
+	}
+    }
+
+    /** Accept all pending connections. */
+    private void accept(Selector sel, SimpleDateFormat format)
+	throws IOException
+    {
+	while (true) {
+	    SocketChannel sc;
+	    try {
+		sc = channel.accept();
+	    } catch (SecurityException e) {
+		logger.log(Level.SEVERE, "Permission denied: ", e);
+		interrupt();
+		return;
+	    }
+	    if (sc == null)
+		return;
+	    try {
+		sc.configureBlocking(false);
+		sc.socket().setTcpNoDelay(true);
+		sc.register(sel, SelectionKey.OP_READ,
+			    new Connection(sc, format));
+	    } catch (IOException e) {
+		logger.log(Levels.HANDLED, "accepting connection", e);
+		try {
+		    sc.close();
+		} catch (IOException ex) {
+		}
+	    }
+	}
+    }
+
+    /** SHA-256 digest of a JAR or zip file, served with -nio. */
+    private static final class Digest {
+	/** Length of the file when the digest was computed */
+	final long length;
+	/** Modification time of the file when the digest was computed */
+	final long lastModified;
+	/** Quoted hexadecimal digest, as in httpmd URLs */
+	final String etag;
+	/** Digest header value */
+	final String header;
+
+	Digest(long length, long lastModified, byte[] digest) {
+	    this.length = length;
+	    this.lastModified = lastModified;
+	    StringBuilder sb = new StringBuilder(2 + 2 * digest.length);
+	    sb.append('"');
+	    for (int i = 0; i < digest.length; i++) {
+		int b = digest[i] & 0xff;
+		sb.append(Character.forDigit(b >> 4, 16))
+		  .append(Character.forDigit(b & 0xf, 16));
+	    }
+	    etag = sb.append('"').toString();
+	    header = "SHA-256=" + Base64.getEncoder().encodeToString(digest);
+	}
+    }
+
+    /** A file, or the contents of a JAR entry, served with -nio. */
+    private static final class Resource {
+	/** The file, or null for a JAR entry */
+	final File file;
+	/** The contents of a JAR entry, or null for a file */
+	final byte[] bytes;
+	final long length;
+	/** Modification time, or zero or less if unknown */
+	final long lastModified;
+	final String etag;
+	/** Digest header value, or null */
+	final String digest;
+
+	Resource(File file, byte[] bytes, long length, long lastModified,
+		 Digest d)
+	{
+	    this.file = file;
+	    this.bytes = bytes;
+	    this.length = length;
+	    this.lastModified = lastModified;
+	    if (d != null) {
+		etag = d.etag;
+		digest = d.header;
+	    } else {
+		etag = '"' + Long.toHexString(length) + '-' +
+		       Long.toHexString(lastModified) + '"';
+		digest = null;
+	    }
+	}
+    }
+
+    /**
+     * Finds the resource requested from a -nio connection, on a lookup
+     * thread, then hands the result back to the server thread.
+     */
+    private final class Lookup implements Runnable {
+	final Connection connection;
+	final String path;
+	final boolean get;
+	final boolean http11;
+	final String ifNoneMatch;
+	final String ifModifiedSince;
+	/** The resource found, or null */
+	Resource resource;
+	/** The file to write, if the resource is a file and this is a GET */
+	FileChannel file;
+	/** Exception thrown finding the resource, or null */
+	Exception failure;
+
+	Lookup(Connection connection,
+	       String path,
+	       boolean get,
+	       boolean http11,
+	       String ifNoneMatch,
+	       String ifModifiedSince)
+	{
+	    this.connection = connection;
+	    this.path = path;
+	    this.get = get;
+	    this.http11 = http11;
+	    this.ifNoneMatch = ifNoneMatch;
+	    this.ifModifiedSince = ifModifiedSince;
+	}
+
+	public void run() {
+	    try {
+		resource = getResource(path);
+		if (resource != null && get && resource.file != null)
+		    file = new FileInputStream(resource.file).getChannel();
+	    } catch (Exception e) {
+		failure = e;
+	    } finally {
+		completed.add(this);
+		Selector sel = selector;
+		if (sel != null)
+		    sel.wakeup();
+	    }
+	}
+    }
+
+    /**
+     * A connection served with -nio, each request is read from the request
+     * buffer once complete and its response written before the next request
+     * is read.  The resource requested is found by a lookup thread, the
+     * connection isn't selected until the lookup completes.
+     */
+    private final class Connection {
+	private final SocketChannel sc;
+	private final SimpleDateFormat format;
+	/** Request bytes, in fill mode */
+	private final ByteBuffer in =
+	    ByteBuffer.allocate(REQUEST_BUFFER_SIZE);
+	/** Response header and JAR entry contents, still to be written */
+	private final ByteBuffer[] out = new ByteBuffer[2];
+	/** File being written, or null */
+	private FileChannel file;
+	private long filePosition;
+	private long fileEnd;
+	/** Path to report to fileDownloaded once written, or null */
+	private String downloaded;
+	/** True while a response is being written */
+	private boolean responding;
+	/** True if the connection stays open after the response */
+	private boolean keepAlive;
+	/** True once the client has shut down its output */
+	private boolean eof;
+	/** True while the requested resource is being looked up */
+	boolean looking;
+	long lastActive = System.currentTimeMillis();
+
+	Connection(SocketChannel sc, SimpleDateFormat format) {
+	    this.sc = sc;
+	    this.format = format;
+	}
+
+	/** Read requests and write responses as the channel permits. */
+	void handle(SelectionKey key) {
+	    try {
+		if (key.isReadable() && sc.read(in) < 0)
+		    eof = true;
+		lastActive = System.currentTimeMillis();
+		process(key);
+	    } catch (Exception e) {
+		if (verbose)
+		    e.printStackTrace();
+		logger.log(Levels.HANDLED, "serving connection", e);
+		close();
+	    }
+	}
+
+	/** Respond to a completed lookup, then continue serving. */
+	void found(Lookup lookup, Selector sel) {
+	    looking = false;
+	    SelectionKey key = sc.keyFor(sel);
+	    if (key == null || !key.isValid()) {
+		closeFile(lookup.file);
+		close();
+		return;
+	    }
+	    try {
+		lastActive = System.currentTimeMillis();
+		respond(lookup);
+		process(key);
+	    } catch (Exception e) {
+		if (verbose)
+		    e.printStackTrace();
+		logger.log(Levels.HANDLED, "serving connection", e);
+		close();
+	    }
+	}
+
+	/**
+	 * Write the response in progress, then respond to buffered requests
+	 * until a response can't be completed or a lookup is started.
+	 */
+	private void process(SelectionKey key) throws IOException {
+	    while (true) {
+		if (responding) {
+		    if (!write()) {
+			key.interestOps(SelectionKey.OP_WRITE);
+			return;
+		    }
+		    responding = false;
+		    if (!keepAlive) {
+			close();
+			return;
+		    }
+		}
+		if (looking || !sc.isOpen() || !request())
+		    break;
+	    }
+	    if (looking) {
+		key.interestOps(0);
+	    } else if (eof) {
+		close();
+	    } else if (sc.isOpen()) {
+		key.interestOps(SelectionKey.OP_READ);
+	    }
+	}
+
+	/** Write the response, returning true when it is complete. */
+	private boolean write() throws IOException {
+	    if (out[0].hasRemaining() || out[1].hasRemaining()) {
+		sc.write(out);
+		if (out[0].hasRemaining() || out[1].hasRemaining())
+		    return false;
+	    }
+	    out[1] = null;
+	    if (file != null) {
+		while (filePosition < fileEnd) {
+		    long n = file.transferTo(filePosition,
+					     fileEnd - filePosition, sc);
+		    if (n <= 0) {
+			if (filePosition >= file.size())
+			    throw new IOException("file truncated");
+			return false;
+		    }
+		    filePosition += n;
+		}
+		file.close();
+		file = null;
+	    }
+	    if (downloaded != null) {
+		fileDownloaded(downloaded, sc.socket().getInetAddress());
+		downloaded = null;
+	    }
+	    return true;
+	}
+
+	/**
+	 * Read the next request, if complete, and prepare its response,
+	 * returning true if a response is ready to be written, or false if
+	 * the request is incomplete or a lookup was started.
+	 */
+	private boolean request() throws IOException {
+	    in.flip();
+	    while (in.hasRemaining() &&
+		   (in.get(in.position()) == '\r' ||
+		    in.get(in.position()) == '\n'))
+	    {
+		in.get();
+	    }
+	    int end = headerEnd();
+	    if (end < 0) {
+		boolean full = in.remaining() == in.capacity();
+		in.compact();
+		if (full) {
+		    keepAlive = false;
+		    status("400 Bad Request", false);
+		    return true;
+		}
+		return false;
+	    }
+	    String header = new String(in.array(),
+				       in.arrayOffset() + in.position(),
+				       end - in.position(),
+				       StandardCharsets.ISO_8859_1);
+	    in.position(end);
+	    in.compact();
+	    String[] lines = header.split("\r?\n");
+	    String req = lines[0];
+	    String connection = null;
+	    String ifNoneMatch = null;
+	    String ifModifiedSince = null;
+	    for (int i = 1; i < lines.length; i++) {
+		int c = lines[i].indexOf(':');
+		if (c <= 0)
+		    continue;
+		String name = lines[i].substring(0, c).trim();
+		String value = lines[i].substring(c + 1).trim();
+		if (name.equalsIgnoreCase("Connection")) {
+		    connection = value.toLowerCase(Locale.ROOT);
+		} else if (name.equalsIgnoreCase("If-None-Match")) {
+		    ifNoneMatch = value;
+		} else if (name.equalsIgnoreCase("If-Modified-Since")) {
+		    ifModifiedSince = value;
+		}
+	    }
+	    boolean http11 = !req.endsWith(" HTTP/1.0") &&
+			     req.lastIndexOf(" HTTP/") > 0;
+	    keepAlive = http11 ?
+		connection == null || connection.indexOf("close") < 0 :
+		connection != null && connection.indexOf("keep-alive") >= 0;
+	    return respond(req, http11, ifNoneMatch, ifModifiedSince);
+	}
+
+	/** Index after the blank line ending the request header, or -1. */
+	private int headerEnd() {
+	    for (int i = in.position(), lim = in.limit() - 1; i < lim; i++) {
+		if (in.get(i) != '\n')
+		    continue;
+		byte b = in.get(i + 1);
+		if (b == '\n')
+		    return i + 2;
+		if (b == '\r' && i + 2 < in.limit() && in.get(i + 2) == '\n')
+		    return i + 3;
+	    }
+	    return -1;
+	}
+
+	/**
+	 * Prepare the response to a request, as Task does, returning true if
+	 * the response is ready, or false if a lookup was started to find
+	 * the requested resource.
+	 */
+	private boolean respond(String req,
+				boolean http11,
+				String ifNoneMatch,
+				String ifModifiedSince)
+	    throws IOException
+	{
+	    InetAddress addr = sc.socket().getInetAddress();
+	    String port = Integer.toString(sc.socket().getPort());
+	    if (req.startsWith("SHUTDOWN *")) {
+		if (verbose)
+		    print("classserver.shutdown",
+			  new String[]{addr.getHostName(), port});
+		boolean ok = stoppable;
+		try {
+		    new ServerSocket(0, 1, addr).close();
+		} catch (IOException e) {
+		    ok = false;
+		}
+		keepAlive = false;
+		if (!ok) {
+		    status("403 Forbidden", http11);
+		    return true;
+		}
+		status("200 OK", http11);
+		try {
+		    write();
+		} catch (Exception e) {
+		    if (verbose)
+			e.printStackTrace();
+		    logger.log(Levels.HANDLED, "writing response", e);
+		}
+		terminate();
+		return true;
+	    }
+	    String[] args = null;
+	    if (verbose || logger.isLoggable(Level.FINE))
+		args = new String[]{req, addr.getHostName(), port};
+	    boolean get = req.startsWith("GET ");
+	    String path = null;
+	    if (get || req.startsWith("HEAD ")) {
+		path = req.substring(get ? 4 : 5);
+		int i = path.indexOf(' ');
+		if (i > 0)
+		    path = path.substring(0, i);
+		path = canon(path);
+	    }
+	    if (path == null) {
+		if (verbose)
+		    print("classserver.badrequest", args);
+		logger.log(Level.FINE,
+			   "bad request \"{0}\" from {1}:{2}", args);
+		keepAlive = false;
+		status("400 Bad Request", http11);
+		return true;
+	    }
+	    if (args != null)
+		args[0] = path;
+	    if (verbose) {
+		print(get ? "classserver.request" : "classserver.probe",
+		      args);
+	    }
+	    logger.log(Level.FINER,
+		       get ?
+		       "{0} requested from {1}:{2}" :
+		       "{0} probed from {1}:{2}",
+		       args);
+	    try {
+		lookups.execute(new Lookup(this, path, get, http11,
+					   ifNoneMatch, ifModifiedSince));
+	    } catch (RejectedExecutionException e) {
+		// terminating
+		keepAlive = false;
+		status("503 Service Unavailable", http11);
+		return true;
+	    }
+	    looking = true;
+	    return false;
+	}
+
+	/** Prepare the response to a request once its lookup completes. */
+	private void respond(Lookup lookup) {
+	    String path = lookup.path;
+	    boolean get = lookup.get;
+	    boolean http11 = lookup.http11;
+	    Resource r = lookup.resource;
+	    if (lookup.failure != null) {
+		if (verbose)
+		    lookup.failure.printStackTrace();
+		logger.log(Level.WARNING, "getting bytes", lookup.failure);
+		keepAlive = false;
+		status("500 Internal Error", http11);
+		return;
+	    }
+	    if (r == null) {
+		if (verbose)
+		    print("classserver.notfound", path);
+		logger.log(Level.FINE, "{0} not found", path);
+		status("404 Not Found", http11);
+		return;
+	    }
+	    boolean notModified =
+		notModified(r, lookup.ifNoneMatch, lookup.ifModifiedSince);
+	    if (lookup.file != null) {
+		if (notModified) {
+		    closeFile(lookup.file);
+		} else {
+		    file = lookup.file;
+		    filePosition = 0;
+		    fileEnd = r.length;
+		}
+	    }
+	    StringBuilder sb = new StringBuilder(256);
+	    if (notModified) {
+		sb.append("HTTP/1.1 304 Not Modified\r\n");
+	    } else {
+		sb.append("HTTP/1.1 200 OK\r\nContent-Length: ")
+		  .append(r.length)
+		  .append("\r\nContent-Type: application/java\r\n");
+		if (get) {
+		    if (r.bytes != null)
+			out[1] = ByteBuffer.wrap(r.bytes);
+		    downloaded = path;
+		}
+	    }
+	    if (r.lastModified > 0) {
+		sb.append("Last-Modified: ")
+		  .append(format.format(new Date(r.lastModified)))
+		  .append("\r\n");
+	    }
+	    sb.append("ETag: ").append(r.etag).append("\r\n");
+	    if (r.digest != null)
+		sb.append("Digest: ").append(r.digest).append("\r\n");
+	    header(sb, http11);
+	}
+
+	/**
+	 * Returns true if the client's copy, identified by the conditional
+	 * request headers, is current.
+	 */
+	private boolean notModified(Resource r,
+				    String ifNoneMatch,
+				    String ifModifiedSince)
+	{
+	    if (ifNoneMatch != null) {
+		StringTokenizer st = new StringTokenizer(ifNoneMatch, ",");
+		while (st.hasMoreTokens()) {
+		    String tag = st.nextToken().trim();
+		    if (tag.startsWith("W/"))
+			tag = tag.substring(2);
+		    if (tag.equals("*") || tag.equals(r.etag))
+			return true;
+		}
+		return false;
+	    }
+	    if (ifModifiedSince != null && r.lastModified > 0) {
+		try {
+		    long since = format.parse(ifModifiedSince).getTime();
+		    return r.lastModified / 1000 <= since / 1000;
+		} catch (ParseException e) {
+		}
+	    }
+	    return false;
+	}
+
+	/** Prepare a response without content. */
+	private void status(String status, boolean http11) {
+	    StringBuilder sb = new StringBuilder(96);
+	    sb.append("HTTP/1.1 ").append(status)
+	      .append("\r\nContent-Length: 0\r\n");
+	    header(sb, http11);
+	}
+
+	/** Complete the response header and begin the response. */
+	private void header(StringBuilder sb, boolean http11) {
+	    if (!keepAlive) {
+		sb.append("Connection: close\r\n");
+	    } else if (!http11) {
+		sb.append("Connection: keep-alive\r\n");
+	    }
+	    sb.append("\r\n");
+	    out[0] = ByteBuffer.wrap(
+		sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+	    if (out[1] == null)
+		out[1] = EMPTY;
+	    responding = true;
+	}
+
+	/** Close the connection, and the file being written, if any. */
+	void close() {
+	    try {
+		sc.close();
+	    } catch (IOException e) {
+	    }
+	    closeFile(file);
+	    file = null;
+	}
+
+	private void closeFile(FileChannel fc) {
+	    if (fc != null) {
+		try {
+		    fc.close();
+		} catch (IOException e) {
+		}
+	    }
+	}
+    }
+
     /** Simple daemon task thread */
     private class Task extends Thread {
 	/** Socket for the incoming request */
@@ -560,21 +1421,6 @@ public class ClassServer extends Thread implements Startable {
 	    return bytes;
 	}
 
-	/** Canonicalize the path */
-	private String canon(String path) {
-	    if (path.regionMatches(true, 0, "http://", 0, 7)) {
-		int i = path.indexOf('/', 7);
-		if (i < 0)
-		    path = "/";
-		else
-		    path = path.substring(i);
-	    }
-	    path = decode(path);
-	    if (path == null || path.length() == 0 || path.charAt(0) != '/')
-		return null;
-	    return path.substring(1);
-	}
-
 	/** Return the bytes of the requested file, or null if not found. */
 	private byte[] getBytes(String path) throws IOException {
 	    if (map != null) {
@@ -784,7 +1630,7 @@ public class ClassServer extends Thread implements Startable {
      * Command line interface for creating an HTTP server.
      * The command line options are:
      * <pre>
-     * [-port <var>port</var>] [-dir <var>dirlist</var>] [-dirs <var>dirlist</var>] [-stoppable] [-verbose] [-trees]
+     * [-port <var>port</var>] [-dir <var>dirlist</var>] [-dirs <var>dirlist</var>] [-stoppable] [-verbose] [-trees] [-nio]
      * </pre>
      * The default port is 8080; the default can be overridden with
      * the <code>-port</code> option.  The default directory on Windows is
@@ -802,7 +1648,8 @@ public class ClassServer extends Thread implements Startable {
      * If a relative <var>path</var> matches a file under more than one
      * top-level directory, the file under the first top-level directory
      * with a match is used. No caching of directory contents or file contents
-     * is performed. <p>
+     * is performed, other than the digests of JAR and zip files when the
+     * <code>-nio</code> option is used. <p>
      *
      * If the <code>-stoppable</code> option is given, the HTTP server can be
      * shut down with a custom HTTP <code>SHUTDOWN</code> request originating
@@ -834,7 +1681,11 @@ public class ClassServer extends Thread implements Startable {
      * more than one top-level directory, the file under the first top-level
      * directory with a match is used. When this option is used, an open file
      * descriptor and cached information is held for each JAR or zip file, for
-     * the life of the process.
+     * the life of the process. <p>
+     *
+     * If the <code>-nio</code> option is given, all connections are served
+     * by a single thread using <a href="#nio">non-blocking I/O</a>, with
+     * HTTP/1.1 persistent connections and conditional requests.
      */
     public static void main(String[] args) {
 	int port = DEFAULT_PORT;
@@ -844,6 +1695,7 @@ public class ClassServer extends Thread implements Startable {
 	boolean trees = false;
 	boolean verbose = false;
 	boolean stoppable = false;
+	boolean nio = false;
 	boolean stop = false;
 	for (int i = 0; i < args.length ; i++ ) {
 	    String arg = args[i];
@@ -859,6 +1711,8 @@ public class ClassServer extends Thread implements Startable {
 		trees = true;
 	    } else if (arg.equals("-stoppable")) {
 		stoppable = true;
+	    } else if (arg.equals("-nio")) {
+		nio = true;
 	    } else if (arg.equals("-stop")) {
 		stop = true;
 	    } else {
@@ -895,7 +1749,7 @@ public class ClassServer extends Thread implements Startable {
 		}
 	    } else {
 		new ClassServer(port, dirlist, trees, verbose,
-				stoppable).start();
+				stoppable, nio).start();
 	    }
 	} catch (IOException e) {
 	    logger.log(Level.WARNING, "requesting shutdown", e);
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.river.tool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the -nio mode of ClassServer.
+ */
+public class ClassServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger downloads = new AtomicInteger();
+    private ClassServer server;
+    private byte[] classBytes;
+    private byte[] jarBytes;
+    private byte[] entryBytes;
+
+    @Before
+    public void setUp() throws Exception {
+        File dir = folder.getRoot();
+        Random random = new Random(1);
+        classBytes = new byte[50000];
+        random.nextBytes(classBytes);
+        File pkg = new File(dir, "pkg");
+        assertTrue(pkg.mkdir());
+        write(new File(pkg, "Foo.class"), classBytes);
+        entryBytes = "entry".getBytes(StandardCharsets.UTF_8);
+        File jar = new File(dir, "lib.jar");
+        JarOutputStream jout = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            jout.putNextEntry(new JarEntry("entry.txt"));
+            jout.write(entryBytes);
+            jout.putNextEntry(new JarEntry("random.bin"));
+            byte[] b = new byte[1 << 20];
+            random.nextBytes(b);
+            jout.write(b);
+        } finally {
+            jout.close();
+        }
+        jarBytes = read(new FileInputStream(jar));
+        server = new ClassServer(0, dir.getPath(), true, false, false, true) {
+            @Override
+            protected void fileDownloaded(String fp, InetAddress addr) {
+                downloads.incrementAndGet();
+            }
+        };
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        server.terminate();
+        server.join(10000);
+        assertFalse(server.isAlive());
+    }
+
+    @Test
+    public void testKeepAlive() throws IOException {
+        Socket sock = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        try {
+            OutputStream out = sock.getOutputStream();
+            DataInputStream in = new DataInputStream(sock.getInputStream());
+            // Pipelined requests on one connection
+            out.write(("GET /pkg/Foo.class HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+                       "GET /lib/entry.txt HTTP/1.1\r\nHost: localhost\r\n\r\n")
+                      .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            Map<String, String> headers = new HashMap<String, String>();
+            assertEquals("HTTP/1.1 200 OK", readHeader(in, headers));
+            assertArrayEquals(classBytes, readBody(in, headers));
+            assertEquals("HTTP/1.1 200 OK", readHeader(in, headers));
+            assertArrayEquals(entryBytes, readBody(in, headers));
+            out.write("HEAD /missing HTTP/1.1\r\n\r\n"
+                      .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            assertEquals("HTTP/1.1 404 Not Found", readHeader(in, headers));
+            out.write("GET /pkg/Foo.class HTTP/1.1\r\nConnection: close\r\n\r\n"
+                      .getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            assertEquals("HTTP/1.1 200 OK", readHeader(in, headers));
+            assertEquals("close", headers.get("connection"));
+            assertArrayEquals(classBytes, readBody(in, headers));
+            assertEquals(-1, in.read());
+        } finally {
+            sock.close();
+        }
+        assertEquals(3, downloads.get());
+    }
+
+    @Test
+    public void testConditionalGet() throws Exception {
+        URL url = new URL("http", "localhost", server.getPort(), "/lib.jar");
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("HEAD");
+        assertEquals(200, conn.getResponseCode());
+        assertEquals(jarBytes.length, conn.getContentLength());
+        String etag = conn.getHeaderField("ETag");
+        String lastModified = conn.getHeaderField("Last-Modified");
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(jarBytes);
+        StringBuilder hex = new StringBuilder("\"");
+        for (byte b : digest) hex.append(String.format(Locale.ROOT, "%02x", b));
+        assertEquals(hex.append('"').toString(), etag);
+        assertEquals("SHA-256=" + Base64.getEncoder().encodeToString(digest),
+                     conn.getHeaderField("Digest"));
+
+        conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, conn.getResponseCode());
+        conn.getInputStream().close();
+
+        conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("If-Modified-Since", lastModified);
+        assertEquals(304, conn.getResponseCode());
+        conn.getInputStream().close();
+
+        conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestProperty("If-None-Match", "\"other\"");
+        assertEquals(200, conn.getResponseCode());
+        assertArrayEquals(jarBytes, read(conn.getInputStream()));
+        assertEquals(1, downloads.get());
+    }
+
+    /**
+     * Many concurrent downloaders, each repeatedly fetching the same files,
+     * all receive the complete and correct contents.
+     */
+    @Test
+    public void testConcurrentDownloaders() throws Exception {
+        final int threads = 64;
+        final int requests = 20;
+        final URL jar = new URL("http", "localhost", server.getPort(), "/lib.jar");
+        final URL cls = new URL("http", "localhost", server.getPort(), "/pkg/Foo.class");
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] downloaders = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            downloaders[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < requests; i++) {
+                            boolean even = (i & 1) == 0;
+                            byte[] b = read((even ? jar : cls).openStream());
+                            if (!Arrays.equals(even ? jarBytes : classBytes, b)) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            downloaders[t].start();
+        }
+        for (int t = 0; t < threads; t++) downloaders[t].join();
+        assertEquals(0, failures.get());
+        assertEquals(threads * requests, downloads.get());
+    }
+
+    private static void write(File f, byte[] b) throws IOException {
+        OutputStream out = new FileOutputStream(f);
+        try {
+            out.write(b);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) >= 0) out.write(buf, 0, n);
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Reads a response header, returning the status line. */
+    private static String readHeader(DataInputStream in, Map<String, String> headers)
+        throws IOException
+    {
+        headers.clear();
+        String status = readLine(in);
+        String line;
+        while ((line = readLine(in)).length() > 0) {
+            int c = line.indexOf(':');
+            headers.put(line.substring(0, c).trim().toLowerCase(Locale.ROOT),
+                        line.substring(c + 1).trim());
+        }
+        return status;
+    }
+
+    private static byte[] readBody(DataInputStream in, Map<String, String> headers)
+        throws IOException
+    {
+        byte[] b = new byte[Integer.parseInt(headers.get("content-length"))];
+        in.readFully(b);
+        return b;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) throw new IOException("end of stream");
+            if (c != '\r') sb.append((char) c);
+        }
+        return sb.toString();
+    }
+}
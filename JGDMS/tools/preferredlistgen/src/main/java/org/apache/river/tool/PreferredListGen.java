@@ -46,6 +46,11 @@ import java.util.ResourceBundle;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -242,6 +247,14 @@ import java.util.regex.Pattern;
  * times. If this option is used, all other output options are ignored, and the
  * normal class output is not produced. This option is useful for debugging.
  * </dd>
+ * 
+ * <dt><b><code>-threads</code> <var>count</var></b>
+ * <dd>Specifies the number of threads used to load and introspect the classes
+ * in the JAR files before the dependency analysis, which then finds them
+ * already loaded. The default is the number of available processors; a value
+ * of 1 disables this. The generated list does not depend on the number of
+ * threads.
+ * </dd>
  * </dl>
  * 
  * Using values from the <code>-api</code> and <code>-impl</code> options, a
@@ -372,6 +385,9 @@ public class PreferredListGen {
     /** if true, load JARs without preferred lists directly into listGraph */
     private boolean doMerge;
 
+    /** the number of threads used to preload classes */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
     /**
      * Get the strings from our resource localization bundle.
      */
@@ -505,6 +521,8 @@ public class PreferredListGen {
 		setClasspath(args[++i]);
 	    } else if (arg.equals("-proxy")) {
 		addProxy(args[++i]);
+	    } else if (arg.equals("-threads")) {
+		setThreads(Integer.parseInt(args[++i]));
 	    } else {
 		String msg = getString("preflistgen.badoption", arg);
 		throw new IllegalArgumentException(msg);
@@ -702,6 +720,23 @@ public class PreferredListGen {
     public final synchronized void setClasspath(String path) {
 	this.classpath = path;
     }
+
+    /**
+     * Set the number of threads used to load and introspect the classes in
+     * the JAR files, before the dependency analysis. The default is the
+     * number of available processors, a value of 1 disables preloading.
+     *
+     * @param threads the number of threads
+     * @throws IllegalArgumentException if <code>threads</code> is less than 1
+     * @since 3.1.1
+     */
+    public final synchronized void setThreads(int threads) {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("threads must be positive: " 
+					       + threads);
+	}
+	this.threads = threads;
+    }
 	
     /**
      * Add <code>proxy</code> to the set of proxies used to identify
@@ -1154,6 +1189,7 @@ public class PreferredListGen {
 	    loader = new URLClassLoader(urls, cl);
 	}
 	loadJars();
+	preload();
 	Collection roots = getRoots();
 	for (Iterator it = roots.iterator(); it.hasNext(); ) {
 	    String clazz = (String) it.next();
@@ -1179,6 +1215,57 @@ public class PreferredListGen {
 	}
     }
        
+    /**
+     * Load and introspect the classes in all of the JAR files concurrently,
+     * so the class loader and the reflection caches of the classes are
+     * populated before the sequential dependency analysis, which is
+     * otherwise dominated by class loading. Failures are ignored here, they
+     * are reported by the analysis, whose results are unaffected.
+     */
+    private void preload() {
+	if (threads < 2) {
+	    return;
+	}
+	ExecutorService executor = Executors.newFixedThreadPool(threads,
+	    new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+		    Thread t = new Thread(r, "PreferredListGen");
+		    t.setDaemon(true);
+		    return t;
+		}
+	    });
+	try {
+	    Iterator it = jarEntries.iterator();
+	    while (it.hasNext()) {
+		String id = (String) it.next();
+		if (!id.endsWith(".class")) {
+		    continue;
+		}
+		final String className = fileToClass(id);
+		executor.execute(new Runnable() {
+		    public void run() {
+			try {
+			    Class c = Class.forName(className, false, loader);
+			    c.getDeclaredConstructors();
+			    c.getDeclaredMethods();
+			    c.getDeclaredFields();
+			} catch (Exception e) {
+			    // reported by inspectClass
+			} catch (LinkageError e) {
+			    // reported by process
+			}
+		    }
+		});
+	    }
+	    executor.shutdown();
+	    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+       
     /**
      * Generate the <code>Collection</code> of roots to use for the dependency
      * analysis. All classes from the first JAR with a preferred state of false